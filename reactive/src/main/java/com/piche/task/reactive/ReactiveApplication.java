@@ -0,0 +1,19 @@
+package com.piche.task.reactive;
+
+import com.piche.task.reactive.encoder.PasswordEncoder;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Bean;
+
+@SpringBootApplication
+public class ReactiveApplication {
+
+	@Bean
+	public PasswordEncoder passwordEncoder() {
+		return new PasswordEncoder();
+	}
+
+	public static void main(String[] args) {
+		SpringApplication.run(ReactiveApplication.class, args);
+	}
+}
@@ -0,0 +1,90 @@
+package com.piche.task.reactive.controller;
+
+import com.piche.task.reactive.dto.AccountDTO;
+import com.piche.task.reactive.dto.AccountOperationResponseDTO;
+import com.piche.task.reactive.dto.AccountPageDTO;
+import com.piche.task.reactive.dto.AccountStatementDTO;
+import com.piche.task.reactive.model.Account;
+import com.piche.task.reactive.service.AccountService;
+import lombok.AllArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+
+@RestController
+@AllArgsConstructor
+public class AccountController {
+
+    private final AccountService accountService;
+
+    @GetMapping(value = "account")
+    public Mono<AccountPageDTO> getAllAccounts(@RequestParam(value = "namePrefix", required = false) String namePrefix,
+                                               @RequestParam(value = "minBalance", required = false) Double minBalance,
+                                               @RequestParam(value = "maxBalance", required = false) Double maxBalance,
+                                               @RequestParam(value = "sort", required = false) String sort,
+                                               @RequestParam(value = "order", required = false) String order,
+                                               @RequestParam(value = "cursor", required = false) String cursor,
+                                               @RequestParam(value = "limit", required = false) Integer limit) {
+        return accountService.findPage(namePrefix, minBalance, maxBalance, sort, order, cursor, limit);
+    }
+
+    @GetMapping(value = "account/{id}")
+    public Mono<Account> getAccount(@PathVariable("id") Long id) {
+        return accountService.findById(id);
+    }
+
+    @GetMapping(value = "account", params = "name")
+    public Mono<Account> getAccountByName(@RequestParam("name") String name) {
+        return accountService.findByName(name);
+    }
+
+    @PostMapping(value = "account")
+    public Mono<Account> saveAccount(@RequestBody AccountDTO account) {
+        return accountService.save(account);
+    }
+
+    @PostMapping(value = "account/validate")
+    public Mono<Void> validateAccount(@RequestBody AccountDTO account) {
+        return accountService.validate(account);
+    }
+
+    @DeleteMapping(value = "account/{id}")
+    public Mono<Void> deleteAccount(@PathVariable("id") Long id) {
+        return accountService.deleteById(id);
+    }
+
+    /**
+     * Returns a JSON array, or one operation per line as it is read when {@code application/x-ndjson} is accepted.
+     */
+    @GetMapping(value = "account/{id}/operation/all",
+            produces = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE })
+    public Flux<AccountOperationResponseDTO> getAllAccountOperations(@PathVariable("id") Long id,
+                                                                     @RequestParam(value = "sort", required = false) String sort) {
+        return accountService.getAllOperations(id, null, null, sort);
+    }
+
+    @GetMapping(value = "account/{id}/operation/all", params = {"from", "to"},
+            produces = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE })
+    public Flux<AccountOperationResponseDTO> getAllAccountOperationsByDateSpan(@PathVariable("id") Long id,
+                                                          @RequestParam("from") LocalDate from,
+                                                          @RequestParam("to") LocalDate to,
+                                                          @RequestParam(value = "sort", required = false) String sort) {
+        return accountService.getAllOperations(id, from, to, sort);
+    }
+
+    @GetMapping(value = "account/{id}/statement", params = {"from", "to"})
+    public Mono<AccountStatementDTO> getAccountStatement(@PathVariable("id") Long id,
+                                                         @RequestParam("from") LocalDate from,
+                                                         @RequestParam("to") LocalDate to) {
+        return accountService.getStatement(id, from, to);
+    }
+}
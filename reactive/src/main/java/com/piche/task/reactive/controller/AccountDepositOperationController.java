@@ -0,0 +1,31 @@
+package com.piche.task.reactive.controller;
+
+import com.piche.task.reactive.dto.AccountOperationDTO;
+import com.piche.task.reactive.model.AccountDepositOperation;
+import com.piche.task.reactive.service.AccountDepositOperationService;
+import lombok.AllArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@RestController
+@AllArgsConstructor
+public class AccountDepositOperationController {
+
+    private final AccountDepositOperationService service;
+
+    @GetMapping(value = "account/{id}/operation/deposit")
+    public Flux<AccountDepositOperation> getAllOperations(@PathVariable("id") Long id) {
+        return service.findAllByAccountId(id);
+    }
+
+    @PostMapping(value = "account/{id}/operation/deposit")
+    public Mono<AccountDepositOperation> saveOperation(@PathVariable("id") Long id,
+                                                       @RequestBody AccountOperationDTO operation) {
+        return service.save(id, operation);
+    }
+}
@@ -0,0 +1,32 @@
+package com.piche.task.reactive.controller;
+
+import com.piche.task.reactive.dto.AccountOperationDTO;
+import com.piche.task.reactive.model.AccountTransferOperation;
+import com.piche.task.reactive.service.AccountTransferOperationService;
+import lombok.AllArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@RestController
+@AllArgsConstructor
+public class AccountTransferOperationController {
+
+    private final AccountTransferOperationService operationService;
+
+    @GetMapping(value = "account/{id}/operation/transfer")
+    public Flux<AccountTransferOperation> getAllOperations(@PathVariable("id") Long id) {
+        return operationService.findAllBySenderId(id);
+    }
+
+    @PostMapping(value = "account/{senderId}/operation/transfer/{receiverId}")
+    public Mono<AccountTransferOperation> saveOperation(@PathVariable("senderId") Long senderId,
+                                                        @PathVariable("receiverId") Long receiverId,
+                                                        @RequestBody AccountOperationDTO operation) {
+        return operationService.save(senderId, receiverId, operation);
+    }
+}
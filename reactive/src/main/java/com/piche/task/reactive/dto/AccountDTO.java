@@ -0,0 +1,12 @@
+package com.piche.task.reactive.dto;
+
+import lombok.Data;
+
+@Data
+public class AccountDTO {
+
+    private String name;
+
+    private String password;
+
+}
@@ -0,0 +1,9 @@
+package com.piche.task.reactive.dto;
+
+import lombok.Data;
+
+@Data
+public class AccountOperationDTO {
+
+    private double deposit;
+}
@@ -0,0 +1,35 @@
+package com.piche.task.reactive.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDate;
+
+@Data
+@Builder
+@AllArgsConstructor
+public class AccountStatementDTO {
+
+    private Long accountId;
+
+    private LocalDate from;
+
+    private LocalDate to;
+
+    private double openingBalance;
+
+    private double totalDeposits;
+
+    private double totalSent;
+
+    private double totalReceived;
+
+    private double closingBalance;
+
+    private long depositCount;
+
+    private long sentCount;
+
+    private long receivedCount;
+}
@@ -0,0 +1,15 @@
+package com.piche.task.reactive.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class AccountSummaryDTO {
+
+    private Long id;
+
+    private String name;
+
+    private Double balance;
+}
@@ -0,0 +1,37 @@
+package com.piche.task.reactive.encoder;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Same hashing as the servlet application, so both can share accounts. The digest is created per call because
+ * requests are encoded concurrently on the event loop threads.
+ */
+public class PasswordEncoder {
+
+    public static final String SALT = "-salt";
+
+    public String encode(String text) {
+        try {
+            return bytesToHex(MessageDigest.getInstance("SHA-256").digest((text + SALT).getBytes()));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String bytesToHex(byte[] arr) {
+        StringBuilder hexString = new StringBuilder(2 * arr.length);
+
+        for (byte b : arr) {
+            String hex = Integer.toHexString(0xff & b);
+
+            if (hex.length() == 1) {
+                hexString.append('0');
+            }
+
+            hexString.append(hex);
+        }
+
+        return hexString.toString();
+    }
+}
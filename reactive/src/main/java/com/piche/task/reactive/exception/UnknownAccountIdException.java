@@ -0,0 +1,8 @@
+package com.piche.task.reactive.exception;
+
+public class UnknownAccountIdException extends RuntimeException {
+
+    public UnknownAccountIdException(long id) {
+        super(String.format("Unknown account with id %d", id));
+    }
+}
@@ -0,0 +1,8 @@
+package com.piche.task.reactive.exception;
+
+public class UnknownAccountNameException extends RuntimeException {
+
+    public UnknownAccountNameException(String name) {
+        super(String.format("Unknown account with name '%s'", name));
+    }
+}
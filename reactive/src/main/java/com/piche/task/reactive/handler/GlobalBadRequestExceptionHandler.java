@@ -0,0 +1,34 @@
+package com.piche.task.reactive.handler;
+
+import com.piche.task.reactive.exception.BadRequestException;
+import com.piche.task.reactive.exception.UnknownAccountIdException;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+
+@ControllerAdvice
+class GlobalBadRequestExceptionHandler {
+
+    @ExceptionHandler(value = { BadRequestException.class, UnknownAccountIdException.class })
+    public ResponseEntity<Object> defaultErrorHandler(Exception e) {
+        return ResponseEntity.badRequest().body(ErrorMessage.builder()
+                .statusCode(HttpStatus.BAD_REQUEST.value())
+                .message(e.getMessage())
+                .build());
+    }
+
+    @Data
+    @Builder
+    @AllArgsConstructor
+    public static class ErrorMessage {
+
+        private int statusCode;
+
+        private String message;
+
+    }
+}
@@ -0,0 +1,29 @@
+package com.piche.task.reactive.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+@Table(name = "account")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class Account {
+
+    @Id
+    private Long id;
+
+    @Column("name")
+    private String name;
+
+    @Column("password_hash")
+    private String passwordHash;
+
+    @Column("balance")
+    private Double balance;
+}
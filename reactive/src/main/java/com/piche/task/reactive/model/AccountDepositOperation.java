@@ -0,0 +1,34 @@
+package com.piche.task.reactive.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.LocalDateTime;
+
+/**
+ * Unlike the JPA entity the operation refers to its account by id, so reading operations never joins accounts.
+ */
+@Table(name = "deposit_operation")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class AccountDepositOperation {
+
+    @Id
+    private Long id;
+
+    @Column("account_id")
+    private Long accountId;
+
+    @Column("updated_at")
+    private LocalDateTime updatedAt;
+
+    @Column("deposit")
+    private Double deposit;
+}
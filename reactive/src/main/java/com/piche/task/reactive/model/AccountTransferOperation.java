@@ -0,0 +1,34 @@
+package com.piche.task.reactive.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.LocalDateTime;
+
+@Table(name = "transfer_operation")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class AccountTransferOperation {
+
+    @Id
+    private Long id;
+
+    @Column("sender_id")
+    private Long senderId;
+
+    @Column("receiver_id")
+    private Long receiverId;
+
+    @Column("updated_at")
+    private LocalDateTime updatedAt;
+
+    @Column("deposit")
+    private Double deposit;
+}
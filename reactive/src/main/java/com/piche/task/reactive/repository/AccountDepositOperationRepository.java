@@ -0,0 +1,14 @@
+package com.piche.task.reactive.repository;
+
+import com.piche.task.reactive.model.AccountDepositOperation;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+
+@Repository
+public interface AccountDepositOperationRepository extends ReactiveCrudRepository<AccountDepositOperation, Long> {
+
+    @Query("SELECT * FROM deposit_operation o WHERE o.account_id = :id")
+    Flux<AccountDepositOperation> findAllByAccountId(Long id);
+}
@@ -0,0 +1,25 @@
+package com.piche.task.reactive.repository;
+
+import com.piche.task.reactive.model.Account;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+@Repository
+public interface AccountRepository extends ReactiveCrudRepository<Account, Long> {
+
+    @Query("SELECT count(*) > 0 FROM account a WHERE a.name = :name")
+    Mono<Boolean> existsByName(String name);
+
+    @Query("SELECT * FROM account a WHERE a.name = :name")
+    Mono<Account> findByName(String name);
+
+    /**
+     * Adds the amount unless the balance would become negative; returns the number of updated rows.
+     */
+    @Modifying
+    @Query("UPDATE account SET balance = balance + :amount WHERE id = :id AND balance + :amount >= 0")
+    Mono<Integer> addToBalance(Long id, double amount);
+}
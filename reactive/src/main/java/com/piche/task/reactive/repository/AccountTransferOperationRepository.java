@@ -0,0 +1,14 @@
+package com.piche.task.reactive.repository;
+
+import com.piche.task.reactive.model.AccountTransferOperation;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+
+@Repository
+public interface AccountTransferOperationRepository extends ReactiveCrudRepository<AccountTransferOperation, Long> {
+
+    @Query("SELECT * FROM transfer_operation o WHERE o.sender_id = :id")
+    Flux<AccountTransferOperation> findAllBySenderId(Long id);
+}
@@ -0,0 +1,57 @@
+package com.piche.task.reactive.service;
+
+import com.piche.task.reactive.dto.AccountOperationDTO;
+import com.piche.task.reactive.exception.BadRequestException;
+import com.piche.task.reactive.exception.UnknownAccountIdException;
+import com.piche.task.reactive.model.AccountDepositOperation;
+import com.piche.task.reactive.repository.AccountDepositOperationRepository;
+import com.piche.task.reactive.repository.AccountRepository;
+import lombok.AllArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+
+@Service
+@AllArgsConstructor
+public class AccountDepositOperationService {
+
+    private final AccountRepository accountRepository;
+
+    private final AccountDepositOperationRepository depositOperationRepository;
+
+    public Flux<AccountDepositOperation> findAllByAccountId(Long id) {
+        return accountRepository.existsById(id)
+                .flatMapMany(exists -> exists
+                        ? depositOperationRepository.findAllByAccountId(id)
+                        : Flux.error(new UnknownAccountIdException(id)));
+    }
+
+    /**
+     * The balance check and the update are one conditional statement, so concurrent deposits and transfers
+     * can't overdraw the account.
+     */
+    @Transactional
+    public Mono<AccountDepositOperation> save(long accountId, AccountOperationDTO operation) {
+        if (operation.getDeposit() == 0) {
+            return Mono.error(new BadRequestException("Can`t add operation: deposit value 0"));
+        }
+
+        return accountRepository.addToBalance(accountId, operation.getDeposit())
+                .flatMap(updated -> {
+                    if (updated > 0) {
+                        return depositOperationRepository.save(AccountDepositOperation.builder()
+                                .accountId(accountId)
+                                .updatedAt(LocalDateTime.now())
+                                .deposit(operation.getDeposit())
+                                .build());
+                    }
+
+                    return accountRepository.existsById(accountId).flatMap(exists -> Mono.error(exists
+                            ? new BadRequestException("Can`t add operation: account balance can`t become negative")
+                            : new UnknownAccountIdException(accountId)));
+                });
+    }
+}
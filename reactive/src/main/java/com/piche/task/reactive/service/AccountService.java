@@ -0,0 +1,327 @@
+package com.piche.task.reactive.service;
+
+import com.piche.task.reactive.dto.AccountDTO;
+import com.piche.task.reactive.dto.AccountOperationResponseDTO;
+import com.piche.task.reactive.dto.AccountPageDTO;
+import com.piche.task.reactive.dto.AccountStatementDTO;
+import com.piche.task.reactive.dto.AccountSummaryDTO;
+import com.piche.task.reactive.encoder.PasswordEncoder;
+import com.piche.task.reactive.exception.BadRequestException;
+import com.piche.task.reactive.exception.UnknownAccountIdException;
+import com.piche.task.reactive.exception.UnknownAccountNameException;
+import com.piche.task.reactive.model.Account;
+import com.piche.task.reactive.repository.AccountRepository;
+import io.r2dbc.spi.Readable;
+import lombok.AllArgsConstructor;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Service
+@AllArgsConstructor
+public class AccountService {
+
+    private static final int DEFAULT_PAGE_SIZE = 50;
+
+    private static final int MAX_PAGE_SIZE = 500;
+
+    private final AccountRepository accountRepository;
+
+    private final PasswordEncoder encoder;
+
+    private final DatabaseClient client;
+
+    /**
+     * Lists accounts page by page, continuing after the sort key and id encoded in the cursor.
+     */
+    public Mono<AccountPageDTO> findPage(String namePrefix, Double minBalance, Double maxBalance, String sort,
+                                         String order, String cursor, Integer limit) {
+        return Mono.defer(() -> {
+            int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+
+            if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+                throw new BadRequestException(String.format("Page size must be between 1 and %d", MAX_PAGE_SIZE));
+            }
+
+            if (minBalance != null && maxBalance != null && minBalance > maxBalance) {
+                throw new BadRequestException("Min balance is greater than max balance");
+            }
+
+            String field = parseSortField(sort);
+            boolean descending = isDescending(order);
+            StringBuilder sql = new StringBuilder("SELECT a.id, a.name, a.balance FROM account a WHERE 1 = 1");
+            Map<String, Object> parameters = new HashMap<>();
+
+            if (namePrefix != null && !namePrefix.isEmpty()) {
+                sql.append(" AND a.name LIKE :namePrefix ESCAPE '\\'");
+                parameters.put("namePrefix", escapeLike(namePrefix) + "%");
+            }
+
+            if (minBalance != null) {
+                sql.append(" AND a.balance >= :minBalance");
+                parameters.put("minBalance", minBalance);
+            }
+
+            if (maxBalance != null) {
+                sql.append(" AND a.balance <= :maxBalance");
+                parameters.put("maxBalance", maxBalance);
+            }
+
+            String comparison = descending ? "<" : ">";
+            String direction = descending ? "DESC" : "ASC";
+
+            if (cursor != null) {
+                String[] after = decodeCursor(cursor, field, descending);
+
+                if (field.equals("id")) {
+                    sql.append(" AND a.id ").append(comparison).append(" :afterId");
+                } else {
+                    sql.append(" AND (a.").append(field).append(' ').append(comparison).append(" :afterKey OR (a.")
+                            .append(field).append(" = :afterKey AND a.id ").append(comparison).append(" :afterId))");
+                    parameters.put("afterKey", field.equals("name") ? after[3] : Double.valueOf(after[3]));
+                }
+
+                parameters.put("afterId", Long.valueOf(after[2]));
+            }
+
+            if (!field.equals("id")) {
+                sql.append(" ORDER BY a.").append(field).append(' ').append(direction).append(',');
+            } else {
+                sql.append(" ORDER BY");
+            }
+
+            sql.append(" a.id ").append(direction).append(" LIMIT ").append(pageSize + 1);
+
+            DatabaseClient.GenericExecuteSpec spec = client.sql(sql.toString());
+
+            for (Map.Entry<String, Object> parameter : parameters.entrySet()) {
+                spec = spec.bind(parameter.getKey(), parameter.getValue());
+            }
+
+            return spec.map(row -> new AccountSummaryDTO(
+                            row.get("id", Long.class),
+                            row.get("name", String.class),
+                            row.get("balance", Double.class)))
+                    .all()
+                    .collectList()
+                    .map(rows -> toPage(rows, pageSize, field, descending));
+        });
+    }
+
+    public Mono<Account> findById(Long id) {
+        return accountRepository.findById(id)
+                .switchIfEmpty(Mono.error(() -> new UnknownAccountIdException(id)));
+    }
+
+    public Mono<Account> findByName(String name) {
+        return accountRepository.findByName(name)
+                .switchIfEmpty(Mono.error(() -> new UnknownAccountNameException(name)));
+    }
+
+    /**
+     * Streams the deposits, sent and received transfers of an account merged and ordered by the database.
+     */
+    public Flux<AccountOperationResponseDTO> getAllOperations(Long id, LocalDate from, LocalDate to, String sort) {
+        return Flux.defer(() -> {
+            String direction = isDescending(sort == null ? "desc" : sort) ? "DESC" : "ASC";
+            String span = from == null ? "" : " AND o.updated_at >= :from AND o.updated_at < :to";
+            DatabaseClient.GenericExecuteSpec spec = client.sql(
+                            "SELECT o.id, 'deposit' AS type, NULL AS role, o.deposit, o.updated_at, 0 AS part " +
+                            "FROM deposit_operation o WHERE o.account_id = :id" + span + " " +
+                            "UNION ALL " +
+                            "SELECT o.id, 'transfer', 'sender', -o.deposit, o.updated_at, 1 " +
+                            "FROM transfer_operation o WHERE o.sender_id = :id" + span + " " +
+                            "UNION ALL " +
+                            "SELECT o.id, 'transfer', 'receiver', o.deposit, o.updated_at, 2 " +
+                            "FROM transfer_operation o WHERE o.receiver_id = :id" + span + " " +
+                            "ORDER BY updated_at " + direction + ", part")
+                    .bind("id", id);
+
+            if (from != null) {
+                spec = spec.bind("from", from.atStartOfDay()).bind("to", to.atStartOfDay());
+            }
+
+            Flux<AccountOperationResponseDTO> operations = spec.map(row -> AccountOperationResponseDTO.builder()
+                            .id(row.get("id", Long.class))
+                            .type(row.get("type", String.class))
+                            .role(row.get("role", String.class))
+                            .deposit(row.get("deposit", Double.class))
+                            .updatedAt(row.get("updated_at", LocalDateTime.class))
+                            .build())
+                    .all();
+
+            return accountRepository.existsById(id)
+                    .flatMapMany(exists -> exists ? operations : Flux.error(new UnknownAccountIdException(id)));
+        });
+    }
+
+    /**
+     * Computes the statement with one query of scalar aggregates, see the servlet application for the formulas.
+     */
+    public Mono<AccountStatementDTO> getStatement(Long id, LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            return Mono.error(new BadRequestException("Can`t prepare statement: 'from' date is after 'to' date"));
+        }
+
+        return client.sql("SELECT a.balance, " +
+                        aggregate("COUNT(*)", "deposit_operation", "account_id", "deposit_count", true) +
+                        aggregate("SUM(o.deposit)", "deposit_operation", "account_id", "deposit_sum", true) +
+                        aggregate("COUNT(*)", "transfer_operation", "sender_id", "sent_count", true) +
+                        aggregate("SUM(o.deposit)", "transfer_operation", "sender_id", "sent_sum", true) +
+                        aggregate("COUNT(*)", "transfer_operation", "receiver_id", "received_count", true) +
+                        aggregate("SUM(o.deposit)", "transfer_operation", "receiver_id", "received_sum", true) +
+                        aggregate("SUM(o.deposit)", "deposit_operation", "account_id", "deposit_later", false) +
+                        aggregate("SUM(o.deposit)", "transfer_operation", "sender_id", "sent_later", false) +
+                        aggregate("SUM(o.deposit)", "transfer_operation", "receiver_id", "received_later", false) +
+                        "a.id FROM account a WHERE a.id = :id")
+                .bind("id", id)
+                .bind("from", from.atStartOfDay())
+                .bind("to", to.atStartOfDay())
+                .map(row -> {
+                    double closingBalance = row.get("balance", Double.class) - number(row, "deposit_later")
+                            + number(row, "sent_later") - number(row, "received_later");
+                    double deposits = number(row, "deposit_sum");
+                    double sent = number(row, "sent_sum");
+                    double received = number(row, "received_sum");
+
+                    return AccountStatementDTO.builder()
+                            .accountId(id)
+                            .from(from)
+                            .to(to)
+                            .openingBalance(closingBalance - deposits + sent - received)
+                            .totalDeposits(deposits)
+                            .totalSent(sent)
+                            .totalReceived(received)
+                            .closingBalance(closingBalance)
+                            .depositCount((long) number(row, "deposit_count"))
+                            .sentCount((long) number(row, "sent_count"))
+                            .receivedCount((long) number(row, "received_count"))
+                            .build();
+                })
+                .one()
+                .switchIfEmpty(Mono.error(() -> new UnknownAccountIdException(id)));
+    }
+
+    @Transactional
+    public Mono<Account> save(AccountDTO account) {
+        return accountRepository.existsByName(account.getName())
+                .flatMap(exists -> {
+                    if (exists) {
+                        return Mono.error(new BadRequestException(
+                                String.format("Account with name '%s' already exists", account.getName())));
+                    }
+
+                    return accountRepository.save(Account.builder()
+                            .name(account.getName())
+                            .passwordHash(encoder.encode(account.getPassword()))
+                            .balance(0.0)
+                            .build());
+                });
+    }
+
+    public Mono<Void> validate(AccountDTO account) {
+        return findByName(account.getName())
+                .flatMap(existing -> existing.getPasswordHash().equals(encoder.encode(account.getPassword()))
+                        ? Mono.empty()
+                        : Mono.error(new BadRequestException("Wrong password")));
+    }
+
+    public Mono<Void> deleteById(Long id) {
+        return accountRepository.deleteById(id);
+    }
+
+    private static AccountPageDTO toPage(List<AccountSummaryDTO> rows, int pageSize, String field,
+                                         boolean descending) {
+        if (rows.size() <= pageSize) {
+            return new AccountPageDTO(rows, null);
+        }
+
+        List<AccountSummaryDTO> page = rows.subList(0, pageSize);
+        AccountSummaryDTO last = page.get(pageSize - 1);
+        String key = switch (field) {
+            case "name" -> last.getName();
+            case "balance" -> last.getBalance().toString();
+            default -> "";
+        };
+        String value = String.join(":", field, descending ? "desc" : "asc", last.getId().toString(), key);
+
+        return new AccountPageDTO(page,
+                Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String[] decodeCursor(String cursor, String field, boolean descending) {
+        String[] parts;
+
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":", 4);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Malformed cursor");
+        }
+
+        if (parts.length != 4 || !parts[0].equals(field) || !parts[1].equals(descending ? "desc" : "asc")) {
+            throw new BadRequestException("Cursor doesn`t match the requested sort");
+        }
+
+        try {
+            Long.parseLong(parts[2]);
+
+            if (field.equals("balance")) {
+                Double.parseDouble(parts[3]);
+            }
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("Malformed cursor");
+        }
+
+        return parts;
+    }
+
+    private static String aggregate(String function, String table, String column, String alias, boolean inSpan) {
+        String condition = inSpan ? "o.updated_at >= :from AND o.updated_at < :to" : "o.updated_at >= :to";
+
+        return String.format("(SELECT COALESCE(%s, 0) FROM %s o WHERE o.%s = a.id AND %s) AS %s, ",
+                function, table, column, condition, alias);
+    }
+
+    private static double number(Readable row, String column) {
+        Number value = row.get(column, Number.class);
+
+        return value == null ? 0 : value.doubleValue();
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    private static String parseSortField(String sort) {
+        if (sort == null) {
+            return "id";
+        }
+
+        return switch (sort.toLowerCase()) {
+            case "id", "name", "balance" -> sort.toLowerCase();
+            default -> throw new BadRequestException(String.format("Unknown sort field '%s'", sort));
+        };
+    }
+
+    private static boolean isDescending(String order) {
+        if (order == null) {
+            return false;
+        }
+
+        return switch (order.toLowerCase()) {
+            case "asc" -> false;
+            case "desc" -> true;
+            default -> throw new BadRequestException(String.format("Unknown sort type '%s'", order));
+        };
+    }
+}
@@ -0,0 +1,62 @@
+package com.piche.task.reactive.service;
+
+import com.piche.task.reactive.dto.AccountOperationDTO;
+import com.piche.task.reactive.exception.BadRequestException;
+import com.piche.task.reactive.exception.UnknownAccountIdException;
+import com.piche.task.reactive.model.AccountTransferOperation;
+import com.piche.task.reactive.repository.AccountRepository;
+import com.piche.task.reactive.repository.AccountTransferOperationRepository;
+import lombok.AllArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+
+@Service
+@AllArgsConstructor
+public class AccountTransferOperationService {
+
+    private final AccountRepository accountRepository;
+
+    private final AccountTransferOperationRepository transferOperationRepository;
+
+    public Flux<AccountTransferOperation> findAllBySenderId(Long id) {
+        return accountRepository.existsById(id)
+                .flatMapMany(exists -> exists
+                        ? transferOperationRepository.findAllBySenderId(id)
+                        : Flux.error(new UnknownAccountIdException(id)));
+    }
+
+    /**
+     * Runs in one R2DBC transaction without blocking a thread. The two balance updates are issued in account id
+     * order, so opposite transfers between the same accounts lock the rows in the same order and don't deadlock.
+     */
+    @Transactional
+    public Mono<AccountTransferOperation> save(long senderId, long receiverId, AccountOperationDTO operation) {
+        double amount = operation.getDeposit();
+
+        if (amount <= 0) {
+            return Mono.error(new BadRequestException("Can`t add operation: deposit value can`t be negative or zero"));
+        }
+
+        Mono<Void> debit = Mono.defer(() -> accountRepository.addToBalance(senderId, -amount))
+                .flatMap(updated -> updated > 0 ? Mono.<Void>empty() : accountRepository.existsById(senderId)
+                        .flatMap(exists -> Mono.error(exists
+                                ? new BadRequestException("Can`t add operation: account balance can`t become negative")
+                                : new BadRequestException(
+                                        String.format("Unknown sender account with id %d", senderId)))));
+        Mono<Void> credit = Mono.defer(() -> accountRepository.addToBalance(receiverId, amount))
+                .flatMap(updated -> updated > 0 ? Mono.<Void>empty() : Mono.error(new BadRequestException(
+                        String.format("Unknown receiver account with id %d", receiverId))));
+
+        return (senderId <= receiverId ? debit.then(credit) : credit.then(debit))
+                .then(Mono.defer(() -> transferOperationRepository.save(AccountTransferOperation.builder()
+                        .senderId(senderId)
+                        .receiverId(receiverId)
+                        .updatedAt(LocalDateTime.now())
+                        .deposit(amount)
+                        .build())));
+    }
+}
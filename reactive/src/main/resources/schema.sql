@@ -0,0 +1,28 @@
+CREATE TABLE IF NOT EXISTS account (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name VARCHAR(255) NOT NULL,
+    password_hash VARCHAR(255) NOT NULL,
+    balance DOUBLE PRECISION NOT NULL
+);
+CREATE INDEX IF NOT EXISTS account_name_idx ON account (name, id);
+CREATE INDEX IF NOT EXISTS account_balance_idx ON account (balance, id);
+
+CREATE TABLE IF NOT EXISTS deposit_operation (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    account_id BIGINT NOT NULL REFERENCES account (id),
+    updated_at TIMESTAMP(6) NOT NULL,
+    deposit DOUBLE PRECISION NOT NULL
+);
+CREATE INDEX IF NOT EXISTS deposit_operation_updated_at_idx ON deposit_operation (updated_at);
+CREATE INDEX IF NOT EXISTS deposit_operation_account_id_updated_at_idx ON deposit_operation (account_id, updated_at);
+
+CREATE TABLE IF NOT EXISTS transfer_operation (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    sender_id BIGINT NOT NULL REFERENCES account (id),
+    receiver_id BIGINT NOT NULL REFERENCES account (id),
+    updated_at TIMESTAMP(6) NOT NULL,
+    deposit DOUBLE PRECISION NOT NULL
+);
+CREATE INDEX IF NOT EXISTS transfer_operation_updated_at_idx ON transfer_operation (updated_at);
+CREATE INDEX IF NOT EXISTS transfer_operation_sender_id_updated_at_idx ON transfer_operation (sender_id, updated_at);
+CREATE INDEX IF NOT EXISTS transfer_operation_receiver_id_updated_at_idx ON transfer_operation (receiver_id, updated_at);
@@ -0,0 +1,143 @@
+package com.piche.task.reactive;
+
+import com.piche.task.reactive.dto.AccountDTO;
+import com.piche.task.reactive.dto.AccountOperationDTO;
+import com.piche.task.reactive.dto.AccountOperationResponseDTO;
+import com.piche.task.reactive.dto.AccountPageDTO;
+import com.piche.task.reactive.dto.AccountStatementDTO;
+import com.piche.task.reactive.model.Account;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@SpringBootTest(
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "spring.r2dbc.url=r2dbc:h2:mem:///reactivetest;DB_CLOSE_DELAY=-1")
+class ReactiveApplicationTest {
+
+    @Autowired
+    private WebTestClient client;
+
+    @Test
+    void testTransferShouldUpdateBalancesHistoryAndStatement() {
+        long alice = createAccount("alice");
+        long bob = createAccount("bob");
+
+        post("/account/" + alice + "/operation/deposit", 100.0).expectStatus().isOk();
+        post("/account/" + alice + "/operation/transfer/" + bob, 30.0).expectStatus().isOk();
+        post("/account/" + bob + "/operation/transfer/" + alice, 50.0).expectStatus().isBadRequest();
+
+        assertEquals(70.0, balance(alice));
+        assertEquals(30.0, balance(bob));
+
+        List<AccountOperationResponseDTO> history = Flux.from(client.get()
+                        .uri("/account/" + alice + "/operation/all?sort=asc")
+                        .accept(MediaType.APPLICATION_NDJSON)
+                        .exchange()
+                        .expectStatus().isOk()
+                        .returnResult(AccountOperationResponseDTO.class)
+                        .getResponseBody())
+                .collectList()
+                .block();
+
+        assertNotNull(history);
+        assertEquals(2, history.size());
+        assertEquals("deposit", history.get(0).getType());
+        assertEquals(-30.0, history.get(1).getDeposit());
+
+        AccountStatementDTO statement = client.get()
+                .uri("/account/" + bob + "/statement?from={from}&to={to}",
+                        LocalDate.now().minusDays(1), LocalDate.now().plusDays(1))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(AccountStatementDTO.class)
+                .returnResult()
+                .getResponseBody();
+
+        assertNotNull(statement);
+        assertEquals(0.0, statement.getOpeningBalance());
+        assertEquals(30.0, statement.getTotalReceived());
+        assertEquals(1, statement.getReceivedCount());
+        assertEquals(30.0, statement.getClosingBalance());
+    }
+
+    @Test
+    void testGetAllAccountsShouldPageByName() {
+        createAccount("page-b");
+        createAccount("page-a");
+        createAccount("page-c");
+
+        AccountPageDTO first = page("/account?namePrefix=page-&sort=name&limit=2");
+
+        assertEquals(2, first.getItems().size());
+        assertEquals("page-a", first.getItems().get(0).getName());
+        assertNotNull(first.getNextCursor());
+
+        AccountPageDTO second = page("/account?namePrefix=page-&sort=name&limit=2&cursor=" + first.getNextCursor());
+
+        assertEquals(1, second.getItems().size());
+        assertEquals("page-c", second.getItems().get(0).getName());
+        assertNull(second.getNextCursor());
+    }
+
+    private long createAccount(String name) {
+        AccountDTO account = new AccountDTO();
+
+        account.setName(name);
+        account.setPassword("password");
+
+        Account result = client.post()
+                .uri("/account")
+                .bodyValue(account)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Account.class)
+                .returnResult()
+                .getResponseBody();
+
+        assertNotNull(result);
+
+        return result.getId();
+    }
+
+    private WebTestClient.ResponseSpec post(String uri, double deposit) {
+        AccountOperationDTO operation = new AccountOperationDTO();
+
+        operation.setDeposit(deposit);
+
+        return client.post().uri(uri).bodyValue(operation).exchange();
+    }
+
+    private double balance(long id) {
+        Account account = client.get()
+                .uri("/account/" + id)
+                .exchange()
+                .expectBody(Account.class)
+                .returnResult()
+                .getResponseBody();
+
+        assertNotNull(account);
+
+        return account.getBalance();
+    }
+
+    private AccountPageDTO page(String uri) {
+        return client.get()
+                .uri(uri)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(AccountPageDTO.class)
+                .returnResult()
+                .getResponseBody();
+    }
+}
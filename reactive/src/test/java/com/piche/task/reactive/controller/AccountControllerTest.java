@@ -0,0 +1,84 @@
+package com.piche.task.reactive.controller;
+
+import com.piche.task.reactive.dto.AccountOperationResponseDTO;
+import com.piche.task.reactive.exception.UnknownAccountIdException;
+import com.piche.task.reactive.model.Account;
+import com.piche.task.reactive.service.AccountService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+@WebFluxTest(controllers = AccountController.class)
+class AccountControllerTest {
+
+    @Autowired
+    private WebTestClient client;
+
+    @MockBean
+    private AccountService accountService;
+
+    @Test
+    void testGetByIdShouldReturnObject() {
+        when(accountService.findById(1L)).thenReturn(Mono.just(Account.builder()
+                .id(1L)
+                .name("Alice")
+                .passwordHash("password_hash")
+                .balance(10.0)
+                .build()));
+
+        client.get().uri("/account/1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.id").isEqualTo(1)
+                .jsonPath("$.name").isEqualTo("Alice")
+                .jsonPath("$.balance").isEqualTo(10.0);
+    }
+
+    @Test
+    void testGetByIdWhenAccountNotExistsShouldReturnBadRequest() {
+        when(accountService.findById(1L)).thenReturn(Mono.error(new UnknownAccountIdException(1L)));
+
+        client.get().uri("/account/1")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody()
+                .jsonPath("$.message").isEqualTo("Unknown account with id 1");
+    }
+
+    @Test
+    void testGetAllOperationsShouldStreamNdjson() {
+        when(accountService.getAllOperations(eq(1L), eq(null), eq(null), eq("asc"))).thenReturn(Flux.just(
+                AccountOperationResponseDTO.builder()
+                        .id(1L)
+                        .type("deposit")
+                        .deposit(10.0)
+                        .updatedAt(LocalDateTime.of(2024, 1, 1, 0, 0))
+                        .build(),
+                AccountOperationResponseDTO.builder()
+                        .id(2L)
+                        .type("transfer")
+                        .role("sender")
+                        .deposit(-5.0)
+                        .updatedAt(LocalDateTime.of(2024, 1, 2, 0, 0))
+                        .build()));
+
+        client.get().uri("/account/1/operation/all?sort=asc")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .expectBodyList(AccountOperationResponseDTO.class)
+                .hasSize(2);
+    }
+}
@@ -0,0 +1,89 @@
+package com.piche.task.reactive.service;
+
+import com.piche.task.reactive.dto.AccountOperationDTO;
+import com.piche.task.reactive.exception.BadRequestException;
+import com.piche.task.reactive.model.AccountTransferOperation;
+import com.piche.task.reactive.repository.AccountRepository;
+import com.piche.task.reactive.repository.AccountTransferOperationRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class AccountTransferOperationServiceTest {
+
+    @Mock
+    private AccountRepository accountRepository;
+
+    @Mock
+    private AccountTransferOperationRepository transferOperationRepository;
+
+    @InjectMocks
+    private AccountTransferOperationService service;
+
+    @Test
+    void testSaveShouldUpdateBalancesInAccountIdOrder() {
+        when(accountRepository.addToBalance(1L, 10.0)).thenReturn(Mono.just(1));
+        when(accountRepository.addToBalance(2L, -10.0)).thenReturn(Mono.just(1));
+        when(transferOperationRepository.save(any())).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+
+        StepVerifier.create(service.save(2L, 1L, operation(10.0)))
+                .expectNextMatches(operation -> operation.getSenderId() == 2L && operation.getReceiverId() == 1L)
+                .verifyComplete();
+
+        InOrder order = inOrder(accountRepository);
+
+        order.verify(accountRepository).addToBalance(1L, 10.0);
+        order.verify(accountRepository).addToBalance(2L, -10.0);
+    }
+
+    @Test
+    void testSaveWhenBalanceTooLowShouldThrowException() {
+        when(accountRepository.addToBalance(1L, -10.0)).thenReturn(Mono.just(0));
+        when(accountRepository.existsById(1L)).thenReturn(Mono.just(true));
+
+        StepVerifier.create(service.save(1L, 2L, operation(10.0)))
+                .expectErrorMatches(e -> e instanceof BadRequestException
+                        && e.getMessage().contains("balance can`t become negative"))
+                .verify();
+
+        verify(accountRepository, never()).addToBalance(2L, 10.0);
+        verify(transferOperationRepository, never()).save(any(AccountTransferOperation.class));
+    }
+
+    @Test
+    void testSaveWhenReceiverNotExistsShouldThrowException() {
+        when(accountRepository.addToBalance(1L, -10.0)).thenReturn(Mono.just(1));
+        when(accountRepository.addToBalance(2L, 10.0)).thenReturn(Mono.just(0));
+
+        StepVerifier.create(service.save(1L, 2L, operation(10.0)))
+                .expectErrorMessage("Unknown receiver account with id 2")
+                .verify();
+    }
+
+    @Test
+    void testSaveWhenDepositNotPositiveShouldThrowException() {
+        StepVerifier.create(service.save(1L, 2L, operation(0)))
+                .expectError(BadRequestException.class)
+                .verify();
+    }
+
+    private static AccountOperationDTO operation(double deposit) {
+        AccountOperationDTO operation = new AccountOperationDTO();
+
+        operation.setDeposit(deposit);
+
+        return operation;
+    }
+}
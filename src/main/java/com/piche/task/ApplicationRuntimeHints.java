@@ -0,0 +1,57 @@
+package com.piche.task;
+
+import com.piche.task.archive.ArchivedOperation;
+import com.piche.task.dto.AccountActivityDTO;
+import com.piche.task.dto.AccountAmountDTO;
+import com.piche.task.dto.AccountSummaryDTO;
+import com.piche.task.dto.ChangeEventDTO;
+import com.piche.task.dto.HoldExpiryDTO;
+import com.piche.task.dto.OperationAggregateDTO;
+import com.piche.task.dto.TransferOperationRowDTO;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.util.ClassUtils;
+
+import java.util.List;
+
+/**
+ * Reachability metadata for the native image that Spring AOT can't derive from the bean definitions. Entities,
+ * repositories, controller bodies and H2 are covered by AOT and the GraalVM metadata repository.
+ */
+class ApplicationRuntimeHints implements RuntimeHintsRegistrar {
+
+    /**
+     * Instantiated by Hibernate through {@code SELECT new ...} in the JPQL queries.
+     */
+    static final List<Class<?>> QUERY_RESULTS = List.of(
+            AccountActivityDTO.class,
+            AccountAmountDTO.class,
+            AccountSummaryDTO.class,
+            HoldExpiryDTO.class,
+            OperationAggregateDTO.class,
+            TransferOperationRowDTO.class,
+            ArchivedOperation.class);
+
+    /**
+     * Serialized by Jackson, but not declared as a controller return type.
+     */
+    static final List<String> SERIALIZED = List.of(
+            ChangeEventDTO.class.getName(),
+            "com.piche.task.handler.GlobalBadRequestExceptionHandler$ErrorMessage");
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        QUERY_RESULTS.forEach(type -> hints.reflection().registerType(type,
+                MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS));
+
+        BindingReflectionHintsRegistrar bindingHints = new BindingReflectionHintsRegistrar();
+
+        SERIALIZED.forEach(type -> bindingHints.registerReflectionHints(hints.reflection(),
+                ClassUtils.resolveClassName(type, classLoader)));
+
+        hints.resources().registerPattern("db/drop.sql");
+        hints.resources().registerPattern("db/schema.sql");
+    }
+}
@@ -1,20 +1,45 @@
 package com.piche.task;
 
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
 import com.piche.task.encoder.PasswordEncoder;
+import com.piche.task.encoder.VerificationCache;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.util.IdGenerator;
 import org.springframework.util.SimpleIdGenerator;
 
-import java.security.NoSuchAlgorithmException;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
 
 @SpringBootApplication
+@EnableScheduling
+@ImportRuntimeHints(ApplicationRuntimeHints.class)
 public class DemoApplication {
 
+	/**
+	 * Hashes on a bounded pool; {@code password.iterations=0} calibrates the work factor to
+	 * {@code password.target-hash-time} on startup.
+	 */
 	@Bean
-	public PasswordEncoder passwordEncoder() throws NoSuchAlgorithmException {
-		return new PasswordEncoder();
+	public PasswordEncoder passwordEncoder(@Value("${password.iterations:0}") int iterations,
+										   @Value("${password.target-hash-time:PT0.1S}") Duration targetHashTime,
+										   @Value("${password.min-iterations:100000}") int minIterations,
+										   @Value("${password.hashing-threads:0}") int threads,
+										   @Value("${password.hashing-queue:64}") int queueSize,
+										   @Value("${password.verification-cache.ttl:PT1M}") Duration cacheTtl,
+										   @Value("${password.verification-cache.max-entries:10000}") int cacheSize)
+			throws GeneralSecurityException {
+		return new PasswordEncoder(
+				iterations > 0 ? iterations : PasswordEncoder.calibrate(targetHashTime, minIterations),
+				threads > 0 ? threads : Runtime.getRuntime().availableProcessors(),
+				queueSize,
+				new VerificationCache(cacheTtl, cacheSize, System::nanoTime));
 	}
 
 	@Bean
@@ -22,6 +47,14 @@ public class DemoApplication {
 		return new SimpleIdGenerator();
 	}
 
+	/**
+	 * Serves {@code application/cbor} request and response bodies next to JSON, with the same Jackson settings.
+	 */
+	@Bean
+	public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+		return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+	}
+
 	public static void main(String[] args) {
 		SpringApplication.run(DemoApplication.class, args);
 	}
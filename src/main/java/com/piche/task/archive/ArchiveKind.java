@@ -0,0 +1,8 @@
+package com.piche.task.archive;
+
+public enum ArchiveKind {
+
+    DEPOSIT,
+
+    TRANSFER
+}
@@ -0,0 +1,448 @@
+package com.piche.task.archive;
+
+import lombok.Getter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.LongStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Immutable, compressed, columnar file of archived operations of one {@link ArchiveKind}.
+ * <p>
+ * Layout: a header (magic, version, kind, row count, min and max timestamp), a sorted dictionary of the account ids
+ * referenced by the rows with a flag per id telling whether it occurs as account (sender) and as receiver, then
+ * blocks of up to {@value #BLOCK_ROWS} rows. Every block starts with its row count, its min and max timestamp and the
+ * min and max dictionary index of its account and receiver columns, followed by its deflated columns: timestamps and
+ * operation ids as zigzag varint deltas, account and receiver columns as varint dictionary indexes and amounts as raw
+ * doubles. Rows are ordered by timestamp and id.
+ * <p>
+ * The file is memory-mapped; a scan first checks the time range and the dictionary, so segments that can not contain
+ * the requested account in the requested column are skipped without inflating anything. Of the remaining segments
+ * only the blocks whose time and index ranges match are read, and only their timestamp and filtered columns are
+ * inflated unless a row matches. Version 1 files, written as a single block without the ranges, are still read.
+ */
+public class ArchiveSegment {
+
+    private static final int MAGIC = 0x50544153;
+
+    private static final byte VERSION = 2;
+
+    private static final int BLOCK_ROWS = 4096;
+
+    private static final byte ACCOUNT = 1;
+
+    private static final byte RECEIVER = 2;
+
+    @Getter
+    private final Path file;
+
+    @Getter
+    private final ArchiveKind kind;
+
+    @Getter
+    private final int count;
+
+    private final long minMicros;
+
+    private final long maxMicros;
+
+    private final long[] dictionary;
+
+    private final byte[] roles;
+
+    private final Block[] blocks;
+
+    private ArchiveSegment(Path file, MappedByteBuffer buffer) {
+        if (buffer.getInt() != MAGIC) {
+            throw new IllegalStateException(String.format("File %s is not an archive segment", file));
+        }
+
+        byte version = buffer.get();
+
+        if (version != 1 && version != VERSION) {
+            throw new IllegalStateException(String.format("File %s is not an archive segment", file));
+        }
+
+        this.file = file;
+        this.kind = ArchiveKind.values()[buffer.get()];
+        this.count = buffer.getInt();
+        this.minMicros = buffer.getLong();
+        this.maxMicros = buffer.getLong();
+        this.dictionary = new long[buffer.getInt()];
+        this.roles = new byte[dictionary.length];
+
+        for (int i = 0; i < dictionary.length; i++) {
+            dictionary[i] = buffer.getLong();
+        }
+
+        if (version == 1) {
+            Arrays.fill(roles, (byte) (ACCOUNT | RECEIVER));
+            this.blocks = new Block[] {nextBlock(buffer, count, minMicros, maxMicros,
+                    0, dictionary.length - 1, 0, dictionary.length - 1)};
+        } else {
+            buffer.get(roles);
+            this.blocks = new Block[buffer.getInt()];
+
+            for (int i = 0; i < blocks.length; i++) {
+                blocks[i] = nextBlock(buffer, buffer.getInt(), buffer.getLong(), buffer.getLong(),
+                        buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt());
+            }
+        }
+    }
+
+    public static ArchiveSegment open(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new ArchiveSegment(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static void write(Path file, ArchiveKind kind, List<ArchivedOperation> operations) {
+        List<ArchivedOperation> rows = operations.stream()
+                .sorted(Comparator.comparing(ArchivedOperation::getUpdatedAt).thenComparing(ArchivedOperation::getId))
+                .toList();
+
+        long[] dictionary = rows.stream()
+                .flatMapToLong(row -> row.getReceiverId() == null
+                        ? LongStream.of(row.getAccountId())
+                        : LongStream.of(row.getAccountId(), row.getReceiverId()))
+                .distinct()
+                .sorted()
+                .toArray();
+        byte[] roles = new byte[dictionary.length];
+
+        for (ArchivedOperation row : rows) {
+            roles[Arrays.binarySearch(dictionary, row.getAccountId())] |= ACCOUNT;
+
+            if (row.getReceiverId() != null) {
+                roles[Arrays.binarySearch(dictionary, row.getReceiverId())] |= RECEIVER;
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES * 4 + 2 + Long.BYTES * (2 + dictionary.length)
+                + roles.length);
+        int blockCount = (rows.size() + BLOCK_ROWS - 1) / BLOCK_ROWS;
+
+        header.putInt(MAGIC)
+                .put(VERSION)
+                .put((byte) kind.ordinal())
+                .putInt(rows.size())
+                .putLong(rows.isEmpty() ? 0 : toMicros(rows.get(0).getUpdatedAt()))
+                .putLong(rows.isEmpty() ? 0 : toMicros(rows.get(rows.size() - 1).getUpdatedAt()))
+                .putInt(dictionary.length);
+
+        for (long id : dictionary) {
+            header.putLong(id);
+        }
+
+        header.put(roles).putInt(blockCount);
+        out.writeBytes(header.array());
+
+        for (int start = 0; start < rows.size(); start += BLOCK_ROWS) {
+            writeBlock(out, kind, dictionary, rows.subList(start, Math.min(start + BLOCK_ROWS, rows.size())));
+        }
+
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ByteBuffer content = ByteBuffer.wrap(out.toByteArray());
+
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+
+            channel.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Passes every row referencing the account in the given column with a timestamp in [from, to) to the consumer.
+     * Null bounds are open.
+     *
+     * @param receiver whether to match the receiver column instead of the account (sender) column
+     */
+    public void scan(long accountId, boolean receiver, LocalDateTime from, LocalDateTime to,
+                     Consumer<ArchivedOperation> consumer) {
+        if (receiver && kind != ArchiveKind.TRANSFER) {
+            return;
+        }
+
+        long fromMicros = from == null ? Long.MIN_VALUE : toMicros(from);
+        long toMicros = to == null ? Long.MAX_VALUE : toMicros(to);
+        int index = Arrays.binarySearch(dictionary, accountId);
+
+        if (count == 0 || index < 0 || (roles[index] & (receiver ? RECEIVER : ACCOUNT)) == 0
+                || maxMicros < fromMicros || minMicros >= toMicros) {
+            return;
+        }
+
+        for (Block block : blocks) {
+            if (block.minMicros() >= toMicros) {
+                return;
+            }
+
+            boolean inRange = receiver
+                    ? block.minReceiver() <= index && index <= block.maxReceiver()
+                    : block.minAccount() <= index && index <= block.maxAccount();
+
+            if (inRange && block.maxMicros() >= fromMicros) {
+                decode(block, index, receiver, fromMicros, toMicros, consumer);
+            }
+        }
+    }
+
+    /**
+     * Passes every row of the segment to the consumer.
+     */
+    public void forEach(Consumer<ArchivedOperation> consumer) {
+        for (Block block : blocks) {
+            decode(block, -1, false, Long.MIN_VALUE, Long.MAX_VALUE, consumer);
+        }
+    }
+
+    int getBlockCount() {
+        return blocks.length;
+    }
+
+    /**
+     * Finds the matching rows of a block from its timestamp and filtered columns first; the other columns are only
+     * inflated when a row matches, and only decoded up to the last matching row.
+     */
+    private void decode(Block block, int index, boolean receiver, long fromMicros, long toMicros,
+                        Consumer<ArchivedOperation> consumer) {
+        ByteBuffer timestampColumn = inflate(block.timestamps());
+        ByteBuffer filterColumn = index < 0 ? null : inflate(receiver ? block.receivers() : block.accounts());
+        int[] matches = new int[block.count()];
+        long[] matchMicros = new long[block.count()];
+        int matchCount = 0;
+        long micros = 0;
+
+        for (int i = 0; i < block.count(); i++) {
+            micros += unzigzag(readVarLong(timestampColumn));
+
+            int account = filterColumn == null ? -1 : (int) readVarLong(filterColumn);
+
+            if (micros >= toMicros) {
+                break;
+            }
+
+            if (micros >= fromMicros && account == index) {
+                matches[matchCount] = i;
+                matchMicros[matchCount++] = micros;
+            }
+        }
+
+        if (matchCount == 0) {
+            return;
+        }
+
+        ByteBuffer idColumn = inflate(block.ids());
+        ByteBuffer accountColumn = inflate(block.accounts());
+        ByteBuffer receiverColumn = block.receivers() == null ? null : inflate(block.receivers());
+        ByteBuffer amountColumn = inflate(block.amounts());
+        long id = 0;
+        int account = -1;
+        int receiverAccount = -1;
+        int row = -1;
+
+        for (int m = 0; m < matchCount; m++) {
+            while (row < matches[m]) {
+                id += unzigzag(readVarLong(idColumn));
+                account = (int) readVarLong(accountColumn);
+                receiverAccount = receiverColumn == null ? -1 : (int) readVarLong(receiverColumn);
+                row++;
+            }
+
+            consumer.accept(new ArchivedOperation(
+                    id,
+                    dictionary[account],
+                    receiverAccount < 0 ? null : dictionary[receiverAccount],
+                    fromMicros(matchMicros[m]),
+                    amountColumn.getDouble(row * Double.BYTES)));
+        }
+    }
+
+    private static void writeBlock(ByteArrayOutputStream out, ArchiveKind kind, long[] dictionary,
+                                   List<ArchivedOperation> rows) {
+        ByteArrayOutputStream timestampColumn = new ByteArrayOutputStream();
+        ByteArrayOutputStream idColumn = new ByteArrayOutputStream();
+        ByteArrayOutputStream accountColumn = new ByteArrayOutputStream();
+        ByteArrayOutputStream receiverColumn = new ByteArrayOutputStream();
+        ByteBuffer amountColumn = ByteBuffer.allocate(rows.size() * Double.BYTES);
+
+        long previousMicros = 0;
+        long previousId = 0;
+        int minAccount = Integer.MAX_VALUE;
+        int maxAccount = -1;
+        int minReceiver = Integer.MAX_VALUE;
+        int maxReceiver = -1;
+
+        for (ArchivedOperation row : rows) {
+            long micros = toMicros(row.getUpdatedAt());
+            int account = Arrays.binarySearch(dictionary, row.getAccountId());
+
+            writeVarLong(timestampColumn, zigzag(micros - previousMicros));
+            writeVarLong(idColumn, zigzag(row.getId() - previousId));
+            writeVarLong(accountColumn, account);
+            minAccount = Math.min(minAccount, account);
+            maxAccount = Math.max(maxAccount, account);
+
+            if (kind == ArchiveKind.TRANSFER) {
+                int receiver = Arrays.binarySearch(dictionary, row.getReceiverId());
+
+                writeVarLong(receiverColumn, receiver);
+                minReceiver = Math.min(minReceiver, receiver);
+                maxReceiver = Math.max(maxReceiver, receiver);
+            }
+
+            amountColumn.putDouble(row.getDeposit());
+            previousMicros = micros;
+            previousId = row.getId();
+        }
+
+        out.writeBytes(ByteBuffer.allocate(Integer.BYTES * 5 + Long.BYTES * 2)
+                .putInt(rows.size())
+                .putLong(toMicros(rows.get(0).getUpdatedAt()))
+                .putLong(toMicros(rows.get(rows.size() - 1).getUpdatedAt()))
+                .putInt(minAccount)
+                .putInt(maxAccount)
+                .putInt(minReceiver)
+                .putInt(maxReceiver)
+                .array());
+        writeColumn(out, timestampColumn.toByteArray());
+        writeColumn(out, idColumn.toByteArray());
+        writeColumn(out, accountColumn.toByteArray());
+
+        if (kind == ArchiveKind.TRANSFER) {
+            writeColumn(out, receiverColumn.toByteArray());
+        }
+
+        writeColumn(out, amountColumn.array());
+    }
+
+    private Block nextBlock(ByteBuffer buffer, int rows, long blockMinMicros, long blockMaxMicros,
+                            int minAccount, int maxAccount, int minReceiver, int maxReceiver) {
+        Column timestamps = nextColumn(buffer);
+        Column ids = nextColumn(buffer);
+        Column accounts = nextColumn(buffer);
+        Column receivers = kind == ArchiveKind.TRANSFER ? nextColumn(buffer) : null;
+        Column amounts = nextColumn(buffer);
+
+        return new Block(rows, blockMinMicros, blockMaxMicros, minAccount, maxAccount, minReceiver, maxReceiver,
+                timestamps, ids, accounts, receivers, amounts);
+    }
+
+    private static Column nextColumn(ByteBuffer buffer) {
+        int compressedLength = buffer.getInt();
+        int rawLength = buffer.getInt();
+        ByteBuffer compressed = buffer.slice(buffer.position(), compressedLength);
+
+        buffer.position(buffer.position() + compressedLength);
+
+        return new Column(compressed, rawLength);
+    }
+
+    private static ByteBuffer inflate(Column column) {
+        Inflater inflater = new Inflater();
+        ByteBuffer raw = ByteBuffer.allocate(column.rawLength());
+
+        try {
+            inflater.setInput(column.compressed().duplicate());
+
+            while (raw.hasRemaining() && !inflater.finished()) {
+                inflater.inflate(raw);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupted archive segment column", e);
+        } finally {
+            inflater.end();
+        }
+
+        return raw.flip();
+    }
+
+    private static void writeColumn(ByteArrayOutputStream out, byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+
+        deflater.setInput(raw);
+        deflater.finish();
+
+        while (!deflater.finished()) {
+            compressed.write(chunk, 0, deflater.deflate(chunk));
+        }
+
+        deflater.end();
+
+        out.writeBytes(ByteBuffer.allocate(Integer.BYTES * 2).putInt(compressed.size()).putInt(raw.length).array());
+        out.writeBytes(compressed.toByteArray());
+    }
+
+    private static long toMicros(LocalDateTime time) {
+        return ChronoUnit.MICROS.between(LocalDateTime.of(1970, 1, 1, 0, 0), time);
+    }
+
+    private static LocalDateTime fromMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+                (int) Math.floorMod(micros, 1_000_000L) * 1000, ZoneOffset.UTC);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+
+        out.write((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer buffer) {
+        long result = 0;
+        int shift = 0;
+        byte b;
+
+        do {
+            b = buffer.get();
+            result |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+
+        return result;
+    }
+
+    private record Column(ByteBuffer compressed, int rawLength) {
+    }
+
+    private record Block(int count, long minMicros, long maxMicros, int minAccount, int maxAccount,
+                         int minReceiver, int maxReceiver, Column timestamps, Column ids, Column accounts,
+                         Column receivers, Column amounts) {
+    }
+}
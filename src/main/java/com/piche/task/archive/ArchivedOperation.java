@@ -0,0 +1,25 @@
+package com.piche.task.archive;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+public class ArchivedOperation {
+
+    private Long id;
+
+    private Long accountId;
+
+    private Long receiverId;
+
+    private LocalDateTime updatedAt;
+
+    private Double deposit;
+
+    public ArchivedOperation(Long id, Long accountId, LocalDateTime updatedAt, Double deposit) {
+        this(id, accountId, null, updatedAt, deposit);
+    }
+}
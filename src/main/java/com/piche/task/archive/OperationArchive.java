@@ -0,0 +1,288 @@
+package com.piche.task.archive;
+
+import com.piche.task.dto.OperationAggregateDTO;
+import com.piche.task.model.Account;
+import com.piche.task.model.AccountDepositOperation;
+import com.piche.task.model.AccountTransferOperation;
+import com.piche.task.model.OperationArchiveSegment;
+import com.piche.task.repository.OperationArchiveSegmentRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Read side of the operation archive: the set of published segments on local disk.
+ * <p>
+ * The {@code archive_segment} table is the source of truth. A segment file is written under a temporary name,
+ * registered in the table in the same transaction that deletes its rows from the operation tables and only then
+ * renamed, so on startup every file listed in the table is published and every other temporary file is dropped.
+ * <p>
+ * The published segments are an immutable list swapped on publication, so scans never lock. Readers that combine
+ * database rows with archive scans run under {@link #read(Supplier)}, which reruns them if a publication committed
+ * meanwhile, so they never observe the rows deleted but the segment not yet published. No lock is held while the
+ * commit runs; only readers that start during one wait for it to finish.
+ */
+@Slf4j
+@Component
+public class OperationArchive {
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    @Getter
+    private final boolean enabled;
+
+    private final Path directory;
+
+    private final OperationArchiveSegmentRepository segmentRepository;
+
+    private volatile List<ArchiveSegment> segments = List.of();
+
+    /**
+     * Guards the publication counters and the swap of {@link #segments}; readers wait on it for running publications.
+     */
+    private final Object publications = new Object();
+
+    private long publicationsStarted;
+
+    private long publicationsFinished;
+
+    public OperationArchive(@Value("${archive.enabled:false}") boolean enabled,
+                            @Value("${archive.directory:${user.home}/piche-archive}") Path directory,
+                            OperationArchiveSegmentRepository segmentRepository) {
+        this.enabled = enabled;
+        this.directory = directory;
+        this.segmentRepository = segmentRepository;
+    }
+
+    @PostConstruct
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+
+        List<ArchiveSegment> loaded = new ArrayList<>();
+        Set<String> published = segmentRepository.findAll().stream()
+                .map(OperationArchiveSegment::getFileName)
+                .collect(Collectors.toSet());
+
+        try {
+            Files.createDirectories(directory);
+
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : files.sorted().toList()) {
+                    String name = file.getFileName().toString();
+
+                    if (name.endsWith(TEMPORARY_SUFFIX)) {
+                        String segmentName = name.substring(0, name.length() - TEMPORARY_SUFFIX.length());
+
+                        if (published.contains(segmentName)) {
+                            loaded.add(publish(file, segmentName));
+                        } else {
+                            Files.delete(file);
+                        }
+                    } else if (name.endsWith(SEGMENT_SUFFIX) && published.contains(name)) {
+                        loaded.add(ArchiveSegment.open(file));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        segments = List.copyOf(loaded);
+
+        log.info("Loaded {} archive segments from {}", loaded.size(), directory);
+    }
+
+    /**
+     * Writes the operations into a new temporary segment file.
+     *
+     * @return the name the segment will be published under
+     */
+    public String write(ArchiveKind kind, List<ArchivedOperation> operations) {
+        String name = String.format("%s-%s%s", kind.name().toLowerCase(), UUID.randomUUID(), SEGMENT_SUFFIX);
+
+        ArchiveSegment.write(directory.resolve(name + TEMPORARY_SUFFIX), kind, operations);
+
+        return name;
+    }
+
+    /**
+     * Runs the commit that registers the written segment and removes its rows from the database, then publishes
+     * the segment. The temporary file is dropped if the commit fails.
+     */
+    public void publish(String name, Runnable commit) {
+        Path temporary = directory.resolve(name + TEMPORARY_SUFFIX);
+
+        synchronized (publications) {
+            publicationsStarted++;
+        }
+
+        try {
+            try {
+                commit.run();
+            } catch (RuntimeException e) {
+                Files.deleteIfExists(temporary);
+                throw e;
+            }
+
+            ArchiveSegment segment = publish(temporary, name);
+
+            synchronized (publications) {
+                List<ArchiveSegment> next = new ArrayList<>(segments);
+
+                next.add(segment);
+                segments = List.copyOf(next);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            synchronized (publications) {
+                publicationsFinished++;
+                publications.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Runs a reader that combines database rows with archive scans, again if a publication started while it ran.
+     * The reader must not have side effects.
+     */
+    public <T> T read(Supplier<T> reader) {
+        if (!enabled) {
+            return reader.get();
+        }
+
+        while (true) {
+            long started = awaitPublications();
+            T result = reader.get();
+
+            synchronized (publications) {
+                if (publicationsStarted == started) {
+                    return result;
+                }
+            }
+        }
+    }
+
+    public List<AccountDepositOperation> findDeposits(Long accountId, LocalDateTime from, LocalDateTime to) {
+        List<AccountDepositOperation> result = new ArrayList<>();
+
+        scan(ArchiveKind.DEPOSIT, false, accountId, from, to, operation -> result.add(AccountDepositOperation.builder()
+                .id(operation.getId())
+                .account(Account.builder().id(operation.getAccountId()).build())
+                .updatedAt(operation.getUpdatedAt())
+                .deposit(operation.getDeposit())
+                .build()));
+
+        return result;
+    }
+
+    public List<AccountTransferOperation> findTransfers(Long accountId, boolean receiver,
+                                                        LocalDateTime from, LocalDateTime to) {
+        List<AccountTransferOperation> result = new ArrayList<>();
+
+        scan(ArchiveKind.TRANSFER, receiver, accountId, from, to, operation -> result.add(AccountTransferOperation.builder()
+                .id(operation.getId())
+                .sender(Account.builder().id(operation.getAccountId()).build())
+                .receiver(Account.builder().id(operation.getReceiverId()).build())
+                .updatedAt(operation.getUpdatedAt())
+                .deposit(operation.getDeposit())
+                .build()));
+
+        return result;
+    }
+
+    public OperationAggregateDTO aggregate(ArchiveKind kind, boolean receiver, Long accountId,
+                                           LocalDateTime from, LocalDateTime to) {
+        long[] count = new long[1];
+        double[] sum = new double[1];
+
+        scan(kind, receiver, accountId, from, to, operation -> {
+            count[0]++;
+            sum[0] += operation.getDeposit();
+        });
+
+        return new OperationAggregateDTO(count[0], sum[0]);
+    }
+
+    /**
+     * Sums up archived operations per account: deposits and received transfers count positive, sent transfers negative.
+     */
+    public Map<Long, Double> netBalances() {
+        Map<Long, Double> result = new HashMap<>();
+
+        for (ArchiveSegment segment : segments) {
+            segment.forEach(operation -> {
+                if (segment.getKind() == ArchiveKind.DEPOSIT) {
+                    result.merge(operation.getAccountId(), operation.getDeposit(), Double::sum);
+                } else {
+                    result.merge(operation.getAccountId(), -operation.getDeposit(), Double::sum);
+                    result.merge(operation.getReceiverId(), operation.getDeposit(), Double::sum);
+                }
+            });
+        }
+
+        return result;
+    }
+
+    /**
+     * Waits until no publication is running and returns the number of publications started so far.
+     */
+    private long awaitPublications() {
+        synchronized (publications) {
+            while (publicationsStarted != publicationsFinished) {
+                try {
+                    publications.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for an archive segment", e);
+                }
+            }
+
+            return publicationsStarted;
+        }
+    }
+
+    private void scan(ArchiveKind kind, boolean receiver, Long accountId, LocalDateTime from, LocalDateTime to,
+                      Consumer<ArchivedOperation> consumer) {
+        for (ArchiveSegment segment : segments) {
+            if (segment.getKind() == kind) {
+                segment.scan(accountId, receiver, from, to, consumer);
+            }
+        }
+    }
+
+    private ArchiveSegment publish(Path temporary, String name) {
+        Path file = directory.resolve(name);
+
+        try {
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return ArchiveSegment.open(file);
+    }
+}
@@ -0,0 +1,358 @@
+package com.piche.task.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.piche.task.dto.AccountOperationResponseDTO;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.BiFunction;
+
+/**
+ * Serialized account histories of closed periods.
+ * <p>
+ * Operations are never changed after they are written, so once a period lies in the past its history is fixed.
+ * A period counts as closed {@code settle} after its end: by then transactions that started before the end have
+ * committed and failed cross-shard transfers have been compensated. Histories are kept as serialized JSON per
+ * account and day in both orders, so a period is put together from its days without touching the database or
+ * serializing again, and only the days not cached yet are read, with one query per run of missing days. A run of
+ * days without operations is kept as a single entry, so the work of a period depends on its active days and not on
+ * its length, and periods longer than {@code maxDays} aren't cached at all. The strong ETag of each assembled
+ * period is remembered as well, so a matching {@code If-None-Match} is answered without assembling the body.
+ */
+@Component
+public class HistoryCache {
+
+    private static final Set<String> SORTS = Set.of("asc", "desc");
+
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private final ObjectMapper mapper;
+
+    private final Duration settle;
+
+    private final long maxBytes;
+
+    private final int maxPeriods;
+
+    private final int maxDays;
+
+    private final Clock clock;
+
+    /**
+     * Buckets by account and first day, to find the one covering a day.
+     */
+    private final TreeMap<DayKey, DayBucket> days = new TreeMap<>();
+
+    /**
+     * The same buckets in least recently used order.
+     */
+    private final LinkedHashMap<DayKey, DayBucket> lru = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final LinkedHashMap<PeriodKey, String> etags;
+
+    private long bytes;
+
+    @Autowired
+    public HistoryCache(ObjectMapper mapper,
+                        @Value("${history.cache.settle:PT10M}") Duration settle,
+                        @Value("${history.cache.max-bytes:67108864}") long maxBytes,
+                        @Value("${history.cache.max-periods:100000}") int maxPeriods,
+                        @Value("${history.cache.max-days:366}") int maxDays) {
+        this(mapper, settle, maxBytes, maxPeriods, maxDays, Clock.systemDefaultZone());
+    }
+
+    HistoryCache(ObjectMapper mapper, Duration settle, long maxBytes, int maxPeriods, int maxDays, Clock clock) {
+        this.mapper = mapper;
+        this.settle = settle;
+        this.maxBytes = maxBytes;
+        this.maxPeriods = maxPeriods;
+        this.maxDays = maxDays;
+        this.clock = clock;
+        this.etags = new LinkedHashMap<>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PeriodKey, String> eldest) {
+                return size() > HistoryCache.this.maxPeriods;
+            }
+        };
+    }
+
+    /**
+     * Whether the history of {@code [from, to)} in the given order can be served from the cache; longer periods
+     * than {@code maxDays} are read from the database.
+     */
+    public boolean isCacheable(LocalDate from, LocalDate to, String sort) {
+        return from.isBefore(to)
+                && ChronoUnit.DAYS.between(from, to) <= maxDays
+                && (sort == null || SORTS.contains(sort.toLowerCase()))
+                && !to.atStartOfDay().plus(settle).isAfter(LocalDateTime.now(clock));
+    }
+
+    /**
+     * Returns the ETag of a period that was served before, or {@code null}.
+     */
+    public synchronized String findEtag(long accountId, LocalDate from, LocalDate to, String sort) {
+        return etags.get(new PeriodKey(accountId, from, to, isDescending(sort)));
+    }
+
+    /**
+     * Puts the history of {@code [from, to)} together, reading missing days with {@code loader}, which returns the
+     * operations of a period in ascending order.
+     */
+    public History get(long accountId, LocalDate from, LocalDate to, String sort,
+                       BiFunction<LocalDate, LocalDate, List<AccountOperationResponseDTO>> loader) {
+        // Buckets by the first day of the period they cover.
+        NavigableMap<LocalDate, DayBucket> found = new TreeMap<>();
+        List<LocalDate[]> missing = new ArrayList<>();
+
+        synchronized (this) {
+            LocalDate day = from;
+
+            while (day.isBefore(to)) {
+                DayKey key = new DayKey(accountId, day);
+                Map.Entry<DayKey, DayBucket> covering = days.floorEntry(key);
+
+                if (covering != null && covering.getKey().getAccountId() == accountId
+                        && covering.getValue().getEnd().isAfter(day)) {
+                    lru.get(covering.getKey());
+                    found.put(day, covering.getValue());
+                    day = covering.getValue().getEnd();
+                    continue;
+                }
+
+                DayKey next = days.higherKey(key);
+                LocalDate missingTo = next != null && next.getAccountId() == accountId && next.getDay().isBefore(to)
+                        ? next.getDay()
+                        : to;
+
+                missing.add(new LocalDate[] { day, missingTo });
+                day = missingTo;
+            }
+        }
+
+        for (LocalDate[] period : missing) {
+            found.putAll(load(accountId, period[0], period[1], loader));
+        }
+
+        boolean descending = isDescending(sort);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        body.write('[');
+
+        for (DayBucket bucket : descending ? found.descendingMap().values() : found.values()) {
+            byte[] fragment = descending ? bucket.getDescending() : bucket.getAscending();
+
+            if (fragment.length > 0) {
+                if (body.size() > 1) {
+                    body.write(',');
+                }
+
+                body.writeBytes(fragment);
+            }
+        }
+
+        body.write(']');
+
+        byte[] content = body.toByteArray();
+        String etag = etag(content);
+
+        synchronized (this) {
+            etags.put(new PeriodKey(accountId, from, to, descending), etag);
+        }
+
+        return new History(content, etag);
+    }
+
+    synchronized long getBytes() {
+        return bytes;
+    }
+
+    synchronized int getEntryCount() {
+        return days.size();
+    }
+
+    private Map<LocalDate, DayBucket> load(long accountId, LocalDate from, LocalDate to,
+                                           BiFunction<LocalDate, LocalDate, List<AccountOperationResponseDTO>> loader) {
+        Map<LocalDate, List<AccountOperationResponseDTO>> operations = new HashMap<>();
+
+        for (AccountOperationResponseDTO operation : loader.apply(from, to)) {
+            operations.computeIfAbsent(operation.getUpdatedAt().toLocalDate(), key -> new ArrayList<>()).add(operation);
+        }
+
+        Map<LocalDate, DayBucket> result = new HashMap<>();
+        LocalDate emptyFrom = null;
+
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            List<AccountOperationResponseDTO> dayOperations = operations.get(day);
+
+            if (day.isBefore(to) && dayOperations == null) {
+                emptyFrom = emptyFrom == null ? day : emptyFrom;
+                continue;
+            }
+
+            if (emptyFrom != null) {
+                result.put(emptyFrom, new DayBucket(day, new byte[0], new byte[0]));
+                emptyFrom = null;
+            }
+
+            if (dayOperations != null) {
+                result.put(day, serialize(day.plusDays(1), dayOperations));
+            }
+        }
+
+        synchronized (this) {
+            result.forEach((day, bucket) -> {
+                DayKey key = new DayKey(accountId, day);
+                DayBucket previous = days.put(key, bucket);
+
+                lru.put(key, bucket);
+                bytes += bucket.size() - (previous == null ? 0 : previous.size());
+            });
+
+            Iterator<Map.Entry<DayKey, DayBucket>> iterator = lru.entrySet().iterator();
+
+            while (bytes > maxBytes && iterator.hasNext()) {
+                Map.Entry<DayKey, DayBucket> eldest = iterator.next();
+
+                bytes -= eldest.getValue().size();
+                days.remove(eldest.getKey());
+                iterator.remove();
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Operations of one time keep their order in both directions, like in the database reads.
+     */
+    private DayBucket serialize(LocalDate end, List<AccountOperationResponseDTO> operations) {
+        List<List<byte[]>> groups = new ArrayList<>();
+        LocalDateTime time = null;
+
+        for (AccountOperationResponseDTO operation : operations) {
+            if (!operation.getUpdatedAt().equals(time)) {
+                groups.add(new ArrayList<>());
+                time = operation.getUpdatedAt();
+            }
+
+            try {
+                groups.get(groups.size() - 1).add(mapper.writeValueAsBytes(operation));
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        ByteArrayOutputStream ascending = new ByteArrayOutputStream();
+        ByteArrayOutputStream descending = new ByteArrayOutputStream();
+
+        for (int i = 0; i < groups.size(); i++) {
+            append(ascending, groups.get(i));
+            append(descending, groups.get(groups.size() - 1 - i));
+        }
+
+        return new DayBucket(end, ascending.toByteArray(), descending.toByteArray());
+    }
+
+    private static void append(ByteArrayOutputStream out, List<byte[]> elements) {
+        for (byte[] element : elements) {
+            if (out.size() > 0) {
+                out.write(',');
+            }
+
+            out.writeBytes(element);
+        }
+    }
+
+    private static boolean isDescending(String sort) {
+        return sort == null || sort.equalsIgnoreCase("desc");
+    }
+
+    private static String etag(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+
+            return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(digest) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class History {
+
+        private final byte[] body;
+
+        private final String etag;
+    }
+
+    @Data
+    private static class DayKey implements Comparable<DayKey> {
+
+        private static final Comparator<DayKey> ORDER = Comparator.comparingLong(DayKey::getAccountId)
+                .thenComparing(DayKey::getDay);
+
+        private final long accountId;
+
+        private final LocalDate day;
+
+        @Override
+        public int compareTo(DayKey other) {
+            return ORDER.compare(this, other);
+        }
+    }
+
+    @Data
+    private static class PeriodKey {
+
+        private final long accountId;
+
+        private final LocalDate from;
+
+        private final LocalDate to;
+
+        private final boolean descending;
+    }
+
+    /**
+     * Operations of one day, or none for every day up to {@code end}, exclusive.
+     */
+    @Data
+    private static class DayBucket {
+
+        private final LocalDate end;
+
+        private final byte[] ascending;
+
+        private final byte[] descending;
+
+        long size() {
+            return ascending.length + descending.length + ENTRY_OVERHEAD;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.piche.task.coalescer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent identical reads: the first caller for a key computes the result, callers arriving with the
+ * same key while it runs wait for it and get the same result or exception instead of computing it again.
+ * <p>
+ * A joined result may miss writes committed while the computation was already running, so results must be
+ * immutable and callers that need to read their own writes shouldn't join. {@code single_flight.requests} counts
+ * computed and coalesced calls, their ratio is the share of saved computations.
+ */
+@Component
+public class SingleFlight {
+
+    private final boolean enabled;
+
+    private final Map<Object, CompletableFuture<Object>> flights = new ConcurrentHashMap<>();
+
+    private final Counter computed;
+
+    private final Counter coalesced;
+
+    @Autowired
+    public SingleFlight(@Value("${single-flight.enabled:true}") boolean enabled, MeterRegistry registry) {
+        this.enabled = enabled;
+        this.computed = requestCounter(registry, "computed");
+        this.coalesced = requestCounter(registry, "coalesced");
+
+        registry.gauge("single_flight.in_flight", flights, Map::size);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T execute(Object key, Supplier<T> computation) {
+        if (!enabled) {
+            return computation.get();
+        }
+
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> existing = flights.putIfAbsent(key, flight);
+
+        if (existing != null) {
+            coalesced.increment();
+
+            try {
+                return (T) existing.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+
+                throw e;
+            }
+        }
+
+        computed.increment();
+
+        try {
+            T result = computation.get();
+
+            flights.remove(key, flight);
+            flight.complete(result);
+
+            return result;
+        } catch (Throwable e) {
+            flights.remove(key, flight);
+            flight.completeExceptionally(e);
+
+            throw e;
+        }
+    }
+
+    private static Counter requestCounter(MeterRegistry registry, String result) {
+        return Counter.builder("single_flight.requests")
+                .tag("result", result)
+                .register(registry);
+    }
+}
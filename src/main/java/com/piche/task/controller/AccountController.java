@@ -1,30 +1,59 @@
 package com.piche.task.controller;
 
+import com.piche.task.cache.HistoryCache;
+import com.piche.task.coalescer.SingleFlight;
+import com.piche.task.datasource.ReplicaRoutingDataSource;
+import com.piche.task.dto.AccountActivityDTO;
 import com.piche.task.dto.AccountDTO;
-import com.piche.task.dto.AccountOperationResponseDTO;
+import com.piche.task.dto.AccountPageDTO;
+import com.piche.task.dto.AccountStatementDTO;
+import com.piche.task.dto.OperationHistory;
 import com.piche.task.model.Account;
 import com.piche.task.service.AccountService;
 import lombok.AllArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 import java.time.LocalDate;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 @RestController
 @AllArgsConstructor
 public class AccountController {
 
+    private static final CacheControl CLOSED_PERIOD_CACHE_CONTROL =
+            CacheControl.maxAge(365, TimeUnit.DAYS).cachePrivate().immutable();
+
     private final AccountService accountService;
 
+    private final SingleFlight singleFlight;
+
+    private final HistoryCache historyCache;
+
     @GetMapping(value = "account")
-    public List<Account> getAllAccounts() {
-        return accountService.findAll();
+    public AccountPageDTO getAllAccounts(@RequestParam(value = "namePrefix", required = false) String namePrefix,
+                                         @RequestParam(value = "minBalance", required = false) Double minBalance,
+                                         @RequestParam(value = "maxBalance", required = false) Double maxBalance,
+                                         @RequestParam(value = "sort", required = false) String sort,
+                                         @RequestParam(value = "order", required = false) String order,
+                                         @RequestParam(value = "cursor", required = false) String cursor,
+                                         @RequestParam(value = "limit", required = false) Integer limit) {
+        return accountService.findPage(namePrefix, minBalance, maxBalance, sort, order, cursor, limit);
     }
 
     @GetMapping(value = "account/{id}")
@@ -52,17 +81,72 @@ public class AccountController {
         accountService.deleteById(id);
     }
 
+    @GetMapping(value = "account/{id}/summary")
+    public AccountActivityDTO getAccountSummary(@PathVariable("id") Long id) {
+        return accountService.getActivity(id);
+    }
+
     @GetMapping(value = "account/{id}/operation/all")
-    public List<AccountOperationResponseDTO> getAllAccountOperations(@PathVariable("id") Long id,
-                                                                     @RequestParam(value = "sort", required = false) String sort) {
-        return accountService.getAllOperations(id, sort);
+    public OperationHistory getAllAccountOperations(@PathVariable("id") Long id,
+                                                    @RequestParam(value = "sort", required = false) String sort) {
+        return coalesce(Arrays.asList("operations", id, null, null, sort), () ->
+                accountService.getAllOperations(id, sort));
     }
 
+    /**
+     * Histories of closed periods never change: their JSON is served from {@link HistoryCache} with a strong ETag
+     * and may be cached by clients for good.
+     */
     @GetMapping(value = "account/{id}/operation/all", params = {"from", "to"})
-    public List<AccountOperationResponseDTO> getAllAccountOperationsByDateSpan(@PathVariable("id") Long id,
+    public ResponseEntity<?> getAllAccountOperationsByDateSpan(@PathVariable("id") Long id,
                                                           @RequestParam("from") LocalDate from,
                                                           @RequestParam("to") LocalDate to,
-                                                          @RequestParam(value = "sort", required = false) String sort) {
-        return accountService.getAllOperationsByDateSpan(id, from, to, sort);
+                                                          @RequestParam(value = "sort", required = false) String sort,
+                                                          @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                                          WebRequest request) {
+        if (!historyCache.isCacheable(from, to, sort) || acceptsCbor(accept)) {
+            return ResponseEntity.ok(coalesce(Arrays.asList("operations", id, from, to, sort), () ->
+                    accountService.getAllOperationsByDateSpan(id, from, to, sort)));
+        }
+
+        String etag = historyCache.findEtag(id, from, to, sort);
+
+        if (etag != null && request.checkNotModified(etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .cacheControl(CLOSED_PERIOD_CACHE_CONTROL)
+                    .varyBy(HttpHeaders.ACCEPT)
+                    .build();
+        }
+
+        HistoryCache.History history = historyCache.get(id, from, to, sort, (start, end) ->
+                coalesce(Arrays.asList("operations", id, start, end, "asc"), () ->
+                        accountService.getAllOperationsByDateSpan(id, start, end, "asc")));
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(history.getEtag())
+                .cacheControl(CLOSED_PERIOD_CACHE_CONTROL)
+                .varyBy(HttpHeaders.ACCEPT)
+                .body(history.getBody());
+    }
+
+    @GetMapping(value = "account/{id}/statement", params = {"from", "to"})
+    public AccountStatementDTO getAccountStatement(@PathVariable("id") Long id,
+                                                   @RequestParam("from") LocalDate from,
+                                                   @RequestParam("to") LocalDate to) {
+        return accountService.getStatement(id, from, to);
+    }
+
+    /**
+     * Identical history reads running at the same time share one computation, except for requests that have to
+     * read their own writes: a flight started before the write could return the history without it.
+     */
+    private OperationHistory coalesce(List<Object> key, Supplier<OperationHistory> read) {
+        return ReplicaRoutingDataSource.isPinned() ? read.get() : singleFlight.execute(key, read);
+    }
+
+    private static boolean acceptsCbor(String accept) {
+        return accept != null && MediaType.parseMediaTypes(accept).stream()
+                .anyMatch(MediaType.APPLICATION_CBOR::equalsTypeAndSubtype);
     }
 }
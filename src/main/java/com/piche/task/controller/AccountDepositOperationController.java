@@ -1,10 +1,12 @@
 package com.piche.task.controller;
 
 import com.piche.task.dto.AccountOperationDTO;
+import com.piche.task.limiter.RateLimiter;
 import com.piche.task.model.AccountDepositOperation;
+import com.piche.task.retry.OptimisticRetry;
 import com.piche.task.service.AccountDepositOperationService;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.AllArgsConstructor;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -19,15 +21,21 @@ public class AccountDepositOperationController {
 
     private final AccountDepositOperationService service;
 
+    private final RateLimiter rateLimiter;
+
+    private final OptimisticRetry retry;
+
     @GetMapping(value = "account/{id}/operation/deposit")
     public List<AccountDepositOperation> getAllOperations(@PathVariable("id") Long id) {
         return service.findAllByAccountId(id);
     }
 
     @PostMapping(value = "account/{id}/operation/deposit")
-    @Transactional
     public AccountDepositOperation saveOperation(@PathVariable("id") Long id,
-                                                 @RequestBody AccountOperationDTO operation) {
-        return service.save(id, operation);
+                                                 @RequestBody AccountOperationDTO operation,
+                                                 HttpServletRequest request) {
+        rateLimiter.acquire(id, request.getRemoteAddr());
+
+        return retry.execute("deposit", () -> service.save(id, operation));
     }
 }
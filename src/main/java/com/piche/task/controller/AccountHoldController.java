@@ -0,0 +1,61 @@
+package com.piche.task.controller;
+
+import com.piche.task.dto.AccountHoldDTO;
+import com.piche.task.dto.HoldCaptureDTO;
+import com.piche.task.limiter.RateLimiter;
+import com.piche.task.model.BalanceHold;
+import com.piche.task.retry.OptimisticRetry;
+import com.piche.task.service.BalanceHoldService;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.AllArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@AllArgsConstructor
+public class AccountHoldController {
+
+    private final BalanceHoldService holdService;
+
+    private final RateLimiter rateLimiter;
+
+    private final OptimisticRetry retry;
+
+    @GetMapping(value = "account/{id}/hold")
+    public List<BalanceHold> getAllHolds(@PathVariable("id") Long id) {
+        return holdService.findAllHeld(id);
+    }
+
+    @PostMapping(value = "account/{id}/hold")
+    public BalanceHold placeHold(@PathVariable("id") Long id,
+                                 @RequestBody AccountHoldDTO hold,
+                                 HttpServletRequest request) {
+        rateLimiter.acquire(id, request.getRemoteAddr());
+
+        return retry.execute("hold", () -> holdService.place(id, hold));
+    }
+
+    @PostMapping(value = "account/{id}/hold/{holdId}/capture")
+    public BalanceHold captureHold(@PathVariable("id") Long id,
+                                   @PathVariable("holdId") Long holdId,
+                                   @RequestBody HoldCaptureDTO capture,
+                                   HttpServletRequest request) {
+        rateLimiter.acquire(id, request.getRemoteAddr());
+
+        return retry.execute("capture", () -> holdService.capture(id, holdId, capture));
+    }
+
+    @PostMapping(value = "account/{id}/hold/{holdId}/release")
+    public BalanceHold releaseHold(@PathVariable("id") Long id,
+                                   @PathVariable("holdId") Long holdId,
+                                   HttpServletRequest request) {
+        rateLimiter.acquire(id, request.getRemoteAddr());
+
+        return retry.execute("release", () -> holdService.release(id, holdId));
+    }
+}
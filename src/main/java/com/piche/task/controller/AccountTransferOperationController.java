@@ -1,23 +1,49 @@
 package com.piche.task.controller;
 
+import com.piche.task.dto.AccountBulkTransferDTO;
 import com.piche.task.dto.AccountOperationDTO;
+import com.piche.task.dto.AccountPayoutDTO;
+import com.piche.task.dto.TransferOperationRowDTO;
+import com.piche.task.exception.BadRequestException;
+import com.piche.task.limiter.RateLimiter;
 import com.piche.task.model.AccountTransferOperation;
+import com.piche.task.retry.OptimisticRetry;
 import com.piche.task.service.AccountTransferOperationService;
-import lombok.AllArgsConstructor;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.List;
+import java.util.Objects;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 @RestController
-@AllArgsConstructor
 public class AccountTransferOperationController {
 
     private final AccountTransferOperationService operationService;
 
+    private final RateLimiter rateLimiter;
+
+    private final OptimisticRetry retry;
+
+    private final int maxBulkTransfers;
+
+    public AccountTransferOperationController(AccountTransferOperationService operationService,
+                                              RateLimiter rateLimiter,
+                                              OptimisticRetry retry,
+                                              @Value("${bulk.max-transfers:1000}") int maxBulkTransfers) {
+        this.operationService = operationService;
+        this.rateLimiter = rateLimiter;
+        this.retry = retry;
+        this.maxBulkTransfers = maxBulkTransfers;
+    }
+
     @GetMapping(value = "account/{id}/operation/transfer")
     public List<AccountTransferOperation> getAllOperations(@PathVariable("id") Long id) {
         return operationService.findAllBySenderId(id);
@@ -26,7 +52,43 @@ public class AccountTransferOperationController {
     @PostMapping(value = "account/{senderId}/operation/transfer/{receiverId}")
     public AccountTransferOperation saveOperation(@PathVariable("senderId") Long senderId,
                                                   @PathVariable("receiverId") Long receiverId,
-                                                  @RequestBody AccountOperationDTO operation) {
-        return operationService.save(senderId, receiverId, operation);
+                                                  @RequestBody AccountOperationDTO operation,
+                                                  HttpServletRequest request) {
+        rateLimiter.acquire(senderId, request.getRemoteAddr());
+
+        return retry.execute("transfer", () -> operationService.save(senderId, receiverId, operation));
+    }
+
+    @PostMapping(value = "account/{senderId}/operation/payout")
+    public List<TransferOperationRowDTO> savePayout(@PathVariable("senderId") Long senderId,
+                                                    @RequestBody AccountPayoutDTO payout,
+                                                    HttpServletRequest request) {
+        rateLimiter.acquire(senderId, request.getRemoteAddr());
+
+        return retry.execute("payout", () -> operationService.savePayout(senderId, payout));
+    }
+
+    @PostMapping(value = "account/operation/transfer/bulk")
+    public List<TransferOperationRowDTO> saveBulk(@RequestBody AccountBulkTransferDTO bulk,
+                                                  @RequestParam(value = "netting", defaultValue = "false")
+                                                  boolean netting,
+                                                  HttpServletRequest request) {
+        if (bulk.getTransfers() != null && bulk.getTransfers().size() > maxBulkTransfers) {
+            throw new BadRequestException(String.format(
+                    "Can`t add transfers: at most %d transfers per request", maxBulkTransfers));
+        }
+
+        SortedSet<Long> senderIds = new TreeSet<>();
+
+        if (bulk.getTransfers() != null) {
+            bulk.getTransfers().stream()
+                    .map(AccountBulkTransferDTO.Transfer::getSenderId)
+                    .filter(Objects::nonNull)
+                    .forEach(senderIds::add);
+        }
+
+        rateLimiter.acquire(senderIds, request.getRemoteAddr());
+
+        return retry.execute(netting ? "bulk-netting" : "bulk", () -> operationService.saveBulk(bulk, netting));
     }
 }
@@ -0,0 +1,45 @@
+package com.piche.task.controller;
+
+import com.piche.task.dto.ChangeEventDTO;
+import com.piche.task.exception.BadRequestException;
+import com.piche.task.service.ChangeFeedService;
+import lombok.AllArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.util.List;
+
+@RestController
+@AllArgsConstructor
+public class ChangeFeedController {
+
+    private static final int MAX_WAIT_SECONDS = 60;
+
+    private final ChangeFeedService changeFeed;
+
+    @GetMapping(value = "events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamEvents(@RequestParam(value = "after", defaultValue = "0") long after,
+                                   @RequestParam(value = "accountId", required = false) Long accountId,
+                                   @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        return changeFeed.subscribe(accountId, lastEventId != null ? lastEventId : after);
+    }
+
+    @GetMapping(value = "events", produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<List<ChangeEventDTO>> pollEvents(
+            @RequestParam(value = "after", defaultValue = "0") long after,
+            @RequestParam(value = "accountId", required = false) Long accountId,
+            @RequestParam(value = "limit", defaultValue = "100") int limit,
+            @RequestParam(value = "wait", defaultValue = "0") int wait) {
+        if (wait < 0 || wait > MAX_WAIT_SECONDS) {
+            throw new BadRequestException(String.format("Wait must be between 0 and %d seconds", MAX_WAIT_SECONDS));
+        }
+
+        return changeFeed.poll(accountId, after, limit, Duration.ofSeconds(wait));
+    }
+}
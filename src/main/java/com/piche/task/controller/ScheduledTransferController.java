@@ -0,0 +1,48 @@
+package com.piche.task.controller;
+
+import com.piche.task.dto.ScheduledTransferDTO;
+import com.piche.task.limiter.RateLimiter;
+import com.piche.task.model.ScheduledTransfer;
+import com.piche.task.service.ScheduledTransferService;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.AllArgsConstructor;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@AllArgsConstructor
+public class ScheduledTransferController {
+
+    private final ScheduledTransferService scheduledService;
+
+    private final RateLimiter rateLimiter;
+
+    @GetMapping(value = "account/{id}/operation/scheduled")
+    public List<ScheduledTransfer> getAllScheduledTransfers(@PathVariable("id") Long id) {
+        return scheduledService.findAllActive(id);
+    }
+
+    @PostMapping(value = "account/{id}/operation/scheduled")
+    public ScheduledTransfer scheduleTransfer(@PathVariable("id") Long id,
+                                              @RequestBody ScheduledTransferDTO transfer,
+                                              HttpServletRequest request) {
+        rateLimiter.acquire(id, request.getRemoteAddr());
+
+        return scheduledService.save(id, transfer);
+    }
+
+    @DeleteMapping(value = "account/{id}/operation/scheduled/{scheduledId}")
+    public void cancelScheduledTransfer(@PathVariable("id") Long id,
+                                        @PathVariable("scheduledId") Long scheduledId,
+                                        HttpServletRequest request) {
+        rateLimiter.acquire(id, request.getRemoteAddr());
+
+        scheduledService.cancel(id, scheduledId);
+    }
+}
@@ -0,0 +1,184 @@
+package com.piche.task.datasource;
+
+import com.piche.task.exception.ServiceUnavailableException;
+import com.piche.task.sharding.ShardRouter;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs independent read queries of a request at the same time, each on its own connection.
+ * <p>
+ * Every query runs in a read-only transaction of its own on the caller's shard, and on the primary if the caller is
+ * pinned to it: the first one on the calling thread, the others on a bounded pool. When the pool is full they run
+ * one after another on the calling thread instead. All queries share {@code timeout}: the transactions pass it to
+ * their statements, and the caller stops waiting once it is over. When a query fails or times out, queries that
+ * haven't started are dropped; running ones aren't interrupted, since interrupts can close database files, and end
+ * at their statement timeout. Without threads every query runs on the calling thread.
+ * <p>
+ * The pool threads take connections from the same pool as the callers, so the caller must not hold one while it
+ * waits for them: with enough such callers they would hold every connection and wait for each other. Callers in a
+ * transaction therefore run every query in it, one after another, and the parallel reads are meant to be called
+ * outside of one, which also needs {@code spring.jpa.open-in-view=false} to release the connection of the calling
+ * thread after each query.
+ */
+@Component
+public class ParallelQueries {
+
+    private final ShardRouter shards;
+
+    private final TransactionOperations transactions;
+
+    private final Duration timeout;
+
+    private final ThreadPoolExecutor executor;
+
+    @Autowired
+    public ParallelQueries(ShardRouter shards,
+                           PlatformTransactionManager transactionManager,
+                           @Value("${history.parallel-queries.threads:4}") int threads,
+                           @Value("${history.parallel-queries.queue:64}") int queueSize,
+                           @Value("${history.parallel-queries.timeout:PT10S}") Duration timeout) {
+        this(shards, readOnlyTransactions(transactionManager, timeout), threads, queueSize, timeout);
+    }
+
+    public ParallelQueries(ShardRouter shards,
+                           TransactionOperations transactions,
+                           int threads,
+                           int queueSize,
+                           Duration timeout) {
+        this.shards = shards;
+        this.transactions = transactions;
+        this.timeout = timeout;
+
+        AtomicInteger threadCount = new AtomicInteger();
+
+        this.executor = threads > 0
+                ? new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<>(queueSize), task -> {
+                            Thread thread = new Thread(task, "parallel-query-" + threadCount.incrementAndGet());
+
+                            thread.setDaemon(true);
+                            return thread;
+                        })
+                : null;
+    }
+
+    /**
+     * Returns the results of the queries in their order.
+     */
+    public <T> List<T> invokeAll(List<Supplier<T>> queries) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return queries.stream().map(Supplier::get).toList();
+        }
+
+        if (executor == null || queries.size() < 2) {
+            return queries.stream().map(query -> transactions.execute(status -> query.get())).toList();
+        }
+
+        long deadline = System.nanoTime() + timeout.toNanos();
+        Integer shard = ShardRouter.currentShard();
+        boolean pinned = ReplicaRoutingDataSource.isPinned();
+        List<Future<T>> futures = new ArrayList<>(queries.size() - 1);
+
+        try {
+            for (Supplier<T> query : queries.subList(1, queries.size())) {
+                futures.add(submit(query, shard, pinned));
+            }
+
+            List<T> result = new ArrayList<>(queries.size());
+
+            result.add(transactions.execute(status -> queries.get(0).get()));
+
+            for (Future<T> future : futures) {
+                result.add(await(future, deadline));
+            }
+
+            return result;
+        } finally {
+            futures.forEach(future -> future.cancel(false));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private <T> Future<T> submit(Supplier<T> query, Integer shard, boolean pinned) {
+        Callable<T> task = () -> {
+            if (pinned) {
+                ReplicaRoutingDataSource.pinToPrimary();
+            }
+
+            try {
+                return shard == null
+                        ? transactions.execute(status -> query.get())
+                        : shards.routeToShard(shard, () -> transactions.execute(status -> query.get()));
+            } finally {
+                ReplicaRoutingDataSource.unpin();
+            }
+        };
+
+        try {
+            return executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            FutureTask<T> inline = new FutureTask<>(() -> transactions.execute(status -> query.get()));
+
+            inline.run();
+
+            return inline;
+        }
+    }
+
+    private static <T> T await(Future<T> future, long deadline) {
+        try {
+            return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new ServiceUnavailableException("Queries didn`t finish in time", 1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a query", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static TransactionOperations readOnlyTransactions(PlatformTransactionManager transactionManager,
+                                                              Duration timeout) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+
+        template.setReadOnly(true);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        template.setTimeout((int) Math.max(1, (timeout.toMillis() + 999) / 1000));
+
+        return template;
+    }
+}
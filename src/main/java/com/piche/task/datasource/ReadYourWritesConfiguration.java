@@ -0,0 +1,28 @@
+package com.piche.task.datasource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.time.Duration;
+
+/**
+ * Tracks recent writes with or without replicas: reads of a recent writer are pinned, which sends them to the
+ * primary when there are replicas and keeps them out of coalesced history reads either way.
+ */
+@Configuration
+public class ReadYourWritesConfiguration implements WebMvcConfigurer {
+
+    private final RecentWrites recentWrites;
+
+    public ReadYourWritesConfiguration(@Value("${datasource.replica.read-your-writes-window:PT5S}") Duration window,
+                                       @Value("${datasource.replica.max-tracked-keys:100000}") int maxKeys) {
+        this.recentWrites = new RecentWrites(window, maxKeys, System::nanoTime);
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new ReadYourWritesInterceptor(recentWrites));
+    }
+}
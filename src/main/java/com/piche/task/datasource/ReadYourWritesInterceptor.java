@@ -0,0 +1,77 @@
+package com.piche.task.datasource;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Records the accounts in the path of every successful write request and the client that sent it; read requests
+ * touching a recently written account or sent by a recent writer are pinned to the primary.
+ */
+public class ReadYourWritesInterceptor implements HandlerInterceptor {
+
+    private static final Set<String> READ_METHODS = Set.of(
+            HttpMethod.GET.name(), HttpMethod.HEAD.name(), HttpMethod.OPTIONS.name());
+
+    private final RecentWrites recentWrites;
+
+    public ReadYourWritesInterceptor(RecentWrites recentWrites) {
+        this.recentWrites = recentWrites;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (READ_METHODS.contains(request.getMethod()) && isRecentlyWritten(request)) {
+            ReplicaRoutingDataSource.pinToPrimary();
+        }
+
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        ReplicaRoutingDataSource.unpin();
+
+        if (READ_METHODS.contains(request.getMethod()) || ex != null || response.getStatus() >= 400) {
+            return;
+        }
+
+        recentWrites.record(clientKey(request));
+        accountIds(request).forEach(id -> recentWrites.record(accountKey(id)));
+    }
+
+    private boolean isRecentlyWritten(HttpServletRequest request) {
+        return recentWrites.isRecent(clientKey(request))
+                || accountIds(request).stream().anyMatch(id -> recentWrites.isRecent(accountKey(id)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Long> accountIds(HttpServletRequest request) {
+        Map<String, String> variables =
+                (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+
+        if (variables == null) {
+            return List.of();
+        }
+
+        return variables.values().stream()
+                .filter(value -> !value.isEmpty() && value.length() < 19 && value.chars().allMatch(Character::isDigit))
+                .map(Long::valueOf)
+                .toList();
+    }
+
+    private static String clientKey(HttpServletRequest request) {
+        return "client:" + request.getRemoteAddr();
+    }
+
+    private static String accountKey(Long id) {
+        return "account:" + id;
+    }
+}
@@ -0,0 +1,97 @@
+package com.piche.task.datasource;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Remembers the keys (accounts, clients) written during the last {@code window}, which should cover the replication
+ * lag. Keys are kept in generations of one {@code window} each: a write goes to the current generation, and once it
+ * is a window old it becomes the previous one and the generation before is dropped as a whole, so expired keys cost
+ * nothing to forget. A generation takes at most {@code maxKeys} keys; a write that finds it full isn't tracked and
+ * instead makes every key recent until a window after it, so reads go to the primary rather than memory growing.
+ */
+public class RecentWrites {
+
+    private final long windowNanos;
+
+    private final int maxKeys;
+
+    private final LongSupplier clock;
+
+    private final AtomicReference<Generations> generations;
+
+    private final AtomicLong saturatedUntil;
+
+    public RecentWrites(Duration window, int maxKeys, LongSupplier clock) {
+        long now = clock.getAsLong();
+
+        this.windowNanos = window.toNanos();
+        this.maxKeys = maxKeys;
+        this.clock = clock;
+        this.generations = new AtomicReference<>(new Generations(now, new ConcurrentHashMap<>(), Map.of()));
+        this.saturatedUntil = new AtomicLong(now);
+    }
+
+    public void record(Object key) {
+        long now = clock.getAsLong();
+        Map<Object, Long> current = generations(now).current();
+
+        if (current.size() >= maxKeys && !current.containsKey(key)) {
+            saturatedUntil.accumulateAndGet(now + windowNanos, (until, next) -> next - until > 0 ? next : until);
+            return;
+        }
+
+        current.put(key, now);
+    }
+
+    public boolean isRecent(Object key) {
+        long now = clock.getAsLong();
+
+        if (saturatedUntil.get() - now > 0) {
+            return true;
+        }
+
+        Generations generations = generations(now);
+        Long time = generations.current().get(key);
+
+        if (time == null) {
+            time = generations.previous().get(key);
+        }
+
+        return time != null && now - time < windowNanos;
+    }
+
+    int size() {
+        Generations generations = this.generations.get();
+
+        return generations.current().size() + generations.previous().size();
+    }
+
+    /**
+     * Returns the generations at {@code now}, starting a new one if the current one is a window old.
+     */
+    private Generations generations(long now) {
+        while (true) {
+            Generations generations = this.generations.get();
+            long age = now - generations.start();
+
+            if (age < windowNanos) {
+                return generations;
+            }
+
+            Generations next = new Generations(now, new ConcurrentHashMap<>(),
+                    age < 2 * windowNanos ? generations.current() : Map.of());
+
+            if (this.generations.compareAndSet(generations, next)) {
+                return next;
+            }
+        }
+    }
+
+    private record Generations(long start, Map<Object, Long> current, Map<Object, Long> previous) {
+    }
+}
@@ -0,0 +1,45 @@
+package com.piche.task.datasource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Routes read-only transactions to the replicas listed in {@code datasource.replica.urls}. Active only when
+ * the property is set; otherwise the auto-configured single data source is used. Reads that must see their own
+ * writes are pinned to the primary by {@link ReadYourWritesConfiguration}.
+ */
+@Configuration
+@ConditionalOnProperty(name = "datasource.replica.urls")
+public class ReplicaDataSourceConfiguration {
+
+    @Bean
+    @Primary
+    public DataSource dataSource(DataSourceProperties properties,
+                                 @Value("${datasource.replica.urls}") String urls,
+                                 @Value("${datasource.replica.username:${spring.datasource.username:}}") String username,
+                                 @Value("${datasource.replica.password:${spring.datasource.password:}}") String password) {
+        DataSource primary = properties.initializeDataSourceBuilder().build();
+        List<DataSource> replicas = Arrays.stream(urls.split(","))
+                .map(String::trim)
+                .filter(url -> !url.isEmpty())
+                .map(url -> (DataSource) DataSourceBuilder.create()
+                        .driverClassName(properties.determineDriverClassName())
+                        .url(url)
+                        .username(username)
+                        .password(password)
+                        .build())
+                .toList();
+
+        return new LazyConnectionDataSourceProxy(new ReplicaRoutingDataSource(primary, replicas));
+    }
+}
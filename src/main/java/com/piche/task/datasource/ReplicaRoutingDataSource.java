@@ -0,0 +1,72 @@
+package com.piche.task.datasource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends connections of read-only transactions to one of the replicas (round robin) and everything else to the
+ * primary. The current thread can be pinned to the primary, e.g. to read an account it has just written.
+ * <p>
+ * The read-only flag of a transaction is bound after its connection is requested, so this data source must be
+ * wrapped into a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}, which defers the lookup
+ * to the first statement.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    static final String PRIMARY = "primary";
+
+    private static final ThreadLocal<Boolean> PINNED = new ThreadLocal<>();
+
+    private final int replicaCount;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    public ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicas) {
+        Map<Object, Object> targets = new HashMap<>();
+
+        targets.put(PRIMARY, primary);
+
+        for (int i = 0; i < replicas.size(); i++) {
+            targets.put(replicaKey(i), replicas.get(i));
+        }
+
+        this.replicaCount = replicas.size();
+
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    public static void pinToPrimary() {
+        PINNED.set(Boolean.TRUE);
+    }
+
+    public static void unpin() {
+        PINNED.remove();
+    }
+
+    public static boolean isPinned() {
+        return PINNED.get() != null;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (replicaCount == 0
+                || PINNED.get() != null
+                || !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return PRIMARY;
+        }
+
+        return replicaKey(Math.floorMod(next.getAndIncrement(), replicaCount));
+    }
+
+    static String replicaKey(int index) {
+        return "replica-" + index;
+    }
+}
@@ -0,0 +1,23 @@
+package com.piche.task.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+public class AccountActivityDTO {
+
+    private Long id;
+
+    private Double balance;
+
+    private Long depositCount;
+
+    private Long sentCount;
+
+    private Long receivedCount;
+
+    private LocalDateTime lastOperationAt;
+}
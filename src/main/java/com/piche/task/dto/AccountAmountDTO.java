@@ -0,0 +1,13 @@
+package com.piche.task.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class AccountAmountDTO {
+
+    private Long accountId;
+
+    private Double amount;
+}
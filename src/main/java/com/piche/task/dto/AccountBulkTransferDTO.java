@@ -0,0 +1,30 @@
+package com.piche.task.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Transfers between any accounts, saved together.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AccountBulkTransferDTO {
+
+    private List<Transfer> transfers;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Transfer {
+
+        private Long senderId;
+
+        private Long receiverId;
+
+        private double deposit;
+    }
+}
@@ -0,0 +1,21 @@
+package com.piche.task.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+@AllArgsConstructor
+public class AccountFilterDTO {
+
+    private String namePrefix;
+
+    private Double minBalance;
+
+    private Double maxBalance;
+
+    private AccountSort sort;
+
+    private boolean descending;
+}
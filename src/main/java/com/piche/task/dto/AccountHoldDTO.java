@@ -0,0 +1,20 @@
+package com.piche.task.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Duration;
+
+/**
+ * Amount to hold and for how long; without {@code ttl} the hold lasts {@code holds.default-ttl}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AccountHoldDTO {
+
+    private double deposit;
+
+    private Duration ttl;
+}
@@ -0,0 +1,18 @@
+package com.piche.task.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class AccountPageDTO {
+
+    private List<AccountSummaryDTO> items;
+
+    /**
+     * Opaque cursor of the next page, {@code null} on the last page.
+     */
+    private String nextCursor;
+}
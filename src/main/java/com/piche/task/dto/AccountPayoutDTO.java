@@ -0,0 +1,28 @@
+package com.piche.task.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Transfers from one sender to many receivers, saved together.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AccountPayoutDTO {
+
+    private List<Payout> payouts;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Payout {
+
+        private Long receiverId;
+
+        private double deposit;
+    }
+}
@@ -0,0 +1,34 @@
+package com.piche.task.dto;
+
+import java.util.Comparator;
+
+/**
+ * Sort keys of the account listing. Ties are always broken by id, which makes every order total and lets a page
+ * continue after the last row of the previous one.
+ */
+public enum AccountSort {
+
+    ID("id", Comparator.comparing(AccountSummaryDTO::getId)),
+    NAME("name", Comparator.comparing(AccountSummaryDTO::getName)
+            .thenComparing(AccountSummaryDTO::getId)),
+    BALANCE("balance", Comparator.comparing(AccountSummaryDTO::getBalance)
+            .thenComparing(AccountSummaryDTO::getId));
+
+    private final String field;
+
+    private final Comparator<AccountSummaryDTO> comparator;
+
+    AccountSort(String field, Comparator<AccountSummaryDTO> comparator) {
+        this.field = field;
+        this.comparator = comparator;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    public Comparator<AccountSummaryDTO> comparator(boolean descending) {
+        return descending ? comparator.reversed() : comparator;
+    }
+}
+
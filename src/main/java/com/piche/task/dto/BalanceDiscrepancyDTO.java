@@ -0,0 +1,21 @@
+package com.piche.task.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@AllArgsConstructor
+public class BalanceDiscrepancyDTO {
+
+    private Long accountId;
+
+    private double balance;
+
+    private double expectedBalance;
+
+    private LocalDateTime detectedAt;
+}
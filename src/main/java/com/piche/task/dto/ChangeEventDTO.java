@@ -0,0 +1,29 @@
+package com.piche.task.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@AllArgsConstructor
+public class ChangeEventDTO {
+
+    private long position;
+
+    private Long accountId;
+
+    private Long operationId;
+
+    private String type;
+
+    private String role;
+
+    private double deposit;
+
+    private double balance;
+
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,18 @@
+package com.piche.task.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Receiver of a captured hold and the amount to transfer, the whole hold when {@code null}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class HoldCaptureDTO {
+
+    private Long receiverId;
+
+    private Double deposit;
+}
@@ -0,0 +1,20 @@
+package com.piche.task.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Active hold with what its expiry needs: the account, whose shard stores it, and the time.
+ */
+@Data
+@AllArgsConstructor
+public class HoldExpiryDTO {
+
+    private Long id;
+
+    private Long accountId;
+
+    private LocalDateTime expiresAt;
+}
@@ -0,0 +1,17 @@
+package com.piche.task.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class OperationAggregateDTO {
+
+    private long count;
+
+    private double sum;
+
+    public OperationAggregateDTO plus(OperationAggregateDTO other) {
+        return new OperationAggregateDTO(count + other.count, sum + other.sum);
+    }
+}
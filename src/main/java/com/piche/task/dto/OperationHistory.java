@@ -0,0 +1,345 @@
+package com.piche.task.dto;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Account history stored as columns: time in epoch microseconds, id, signed amount and kind of each operation.
+ * <p>
+ * Every query fills its own part, {@link #merge} sorts the parts by time and merges them into one history without
+ * allocating anything per operation, and the history is written to JSON or CBOR straight from the columns.
+ * Operations of the same time keep the order of the parts and, within a part, the order of the query, so the
+ * result is the same as grouping by time. Reading an element builds an {@link AccountOperationResponseDTO}, and the
+ * JSON is the same as for a list of them.
+ */
+@JsonSerialize(using = OperationHistory.Serializer.class)
+public class OperationHistory extends AbstractList<AccountOperationResponseDTO> {
+
+    public static final byte DEPOSIT = 0;
+
+    public static final byte SENT = 1;
+
+    public static final byte RECEIVED = 2;
+
+    private static final long MICROS_PER_SECOND = 1_000_000;
+
+    private long[] times;
+
+    private long[] ids;
+
+    private double[] amounts;
+
+    private byte[] kinds;
+
+    private int size;
+
+    public OperationHistory(int capacity) {
+        this.times = new long[capacity];
+        this.ids = new long[capacity];
+        this.amounts = new double[capacity];
+        this.kinds = new byte[capacity];
+    }
+
+    /**
+     * Adds an operation with its signed amount, negative for sent transfers.
+     */
+    public void add(byte kind, long id, LocalDateTime time, double amount) {
+        if (size == times.length) {
+            int capacity = Math.max(16, size * 2);
+
+            times = Arrays.copyOf(times, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+            amounts = Arrays.copyOf(amounts, capacity);
+            kinds = Arrays.copyOf(kinds, capacity);
+        }
+
+        times[size] = toMicros(time);
+        ids[size] = id;
+        amounts[size] = amount;
+        kinds[size] = kind;
+        size++;
+    }
+
+    /**
+     * Sorts every part by time, keeping the order of equal times, and merges them; equal times are taken from the
+     * earlier part first. Descending order reverses the times, not the operations of one time.
+     */
+    public static OperationHistory merge(List<OperationHistory> parts, boolean descending) {
+        int total = 0;
+
+        for (OperationHistory part : parts) {
+            total += part.size;
+        }
+
+        int[] order = new int[total];
+        int[] scratch = new int[total];
+        int[] starts = new int[parts.size() + 1];
+        long[] times = new long[total];
+
+        for (int p = 0, offset = 0; p < parts.size(); p++) {
+            OperationHistory part = parts.get(p);
+
+            System.arraycopy(part.times, 0, times, offset, part.size);
+
+            for (int i = 0; i < part.size; i++) {
+                order[offset + i] = offset + i;
+            }
+
+            sort(order, scratch, times, offset, offset + part.size);
+            starts[p] = offset;
+            offset += part.size;
+            starts[p + 1] = offset;
+        }
+
+        int[] merged = mergeParts(order, starts, times);
+
+        if (descending) {
+            merged = reverseTimes(merged, times, scratch);
+        }
+
+        OperationHistory result = new OperationHistory(total);
+
+        for (int p = 0; p < parts.size(); p++) {
+            OperationHistory part = parts.get(p);
+
+            for (int i = 0; i < part.size; i++) {
+                scratch[starts[p] + i] = p;
+            }
+        }
+
+        for (int i = 0; i < total; i++) {
+            int row = merged[i];
+            OperationHistory part = parts.get(scratch[row]);
+            int index = row - starts[scratch[row]];
+
+            result.times[i] = part.times[index];
+            result.ids[i] = part.ids[index];
+            result.amounts[i] = part.amounts[index];
+            result.kinds[i] = part.kinds[index];
+        }
+
+        result.size = total;
+
+        return result;
+    }
+
+    @Override
+    public AccountOperationResponseDTO get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+
+        return AccountOperationResponseDTO.builder()
+                .id(ids[index])
+                .type(kinds[index] == DEPOSIT ? "deposit" : "transfer")
+                .role(role(kinds[index]))
+                .deposit(amounts[index])
+                .updatedAt(toLocalDateTime(times[index]))
+                .build();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    static long toMicros(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) * MICROS_PER_SECOND + time.getNano() / 1000;
+    }
+
+    static LocalDateTime toLocalDateTime(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, MICROS_PER_SECOND),
+                (int) Math.floorMod(micros, MICROS_PER_SECOND) * 1000, ZoneOffset.UTC);
+    }
+
+    /**
+     * Writes the time like {@link DateTimeFormatter#ISO_LOCAL_DATE_TIME}, which Jackson uses for
+     * {@link LocalDateTime}, into {@code buffer} and returns its length.
+     */
+    static int formatTime(long micros, char[] buffer) {
+        long seconds = Math.floorDiv(micros, MICROS_PER_SECOND);
+        long days = Math.floorDiv(seconds, 86_400);
+        int secondOfDay = (int) Math.floorMod(seconds, 86_400);
+        int fraction = (int) Math.floorMod(micros, MICROS_PER_SECOND);
+
+        // Converts days since 1970-01-01 to a proleptic Gregorian date in 400-year eras starting on March 1st.
+        long shifted = days + 719_468;
+        long era = Math.floorDiv(shifted, 146_097);
+        long dayOfEra = shifted - era * 146_097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long monthIndex = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * monthIndex + 2) / 5 + 1);
+        int month = (int) (monthIndex < 10 ? monthIndex + 3 : monthIndex - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        if (year < 0 || year > 9999) {
+            String text = toLocalDateTime(micros).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+
+            text.getChars(0, text.length(), buffer, 0);
+
+            return text.length();
+        }
+
+        int length = digits(buffer, 0, (int) year, 4);
+
+        buffer[length++] = '-';
+        length = digits(buffer, length, month, 2);
+        buffer[length++] = '-';
+        length = digits(buffer, length, day, 2);
+        buffer[length++] = 'T';
+        length = digits(buffer, length, secondOfDay / 3600, 2);
+        buffer[length++] = ':';
+        length = digits(buffer, length, secondOfDay / 60 % 60, 2);
+        buffer[length++] = ':';
+        length = digits(buffer, length, secondOfDay % 60, 2);
+
+        if (fraction > 0) {
+            int width = 6;
+
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+                width--;
+            }
+
+            buffer[length++] = '.';
+            length = digits(buffer, length, fraction, width);
+        }
+
+        return length;
+    }
+
+    private static int digits(char[] buffer, int offset, int value, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+
+        return offset + width;
+    }
+
+    private static String role(byte kind) {
+        return switch (kind) {
+            case SENT -> "sender";
+            case RECEIVED -> "receiver";
+            default -> null;
+        };
+    }
+
+    /**
+     * Stable merge sort of {@code order[from, to)} by time; an already sorted range is only scanned.
+     */
+    private static void sort(int[] order, int[] scratch, long[] times, int from, int to) {
+        boolean sorted = true;
+
+        for (int i = from + 1; i < to && sorted; i++) {
+            sorted = times[order[i - 1]] <= times[order[i]];
+        }
+
+        if (sorted) {
+            return;
+        }
+
+        int middle = (from + to) >>> 1;
+
+        sort(order, scratch, times, from, middle);
+        sort(order, scratch, times, middle, to);
+
+        for (int i = from, left = from, right = middle; i < to; i++) {
+            scratch[i] = right >= to || left < middle && times[order[left]] <= times[order[right]]
+                    ? order[left++]
+                    : order[right++];
+        }
+
+        System.arraycopy(scratch, from, order, from, to - from);
+    }
+
+    private static int[] mergeParts(int[] order, int[] starts, long[] times) {
+        int parts = starts.length - 1;
+        int[] positions = new int[parts];
+        int[] merged = new int[order.length];
+
+        System.arraycopy(starts, 0, positions, 0, parts);
+
+        for (int i = 0; i < merged.length; i++) {
+            int next = -1;
+
+            for (int p = 0; p < parts; p++) {
+                if (positions[p] < starts[p + 1]
+                        && (next < 0 || times[order[positions[p]]] < times[order[positions[next]]])) {
+                    next = p;
+                }
+            }
+
+            merged[i] = order[positions[next]++];
+        }
+
+        return merged;
+    }
+
+    private static int[] reverseTimes(int[] merged, long[] times, int[] target) {
+        int length = 0;
+
+        for (int end = merged.length; end > 0; ) {
+            int start = end - 1;
+
+            while (start > 0 && times[merged[start - 1]] == times[merged[end - 1]]) {
+                start--;
+            }
+
+            System.arraycopy(merged, start, target, length, end - start);
+            length += end - start;
+            end = start;
+        }
+
+        System.arraycopy(target, 0, merged, 0, length);
+
+        return merged;
+    }
+
+    public static class Serializer extends StdSerializer<OperationHistory> {
+
+        public Serializer() {
+            super(OperationHistory.class);
+        }
+
+        @Override
+        public void serialize(OperationHistory history, JsonGenerator generator, SerializerProvider provider)
+                throws IOException {
+            char[] time = new char[32];
+            boolean timestamps = provider.isEnabled(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+            generator.writeStartArray(history, history.size);
+
+            for (int i = 0; i < history.size; i++) {
+                generator.writeStartObject();
+                generator.writeNumberField("id", history.ids[i]);
+                generator.writeStringField("type", history.kinds[i] == DEPOSIT ? "deposit" : "transfer");
+                generator.writeStringField("role", role(history.kinds[i]));
+                generator.writeNumberField("deposit", history.amounts[i]);
+                generator.writeFieldName("updatedAt");
+
+                if (timestamps) {
+                    provider.defaultSerializeValue(toLocalDateTime(history.times[i]), generator);
+                } else {
+                    generator.writeString(time, 0, formatTime(history.times[i], time));
+                }
+
+                generator.writeEndObject();
+            }
+
+            generator.writeEndArray();
+        }
+    }
+}
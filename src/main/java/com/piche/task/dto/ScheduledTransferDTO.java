@@ -0,0 +1,25 @@
+package com.piche.task.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Transfer to schedule: it first runs at {@code startsAt}, now when {@code null}, and repeats every
+ * {@code recurrence}, an ISO-8601 period such as {@code P1D} or {@code P1M}, unless that is {@code null}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ScheduledTransferDTO {
+
+    private Long receiverId;
+
+    private double deposit;
+
+    private LocalDateTime startsAt;
+
+    private String recurrence;
+}
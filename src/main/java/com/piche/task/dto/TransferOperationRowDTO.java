@@ -0,0 +1,24 @@
+package com.piche.task.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Transfer operation row without its accounts, which may live on other shards.
+ */
+@Data
+@AllArgsConstructor
+public class TransferOperationRowDTO {
+
+    private Long id;
+
+    private Long senderId;
+
+    private Long receiverId;
+
+    private LocalDateTime updatedAt;
+
+    private Double deposit;
+}
@@ -1,20 +1,199 @@
 package com.piche.task.encoder;
 
+import com.piche.task.exception.TooManyRequestsException;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-public class PasswordEncoder {
+/**
+ * Hashes passwords with PBKDF2 (HMAC-SHA256) as {@code pbkdf2$<iterations>$<salt>$<hash>}.
+ * <p>
+ * Hashing runs on its own bounded pool, so slow hashes can't take over the request threads: when all hashing
+ * threads are busy and the queue is full the request is rejected with {@link TooManyRequestsException}. Legacy
+ * SHA-256 hashes still match, and {@link #needsRehash} tells which hashes to replace after a successful login.
+ */
+@Slf4j
+public class PasswordEncoder implements AutoCloseable {
 
     public static final String SALT = "-salt";
 
-    private final MessageDigest digest;
+    private static final String PREFIX = "pbkdf2";
+
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+
+    private static final int SALT_BYTES = 16;
+
+    private static final int HASH_BITS = 256;
+
+    private static final int CALIBRATION_ITERATIONS = 10_000;
+
+    private final int iterations;
+
+    private final ThreadPoolExecutor executor;
+
+    private final VerificationCache cache;
+
+    private final SecureRandom random = new SecureRandom();
+
+    public PasswordEncoder(int iterations, int threads, int queueSize, VerificationCache cache) {
+        this.iterations = iterations;
+        this.cache = cache;
+
+        AtomicInteger threadCount = new AtomicInteger();
+
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), task -> {
+                    Thread thread = new Thread(task, "password-hashing-" + threadCount.incrementAndGet());
+
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Returns the power of two iterations that takes closest to {@code target} on this machine, but at least
+     * {@code minIterations}. Rounding keeps the cost stable across restarts, so hashes aren't upgraded back and forth.
+     */
+    public static int calibrate(Duration target, int minIterations) {
+        byte[] salt = new byte[SALT_BYTES];
+
+        pbkdf2("calibration", salt, CALIBRATION_ITERATIONS);
+
+        long start = System.nanoTime();
+
+        pbkdf2("calibration", salt, CALIBRATION_ITERATIONS);
+
+        double nanosPerIteration = (double) (System.nanoTime() - start) / CALIBRATION_ITERATIONS;
+        double exponent = Math.log(target.toNanos() / nanosPerIteration) / Math.log(2);
+        int iterations = Math.max(1 << (int) Math.min(30, Math.max(0, Math.round(exponent))), minIterations);
+
+        log.info("Hashing passwords with {} PBKDF2 iterations", iterations);
+
+        return iterations;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    public String encode(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+
+        random.nextBytes(salt);
+
+        byte[] hash = offload(() -> pbkdf2(password, salt, iterations));
+
+        return String.join("$", PREFIX, String.valueOf(iterations),
+                Base64.getEncoder().withoutPadding().encodeToString(salt),
+                Base64.getEncoder().withoutPadding().encodeToString(hash));
+    }
+
+    public boolean matches(String password, String encoded) {
+        if (cache.isVerified(password, encoded)) {
+            return true;
+        }
+
+        boolean matches;
+
+        if (isLegacy(encoded)) {
+            matches = MessageDigest.isEqual(legacyHash(password).getBytes(StandardCharsets.US_ASCII),
+                    encoded.getBytes(StandardCharsets.US_ASCII));
+        } else {
+            String[] parts = encoded.split("\\$");
+
+            if (parts.length != 4 || !PREFIX.equals(parts[0])) {
+                return false;
+            }
+
+            byte[] salt = Base64.getDecoder().decode(parts[2]);
+            byte[] expected = Base64.getDecoder().decode(parts[3]);
+            int storedIterations = Integer.parseInt(parts[1]);
+
+            matches = MessageDigest.isEqual(expected, offload(() -> pbkdf2(password, salt, storedIterations)));
+        }
+
+        if (matches) {
+            cache.record(password, encoded);
+        }
+
+        return matches;
+    }
+
+    /**
+     * Whether the hash is a legacy one or uses fewer iterations than new hashes do.
+     */
+    public boolean needsRehash(String encoded) {
+        if (isLegacy(encoded)) {
+            return true;
+        }
+
+        String[] parts = encoded.split("\\$");
 
-    public PasswordEncoder() throws NoSuchAlgorithmException {
-        digest = MessageDigest.getInstance("SHA-256");
+        return parts.length != 4 || Integer.parseInt(parts[1]) < iterations;
     }
 
-    public String encode(String text) {
-        return bytesToHex(digest.digest((text + SALT).getBytes()));
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private byte[] offload(Callable<byte[]> task) {
+        Future<byte[]> future;
+
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            throw new TooManyRequestsException("Too many password checks in progress", 1);
+        }
+
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while hashing a password", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Can`t hash a password", e.getCause());
+        }
+    }
+
+    private static boolean isLegacy(String encoded) {
+        return !encoded.startsWith(PREFIX + "$");
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    private static String legacyHash(String password) {
+        try {
+            return bytesToHex(MessageDigest.getInstance("SHA-256").digest((password + SALT).getBytes()));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
     private static String bytesToHex(byte[] arr) {
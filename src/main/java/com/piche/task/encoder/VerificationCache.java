@@ -0,0 +1,101 @@
+package com.piche.task.encoder;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Remembers passwords that recently matched a hash, so repeated logins skip the slow hash for {@code ttl}.
+ * <p>
+ * Entries are keyed by an HMAC of the password and the hash under a random per-process key: neither is kept in
+ * memory, and a changed or upgraded hash no longer matches its old entries. At most {@code maxEntries} are kept,
+ * the least recently used one is evicted first.
+ */
+public class VerificationCache {
+
+    private final long ttlNanos;
+
+    private final int maxEntries;
+
+    private final LongSupplier clock;
+
+    private final SecretKey key;
+
+    private final Map<ByteBuffer, Long> verifiedAt;
+
+    public VerificationCache(Duration ttl, int maxEntries, LongSupplier clock) throws GeneralSecurityException {
+        this.ttlNanos = ttl.toNanos();
+        this.maxEntries = maxEntries;
+        this.clock = clock;
+        this.key = KeyGenerator.getInstance("HmacSHA256").generateKey();
+        this.verifiedAt = new LinkedHashMap<>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Long> eldest) {
+                return size() > VerificationCache.this.maxEntries;
+            }
+        };
+    }
+
+    public void record(String password, String hash) {
+        if (maxEntries == 0) {
+            return;
+        }
+
+        ByteBuffer entry = key(password, hash);
+
+        synchronized (verifiedAt) {
+            verifiedAt.put(entry, clock.getAsLong());
+        }
+    }
+
+    public boolean isVerified(String password, String hash) {
+        if (maxEntries == 0) {
+            return false;
+        }
+
+        ByteBuffer entry = key(password, hash);
+
+        synchronized (verifiedAt) {
+            Long time = verifiedAt.get(entry);
+
+            if (time == null) {
+                return false;
+            }
+
+            if (clock.getAsLong() - time >= ttlNanos) {
+                verifiedAt.remove(entry);
+                return false;
+            }
+
+            return true;
+        }
+    }
+
+    int size() {
+        synchronized (verifiedAt) {
+            return verifiedAt.size();
+        }
+    }
+
+    private ByteBuffer key(String password, String hash) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+
+            mac.init(key);
+            mac.update(hash.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+
+            return ByteBuffer.wrap(mac.doFinal(password.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
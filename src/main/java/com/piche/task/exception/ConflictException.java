@@ -0,0 +1,8 @@
+package com.piche.task.exception;
+
+public class ConflictException extends RuntimeException {
+
+    public ConflictException(String message) {
+        super(message);
+    }
+}
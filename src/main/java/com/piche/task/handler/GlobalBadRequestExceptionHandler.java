@@ -18,7 +18,8 @@ class GlobalBadRequestExceptionHandler {
     public ResponseEntity<Object> defaultErrorHandler(HttpServletRequest req, Exception e) {
         return ResponseEntity.badRequest().body(ErrorMessage.builder()
                 .statusCode(HttpStatus.BAD_REQUEST.value())
-                .message(e.getMessage()));
+                .message(e.getMessage())
+                .build());
     }
 
     @Data
@@ -0,0 +1,22 @@
+package com.piche.task.handler;
+
+import com.piche.task.exception.ConflictException;
+import com.piche.task.handler.GlobalBadRequestExceptionHandler.ErrorMessage;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+
+@ControllerAdvice
+class GlobalConflictExceptionHandler {
+
+    @ExceptionHandler(value = ConflictException.class)
+    public ResponseEntity<Object> conflictHandler(HttpServletRequest req, ConflictException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(ErrorMessage.builder()
+                        .statusCode(HttpStatus.CONFLICT.value())
+                        .message(e.getMessage())
+                        .build());
+    }
+}
@@ -0,0 +1,24 @@
+package com.piche.task.handler;
+
+import com.piche.task.exception.ServiceUnavailableException;
+import com.piche.task.handler.GlobalBadRequestExceptionHandler.ErrorMessage;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+
+@ControllerAdvice
+class GlobalServiceUnavailableExceptionHandler {
+
+    @ExceptionHandler(value = ServiceUnavailableException.class)
+    public ResponseEntity<Object> serviceUnavailableHandler(HttpServletRequest req, ServiceUnavailableException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(ErrorMessage.builder()
+                        .statusCode(HttpStatus.SERVICE_UNAVAILABLE.value())
+                        .message(e.getMessage())
+                        .build());
+    }
+}
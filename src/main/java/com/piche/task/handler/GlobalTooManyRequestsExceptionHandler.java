@@ -0,0 +1,24 @@
+package com.piche.task.handler;
+
+import com.piche.task.exception.TooManyRequestsException;
+import com.piche.task.handler.GlobalBadRequestExceptionHandler.ErrorMessage;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+
+@ControllerAdvice
+class GlobalTooManyRequestsExceptionHandler {
+
+    @ExceptionHandler(value = TooManyRequestsException.class)
+    public ResponseEntity<Object> tooManyRequestsHandler(HttpServletRequest req, TooManyRequestsException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(ErrorMessage.builder()
+                        .statusCode(HttpStatus.TOO_MANY_REQUESTS.value())
+                        .message(e.getMessage())
+                        .build());
+    }
+}
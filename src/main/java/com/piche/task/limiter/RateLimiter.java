@@ -0,0 +1,230 @@
+package com.piche.task.limiter;
+
+import com.piche.task.exception.TooManyRequestsException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+@Component
+public class RateLimiter {
+
+    private final boolean enabled;
+
+    private final TokenBucket globalBucket;
+
+    private final Scope accountScope;
+
+    private final Scope clientScope;
+
+    private final Counter globalRejected;
+
+    private final Counter allowed;
+
+    @Autowired
+    public RateLimiter(@Value("${rate-limit.enabled:true}") boolean enabled,
+                       @Value("${rate-limit.global.rate:1000}") double globalRate,
+                       @Value("${rate-limit.global.burst:2000}") int globalBurst,
+                       @Value("${rate-limit.account.rate:20}") double accountRate,
+                       @Value("${rate-limit.account.burst:40}") int accountBurst,
+                       @Value("${rate-limit.client.rate:50}") double clientRate,
+                       @Value("${rate-limit.client.burst:100}") int clientBurst,
+                       @Value("${rate-limit.max-keys:100000}") int maxKeys,
+                       MeterRegistry registry) {
+        this(enabled, globalRate, globalBurst, accountRate, accountBurst, clientRate, clientBurst, maxKeys,
+                registry, System::nanoTime);
+    }
+
+    RateLimiter(boolean enabled,
+                double globalRate,
+                int globalBurst,
+                double accountRate,
+                int accountBurst,
+                double clientRate,
+                int clientBurst,
+                int maxKeys,
+                MeterRegistry registry,
+                LongSupplier clock) {
+        this.enabled = enabled;
+        this.globalBucket = new TokenBucket(globalRate, globalBurst, clock);
+        this.accountScope = new Scope("account", accountRate, accountBurst, maxKeys, registry, clock);
+        this.clientScope = new Scope("client", clientRate, clientBurst, maxKeys, registry, clock);
+        this.globalRejected = rejectedCounter(registry, "global");
+        this.allowed = Counter.builder("rate_limit.requests")
+                .tag("result", "allowed")
+                .register(registry);
+    }
+
+    /**
+     * Takes a token from the account, client and global buckets; a rejected request gets back the tokens it took.
+     *
+     * @throws TooManyRequestsException if any of the buckets is empty
+     */
+    public void acquire(Long accountId, String client) {
+        acquire(accountId == null ? List.of() : List.of(accountId), client);
+    }
+
+    /**
+     * Takes a token from the bucket of every account, then from the client and global buckets, for a request that
+     * moves money from several accounts at once; a rejected request gets back the tokens it took.
+     *
+     * @throws TooManyRequestsException if any of the buckets is empty
+     */
+    public void acquire(Collection<Long> accountIds, String client) {
+        if (!enabled) {
+            return;
+        }
+
+        List<TokenBucket> taken = new ArrayList<>(accountIds.size() + 1);
+
+        try {
+            for (Long accountId : accountIds) {
+                accountScope.acquire(accountId, taken);
+            }
+
+            clientScope.acquire(client, taken);
+
+            long waitNanos = globalBucket.tryAcquire();
+
+            if (waitNanos > 0) {
+                globalRejected.increment();
+                throw new TooManyRequestsException("Too many requests", toRetryAfterSeconds(waitNanos));
+            }
+        } catch (TooManyRequestsException e) {
+            taken.forEach(TokenBucket::refund);
+            throw e;
+        }
+
+        allowed.increment();
+    }
+
+    private static Counter rejectedCounter(MeterRegistry registry, String scope) {
+        return Counter.builder("rate_limit.requests")
+                .tag("result", "rejected")
+                .tag("scope", scope)
+                .register(registry);
+    }
+
+    private static long toRetryAfterSeconds(long waitNanos) {
+        return Math.max(1L, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /**
+     * Buckets of one scope, about {@code maxKeys} of them, in a concurrent map, so lookups of different keys never
+     * wait for each other. Once the map is full, a new key drops every idle bucket, which is the same as a new one;
+     * as a bucket in use gets idle within {@code burst / rate} seconds, that sweep runs at most once per such period
+     * and its cost is amortized over the requests in between. A new key that still finds the map full is charged to
+     * a single overflow bucket shared by all such keys, so it is limited to the rate of one key instead of only
+     * globally.
+     */
+    private static class Scope {
+
+        private final String name;
+
+        private final double rate;
+
+        private final int burst;
+
+        private final int maxKeys;
+
+        private final LongSupplier clock;
+
+        private final long sweepIntervalNanos;
+
+        private final AtomicLong nextSweep;
+
+        private final TokenBucket overflow;
+
+        private final Counter rejected;
+
+        private final Counter overflowed;
+
+        private final Map<Object, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+        Scope(String name, double rate, int burst, int maxKeys, MeterRegistry registry, LongSupplier clock) {
+            if (maxKeys < 1) {
+                throw new IllegalArgumentException("rate-limit.max-keys must be positive");
+            }
+
+            this.name = name;
+            this.rate = rate;
+            this.burst = burst;
+            this.maxKeys = maxKeys;
+            this.clock = clock;
+            this.sweepIntervalNanos = Math.max(1L, (long) (TimeUnit.SECONDS.toNanos(burst) / rate));
+            this.nextSweep = new AtomicLong(clock.getAsLong());
+            this.overflow = new TokenBucket(rate, burst, clock);
+            this.rejected = rejectedCounter(registry, name);
+            this.overflowed = Counter.builder("rate_limit.overflow")
+                    .tag("scope", name)
+                    .register(registry);
+
+            registry.gauge("rate_limit.buckets", Tags.of("scope", name), this, Scope::size);
+        }
+
+        /**
+         * Takes a token from the bucket of the key and adds the bucket to {@code taken}.
+         */
+        void acquire(Object key, List<TokenBucket> taken) {
+            if (key == null) {
+                return;
+            }
+
+            TokenBucket bucket = bucket(key);
+            long waitNanos = bucket.tryAcquire();
+
+            if (waitNanos > 0) {
+                rejected.increment();
+                throw new TooManyRequestsException(String.format("Too many requests for %s '%s'", name, key),
+                        toRetryAfterSeconds(waitNanos));
+            }
+
+            taken.add(bucket);
+        }
+
+        private TokenBucket bucket(Object key) {
+            TokenBucket bucket = buckets.get(key);
+
+            if (bucket != null) {
+                return bucket;
+            }
+
+            if (buckets.size() >= maxKeys && !evictIdle()) {
+                overflowed.increment();
+                return overflow;
+            }
+
+            return buckets.computeIfAbsent(key, k -> new TokenBucket(rate, burst, clock));
+        }
+
+        /**
+         * Drops the idle buckets unless another thread did less than a sweep interval ago, and returns whether there
+         * is room for a new bucket.
+         */
+        private boolean evictIdle() {
+            long now = clock.getAsLong();
+            long next = nextSweep.get();
+
+            if (now >= next && nextSweep.compareAndSet(next, now + sweepIntervalNanos)) {
+                buckets.values().removeIf(TokenBucket::isIdle);
+            }
+
+            return buckets.size() < maxKeys;
+        }
+
+        private int size() {
+            return buckets.size();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.piche.task.limiter;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Lock-free token bucket.
+ * <p>
+ * The bucket is stored as a single "theoretical arrival time" (the moment the bucket would be full again),
+ * so acquiring a token is one compare-and-set without any locking. An idle bucket is indistinguishable
+ * from a freshly created one, which lets callers drop idle buckets at any time.
+ */
+public class TokenBucket {
+
+    private final long emissionIntervalNanos;
+
+    private final long burstToleranceNanos;
+
+    private final LongSupplier clock;
+
+    private final AtomicLong theoreticalArrivalTime;
+
+    public TokenBucket(double tokensPerSecond, int capacity, LongSupplier clock) {
+        if (tokensPerSecond <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Token bucket rate and capacity must be positive");
+        }
+
+        this.emissionIntervalNanos = Math.max(1L, (long) (1_000_000_000L / tokensPerSecond));
+        this.burstToleranceNanos = emissionIntervalNanos * capacity;
+        this.clock = clock;
+        this.theoreticalArrivalTime = new AtomicLong(clock.getAsLong());
+    }
+
+    /**
+     * Tries to take a single token.
+     *
+     * @return 0 if the token was taken, otherwise the amount of nanoseconds until a token becomes available
+     */
+    public long tryAcquire() {
+        while (true) {
+            long now = clock.getAsLong();
+            long current = theoreticalArrivalTime.get();
+            long next = Math.max(current, now) + emissionIntervalNanos;
+            long waitNanos = next - now - burstToleranceNanos;
+
+            if (waitNanos > 0) {
+                return waitNanos;
+            }
+
+            if (theoreticalArrivalTime.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Gives back a token taken by {@link #tryAcquire}; a bucket can't get fuller than its capacity.
+     */
+    public void refund() {
+        theoreticalArrivalTime.addAndGet(-emissionIntervalNanos);
+    }
+
+    public boolean isIdle() {
+        return theoreticalArrivalTime.get() <= clock.getAsLong();
+    }
+}
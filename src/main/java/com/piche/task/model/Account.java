@@ -5,14 +5,24 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import jakarta.persistence.Version;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.time.LocalDateTime;
+
 @Entity
-@Table(name = "account")
+@Table(name = "account", indexes = {
+        @Index(name = "account_name_idx", columnList = "name, id"),
+        @Index(name = "account_balance_idx", columnList = "balance, id")
+}, uniqueConstraints = {
+        @UniqueConstraint(name = "account_name_uq", columnNames = "name")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -31,4 +41,30 @@ public class Account {
 
     @Column(name = "balance", nullable = false)
     private Double balance;
+
+    /**
+     * Sum of the active holds; only the rest of the balance is available to withdraw or transfer.
+     */
+    @Builder.Default
+    @Column(name = "held", nullable = false)
+    private Double held = 0.0;
+
+    @Column(name = "deposit_count", nullable = false)
+    private Long depositCount;
+
+    @Column(name = "sent_count", nullable = false)
+    private Long sentCount;
+
+    @Column(name = "received_count", nullable = false)
+    private Long receivedCount;
+
+    @Column(name = "last_operation_at")
+    private LocalDateTime lastOperationAt;
+
+    /**
+     * Incremented by every balance update; a balance check holds only while the version is unchanged.
+     */
+    @Version
+    @Column(name = "version", nullable = false)
+    private Long version;
 }
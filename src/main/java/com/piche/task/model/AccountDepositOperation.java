@@ -3,6 +3,7 @@ package com.piche.task.model;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.Table;
@@ -14,7 +15,10 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "deposit_operation")
+@Table(name = "deposit_operation", indexes = {
+        @Index(name = "deposit_operation_updated_at_idx", columnList = "updated_at"),
+        @Index(name = "deposit_operation_account_id_updated_at_idx", columnList = "account_id, updated_at")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
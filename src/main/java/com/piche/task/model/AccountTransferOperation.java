@@ -2,9 +2,11 @@ package com.piche.task.model;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.ForeignKey;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.Table;
@@ -16,7 +18,11 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "transfer_operation")
+@Table(name = "transfer_operation", indexes = {
+        @Index(name = "transfer_operation_updated_at_idx", columnList = "updated_at"),
+        @Index(name = "transfer_operation_sender_id_updated_at_idx", columnList = "sender_id, updated_at"),
+        @Index(name = "transfer_operation_receiver_id_updated_at_idx", columnList = "receiver_id, updated_at")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -32,7 +38,8 @@ public class AccountTransferOperation {
     private Account sender;
 
     @ManyToOne(targetEntity = Account.class)
-    @JoinColumn(name = "receiver_id", nullable = false)
+    @JoinColumn(name = "receiver_id", nullable = false,
+            foreignKey = @ForeignKey(name = "transfer_operation_receiver_fk"))
     private Account receiver;
 
     @Column(name = "updated_at", nullable = false)
@@ -0,0 +1,53 @@
+package com.piche.task.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Funds of an account reserved until {@code expiresAt}, stored on the account's shard. {@code transferId} is the
+ * transfer a captured hold turned into.
+ */
+@Entity
+@Table(name = "balance_hold", indexes = {
+        @Index(name = "balance_hold_account_id_state_idx", columnList = "account_id, state"),
+        @Index(name = "balance_hold_state_expires_at_idx", columnList = "state, expires_at")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BalanceHold {
+
+    @Id
+    private Long id;
+
+    @Column(name = "account_id", nullable = false)
+    private Long accountId;
+
+    @Column(name = "amount", nullable = false)
+    private Double amount;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "state", nullable = false)
+    private BalanceHoldState state;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+
+    @Column(name = "transfer_id")
+    private Long transferId;
+}
@@ -0,0 +1,12 @@
+package com.piche.task.model;
+
+/**
+ * State of a balance hold. Only a {@code HELD} hold counts against the available balance; it ends exactly once, by
+ * being captured into a transfer, released or expired.
+ */
+public enum BalanceHoldState {
+    HELD,
+    CAPTURED,
+    RELEASED,
+    EXPIRED
+}
@@ -0,0 +1,48 @@
+package com.piche.task.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * The balance of an account at the end of a day it had operations on.
+ */
+@Entity
+@Table(name = "daily_balance")
+@IdClass(DailyBalance.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class DailyBalance {
+
+    @Id
+    @Column(name = "account_id")
+    private Long accountId;
+
+    @Id
+    @Column(name = "balance_day")
+    private LocalDate day;
+
+    @Column(name = "balance", nullable = false)
+    private Double balance;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+
+        private Long accountId;
+
+        private LocalDate day;
+    }
+}
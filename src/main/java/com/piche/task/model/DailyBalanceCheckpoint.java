@@ -0,0 +1,35 @@
+package com.piche.task.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * The single row holding which days have been rolled up into {@link DailyBalance} rows: every day from
+ * {@code firstDay} up to, but excluding, {@code nextDay}.
+ */
+@Entity
+@Table(name = "daily_balance_checkpoint")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class DailyBalanceCheckpoint {
+
+    @Id
+    @Column(name = "id")
+    private Integer id;
+
+    @Column(name = "first_day", nullable = false)
+    private LocalDate firstDay;
+
+    @Column(name = "next_day", nullable = false)
+    private LocalDate nextDay;
+}
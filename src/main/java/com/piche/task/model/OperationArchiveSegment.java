@@ -0,0 +1,44 @@
+package com.piche.task.model;
+
+import com.piche.task.archive.ArchiveKind;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "archive_segment")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class OperationArchiveSegment {
+
+    @Id
+    @Column(name = "file_name")
+    private String fileName;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "kind", nullable = false)
+    private ArchiveKind kind;
+
+    @Column(name = "row_count", nullable = false)
+    private Integer rowCount;
+
+    @Column(name = "min_updated_at", nullable = false)
+    private LocalDateTime minUpdatedAt;
+
+    @Column(name = "max_updated_at", nullable = false)
+    private LocalDateTime maxUpdatedAt;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,59 @@
+package com.piche.task.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Change of an account balance, written in the transaction of the operation that caused it. {@code position}
+ * stays {@code null} until the event is dispatched and then orders the feed.
+ */
+@Entity
+@Table(name = "outbox_event", indexes = {
+        @Index(name = "outbox_event_position_idx", columnList = "position", unique = true),
+        @Index(name = "outbox_event_account_id_position_idx", columnList = "account_id, position")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class OutboxEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE)
+    private Long id;
+
+    @Column(name = "position")
+    private Long position;
+
+    @Column(name = "account_id", nullable = false)
+    private Long accountId;
+
+    @Column(name = "operation_id", nullable = false)
+    private Long operationId;
+
+    @Column(name = "type", nullable = false)
+    private String type;
+
+    @Column(name = "role")
+    private String role;
+
+    @Column(name = "deposit", nullable = false)
+    private Double deposit;
+
+    @Column(name = "balance", nullable = false)
+    private Double balance;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,29 @@
+package com.piche.task.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The balance of an account according to its operations up to the reconciliation watermark.
+ */
+@Entity
+@Table(name = "reconciliation_balance")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ReconciliationBalance {
+
+    @Id
+    @Column(name = "account_id")
+    private Long accountId;
+
+    @Column(name = "expected_balance", nullable = false)
+    private Double expectedBalance;
+}
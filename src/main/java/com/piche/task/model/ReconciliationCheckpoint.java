@@ -0,0 +1,32 @@
+package com.piche.task.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * The single row holding how far balance reconciliation has summed up the operations; the watermark is
+ * {@code null} until the first run.
+ */
+@Entity
+@Table(name = "reconciliation_checkpoint")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ReconciliationCheckpoint {
+
+    @Id
+    @Column(name = "id")
+    private Integer id;
+
+    @Column(name = "watermark")
+    private LocalDateTime watermark;
+}
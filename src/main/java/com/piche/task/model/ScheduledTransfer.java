@@ -0,0 +1,75 @@
+package com.piche.task.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Transfer to run at {@code startsAt} and, with a {@code recurrence}, every period after it; stored on the sender's
+ * shard. {@code scheduledAt} is the time of the next occurrence and {@code runAt} the time it runs, spread over the
+ * scheduling window. The {@code last*} columns describe the latest run: its time, its transfer or why it failed.
+ */
+@Entity
+@Table(name = "scheduled_transfer", indexes = {
+        @Index(name = "scheduled_transfer_state_run_at_idx", columnList = "state, run_at"),
+        @Index(name = "scheduled_transfer_sender_id_state_idx", columnList = "sender_id, state")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ScheduledTransfer {
+
+    @Id
+    private Long id;
+
+    @Column(name = "sender_id", nullable = false)
+    private Long senderId;
+
+    @Column(name = "receiver_id", nullable = false)
+    private Long receiverId;
+
+    @Column(name = "amount", nullable = false)
+    private Double amount;
+
+    @Column(name = "starts_at", nullable = false)
+    private LocalDateTime startsAt;
+
+    @Column(name = "recurrence")
+    private String recurrence;
+
+    @Column(name = "occurrence", nullable = false)
+    private Long occurrence;
+
+    @Column(name = "scheduled_at", nullable = false)
+    private LocalDateTime scheduledAt;
+
+    @Column(name = "run_at", nullable = false)
+    private LocalDateTime runAt;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "state", nullable = false)
+    private ScheduledTransferState state;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "last_run_at")
+    private LocalDateTime lastRunAt;
+
+    @Column(name = "last_transfer_id")
+    private Long lastTransferId;
+
+    @Column(name = "last_error")
+    private String lastError;
+}
@@ -0,0 +1,10 @@
+package com.piche.task.model;
+
+/**
+ * State of a scheduled transfer: {@code ACTIVE} until a one-off transfer has run or the schedule is cancelled.
+ */
+public enum ScheduledTransferState {
+    ACTIVE,
+    COMPLETED,
+    CANCELLED
+}
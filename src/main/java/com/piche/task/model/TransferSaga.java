@@ -0,0 +1,47 @@
+package com.piche.task.model;
+
+import com.piche.task.sharding.TransferSagaState;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "transfer_saga", indexes = {
+        @Index(name = "transfer_saga_state_updated_at_idx", columnList = "state, updated_at")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TransferSaga {
+
+    @Id
+    @Column(name = "transfer_id")
+    private Long transferId;
+
+    @Column(name = "sender_id", nullable = false)
+    private Long senderId;
+
+    @Column(name = "receiver_id", nullable = false)
+    private Long receiverId;
+
+    @Column(name = "amount", nullable = false)
+    private Double amount;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "state", nullable = false)
+    private TransferSagaState state;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+}
@@ -1,11 +1,16 @@
 package com.piche.task.repository;
 
+import com.piche.task.archive.ArchivedOperation;
+import com.piche.task.dto.AccountAmountDTO;
+import com.piche.task.dto.OperationAggregateDTO;
 import com.piche.task.model.AccountDepositOperation;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -16,4 +21,31 @@ public interface AccountDepositOperationRepository extends JpaRepository<Account
 
     @Query("SELECT o FROM AccountDepositOperation o WHERE o.account.id = ?1 AND o.updatedAt >= ?2 AND o.updatedAt < ?3")
     List<AccountDepositOperation> findAllByAccountIdAndDateSpan(Long id, LocalDateTime from, LocalDateTime to);
+
+    @Query("SELECT new com.piche.task.dto.AccountAmountDTO(o.account.id, SUM(o.deposit)) FROM AccountDepositOperation o " +
+            "WHERE o.updatedAt >= ?1 AND o.updatedAt < ?2 GROUP BY o.account.id")
+    List<AccountAmountDTO> sumByAccountIdAndDateSpan(LocalDateTime from, LocalDateTime to);
+
+    @Query("SELECT new com.piche.task.dto.AccountAmountDTO(o.account.id, SUM(o.deposit)) FROM AccountDepositOperation o " +
+            "WHERE o.account.id IN ?1 AND o.updatedAt >= ?2 GROUP BY o.account.id")
+    List<AccountAmountDTO> sumByAccountIdInAndUpdatedAfter(Collection<Long> ids, LocalDateTime from);
+
+    @Query("SELECT MIN(o.updatedAt) FROM AccountDepositOperation o")
+    LocalDateTime findMinUpdatedAt();
+
+    @Query("SELECT new com.piche.task.dto.OperationAggregateDTO(COUNT(o), COALESCE(SUM(o.deposit), 0.0)) " +
+            "FROM AccountDepositOperation o WHERE o.account.id = ?1 AND o.updatedAt >= ?2 AND o.updatedAt < ?3")
+    OperationAggregateDTO aggregateByAccountIdAndDateSpan(Long id, LocalDateTime from, LocalDateTime to);
+
+    @Query("SELECT new com.piche.task.dto.OperationAggregateDTO(COUNT(o), COALESCE(SUM(o.deposit), 0.0)) " +
+            "FROM AccountDepositOperation o WHERE o.account.id = ?1 AND o.updatedAt >= ?2")
+    OperationAggregateDTO aggregateByAccountIdAndUpdatedAfter(Long id, LocalDateTime from);
+
+    @Query("SELECT new com.piche.task.dto.OperationAggregateDTO(COUNT(o), COALESCE(SUM(o.deposit), 0.0)) " +
+            "FROM AccountDepositOperation o WHERE o.account.id = ?1 AND o.updatedAt < ?2")
+    OperationAggregateDTO aggregateByAccountIdAndUpdatedBefore(Long id, LocalDateTime to);
+
+    @Query("SELECT new com.piche.task.archive.ArchivedOperation(o.id, o.account.id, o.updatedAt, o.deposit) " +
+            "FROM AccountDepositOperation o WHERE o.updatedAt < ?1 ORDER BY o.updatedAt, o.id")
+    List<ArchivedOperation> findArchivableBefore(LocalDateTime horizon, Pageable pageable);
 }
@@ -1,18 +1,45 @@
 package com.piche.task.repository;
 
+import com.piche.task.dto.AccountActivityDTO;
+import com.piche.task.dto.AccountAmountDTO;
 import com.piche.task.model.Account;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface AccountRepository extends JpaRepository<Account, Long> {
+public interface AccountRepository extends JpaRepository<Account, Long>, AccountRepositoryCustom {
 
     @Query("SELECT count(a) > 0 FROM Account a WHERE a.name = ?1")
     boolean existsByName(String name);
 
     @Query("SELECT a FROM Account a WHERE a.name = ?1")
     Optional<Account> findByName(String name);
+
+    @Query("SELECT new com.piche.task.dto.AccountAmountDTO(a.id, a.balance) FROM Account a WHERE a.id IN ?1")
+    List<AccountAmountDTO> findBalancesByIdIn(Collection<Long> ids);
+
+    @Query(value = "SELECT NEXT VALUE FOR account_seq", nativeQuery = true)
+    long nextSequenceValue();
+
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO account (id, name, password_hash, balance, held, deposit_count, sent_count, " +
+            "received_count, version) VALUES (?1, ?2, ?3, ?4, 0, 0, 0, 0, 0)", nativeQuery = true)
+    void insert(Long id, String name, String passwordHash, Double balance);
+
+    @Query("SELECT new com.piche.task.dto.AccountActivityDTO(a.id, a.balance, a.depositCount, a.sentCount, " +
+            "a.receivedCount, a.lastOperationAt) FROM Account a WHERE a.id = ?1")
+    Optional<AccountActivityDTO> findActivityById(Long id);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE Account a SET a.passwordHash = ?3 WHERE a.id = ?1 AND a.passwordHash = ?2")
+    int replacePasswordHash(Long id, String passwordHash, String newPasswordHash);
 }
@@ -0,0 +1,15 @@
+package com.piche.task.repository;
+
+import com.piche.task.dto.AccountFilterDTO;
+import com.piche.task.dto.AccountSummaryDTO;
+
+import java.util.List;
+
+public interface AccountRepositoryCustom {
+
+    /**
+     * Returns up to {@code limit} accounts matching the filter in its order, starting right after the {@code after}
+     * row or from the beginning when it is {@code null}.
+     */
+    List<AccountSummaryDTO> findPage(AccountFilterDTO filter, AccountSummaryDTO after, int limit);
+}
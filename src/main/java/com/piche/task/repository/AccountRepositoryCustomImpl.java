@@ -0,0 +1,78 @@
+package com.piche.task.repository;
+
+import com.piche.task.dto.AccountFilterDTO;
+import com.piche.task.dto.AccountSort;
+import com.piche.task.dto.AccountSummaryDTO;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import lombok.AllArgsConstructor;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@AllArgsConstructor
+public class AccountRepositoryCustomImpl implements AccountRepositoryCustom {
+
+    @PersistenceContext
+    private final EntityManager manager;
+
+    @Override
+    public List<AccountSummaryDTO> findPage(AccountFilterDTO filter, AccountSummaryDTO after, int limit) {
+        StringBuilder jpql = new StringBuilder(
+                "SELECT new com.piche.task.dto.AccountSummaryDTO(a.id, a.name, a.balance) FROM Account a WHERE 1 = 1");
+        Map<String, Object> parameters = new HashMap<>();
+
+        if (filter.getNamePrefix() != null && !filter.getNamePrefix().isEmpty()) {
+            jpql.append(" AND a.name LIKE :namePrefix ESCAPE '\\'");
+            parameters.put("namePrefix", escapeLike(filter.getNamePrefix()) + "%");
+        }
+
+        if (filter.getMinBalance() != null) {
+            jpql.append(" AND a.balance >= :minBalance");
+            parameters.put("minBalance", filter.getMinBalance());
+        }
+
+        if (filter.getMaxBalance() != null) {
+            jpql.append(" AND a.balance <= :maxBalance");
+            parameters.put("maxBalance", filter.getMaxBalance());
+        }
+
+        AccountSort sort = filter.getSort();
+        String direction = filter.isDescending() ? "DESC" : "ASC";
+        String comparison = filter.isDescending() ? "<" : ">";
+
+        if (after != null) {
+            if (sort == AccountSort.ID) {
+                jpql.append(" AND a.id ").append(comparison).append(" :afterId");
+            } else {
+                String field = "a." + sort.getField();
+
+                jpql.append(" AND (").append(field).append(' ').append(comparison).append(" :afterKey OR (")
+                        .append(field).append(" = :afterKey AND a.id ").append(comparison).append(" :afterId))");
+                parameters.put("afterKey", sort == AccountSort.NAME ? after.getName() : after.getBalance());
+            }
+
+            parameters.put("afterId", after.getId());
+        }
+
+        if (sort != AccountSort.ID) {
+            jpql.append(" ORDER BY a.").append(sort.getField()).append(' ').append(direction).append(", a.id ")
+                    .append(direction);
+        } else {
+            jpql.append(" ORDER BY a.id ").append(direction);
+        }
+
+        TypedQuery<AccountSummaryDTO> query = manager.createQuery(jpql.toString(), AccountSummaryDTO.class)
+                .setMaxResults(limit);
+
+        parameters.forEach(query::setParameter);
+
+        return query.getResultList();
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
@@ -1,11 +1,17 @@
 package com.piche.task.repository;
 
+import com.piche.task.archive.ArchivedOperation;
+import com.piche.task.dto.AccountAmountDTO;
+import com.piche.task.dto.OperationAggregateDTO;
+import com.piche.task.dto.TransferOperationRowDTO;
 import com.piche.task.model.AccountTransferOperation;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -22,4 +28,67 @@ public interface AccountTransferOperationRepository extends JpaRepository<Accoun
 
     @Query("SELECT o FROM AccountTransferOperation o WHERE o.receiver.id = ?1 AND o.updatedAt >= ?2 AND o.updatedAt < ?3")
     List<AccountTransferOperation> findAllByReceiverIdAndDateSpan(Long id, LocalDateTime from, LocalDateTime to);
+
+    @Query("SELECT new com.piche.task.dto.TransferOperationRowDTO(o.id, o.sender.id, o.receiver.id, o.updatedAt, o.deposit) " +
+            "FROM AccountTransferOperation o WHERE o.sender.id = ?1")
+    List<TransferOperationRowDTO> findRowsBySenderId(Long id);
+
+    @Query("SELECT new com.piche.task.dto.TransferOperationRowDTO(o.id, o.sender.id, o.receiver.id, o.updatedAt, o.deposit) " +
+            "FROM AccountTransferOperation o WHERE o.receiver.id = ?1")
+    List<TransferOperationRowDTO> findRowsByReceiverId(Long id);
+
+    @Query("SELECT new com.piche.task.dto.TransferOperationRowDTO(o.id, o.sender.id, o.receiver.id, o.updatedAt, o.deposit) " +
+            "FROM AccountTransferOperation o WHERE o.sender.id = ?1 AND o.updatedAt >= ?2 AND o.updatedAt < ?3")
+    List<TransferOperationRowDTO> findRowsBySenderIdAndDateSpan(Long id, LocalDateTime from, LocalDateTime to);
+
+    @Query("SELECT new com.piche.task.dto.TransferOperationRowDTO(o.id, o.sender.id, o.receiver.id, o.updatedAt, o.deposit) " +
+            "FROM AccountTransferOperation o WHERE o.receiver.id = ?1 AND o.updatedAt >= ?2 AND o.updatedAt < ?3")
+    List<TransferOperationRowDTO> findRowsByReceiverIdAndDateSpan(Long id, LocalDateTime from, LocalDateTime to);
+
+    @Query("SELECT new com.piche.task.dto.AccountAmountDTO(o.sender.id, SUM(o.deposit)) FROM AccountTransferOperation o " +
+            "WHERE o.updatedAt >= ?1 AND o.updatedAt < ?2 GROUP BY o.sender.id")
+    List<AccountAmountDTO> sumBySenderIdAndDateSpan(LocalDateTime from, LocalDateTime to);
+
+    @Query("SELECT MIN(o.updatedAt) FROM AccountTransferOperation o")
+    LocalDateTime findMinUpdatedAt();
+
+    @Query("SELECT new com.piche.task.dto.AccountAmountDTO(o.receiver.id, SUM(o.deposit)) FROM AccountTransferOperation o " +
+            "WHERE o.updatedAt >= ?1 AND o.updatedAt < ?2 GROUP BY o.receiver.id")
+    List<AccountAmountDTO> sumByReceiverIdAndDateSpan(LocalDateTime from, LocalDateTime to);
+
+    @Query("SELECT new com.piche.task.dto.AccountAmountDTO(o.sender.id, SUM(o.deposit)) FROM AccountTransferOperation o " +
+            "WHERE o.sender.id IN ?1 AND o.updatedAt >= ?2 GROUP BY o.sender.id")
+    List<AccountAmountDTO> sumBySenderIdInAndUpdatedAfter(Collection<Long> ids, LocalDateTime from);
+
+    @Query("SELECT new com.piche.task.dto.AccountAmountDTO(o.receiver.id, SUM(o.deposit)) FROM AccountTransferOperation o " +
+            "WHERE o.receiver.id IN ?1 AND o.updatedAt >= ?2 GROUP BY o.receiver.id")
+    List<AccountAmountDTO> sumByReceiverIdInAndUpdatedAfter(Collection<Long> ids, LocalDateTime from);
+
+    @Query("SELECT new com.piche.task.dto.OperationAggregateDTO(COUNT(o), COALESCE(SUM(o.deposit), 0.0)) " +
+            "FROM AccountTransferOperation o WHERE o.sender.id = ?1 AND o.updatedAt >= ?2 AND o.updatedAt < ?3")
+    OperationAggregateDTO aggregateBySenderIdAndDateSpan(Long id, LocalDateTime from, LocalDateTime to);
+
+    @Query("SELECT new com.piche.task.dto.OperationAggregateDTO(COUNT(o), COALESCE(SUM(o.deposit), 0.0)) " +
+            "FROM AccountTransferOperation o WHERE o.receiver.id = ?1 AND o.updatedAt >= ?2 AND o.updatedAt < ?3")
+    OperationAggregateDTO aggregateByReceiverIdAndDateSpan(Long id, LocalDateTime from, LocalDateTime to);
+
+    @Query("SELECT new com.piche.task.dto.OperationAggregateDTO(COUNT(o), COALESCE(SUM(o.deposit), 0.0)) " +
+            "FROM AccountTransferOperation o WHERE o.sender.id = ?1 AND o.updatedAt >= ?2")
+    OperationAggregateDTO aggregateBySenderIdAndUpdatedAfter(Long id, LocalDateTime from);
+
+    @Query("SELECT new com.piche.task.dto.OperationAggregateDTO(COUNT(o), COALESCE(SUM(o.deposit), 0.0)) " +
+            "FROM AccountTransferOperation o WHERE o.receiver.id = ?1 AND o.updatedAt >= ?2")
+    OperationAggregateDTO aggregateByReceiverIdAndUpdatedAfter(Long id, LocalDateTime from);
+
+    @Query("SELECT new com.piche.task.dto.OperationAggregateDTO(COUNT(o), COALESCE(SUM(o.deposit), 0.0)) " +
+            "FROM AccountTransferOperation o WHERE o.sender.id = ?1 AND o.updatedAt < ?2")
+    OperationAggregateDTO aggregateBySenderIdAndUpdatedBefore(Long id, LocalDateTime to);
+
+    @Query("SELECT new com.piche.task.dto.OperationAggregateDTO(COUNT(o), COALESCE(SUM(o.deposit), 0.0)) " +
+            "FROM AccountTransferOperation o WHERE o.receiver.id = ?1 AND o.updatedAt < ?2")
+    OperationAggregateDTO aggregateByReceiverIdAndUpdatedBefore(Long id, LocalDateTime to);
+
+    @Query("SELECT new com.piche.task.archive.ArchivedOperation(o.id, o.sender.id, o.receiver.id, o.updatedAt, o.deposit) " +
+            "FROM AccountTransferOperation o WHERE o.updatedAt < ?1 ORDER BY o.updatedAt, o.id")
+    List<ArchivedOperation> findArchivableBefore(LocalDateTime horizon, Pageable pageable);
 }
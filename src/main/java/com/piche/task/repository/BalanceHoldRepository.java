@@ -0,0 +1,30 @@
+package com.piche.task.repository;
+
+import com.piche.task.dto.HoldExpiryDTO;
+import com.piche.task.model.BalanceHold;
+import com.piche.task.model.BalanceHoldState;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface BalanceHoldRepository extends JpaRepository<BalanceHold, Long> {
+
+    @Query("SELECT h FROM BalanceHold h WHERE h.accountId = ?1 AND h.state = ?2 ORDER BY h.expiresAt")
+    List<BalanceHold> findAllByAccountIdAndState(Long accountId, BalanceHoldState state);
+
+    @Query("SELECT new com.piche.task.dto.HoldExpiryDTO(h.id, h.accountId, h.expiresAt) FROM BalanceHold h " +
+            "WHERE h.state = ?1")
+    List<HoldExpiryDTO> findExpiriesByState(BalanceHoldState state);
+
+    /**
+     * Ends the hold if it is still {@code HELD}; returns 0 when it has already ended.
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE BalanceHold h SET h.state = ?2, h.transferId = ?3 WHERE h.id = ?1 " +
+            "AND h.state = com.piche.task.model.BalanceHoldState.HELD")
+    int end(Long id, BalanceHoldState state, Long transferId);
+}
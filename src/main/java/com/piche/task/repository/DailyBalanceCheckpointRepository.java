@@ -0,0 +1,18 @@
+package com.piche.task.repository;
+
+import com.piche.task.model.DailyBalanceCheckpoint;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface DailyBalanceCheckpointRepository extends JpaRepository<DailyBalanceCheckpoint, Integer> {
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c FROM DailyBalanceCheckpoint c WHERE c.id = ?1")
+    Optional<DailyBalanceCheckpoint> findForUpdate(Integer id);
+}
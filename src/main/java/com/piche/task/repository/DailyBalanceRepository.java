@@ -0,0 +1,21 @@
+package com.piche.task.repository;
+
+import com.piche.task.model.DailyBalance;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface DailyBalanceRepository extends JpaRepository<DailyBalance, DailyBalance.Key> {
+
+    Optional<DailyBalance> findFirstByAccountIdAndDayLessThanOrderByDayDesc(Long accountId, LocalDate day);
+
+    @Query("SELECT b FROM DailyBalance b WHERE b.accountId IN ?1 AND b.day = " +
+            "(SELECT MAX(p.day) FROM DailyBalance p WHERE p.accountId = b.accountId AND p.day < ?2)")
+    List<DailyBalance> findLatestByAccountIdInAndDayBefore(Collection<Long> accountIds, LocalDate day);
+}
@@ -0,0 +1,9 @@
+package com.piche.task.repository;
+
+import com.piche.task.model.OperationArchiveSegment;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface OperationArchiveSegmentRepository extends JpaRepository<OperationArchiveSegment, String> {
+}
@@ -0,0 +1,42 @@
+package com.piche.task.repository;
+
+import com.piche.task.model.OutboxEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+    @Query("SELECT e.id FROM OutboxEvent e WHERE e.position IS NULL ORDER BY e.id")
+    List<Long> findUndispatchedIds(Pageable pageable);
+
+    @Query("SELECT COALESCE(MAX(e.position), 0) FROM OutboxEvent e")
+    long findMaxPosition();
+
+    @Query("SELECT MIN(e.position) FROM OutboxEvent e")
+    Long findMinPosition();
+
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.position = ?2 WHERE e.id = ?1 AND e.position IS NULL")
+    int assignPosition(Long id, long position);
+
+    @Query("SELECT e FROM OutboxEvent e WHERE e.id IN ?1 ORDER BY e.position")
+    List<OutboxEvent> findAllByIdInOrderByPosition(Collection<Long> ids);
+
+    @Query("SELECT e FROM OutboxEvent e WHERE e.position > ?1 ORDER BY e.position")
+    List<OutboxEvent> findAllAfter(long position, Pageable pageable);
+
+    @Query("SELECT e FROM OutboxEvent e WHERE e.accountId = ?1 AND e.position > ?2 ORDER BY e.position")
+    List<OutboxEvent> findAllByAccountIdAfter(Long accountId, long position, Pageable pageable);
+
+    @Modifying
+    @Query("DELETE FROM OutboxEvent e WHERE e.position IS NOT NULL AND e.createdAt < ?1")
+    int deleteDispatchedBefore(LocalDateTime before);
+}
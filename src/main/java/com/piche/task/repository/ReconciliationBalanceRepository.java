@@ -0,0 +1,9 @@
+package com.piche.task.repository;
+
+import com.piche.task.model.ReconciliationBalance;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ReconciliationBalanceRepository extends JpaRepository<ReconciliationBalance, Long> {
+}
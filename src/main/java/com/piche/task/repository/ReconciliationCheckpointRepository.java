@@ -0,0 +1,18 @@
+package com.piche.task.repository;
+
+import com.piche.task.model.ReconciliationCheckpoint;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface ReconciliationCheckpointRepository extends JpaRepository<ReconciliationCheckpoint, Integer> {
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c FROM ReconciliationCheckpoint c WHERE c.id = ?1")
+    Optional<ReconciliationCheckpoint> findForUpdate(Integer id);
+}
@@ -0,0 +1,22 @@
+package com.piche.task.repository;
+
+import com.piche.task.model.ScheduledTransfer;
+import com.piche.task.model.ScheduledTransferState;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ScheduledTransferRepository extends JpaRepository<ScheduledTransfer, Long> {
+
+    @Query("SELECT s FROM ScheduledTransfer s WHERE s.senderId = ?1 AND s.state = ?2 ORDER BY s.scheduledAt")
+    List<ScheduledTransfer> findAllBySenderIdAndState(Long senderId, ScheduledTransferState state);
+
+    @Modifying
+    @Query("UPDATE ScheduledTransfer s SET s.state = com.piche.task.model.ScheduledTransferState.CANCELLED " +
+            "WHERE s.id = ?1 AND s.senderId = ?2 AND s.state = com.piche.task.model.ScheduledTransferState.ACTIVE")
+    int cancel(Long id, Long senderId);
+}
@@ -0,0 +1,17 @@
+package com.piche.task.repository;
+
+import com.piche.task.model.TransferSaga;
+import com.piche.task.sharding.TransferSagaState;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface TransferSagaRepository extends JpaRepository<TransferSaga, Long> {
+
+    @Query("SELECT s FROM TransferSaga s WHERE s.state = ?1 AND s.updatedAt < ?2 ORDER BY s.updatedAt")
+    List<TransferSaga> findAllByStateAndUpdatedBefore(TransferSagaState state, LocalDateTime before);
+}
@@ -0,0 +1,131 @@
+package com.piche.task.retry;
+
+import com.piche.task.exception.ConflictException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Runs a write that checks the account version and retries it when the account was changed concurrently.
+ * <p>
+ * Every attempt must be a transaction of its own, so this is called outside of {@code @Transactional} methods.
+ * Before attempt {@code n} it sleeps a random time up to {@code base-delay * 2^(n - 2)}, capped by
+ * {@code max-delay}, so that writers of the same account spread out instead of colliding again. After
+ * {@code max-attempts} conflicts the write is aborted with {@link ConflictException}.
+ * <p>
+ * {@code optimistic_retry.retries} records the retries of every write and {@code optimistic_retry.operations}
+ * counts committed, aborted and failed writes per operation; aborted to all is the abort rate.
+ */
+@Component
+public class OptimisticRetry {
+
+    private final int maxAttempts;
+
+    private final long baseDelayNanos;
+
+    private final long maxDelayNanos;
+
+    private final MeterRegistry registry;
+
+    private final Map<String, Meters> meters = new ConcurrentHashMap<>();
+
+    @Autowired
+    public OptimisticRetry(@Value("${optimistic-retry.max-attempts:5}") int maxAttempts,
+                           @Value("${optimistic-retry.base-delay:PT0.005S}") Duration baseDelay,
+                           @Value("${optimistic-retry.max-delay:PT0.2S}") Duration maxDelay,
+                           MeterRegistry registry) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("optimistic-retry.max-attempts must be positive");
+        }
+
+        this.maxAttempts = maxAttempts;
+        this.baseDelayNanos = baseDelay.toNanos();
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.registry = registry;
+    }
+
+    public <T> T execute(String operation, Supplier<T> write) {
+        Meters operationMeters = meters.computeIfAbsent(operation, name -> new Meters(registry, name));
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                T result = write.get();
+
+                operationMeters.retries.record(attempt - 1);
+                operationMeters.committed.increment();
+
+                return result;
+            } catch (OptimisticLockingFailureException e) {
+                if (attempt == maxAttempts) {
+                    operationMeters.retries.record(attempt - 1);
+                    operationMeters.aborted.increment();
+
+                    throw new ConflictException(String.format(
+                            "Can`t add operation: account was changed concurrently %d times, try again later",
+                            attempt));
+                }
+
+                backOff(attempt);
+            } catch (RuntimeException e) {
+                operationMeters.retries.record(attempt - 1);
+                operationMeters.failed.increment();
+
+                throw e;
+            }
+        }
+    }
+
+    private void backOff(int attempt) {
+        long limit = Math.min(maxDelayNanos, baseDelayNanos << Math.min(attempt - 1, 30));
+
+        if (limit <= 0) {
+            return;
+        }
+
+        try {
+            TimeUnit.NANOSECONDS.sleep(ThreadLocalRandom.current().nextLong(limit + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new ConflictException("Can`t add operation: interrupted while waiting to retry");
+        }
+    }
+
+    private static class Meters {
+
+        private final DistributionSummary retries;
+
+        private final Counter committed;
+
+        private final Counter aborted;
+
+        private final Counter failed;
+
+        private Meters(MeterRegistry registry, String operation) {
+            this.retries = DistributionSummary.builder("optimistic_retry.retries")
+                    .tag("operation", operation)
+                    .register(registry);
+            this.committed = operationCounter(registry, operation, "committed");
+            this.aborted = operationCounter(registry, operation, "aborted");
+            this.failed = operationCounter(registry, operation, "failed");
+        }
+
+        private static Counter operationCounter(MeterRegistry registry, String operation, String result) {
+            return Counter.builder("optimistic_retry.operations")
+                    .tag("operation", operation)
+                    .tag("result", result)
+                    .register(registry);
+        }
+    }
+}
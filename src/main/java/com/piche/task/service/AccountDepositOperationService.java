@@ -7,9 +7,11 @@ import com.piche.task.model.Account;
 import com.piche.task.model.AccountDepositOperation;
 import com.piche.task.repository.AccountDepositOperationRepository;
 import com.piche.task.repository.AccountRepository;
+import com.piche.task.sharding.ShardRouter;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import lombok.AllArgsConstructor;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.IdGenerator;
@@ -28,56 +30,87 @@ public class AccountDepositOperationService {
 
     private final IdGenerator generator;
 
+    private final ShardRouter shards;
+
+    private final ChangeFeedService changeFeed;
+
     @PersistenceContext
     private final EntityManager manager;
 
+    @Transactional(readOnly = true)
     public List<AccountDepositOperation> findAllByAccountId(Long id) {
-        if (!accountRepository.existsById(id)) {
-            throw new UnknownAccountIdException(id);
-        }
+        return shards.route(id, () -> {
+            if (!accountRepository.existsById(id)) {
+                throw new UnknownAccountIdException(id);
+            }
 
-        return depositOperationRepository.findAllByAccountId(id);
+            return depositOperationRepository.findAllByAccountId(id);
+        });
     }
 
+    @Transactional(readOnly = true)
     public List<AccountDepositOperation> findAllByAccountIdAndDateSpan(Long id, LocalDate from, LocalDate to) {
-        if (!accountRepository.existsById(id)) {
-            throw new UnknownAccountIdException(id);
-        }
+        return shards.route(id, () -> {
+            if (!accountRepository.existsById(id)) {
+                throw new UnknownAccountIdException(id);
+            }
 
-        return depositOperationRepository.findAllByAccountIdAndDateSpan(id, from.atStartOfDay(), to.atStartOfDay());
+            return depositOperationRepository.findAllByAccountIdAndDateSpan(id, from.atStartOfDay(), to.atStartOfDay());
+        });
     }
 
+    /**
+     * Adds the operation if the account wasn't changed since its balance was checked, otherwise throws
+     * {@link ObjectOptimisticLockingFailureException} and the caller may retry.
+     */
     @Transactional
     public AccountDepositOperation save(long accountId, AccountOperationDTO operation) {
-        Account account = accountRepository.findById(accountId).orElseThrow(() ->
-                new UnknownAccountIdException(accountId));
-
-        if (operation.getDeposit() == 0) {
-            throw new BadRequestException("Can`t add operation: deposit value 0");
-        }
-
-        if (account.getBalance() + operation.getDeposit() < 0) {
-            throw new BadRequestException("Can`t add operation: account balance can`t become negative");
-        }
-
-        long id = generator.generateId().getLeastSignificantBits();
-
-        manager.createNativeQuery(
-                        "INSERT INTO deposit_operation (id, account_id, updated_at, deposit) " +
-                        "VALUES (?, ?, ?, ?)")
-                .setParameter(1, id)
-                .setParameter(2, accountId)
-                .setParameter(3, LocalDateTime.now())
-                .setParameter(4, operation.getDeposit())
-                .executeUpdate();
-        manager.createNativeQuery("UPDATE account a SET a.balance = a.balance + ? WHERE a.id = ?")
-                .setParameter(1, operation.getDeposit())
-                .setParameter(2, accountId)
-                .executeUpdate();
-
-        manager.flush();
-        manager.clear();
-
-        return depositOperationRepository.findById(id).orElseThrow(IllegalArgumentException::new);
+        return shards.route(accountId, () -> {
+            Account account = accountRepository.findById(accountId).orElseThrow(() ->
+                    new UnknownAccountIdException(accountId));
+
+            if (operation.getDeposit() == 0) {
+                throw new BadRequestException("Can`t add operation: deposit value 0");
+            }
+
+            if (account.getBalance() - account.getHeld() + operation.getDeposit() < 0) {
+                throw new BadRequestException("Can`t add operation: account balance can`t become negative");
+            }
+
+            long id = generator.generateId().getLeastSignificantBits();
+            LocalDateTime now = LocalDateTime.now();
+
+            int updated = manager.createNativeQuery("UPDATE account a SET a.balance = a.balance + ?, " +
+                            "a.deposit_count = a.deposit_count + 1, a.last_operation_at = ?, " +
+                            "a.version = a.version + 1 WHERE a.id = ? AND a.version = ?")
+                    .setParameter(1, operation.getDeposit())
+                    .setParameter(2, now)
+                    .setParameter(3, accountId)
+                    .setParameter(4, account.getVersion())
+                    .executeUpdate();
+
+            if (updated == 0) {
+                throw new ObjectOptimisticLockingFailureException(Account.class, accountId);
+            }
+
+            manager.createNativeQuery(
+                            "INSERT INTO deposit_operation (id, account_id, updated_at, deposit) " +
+                            "VALUES (?, ?, ?, ?)")
+                    .setParameter(1, id)
+                    .setParameter(2, accountId)
+                    .setParameter(3, now)
+                    .setParameter(4, operation.getDeposit())
+                    .executeUpdate();
+
+            manager.flush();
+            manager.clear();
+
+            AccountDepositOperation saved = depositOperationRepository.findById(id)
+                    .orElseThrow(IllegalArgumentException::new);
+
+            changeFeed.record(saved);
+
+            return saved;
+        });
     }
 }
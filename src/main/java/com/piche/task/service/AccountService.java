@@ -1,7 +1,18 @@
 package com.piche.task.service;
 
+import com.piche.task.archive.ArchiveKind;
+import com.piche.task.archive.OperationArchive;
+import com.piche.task.datasource.ParallelQueries;
+import com.piche.task.dto.AccountActivityDTO;
 import com.piche.task.dto.AccountDTO;
-import com.piche.task.dto.AccountOperationResponseDTO;
+import com.piche.task.dto.AccountFilterDTO;
+import com.piche.task.dto.AccountPageDTO;
+import com.piche.task.dto.AccountSort;
+import com.piche.task.dto.AccountStatementDTO;
+import com.piche.task.dto.AccountSummaryDTO;
+import com.piche.task.dto.OperationAggregateDTO;
+import com.piche.task.dto.OperationHistory;
+import com.piche.task.dto.TransferOperationRowDTO;
 import com.piche.task.encoder.PasswordEncoder;
 import com.piche.task.exception.BadRequestException;
 import com.piche.task.exception.UnknownAccountIdException;
@@ -9,26 +20,34 @@ import com.piche.task.exception.UnknownAccountNameException;
 import com.piche.task.model.Account;
 import com.piche.task.model.AccountDepositOperation;
 import com.piche.task.model.AccountTransferOperation;
+import com.piche.task.model.DailyBalanceCheckpoint;
 import com.piche.task.repository.AccountDepositOperationRepository;
 import com.piche.task.repository.AccountRepository;
 import com.piche.task.repository.AccountTransferOperationRepository;
+import com.piche.task.sharding.ShardRouter;
 import lombok.AllArgsConstructor;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Collection;
-import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.Optional;
 import java.util.function.Supplier;
 
 @Service
 @AllArgsConstructor
 public class AccountService {
 
+    private static final int DEFAULT_PAGE_SIZE = 50;
+
+    private static final int MAX_PAGE_SIZE = 500;
+
     private final AccountRepository accountRepository;
 
     private final AccountDepositOperationRepository depositOperationRepository;
@@ -37,71 +56,223 @@ public class AccountService {
 
     private final PasswordEncoder encoder;
 
-    public List<Account> findAll() {
-        return accountRepository.findAll();
+    private final OperationArchive archive;
+
+    private final ShardRouter shards;
+
+    private final ParallelQueries queries;
+
+    private final DailyBalanceService dailyBalances;
+
+    /**
+     * Lists accounts page by page. Every shard returns its first {@code limit + 1} matching rows after the cursor;
+     * the merged rows are cut to {@code limit} and the extra one only tells whether there is a next page.
+     */
+    @Transactional(readOnly = true)
+    public AccountPageDTO findPage(String namePrefix, Double minBalance, Double maxBalance, String sort, String order,
+                                   String cursor, Integer limit) {
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new BadRequestException(String.format("Page size must be between 1 and %d", MAX_PAGE_SIZE));
+        }
+
+        if (minBalance != null && maxBalance != null && minBalance > maxBalance) {
+            throw new BadRequestException("Min balance is greater than max balance");
+        }
+
+        AccountFilterDTO filter = AccountFilterDTO.builder()
+                .namePrefix(namePrefix)
+                .minBalance(minBalance)
+                .maxBalance(maxBalance)
+                .sort(parseSortField(sort))
+                .descending(isDescending(order))
+                .build();
+
+        AccountSummaryDTO after = cursor == null ? null : decodeCursor(cursor, filter);
+        List<AccountSummaryDTO> rows = flatten(shards.fanOut(() ->
+                accountRepository.findPage(filter, after, pageSize + 1)));
+
+        if (shards.isSharded()) {
+            rows = rows.stream()
+                    .sorted(filter.getSort().comparator(filter.isDescending()))
+                    .limit(pageSize + 1)
+                    .toList();
+        }
+
+        if (rows.size() <= pageSize) {
+            return new AccountPageDTO(rows, null);
+        }
+
+        List<AccountSummaryDTO> page = rows.subList(0, pageSize);
+
+        return new AccountPageDTO(page, encodeCursor(page.get(pageSize - 1), filter));
     }
 
     public boolean existsById(Long id) {
-        return accountRepository.existsById(id);
+        return shards.route(id, () -> accountRepository.existsById(id));
     }
 
+    @Transactional(readOnly = true)
     public Account findById(Long id) {
-        return accountRepository.findById(id).orElseThrow(() -> new UnknownAccountIdException(id));
+        return shards.route(id, () -> accountRepository.findById(id))
+                .orElseThrow(() -> new UnknownAccountIdException(id));
     }
 
+    @Transactional(readOnly = true)
     public Account findByName(String name) {
-        return accountRepository.findByName(name).orElseThrow(() -> new UnknownAccountNameException(name));
+        return findAccountByName(name).orElseThrow(() -> new UnknownAccountNameException(name));
+    }
+
+    /**
+     * Returns the operation counters kept on the account row, without reading any operation.
+     */
+    @Transactional(readOnly = true)
+    public AccountActivityDTO getActivity(Long id) {
+        return shards.route(id, () -> accountRepository.findActivityById(id).orElseThrow(() ->
+                new UnknownAccountIdException(id)));
     }
 
-    public List<AccountOperationResponseDTO> getAllOperations(Long id, String sort) {
-        return prepareAccountOperations(
+    /**
+     * Not a transaction, so that the calling thread doesn't hold a connection while it waits for the histories read
+     * on the {@link ParallelQueries} pool.
+     */
+    public OperationHistory getAllOperations(Long id, String sort) {
+        return shards.route(id, () -> archive.read(() -> prepareAccountOperations(
                 id,
                 sort,
-                () -> depositOperationRepository.findAllByAccountId(id),
-                () -> transferOperationRepository.findAllBySenderId(id),
-                () -> transferOperationRepository.findAllByReceiverId(id));
+                () -> concat(depositOperationRepository.findAllByAccountId(id),
+                        archive.findDeposits(id, null, null)),
+                () -> concat(findSentTransfers(id, null, null),
+                        archive.findTransfers(id, false, null, null)),
+                () -> concat(findReceivedTransfers(id, null, null),
+                        archive.findTransfers(id, true, null, null)))));
     }
 
-    public List<AccountOperationResponseDTO> getAllOperationsByDateSpan(Long id, LocalDate from, LocalDate to, String sort) {
+    /**
+     * Not a transaction, like {@link #getAllOperations}.
+     */
+    public OperationHistory getAllOperationsByDateSpan(Long id, LocalDate from, LocalDate to, String sort) {
         LocalDateTime fromDateTime = from.atStartOfDay();
         LocalDateTime toDateTime = to.atStartOfDay();
 
-        return prepareAccountOperations(
+        return shards.route(id, () -> archive.read(() -> prepareAccountOperations(
                 id,
                 sort,
-                () -> depositOperationRepository.findAllByAccountIdAndDateSpan(id, fromDateTime, toDateTime),
-                () -> transferOperationRepository.findAllBySenderIdAndDateSpan(id, fromDateTime, toDateTime),
-                () -> transferOperationRepository.findAllByReceiverIdAndDateSpan(id, fromDateTime, toDateTime));
+                () -> concat(depositOperationRepository.findAllByAccountIdAndDateSpan(id, fromDateTime, toDateTime),
+                        archive.findDeposits(id, fromDateTime, toDateTime)),
+                () -> concat(findSentTransfers(id, fromDateTime, toDateTime),
+                        archive.findTransfers(id, false, fromDateTime, toDateTime)),
+                () -> concat(findReceivedTransfers(id, fromDateTime, toDateTime),
+                        archive.findTransfers(id, true, fromDateTime, toDateTime)))));
     }
 
+    /**
+     * The closing balance is anchored on a side of the span that is bounded: the daily balance rollups when they
+     * cover {@code to}, the current balance minus the operations after {@code to} when it is newer than the rollups,
+     * and the operations before {@code from} when it is older than them, which only the archive still holds.
+     */
+    @Transactional(readOnly = true)
+    public AccountStatementDTO getStatement(Long id, LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            throw new BadRequestException("Can`t prepare statement: 'from' date is after 'to' date");
+        }
+
+        return shards.route(id, () -> {
+            Account account = accountRepository.findById(id).orElseThrow(() -> new UnknownAccountIdException(id));
+
+            return archive.read(() -> prepareStatement(id, account.getBalance(), from, to));
+        });
+    }
+
+    /**
+     * Not a transaction: the password is hashed between the name check and the insert, which take a connection each,
+     * so that no connection is held while hashing, which takes {@code password.target-hash-time} and may wait for
+     * the hashing pool, like the rehash in {@link #validate}.
+     * <p>
+     * The check is a fast path for taken names; concurrent signups with one name are told apart by the unique
+     * constraint on {@code account.name}. When sharded, an account is created on the shard of its name's hash, so
+     * the constraint of that shard sees both; all shards are checked for accounts created before sharding.
+     */
     public Account save(AccountDTO account) {
-        if (accountRepository.existsByName(account.getName())) {
-            throw new BadRequestException(String.format("Account with name '%s' already exists", account.getName()));
+        if (shards.fanOut(() -> accountRepository.existsByName(account.getName())).contains(true)) {
+            throw nameTaken(account.getName());
         }
 
-        return accountRepository.save(Account.builder()
-                .name(account.getName())
-                .passwordHash(encoder.encode(account.getPassword()))
-                .balance(0.0)
-                .build());
+        String passwordHash = encoder.encode(account.getPassword());
+
+        try {
+            return insert(account.getName(), passwordHash);
+        } catch (DataIntegrityViolationException e) {
+            throw nameTaken(account.getName());
+        }
     }
 
+    /**
+     * Checks the password and replaces a legacy or weaker hash with a current one, unless the hash was changed
+     * meanwhile.
+     */
     public void validate(AccountDTO account) {
-        Account existing = accountRepository.findByName(account.getName()).orElseThrow(() ->
+        Account existing = findAccountByName(account.getName()).orElseThrow(() ->
                 new UnknownAccountNameException(account.getName()));
 
-        String passwordHash = encoder.encode(account.getPassword());
-
-        if (!existing.getPasswordHash().equals(passwordHash)) {
+        if (!encoder.matches(account.getPassword(), existing.getPasswordHash())) {
             throw new BadRequestException("Wrong password");
         }
+
+        if (encoder.needsRehash(existing.getPasswordHash())) {
+            String passwordHash = encoder.encode(account.getPassword());
+
+            shards.route(existing.getId(), () ->
+                    accountRepository.replacePasswordHash(existing.getId(), existing.getPasswordHash(), passwordHash));
+        }
     }
 
     public void deleteById(Long id) {
-        accountRepository.deleteById(id);
+        shards.route(id, () -> {
+            accountRepository.deleteById(id);
+            return null;
+        });
+    }
+
+    private Account insert(String name, String passwordHash) {
+        if (!shards.isSharded()) {
+            return accountRepository.save(Account.builder()
+                    .name(name)
+                    .passwordHash(passwordHash)
+                    .balance(0.0)
+                    .depositCount(0L)
+                    .sentCount(0L)
+                    .receivedCount(0L)
+                    .build());
+        }
+
+        int shard = shards.shardFor(name);
+
+        return shards.routeToShard(shard, () -> {
+            long id = shards.accountId(accountRepository.nextSequenceValue(), shard);
+
+            accountRepository.insert(id, name, passwordHash, 0.0);
+
+            return accountRepository.findById(id).orElseThrow(IllegalArgumentException::new);
+        });
+    }
+
+    private static BadRequestException nameTaken(String name) {
+        return new BadRequestException(String.format("Account with name '%s' already exists", name));
     }
 
-    private List<AccountOperationResponseDTO> prepareAccountOperations(Long id,
+    private Optional<Account> findAccountByName(String name) {
+        return shards.fanOut(() -> accountRepository.findByName(name)).stream()
+                .flatMap(Optional::stream)
+                .findFirst();
+    }
+
+    /**
+     * The three histories are read at the same time on separate connections, each into its own columnar part, and
+     * merged in the requested order; operations with the same time keep the order deposits, sent, received.
+     */
+    private OperationHistory prepareAccountOperations(Long id,
                                                   String sort,
                                                   Supplier<List<AccountDepositOperation>> depositsSupplier,
                                                   Supplier<List<AccountTransferOperation>> firstTransfersSupplier,
@@ -110,52 +281,246 @@ public class AccountService {
             throw new UnknownAccountIdException(id);
         }
 
-        Map<LocalDateTime, List<AccountOperationResponseDTO>> result = prepareTreeMap(sort);
+        boolean descending = isNewestFirst(sort);
 
-        depositsSupplier.get().forEach(operation -> {
-            LocalDateTime time = operation.getUpdatedAt();
+        return OperationHistory.merge(queries.invokeAll(List.of(
+                toDepositHistory(depositsSupplier),
+                toTransferHistory(firstTransfersSupplier, OperationHistory.SENT),
+                toTransferHistory(secondTransfersSupplier, OperationHistory.RECEIVED))), descending);
+    }
 
-            result.computeIfAbsent(time, key -> new ArrayList<>()).add(AccountOperationResponseDTO.builder()
-                    .id(operation.getId())
-                    .type("deposit")
-                    .deposit(operation.getDeposit())
-                    .updatedAt(operation.getUpdatedAt())
-                    .build());
-        });
-        firstTransfersSupplier.get().forEach(operation -> {
-            LocalDateTime time = operation.getUpdatedAt();
-
-            result.computeIfAbsent(time, key -> new ArrayList<>()).add(AccountOperationResponseDTO.builder()
-                    .id(operation.getId())
-                    .type("transfer")
-                    .role("sender")
-                    .deposit(operation.getDeposit() * -1)
-                    .updatedAt(operation.getUpdatedAt())
-                    .build());
-        });
-        secondTransfersSupplier.get().forEach(operation -> {
-            LocalDateTime time = operation.getUpdatedAt();
-
-            result.computeIfAbsent(time, key -> new ArrayList<>()).add(AccountOperationResponseDTO.builder()
-                    .id(operation.getId())
-                    .type("transfer")
-                    .role("receiver")
-                    .deposit(operation.getDeposit())
-                    .updatedAt(operation.getUpdatedAt())
-                    .build());
-        });
+    private static Supplier<OperationHistory> toDepositHistory(Supplier<List<AccountDepositOperation>> supplier) {
+        return () -> {
+            List<AccountDepositOperation> operations = supplier.get();
+            OperationHistory history = new OperationHistory(operations.size());
+
+            for (AccountDepositOperation operation : operations) {
+                history.add(OperationHistory.DEPOSIT, operation.getId(), operation.getUpdatedAt(),
+                        operation.getDeposit());
+            }
+
+            return history;
+        };
+    }
+
+    private static Supplier<OperationHistory> toTransferHistory(Supplier<List<AccountTransferOperation>> supplier,
+                                                                byte kind) {
+        return () -> {
+            List<AccountTransferOperation> operations = supplier.get();
+            OperationHistory history = new OperationHistory(operations.size());
+
+            for (AccountTransferOperation operation : operations) {
+                history.add(kind, operation.getId(), operation.getUpdatedAt(),
+                        kind == OperationHistory.SENT ? -operation.getDeposit() : operation.getDeposit());
+            }
 
-        return result.values().stream().flatMap(Collection::stream).toList();
+            return history;
+        };
+    }
+
+    private AccountStatementDTO prepareStatement(Long id, double balance, LocalDate from, LocalDate to) {
+        LocalDateTime fromDateTime = from.atStartOfDay();
+        LocalDateTime toDateTime = to.atStartOfDay();
+
+        OperationAggregateDTO deposits = depositOperationRepository
+                .aggregateByAccountIdAndDateSpan(id, fromDateTime, toDateTime)
+                .plus(archive.aggregate(ArchiveKind.DEPOSIT, false, id, fromDateTime, toDateTime));
+        OperationAggregateDTO sent = transferOperationRepository
+                .aggregateBySenderIdAndDateSpan(id, fromDateTime, toDateTime)
+                .plus(archive.aggregate(ArchiveKind.TRANSFER, false, id, fromDateTime, toDateTime));
+        OperationAggregateDTO received = sumOverShards(() -> transferOperationRepository
+                        .aggregateByReceiverIdAndDateSpan(id, fromDateTime, toDateTime))
+                .plus(archive.aggregate(ArchiveKind.TRANSFER, true, id, fromDateTime, toDateTime));
+
+        DailyBalanceCheckpoint rollups = dailyBalances.getCheckpoint();
+        double spanChange = deposits.getSum() - sent.getSum() + received.getSum();
+        double closingBalance;
+
+        if (rollups == null || to.isAfter(rollups.getNextDay())) {
+            closingBalance = balance - changeAfter(id, toDateTime);
+        } else if (to.isAfter(rollups.getFirstDay())) {
+            closingBalance = dailyBalances.getBalanceBefore(id, to);
+        } else {
+            closingBalance = changeBefore(id, fromDateTime) + spanChange;
+        }
+
+        double openingBalance = closingBalance - spanChange;
+
+        return AccountStatementDTO.builder()
+                .accountId(id)
+                .from(from)
+                .to(to)
+                .openingBalance(openingBalance)
+                .totalDeposits(deposits.getSum())
+                .totalSent(sent.getSum())
+                .totalReceived(received.getSum())
+                .closingBalance(closingBalance)
+                .depositCount(deposits.getCount())
+                .sentCount(sent.getCount())
+                .receivedCount(received.getCount())
+                .build();
+    }
+
+    private double changeAfter(Long id, LocalDateTime from) {
+        return depositOperationRepository.aggregateByAccountIdAndUpdatedAfter(id, from)
+                .plus(archive.aggregate(ArchiveKind.DEPOSIT, false, id, from, null)).getSum()
+                - transferOperationRepository.aggregateBySenderIdAndUpdatedAfter(id, from)
+                .plus(archive.aggregate(ArchiveKind.TRANSFER, false, id, from, null)).getSum()
+                + sumOverShards(() -> transferOperationRepository.aggregateByReceiverIdAndUpdatedAfter(id, from))
+                .plus(archive.aggregate(ArchiveKind.TRANSFER, true, id, from, null)).getSum();
+    }
+
+    private double changeBefore(Long id, LocalDateTime to) {
+        return depositOperationRepository.aggregateByAccountIdAndUpdatedBefore(id, to)
+                .plus(archive.aggregate(ArchiveKind.DEPOSIT, false, id, null, to)).getSum()
+                - transferOperationRepository.aggregateBySenderIdAndUpdatedBefore(id, to)
+                .plus(archive.aggregate(ArchiveKind.TRANSFER, false, id, null, to)).getSum()
+                + sumOverShards(() -> transferOperationRepository.aggregateByReceiverIdAndUpdatedBefore(id, to))
+                .plus(archive.aggregate(ArchiveKind.TRANSFER, true, id, null, to)).getSum();
+    }
+
+    /**
+     * Null bounds select the whole history. On a sharded database the rows are read without their accounts,
+     * which may live on other shards.
+     */
+    private List<AccountTransferOperation> findSentTransfers(Long id, LocalDateTime from, LocalDateTime to) {
+        if (shards.isSharded()) {
+            return toOperations(from == null
+                    ? transferOperationRepository.findRowsBySenderId(id)
+                    : transferOperationRepository.findRowsBySenderIdAndDateSpan(id, from, to));
+        }
+
+        return from == null
+                ? transferOperationRepository.findAllBySenderId(id)
+                : transferOperationRepository.findAllBySenderIdAndDateSpan(id, from, to);
+    }
+
+    /**
+     * Transfers received by an account are stored on the shards of their senders, so on a sharded database
+     * all shards are queried.
+     */
+    private List<AccountTransferOperation> findReceivedTransfers(Long id, LocalDateTime from, LocalDateTime to) {
+        if (shards.isSharded()) {
+            return toOperations(flatten(shards.fanOut(() -> from == null
+                    ? transferOperationRepository.findRowsByReceiverId(id)
+                    : transferOperationRepository.findRowsByReceiverIdAndDateSpan(id, from, to))));
+        }
+
+        return from == null
+                ? transferOperationRepository.findAllByReceiverId(id)
+                : transferOperationRepository.findAllByReceiverIdAndDateSpan(id, from, to);
+    }
+
+    private OperationAggregateDTO sumOverShards(Supplier<OperationAggregateDTO> query) {
+        return shards.fanOut(query).stream().reduce(new OperationAggregateDTO(0, 0.0), OperationAggregateDTO::plus);
+    }
+
+    private static List<AccountTransferOperation> toOperations(List<TransferOperationRowDTO> rows) {
+        return rows.stream()
+                .map(row -> AccountTransferOperation.builder()
+                        .id(row.getId())
+                        .sender(Account.builder().id(row.getSenderId()).build())
+                        .receiver(Account.builder().id(row.getReceiverId()).build())
+                        .updatedAt(row.getUpdatedAt())
+                        .deposit(row.getDeposit())
+                        .build())
+                .toList();
+    }
+
+    private static <T> List<T> flatten(List<List<T>> lists) {
+        return lists.stream().flatMap(Collection::stream).toList();
+    }
+
+    /**
+     * The cursor is the sort key and id of the last row of the page, tagged with the order it was produced for.
+     */
+    private static String encodeCursor(AccountSummaryDTO last, AccountFilterDTO filter) {
+        String key = switch (filter.getSort()) {
+            case ID -> "";
+            case NAME -> last.getName();
+            case BALANCE -> last.getBalance().toString();
+        };
+        String value = String.join(":", filter.getSort().name(), filter.isDescending() ? "desc" : "asc",
+                last.getId().toString(), key);
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static AccountSummaryDTO decodeCursor(String cursor, AccountFilterDTO filter) {
+        String[] parts;
+
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":", 4);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Malformed cursor");
+        }
+
+        if (parts.length != 4 || !parts[0].equals(filter.getSort().name())
+                || !parts[1].equals(filter.isDescending() ? "desc" : "asc")) {
+            throw new BadRequestException("Cursor doesn`t match the requested sort");
+        }
+
+        try {
+            long id = Long.parseLong(parts[2]);
+
+            return switch (filter.getSort()) {
+                case ID -> new AccountSummaryDTO(id, null, null);
+                case NAME -> new AccountSummaryDTO(id, parts[3], null);
+                case BALANCE -> new AccountSummaryDTO(id, null, Double.valueOf(parts[3]));
+            };
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("Malformed cursor");
+        }
+    }
+
+    private static <T> List<T> concat(List<T> first, List<T> second) {
+        if (second.isEmpty()) {
+            return first;
+        }
+
+        List<T> result = new ArrayList<>(first);
+
+        result.addAll(second);
+
+        return result;
+    }
+
+    private static AccountSort parseSortField(String sort) {
+        if (sort == null) {
+            return AccountSort.ID;
+        }
+
+        return switch (sort.toLowerCase()) {
+            case "id" -> AccountSort.ID;
+            case "name" -> AccountSort.NAME;
+            case "balance" -> AccountSort.BALANCE;
+            default -> throw new BadRequestException(String.format("Unknown sort field '%s'", sort));
+        };
+    }
+
+    private static boolean isDescending(String order) {
+        if (order == null) {
+            return false;
+        }
+
+        return switch (order.toLowerCase()) {
+            case "asc" -> false;
+            case "desc" -> true;
+            default -> throw new BadRequestException(String.format("Unknown sort type '%s'", order));
+        };
     }
 
-    private static Map<LocalDateTime, List<AccountOperationResponseDTO>> prepareTreeMap(String sort) {
+    /**
+     * Histories are newest first unless sorted otherwise.
+     */
+    private static boolean isNewestFirst(String sort) {
         if (sort == null) {
-            return new TreeMap<>(Comparator.reverseOrder());
+            return true;
         }
 
         return switch (sort.toLowerCase()) {
-            case "asc" -> new TreeMap<>(Comparator.naturalOrder());
-            case "desc" -> new TreeMap<>(Comparator.reverseOrder());
+            case "asc" -> false;
+            case "desc" -> true;
             default -> throw new BadRequestException(String.format("Unknown sort type '%s'", sort));
         };
     }
@@ -1,22 +1,41 @@
 package com.piche.task.service;
 
+import com.piche.task.dto.AccountAmountDTO;
+import com.piche.task.dto.AccountBulkTransferDTO;
 import com.piche.task.dto.AccountOperationDTO;
+import com.piche.task.dto.AccountPayoutDTO;
+import com.piche.task.dto.TransferOperationRowDTO;
 import com.piche.task.exception.BadRequestException;
 import com.piche.task.exception.UnknownAccountIdException;
 import com.piche.task.model.Account;
 import com.piche.task.model.AccountTransferOperation;
 import com.piche.task.repository.AccountRepository;
 import com.piche.task.repository.AccountTransferOperationRepository;
+import com.piche.task.sharding.ShardRouter;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import lombok.AllArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.IdGenerator;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
 
 @Service
 @AllArgsConstructor
@@ -28,81 +47,499 @@ public class AccountTransferOperationService {
 
     private final IdGenerator generator;
 
+    private final ShardRouter shards;
+
+    private final ChangeFeedService changeFeed;
+
+    private final TransferSagaService sagaService;
+
+    private final JdbcTemplate jdbcTemplate;
+
     @PersistenceContext
     private final EntityManager manager;
 
+    @Transactional(readOnly = true)
     public List<AccountTransferOperation> findAllBySenderId(Long id) {
-        if (!accountRepository.existsById(id)) {
-            throw new UnknownAccountIdException(id);
-        }
+        return shards.route(id, () -> {
+            if (!accountRepository.existsById(id)) {
+                throw new UnknownAccountIdException(id);
+            }
+
+            if (shards.isSharded()) {
+                return withAccounts(transferOperationRepository.findRowsBySenderId(id));
+            }
 
-        return transferOperationRepository.findAllBySenderId(id);
+            return transferOperationRepository.findAllBySenderId(id);
+        });
     }
 
+    @Transactional(readOnly = true)
     public List<AccountTransferOperation> findAllBySenderIdAndDateSpan(Long id, LocalDate from, LocalDate to) {
-        if (!accountRepository.existsById(id)) {
-            throw new UnknownAccountIdException(id);
-        }
+        LocalDateTime fromDateTime = from.atStartOfDay();
+        LocalDateTime toDateTime = to.atStartOfDay();
+
+        return shards.route(id, () -> {
+            if (!accountRepository.existsById(id)) {
+                throw new UnknownAccountIdException(id);
+            }
 
-        return transferOperationRepository.findAllBySenderIdAndDateSpan(id, from.atStartOfDay(), to.atStartOfDay());
+            if (shards.isSharded()) {
+                return withAccounts(
+                        transferOperationRepository.findRowsBySenderIdAndDateSpan(id, fromDateTime, toDateTime));
+            }
+
+            return transferOperationRepository.findAllBySenderIdAndDateSpan(id, fromDateTime, toDateTime);
+        });
     }
 
+    @Transactional(readOnly = true)
     public List<AccountTransferOperation> findAllByReceiverId(Long id) {
-        if (!accountRepository.existsById(id)) {
-            throw new UnknownAccountIdException(id);
-        }
+        return shards.route(id, () -> {
+            if (!accountRepository.existsById(id)) {
+                throw new UnknownAccountIdException(id);
+            }
 
-        return transferOperationRepository.findAllByReceiverId(id);
+            if (shards.isSharded()) {
+                return withAccounts(flatten(shards.fanOut(() ->
+                        transferOperationRepository.findRowsByReceiverId(id))));
+            }
+
+            return transferOperationRepository.findAllByReceiverId(id);
+        });
     }
 
+    @Transactional(readOnly = true)
     public List<AccountTransferOperation> findAllByReceiverIdAndDateSpan(Long id, LocalDate from, LocalDate to) {
-        if (!accountRepository.existsById(id)) {
-            throw new UnknownAccountIdException(id);
-        }
+        LocalDateTime fromDateTime = from.atStartOfDay();
+        LocalDateTime toDateTime = to.atStartOfDay();
 
-        return transferOperationRepository.findAllByReceiverIdAndDateSpan(id, from.atStartOfDay(), to.atStartOfDay());
+        return shards.route(id, () -> {
+            if (!accountRepository.existsById(id)) {
+                throw new UnknownAccountIdException(id);
+            }
+
+            if (shards.isSharded()) {
+                return withAccounts(flatten(shards.fanOut(() ->
+                        transferOperationRepository.findRowsByReceiverIdAndDateSpan(id, fromDateTime, toDateTime))));
+            }
+
+            return transferOperationRepository.findAllByReceiverIdAndDateSpan(id, fromDateTime, toDateTime);
+        });
     }
 
+    /**
+     * Adds the transfer if the sender wasn't changed since its balance was checked, otherwise throws
+     * {@link ObjectOptimisticLockingFailureException} and the caller may retry.
+     */
     @Transactional
     public AccountTransferOperation save(long senderId, long receiverId, AccountOperationDTO operation) {
-        Account sender = accountRepository.findById(senderId).orElseThrow(() ->
-                new BadRequestException(String.format("Unknown sender account with id %d", senderId)));
+        if (shards.shardOf(senderId) != shards.shardOf(receiverId)) {
+            long id = generator.generateId().getLeastSignificantBits();
+
+            return withAccounts(List.of(sagaService.transfer(id, senderId, receiverId, operation.getDeposit()))).get(0);
+        }
+
+        return shards.route(senderId, () -> {
+            Account sender = accountRepository.findById(senderId).orElseThrow(() ->
+                    new BadRequestException(String.format("Unknown sender account with id %d", senderId)));
+
+            if (!accountRepository.existsById(receiverId)) {
+                throw new BadRequestException(String.format("Unknown receiver account with id %d", receiverId));
+            }
+
+            if (operation.getDeposit() <= 0) {
+                throw new BadRequestException("Can`t add operation: deposit value can`t be negative or zero");
+            }
+
+            if (sender.getBalance() - sender.getHeld() - operation.getDeposit() < 0) {
+                throw new BadRequestException("Can`t add operation: account balance can`t become negative");
+            }
+
+            long id = generator.generateId().getLeastSignificantBits();
+            LocalDateTime now = LocalDateTime.now();
+
+            // Both rows are updated in id order, so that transfers in opposite directions don't deadlock.
+            if (receiverId < senderId) {
+                credit(receiverId, operation.getDeposit(), now);
+                debit(sender, operation.getDeposit(), now);
+            } else {
+                debit(sender, operation.getDeposit(), now);
+                credit(receiverId, operation.getDeposit(), now);
+            }
+
+            manager.createNativeQuery(
+                            "INSERT INTO transfer_operation (id, sender_id, receiver_id, updated_at, deposit) " +
+                                    "VALUES (?, ?, ?, ?, ?)")
+                    .setParameter(1, id)
+                    .setParameter(2, senderId)
+                    .setParameter(3, receiverId)
+                    .setParameter(4, now)
+                    .setParameter(5, operation.getDeposit())
+                    .executeUpdate();
+
+            manager.flush();
+            manager.clear();
+
+            AccountTransferOperation saved = transferOperationRepository.findById(id).orElseThrow(IllegalArgumentException::new);
+
+            changeFeed.record(saved);
+
+            return saved;
+        });
+    }
+
+    /**
+     * Transfers from one sender to many receivers in one transaction: the sender's balance is checked once and
+     * debited with the total, the transfer rows are inserted and the receivers credited in batches. Accounts are
+     * updated in id order, like in {@link #save}, and the receivers must live on the sender's shard.
+     */
+    @Transactional
+    public List<TransferOperationRowDTO> savePayout(long senderId, AccountPayoutDTO payout) {
+        if (payout.getPayouts() == null || payout.getPayouts().isEmpty()) {
+            throw new BadRequestException("Can`t add payout: no receivers");
+        }
 
-        if (!accountRepository.existsById(receiverId)) {
-            throw new BadRequestException(String.format("Unknown receiver account with id %d", receiverId));
+        SortedMap<Long, Credit> credits = new TreeMap<>();
+        double total = 0;
+
+        for (AccountPayoutDTO.Payout item : payout.getPayouts()) {
+            Long receiverId = item.getReceiverId();
+
+            if (receiverId == null || receiverId == senderId) {
+                throw new BadRequestException("Can`t add payout: receiver must be another account");
+            }
+
+            if (item.getDeposit() <= 0) {
+                throw new BadRequestException("Can`t add operation: deposit value can`t be negative or zero");
+            }
+
+            if (shards.shardOf(receiverId) != shards.shardOf(senderId)) {
+                throw new BadRequestException(String.format(
+                        "Can`t add payout: receiver account with id %d is on another shard than the sender",
+                        receiverId));
+            }
+
+            Credit credit = credits.computeIfAbsent(receiverId, id -> new Credit());
+
+            credit.amount += item.getDeposit();
+            credit.transfers++;
+            total += item.getDeposit();
         }
 
-        if (operation.getDeposit() <= 0) {
-            throw new BadRequestException("Can`t add operation: deposit value can`t be negative or zero");
+        double amount = total;
+
+        return shards.route(senderId, () -> {
+            Account sender = accountRepository.findById(senderId).orElseThrow(() ->
+                    new BadRequestException(String.format("Unknown sender account with id %d", senderId)));
+            Set<Long> known = findBalances(credits.keySet()).keySet();
+
+            for (Long receiverId : credits.keySet()) {
+                if (!known.contains(receiverId)) {
+                    throw new BadRequestException(String.format("Unknown receiver account with id %d", receiverId));
+                }
+            }
+
+            if (sender.getBalance() - sender.getHeld() - amount < 0) {
+                throw new BadRequestException("Can`t add operation: account balance can`t become negative");
+            }
+
+            LocalDateTime now = LocalDateTime.now();
+            List<TransferOperationRowDTO> rows = payout.getPayouts().stream()
+                    .map(item -> new TransferOperationRowDTO(generator.generateId().getLeastSignificantBits(),
+                            senderId, item.getReceiverId(), now, item.getDeposit()))
+                    .toList();
+
+            creditAll(credits.headMap(senderId), now);
+            debit(sender, amount, rows.size(), now);
+            creditAll(credits.tailMap(senderId), now);
+
+            insertAll(rows);
+
+            Set<Long> accounts = new HashSet<>(credits.keySet());
+
+            accounts.add(senderId);
+            changeFeed.record(rows, findBalances(accounts));
+
+            return rows;
+        });
+    }
+
+    /**
+     * Saves transfers between accounts of one shard in one transaction; either all of them are saved or none.
+     * <p>
+     * Without netting every transfer is checked against the balances left by the transfers before it and applied
+     * with two updates, a debit and a credit. With netting the transfers are summed into one net position per
+     * account, only the final balances must not be negative, and every account gets a single update, so the number
+     * of updated rows depends on the accounts and not on the transfers. Either way the accounts are updated in id
+     * order, the updates of a decreasing balance check the version read with it, and every transfer row is inserted
+     * in one batch.
+     */
+    @Transactional
+    public List<TransferOperationRowDTO> saveBulk(AccountBulkTransferDTO bulk, boolean netting) {
+        if (bulk.getTransfers() == null || bulk.getTransfers().isEmpty()) {
+            throw new BadRequestException("Can`t add transfers: no transfers");
         }
 
-        if (sender.getBalance() - operation.getDeposit() < 0) {
-            throw new BadRequestException("Can`t add operation: account balance can`t become negative");
+        SortedSet<Long> ids = new TreeSet<>();
+
+        for (AccountBulkTransferDTO.Transfer transfer : bulk.getTransfers()) {
+            if (transfer.getSenderId() == null || transfer.getReceiverId() == null
+                    || transfer.getSenderId().equals(transfer.getReceiverId())) {
+                throw new BadRequestException("Can`t add transfers: sender and receiver must be different accounts");
+            }
+
+            if (transfer.getDeposit() <= 0) {
+                throw new BadRequestException("Can`t add operation: deposit value can`t be negative or zero");
+            }
+
+            ids.add(transfer.getSenderId());
+            ids.add(transfer.getReceiverId());
         }
 
-        long id = generator.generateId().getLeastSignificantBits();
+        long first = ids.first();
 
-        manager.createNativeQuery(
-                        "INSERT INTO transfer_operation (id, sender_id, receiver_id, updated_at, deposit) " +
-                                "VALUES (?, ?, ?, ?, ?)")
-                .setParameter(1, id)
-                .setParameter(2, senderId)
-                .setParameter(3, receiverId)
-                .setParameter(4, LocalDateTime.now())
-                .setParameter(5, operation.getDeposit())
-                .executeUpdate();
-        manager.createNativeQuery("UPDATE account a SET a.balance = a.balance + ? WHERE a.id = ?")
-                .setParameter(1, operation.getDeposit())
-                .setParameter(2, receiverId)
+        for (Long id : ids) {
+            if (shards.shardOf(id) != shards.shardOf(first)) {
+                throw new BadRequestException(String.format(
+                        "Can`t add transfers: account with id %d is on another shard than account with id %d",
+                        id, first));
+            }
+        }
+
+        return shards.route(first, () -> {
+            Map<Long, Account> accounts = new HashMap<>();
+
+            accountRepository.findAllById(ids).forEach(account -> accounts.put(account.getId(), account));
+
+            for (Long id : ids) {
+                if (!accounts.containsKey(id)) {
+                    throw new BadRequestException(String.format("Unknown account with id %d", id));
+                }
+            }
+
+            List<Position> updates = netting
+                    ? netPositions(bulk.getTransfers(), accounts)
+                    : grossPositions(bulk.getTransfers(), accounts);
+            LocalDateTime now = LocalDateTime.now();
+            List<TransferOperationRowDTO> rows = bulk.getTransfers().stream()
+                    .map(transfer -> new TransferOperationRowDTO(generator.generateId().getLeastSignificantBits(),
+                            transfer.getSenderId(), transfer.getReceiverId(), now, transfer.getDeposit()))
+                    .toList();
+
+            applyAll(updates, accounts, now);
+            insertAll(rows);
+            changeFeed.record(rows, findBalances(ids));
+
+            return rows;
+        });
+    }
+
+    private void debit(Account sender, double amount, LocalDateTime now) {
+        debit(sender, amount, 1, now);
+    }
+
+    private void debit(Account sender, double amount, int transfers, LocalDateTime now) {
+        int updated = manager.createNativeQuery("UPDATE account a SET a.balance = a.balance - ?, " +
+                        "a.sent_count = a.sent_count + ?, a.last_operation_at = ?, " +
+                        "a.version = a.version + 1 WHERE a.id = ? AND a.version = ?")
+                .setParameter(1, amount)
+                .setParameter(2, transfers)
+                .setParameter(3, now)
+                .setParameter(4, sender.getId())
+                .setParameter(5, sender.getVersion())
                 .executeUpdate();
-        manager.createNativeQuery("UPDATE account a SET a.balance = a.balance - ? WHERE a.id = ?")
-                .setParameter(1, operation.getDeposit())
-                .setParameter(2, senderId)
+
+        if (updated == 0) {
+            throw new ObjectOptimisticLockingFailureException(Account.class, sender.getId());
+        }
+    }
+
+    private void credit(long receiverId, double amount, LocalDateTime now) {
+        manager.createNativeQuery("UPDATE account a SET a.balance = a.balance + ?, " +
+                        "a.received_count = a.received_count + 1, a.last_operation_at = ?, " +
+                        "a.version = a.version + 1 WHERE a.id = ?")
+                .setParameter(1, amount)
+                .setParameter(2, now)
+                .setParameter(3, receiverId)
                 .executeUpdate();
+    }
+
+    /**
+     * Credits the receivers in one batch, in the order of the map.
+     */
+    private void creditAll(SortedMap<Long, Credit> credits, LocalDateTime now) {
+        if (credits.isEmpty()) {
+            return;
+        }
+
+        jdbcTemplate.batchUpdate("UPDATE account a SET a.balance = a.balance + ?, " +
+                        "a.received_count = a.received_count + ?, a.last_operation_at = ?, " +
+                        "a.version = a.version + 1 WHERE a.id = ?",
+                credits.entrySet().stream()
+                        .map(credit -> new Object[] {credit.getValue().amount, credit.getValue().transfers, now,
+                                credit.getKey()})
+                        .toList());
+    }
+
+    /**
+     * Checks every transfer against the balances left by the transfers before it and returns a debit and a credit
+     * per transfer, ordered by account and, for one account, by transfer.
+     */
+    private static List<Position> grossPositions(List<AccountBulkTransferDTO.Transfer> transfers,
+                                                 Map<Long, Account> accounts) {
+        Map<Long, Double> balances = new HashMap<>();
+        List<Position> positions = new ArrayList<>(2 * transfers.size());
+
+        accounts.forEach((id, account) -> balances.put(id, account.getBalance() - account.getHeld()));
+
+        for (AccountBulkTransferDTO.Transfer transfer : transfers) {
+            double balance = balances.get(transfer.getSenderId()) - transfer.getDeposit();
+
+            if (balance < 0) {
+                throw new BadRequestException(String.format(
+                        "Can`t add operation: balance of account with id %d can`t become negative",
+                        transfer.getSenderId()));
+            }
+
+            balances.put(transfer.getSenderId(), balance);
+            balances.merge(transfer.getReceiverId(), transfer.getDeposit(), Double::sum);
+            positions.add(new Position(transfer.getSenderId(), -transfer.getDeposit(), 1, 0));
+            positions.add(new Position(transfer.getReceiverId(), transfer.getDeposit(), 0, 1));
+        }
+
+        positions.sort(Comparator.comparingLong(position -> position.accountId));
+
+        return positions;
+    }
+
+    /**
+     * Sums the transfers into one position per account, in id order, and checks only the final balances.
+     */
+    private static List<Position> netPositions(List<AccountBulkTransferDTO.Transfer> transfers,
+                                               Map<Long, Account> accounts) {
+        SortedMap<Long, Position> positions = new TreeMap<>();
+
+        for (AccountBulkTransferDTO.Transfer transfer : transfers) {
+            Position sender = positions.computeIfAbsent(transfer.getSenderId(), id -> new Position(id, 0, 0, 0));
+            Position receiver = positions.computeIfAbsent(transfer.getReceiverId(), id -> new Position(id, 0, 0, 0));
+
+            sender.amount -= transfer.getDeposit();
+            sender.sent++;
+            receiver.amount += transfer.getDeposit();
+            receiver.received++;
+        }
+
+        for (Position position : positions.values()) {
+            Account account = accounts.get(position.accountId);
+
+            if (account.getBalance() - account.getHeld() + position.amount < 0) {
+                throw new BadRequestException(String.format(
+                        "Can`t add operation: balance of account with id %d can`t become negative",
+                        position.accountId));
+            }
+        }
+
+        return new ArrayList<>(positions.values());
+    }
 
-        manager.flush();
-        manager.clear();
+    /**
+     * Applies the positions in one batch. A position that decreases the balance only applies if the account still
+     * has the version read with its balance, counting the updates of this batch before it.
+     */
+    private void applyAll(List<Position> positions, Map<Long, Account> accounts, LocalDateTime now) {
+        Map<Long, Long> versions = new HashMap<>();
+        List<Object[]> parameters = new ArrayList<>(positions.size());
 
-        return transferOperationRepository.findById(id).orElseThrow(IllegalArgumentException::new);
+        accounts.forEach((id, account) -> versions.put(id, account.getVersion()));
+
+        for (Position position : positions) {
+            Long version = versions.merge(position.accountId, 1L, Long::sum) - 1;
+
+            parameters.add(new Object[] {position.amount, position.sent, position.received, now, position.accountId,
+                    position.amount < 0 ? version : null});
+        }
+
+        // A null version matches any, so the updates of an increasing balance don't conflict.
+        int[] updated = jdbcTemplate.batchUpdate("UPDATE account a SET a.balance = a.balance + ?, " +
+                        "a.sent_count = a.sent_count + ?, a.received_count = a.received_count + ?, " +
+                        "a.last_operation_at = ?, a.version = a.version + 1 " +
+                        "WHERE a.id = ? AND a.version = COALESCE(?, a.version)",
+                parameters);
+
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] == 0) {
+                throw new ObjectOptimisticLockingFailureException(Account.class, positions.get(i).accountId);
+            }
+        }
+    }
+
+    private void insertAll(List<TransferOperationRowDTO> rows) {
+        jdbcTemplate.batchUpdate("INSERT INTO transfer_operation (id, sender_id, receiver_id, updated_at, " +
+                        "deposit) VALUES (?, ?, ?, ?, ?)",
+                rows.stream()
+                        .map(row -> new Object[] {row.getId(), row.getSenderId(), row.getReceiverId(),
+                                row.getUpdatedAt(), row.getDeposit()})
+                        .toList());
+    }
+
+    private Map<Long, Double> findBalances(Collection<Long> ids) {
+        return accountRepository.findBalancesByIdIn(ids).stream()
+                .collect(Collectors.toMap(AccountAmountDTO::getAccountId, AccountAmountDTO::getAmount));
+    }
+
+    /**
+     * Loads the accounts of the rows from their shards, outside of the current transaction.
+     */
+    private List<AccountTransferOperation> withAccounts(List<TransferOperationRowDTO> rows) {
+        Set<Long> ids = new HashSet<>();
+
+        rows.forEach(row -> {
+            ids.add(row.getSenderId());
+            ids.add(row.getReceiverId());
+        });
+
+        Map<Long, Account> accounts = new HashMap<>();
+
+        shards.fanOut(() -> accountRepository.findAllById(ids))
+                .forEach(shardAccounts -> shardAccounts.forEach(account -> accounts.put(account.getId(), account)));
+
+        return rows.stream()
+                .map(row -> AccountTransferOperation.builder()
+                        .id(row.getId())
+                        .sender(accounts.get(row.getSenderId()))
+                        .receiver(accounts.get(row.getReceiverId()))
+                        .updatedAt(row.getUpdatedAt())
+                        .deposit(row.getDeposit())
+                        .build())
+                .toList();
+    }
+
+    private static <T> List<T> flatten(List<List<T>> lists) {
+        return lists.stream().flatMap(Collection::stream).toList();
+    }
+
+    private static class Credit {
+
+        private double amount;
+
+        private int transfers;
+    }
+
+    private static class Position {
+
+        private final long accountId;
+
+        private double amount;
+
+        private int sent;
+
+        private int received;
+
+        private Position(long accountId, double amount, int sent, int received) {
+            this.accountId = accountId;
+            this.amount = amount;
+            this.sent = sent;
+            this.received = received;
+        }
     }
 }
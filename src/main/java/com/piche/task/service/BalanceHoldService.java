@@ -0,0 +1,491 @@
+package com.piche.task.service;
+
+import com.piche.task.dto.AccountAmountDTO;
+import com.piche.task.dto.AccountHoldDTO;
+import com.piche.task.dto.HoldCaptureDTO;
+import com.piche.task.dto.HoldExpiryDTO;
+import com.piche.task.dto.TransferOperationRowDTO;
+import com.piche.task.exception.BadRequestException;
+import com.piche.task.exception.UnknownAccountIdException;
+import com.piche.task.model.Account;
+import com.piche.task.model.BalanceHold;
+import com.piche.task.model.BalanceHoldState;
+import com.piche.task.repository.AccountRepository;
+import com.piche.task.repository.BalanceHoldRepository;
+import com.piche.task.sharding.ShardRouter;
+import com.piche.task.timer.TimerWheel;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.IdGenerator;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Holds reserve funds of an account before a payment is confirmed. Placing a hold adds its amount to
+ * {@code account.held}, which every debit subtracts from the balance it checks, and the hold then ends exactly once:
+ * captured into a transfer, released or expired.
+ * <p>
+ * Expiry doesn't poll the holds table on every tick. Every hold placed here, and every active hold found on startup, is
+ * scheduled on a {@link TimerWheel} that {@link #expireHolds()} advances every {@code holds.expiry-tick}, so each hold
+ * costs a constant amount of work to schedule, cancel or expire. The wheel lives only in the memory of the instance
+ * that placed the hold, so {@link #sweepExpiredHolds()} claims the holds left expired, for instance by an instance
+ * that stopped, every {@code holds.sweep-interval} as a backstop. Ending a hold is conditional on it still being
+ * {@code HELD}, so a timeout of a hold that another instance has already ended does nothing.
+ */
+@Slf4j
+@Service
+public class BalanceHoldService {
+
+    private static final String CLAIM_EXPIRED = "SELECT * FROM balance_hold WHERE state = 'HELD' " +
+            "AND expires_at <= ? ORDER BY expires_at FETCH FIRST ? ROWS ONLY FOR UPDATE SKIP LOCKED";
+
+    private final ShardRouter shards;
+
+    private final AccountRepository accountRepository;
+
+    private final BalanceHoldRepository holdRepository;
+
+    private final ChangeFeedService changeFeed;
+
+    private final IdGenerator generator;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final Duration defaultTtl;
+
+    private final Duration maxTtl;
+
+    private final int sweepBatchSize;
+
+    private final Clock clock;
+
+    private final TimerWheel<HoldExpiryDTO> wheel;
+
+    private final Map<Long, TimerWheel.Timeout<HoldExpiryDTO>> timeouts = new ConcurrentHashMap<>();
+
+    @PersistenceContext
+    private final EntityManager manager;
+
+    @Autowired
+    public BalanceHoldService(ShardRouter shards,
+                              AccountRepository accountRepository,
+                              BalanceHoldRepository holdRepository,
+                              ChangeFeedService changeFeed,
+                              IdGenerator generator,
+                              PlatformTransactionManager transactionManager,
+                              MeterRegistry registry,
+                              @Value("${holds.default-ttl:PT15M}") Duration defaultTtl,
+                              @Value("${holds.max-ttl:P7D}") Duration maxTtl,
+                              @Value("${holds.expiry-tick:PT1S}") Duration tick,
+                              @Value("${holds.sweep-batch-size:500}") int sweepBatchSize,
+                              EntityManager manager) {
+        this(shards, accountRepository, holdRepository, changeFeed, generator, transactionManager, registry,
+                defaultTtl, maxTtl, tick, sweepBatchSize, manager, Clock.systemDefaultZone());
+    }
+
+    BalanceHoldService(ShardRouter shards,
+                       AccountRepository accountRepository,
+                       BalanceHoldRepository holdRepository,
+                       ChangeFeedService changeFeed,
+                       IdGenerator generator,
+                       PlatformTransactionManager transactionManager,
+                       MeterRegistry registry,
+                       Duration defaultTtl,
+                       Duration maxTtl,
+                       Duration tick,
+                       int sweepBatchSize,
+                       EntityManager manager,
+                       Clock clock) {
+        this.shards = shards;
+        this.accountRepository = accountRepository;
+        this.holdRepository = holdRepository;
+        this.changeFeed = changeFeed;
+        this.generator = generator;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.defaultTtl = defaultTtl;
+        this.maxTtl = maxTtl;
+        this.sweepBatchSize = sweepBatchSize;
+        this.manager = manager;
+        this.clock = clock;
+        this.wheel = new TimerWheel<>(tick, clock.millis());
+
+        registry.gauge("holds.scheduled", wheel, TimerWheel::size);
+    }
+
+    @Transactional(readOnly = true)
+    public List<BalanceHold> findAllHeld(long accountId) {
+        return shards.route(accountId, () -> {
+            if (!accountRepository.existsById(accountId)) {
+                throw new UnknownAccountIdException(accountId);
+            }
+
+            return holdRepository.findAllByAccountIdAndState(accountId, BalanceHoldState.HELD);
+        });
+    }
+
+    /**
+     * Holds the amount if the account wasn't changed since its available balance was checked, otherwise throws
+     * {@link ObjectOptimisticLockingFailureException} and the caller may retry.
+     */
+    @Transactional
+    public BalanceHold place(long accountId, AccountHoldDTO request) {
+        Duration ttl = request.getTtl() == null ? defaultTtl : request.getTtl();
+
+        if (request.getDeposit() <= 0) {
+            throw new BadRequestException("Can`t add operation: deposit value can`t be negative or zero");
+        }
+
+        if (ttl.isNegative() || ttl.isZero() || ttl.compareTo(maxTtl) > 0) {
+            throw new BadRequestException(String.format("Can`t add hold: ttl must be positive and at most %s",
+                    maxTtl));
+        }
+
+        return shards.route(accountId, () -> {
+            Account account = accountRepository.findById(accountId).orElseThrow(() ->
+                    new UnknownAccountIdException(accountId));
+
+            if (account.getBalance() - account.getHeld() - request.getDeposit() < 0) {
+                throw new BadRequestException("Can`t add hold: available balance can`t become negative");
+            }
+
+            int updated = manager.createNativeQuery("UPDATE account a SET a.held = a.held + ?, " +
+                            "a.version = a.version + 1 WHERE a.id = ? AND a.version = ?")
+                    .setParameter(1, request.getDeposit())
+                    .setParameter(2, accountId)
+                    .setParameter(3, account.getVersion())
+                    .executeUpdate();
+
+            if (updated == 0) {
+                throw new ObjectOptimisticLockingFailureException(Account.class, accountId);
+            }
+
+            LocalDateTime now = LocalDateTime.now(clock);
+            BalanceHold hold = holdRepository.save(BalanceHold.builder()
+                    .id(generator.generateId().getLeastSignificantBits())
+                    .accountId(accountId)
+                    .amount(request.getDeposit())
+                    .state(BalanceHoldState.HELD)
+                    .createdAt(now)
+                    .expiresAt(now.plus(ttl))
+                    .build());
+
+            afterCommit(() -> schedule(new HoldExpiryDTO(hold.getId(), accountId, hold.getExpiresAt())));
+
+            return hold;
+        });
+    }
+
+    /**
+     * Turns the hold into a transfer of up to the held amount; the rest of the hold is released. The receiver must
+     * live on the account's shard.
+     */
+    @Transactional
+    public BalanceHold capture(long accountId, long holdId, HoldCaptureDTO request) {
+        Long receiverId = request.getReceiverId();
+
+        if (receiverId == null || receiverId == accountId) {
+            throw new BadRequestException("Can`t capture hold: receiver must be another account");
+        }
+
+        if (shards.shardOf(receiverId) != shards.shardOf(accountId)) {
+            throw new BadRequestException(String.format(
+                    "Can`t capture hold: receiver account with id %d is on another shard than the sender",
+                    receiverId));
+        }
+
+        return shards.route(accountId, () -> {
+            BalanceHold hold = findHeld(accountId, holdId, "capture");
+            double amount = request.getDeposit() == null ? hold.getAmount() : request.getDeposit();
+
+            if (amount <= 0 || amount > hold.getAmount()) {
+                throw new BadRequestException(
+                        "Can`t capture hold: deposit value must be positive and at most the held amount");
+            }
+
+            if (!accountRepository.existsById(receiverId)) {
+                throw new BadRequestException(String.format("Unknown receiver account with id %d", receiverId));
+            }
+
+            long transferId = generator.generateId().getLeastSignificantBits();
+            LocalDateTime now = LocalDateTime.now(clock);
+
+            end(hold, BalanceHoldState.CAPTURED, transferId);
+
+            // Both rows are updated in id order, like a transfer.
+            if (receiverId < accountId) {
+                credit(receiverId, amount, now);
+                debit(accountId, hold.getAmount(), amount, now);
+            } else {
+                debit(accountId, hold.getAmount(), amount, now);
+                credit(receiverId, amount, now);
+            }
+
+            manager.createNativeQuery(
+                            "INSERT INTO transfer_operation (id, sender_id, receiver_id, updated_at, deposit) " +
+                                    "VALUES (?, ?, ?, ?, ?)")
+                    .setParameter(1, transferId)
+                    .setParameter(2, accountId)
+                    .setParameter(3, receiverId)
+                    .setParameter(4, now)
+                    .setParameter(5, amount)
+                    .executeUpdate();
+
+            changeFeed.record(List.of(new TransferOperationRowDTO(transferId, accountId, receiverId, now, amount)),
+                    findBalances(List.of(accountId, receiverId)));
+
+            hold.setState(BalanceHoldState.CAPTURED);
+            hold.setTransferId(transferId);
+
+            return hold;
+        });
+    }
+
+    @Transactional
+    public BalanceHold release(long accountId, long holdId) {
+        return shards.route(accountId, () -> {
+            BalanceHold hold = findHeld(accountId, holdId, "release");
+
+            end(hold, BalanceHoldState.RELEASED, null);
+            unhold(accountId, hold.getAmount());
+
+            hold.setState(BalanceHoldState.RELEASED);
+
+            return hold;
+        });
+    }
+
+    /**
+     * Schedules the holds left active by the previous run; the only read of the holds table that isn't by id.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void scheduleActiveHolds() {
+        int count = 0;
+
+        for (int shard = 0; shard < shards.getCount(); shard++) {
+            List<HoldExpiryDTO> expiries = shards.routeToShard(shard, () ->
+                    holdRepository.findExpiriesByState(BalanceHoldState.HELD));
+
+            expiries.forEach(this::schedule);
+            count += expiries.size();
+        }
+
+        if (count > 0) {
+            log.info("Scheduled the expiry of {} active holds", count);
+        }
+    }
+
+    /**
+     * Expires the holds whose time has passed, each in a transaction of its own; a hold that can't be expired is
+     * tried again on the next tick.
+     */
+    @Scheduled(fixedDelayString = "${holds.expiry-tick:PT1S}")
+    public void expireHolds() {
+        List<HoldExpiryDTO> expired;
+
+        synchronized (wheel) {
+            expired = wheel.advance(clock.millis());
+            expired.forEach(expiry -> timeouts.remove(expiry.getId()));
+        }
+
+        for (HoldExpiryDTO expiry : expired) {
+            try {
+                onShard(expiry.getAccountId(), () -> expire(expiry.getId()));
+            } catch (RuntimeException e) {
+                log.warn("Can`t expire hold {}, will retry", expiry.getId(), e);
+                schedule(expiry);
+            }
+        }
+    }
+
+    /**
+     * Expires the holds whose time has passed on every shard, in batches claimed with {@code SKIP LOCKED} so that
+     * instances sweeping at the same time take different holds. Holds expired by the timer wheel meanwhile are
+     * skipped by the conditional end.
+     */
+    @Scheduled(fixedDelayString = "${holds.sweep-interval:PT1M}")
+    public void sweepExpiredHolds() {
+        for (int shard = 0; shard < shards.getCount(); shard++) {
+            int swept;
+
+            do {
+                swept = sweepBatch(shard);
+            } while (swept == sweepBatchSize);
+        }
+    }
+
+    /**
+     * Expires one batch of the expired holds on the shard and returns the number of holds claimed.
+     */
+    int sweepBatch(int shard) {
+        LocalDateTime now = LocalDateTime.now(clock);
+        int[] ended = new int[1];
+
+        try {
+            Integer claimed = shards.routeToShard(shard, () -> transactionTemplate.execute(status -> {
+                List<BalanceHold> expired = claimExpired(now);
+
+                // Accounts are updated in id order, like a transfer, so concurrent sweeps can't deadlock.
+                expired.stream()
+                        .sorted(Comparator.comparing(BalanceHold::getAccountId))
+                        .forEach(hold -> {
+                            if (holdRepository.end(hold.getId(), BalanceHoldState.EXPIRED, null) == 1) {
+                                unhold(hold.getAccountId(), hold.getAmount());
+                                afterCommit(() -> cancel(hold.getId()));
+                                ended[0]++;
+                            }
+                        });
+
+                return expired.size();
+            }));
+
+            if (ended[0] > 0) {
+                log.info("Swept {} expired holds on shard {}", ended[0], shard);
+            }
+
+            return claimed == null ? 0 : claimed;
+        } catch (RuntimeException e) {
+            log.warn("Can`t sweep expired holds on shard {}", shard, e);
+            return 0;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<BalanceHold> claimExpired(LocalDateTime now) {
+        return manager.createNativeQuery(CLAIM_EXPIRED, BalanceHold.class)
+                .setParameter(1, now)
+                .setParameter(2, sweepBatchSize)
+                .getResultList();
+    }
+
+    private Void expire(long holdId) {
+        BalanceHold hold = holdRepository.findById(holdId).orElse(null);
+
+        if (hold != null && hold.getState() == BalanceHoldState.HELD
+                && holdRepository.end(holdId, BalanceHoldState.EXPIRED, null) == 1) {
+            unhold(hold.getAccountId(), hold.getAmount());
+        }
+
+        return null;
+    }
+
+    private BalanceHold findHeld(long accountId, long holdId, String action) {
+        BalanceHold hold = holdRepository.findById(holdId)
+                .filter(found -> found.getAccountId() == accountId)
+                .orElseThrow(() -> new BadRequestException(String.format("Unknown hold with id %d", holdId)));
+
+        if (hold.getState() != BalanceHoldState.HELD) {
+            throw new BadRequestException(String.format("Can`t %s hold: hold is %s", action,
+                    hold.getState().name().toLowerCase()));
+        }
+
+        return hold;
+    }
+
+    /**
+     * Ends the hold and cancels its expiry once committed; throws {@link ObjectOptimisticLockingFailureException}
+     * if it ended concurrently, so that a retry reports how.
+     */
+    private void end(BalanceHold hold, BalanceHoldState state, Long transferId) {
+        if (holdRepository.end(hold.getId(), state, transferId) == 0) {
+            throw new ObjectOptimisticLockingFailureException(BalanceHold.class, hold.getId());
+        }
+
+        afterCommit(() -> cancel(hold.getId()));
+    }
+
+    private void debit(long accountId, double held, double amount, LocalDateTime now) {
+        manager.createNativeQuery("UPDATE account a SET a.balance = a.balance - ?, a.held = a.held - ?, " +
+                        "a.sent_count = a.sent_count + 1, a.last_operation_at = ?, " +
+                        "a.version = a.version + 1 WHERE a.id = ?")
+                .setParameter(1, amount)
+                .setParameter(2, held)
+                .setParameter(3, now)
+                .setParameter(4, accountId)
+                .executeUpdate();
+    }
+
+    private void credit(long receiverId, double amount, LocalDateTime now) {
+        manager.createNativeQuery("UPDATE account a SET a.balance = a.balance + ?, " +
+                        "a.received_count = a.received_count + 1, a.last_operation_at = ?, " +
+                        "a.version = a.version + 1 WHERE a.id = ?")
+                .setParameter(1, amount)
+                .setParameter(2, now)
+                .setParameter(3, receiverId)
+                .executeUpdate();
+    }
+
+    private void unhold(long accountId, double amount) {
+        manager.createNativeQuery("UPDATE account a SET a.held = a.held - ?, a.version = a.version + 1 " +
+                        "WHERE a.id = ?")
+                .setParameter(1, amount)
+                .setParameter(2, accountId)
+                .executeUpdate();
+    }
+
+    private Map<Long, Double> findBalances(List<Long> ids) {
+        return accountRepository.findBalancesByIdIn(ids).stream()
+                .collect(Collectors.toMap(AccountAmountDTO::getAccountId, AccountAmountDTO::getAmount));
+    }
+
+    private void schedule(HoldExpiryDTO expiry) {
+        long deadline = expiry.getExpiresAt().atZone(clock.getZone()).toInstant().toEpochMilli();
+
+        synchronized (wheel) {
+            timeouts.put(expiry.getId(), wheel.schedule(expiry, deadline));
+        }
+    }
+
+    private void cancel(long holdId) {
+        TimerWheel.Timeout<HoldExpiryDTO> timeout = timeouts.remove(holdId);
+
+        if (timeout != null) {
+            wheel.cancel(timeout);
+        }
+    }
+
+    private <T> T onShard(long accountId, Supplier<T> step) {
+        return shards.route(accountId, () -> transactionTemplate.execute(status -> step.get()));
+    }
+
+    /**
+     * Runs the action once the current transaction commits, so that a rolled back hold isn't scheduled or
+     * cancelled.
+     */
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,350 @@
+package com.piche.task.service;
+
+import com.piche.task.archive.OperationArchive;
+import com.piche.task.dto.AccountAmountDTO;
+import com.piche.task.dto.BalanceDiscrepancyDTO;
+import com.piche.task.model.ReconciliationCheckpoint;
+import com.piche.task.repository.AccountDepositOperationRepository;
+import com.piche.task.repository.AccountRepository;
+import com.piche.task.repository.AccountTransferOperationRepository;
+import com.piche.task.repository.ReconciliationBalanceRepository;
+import com.piche.task.repository.ReconciliationCheckpointRepository;
+import com.piche.task.sharding.ShardRouter;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Verifies {@code account.balance} against the operation tables.
+ * <p>
+ * Every run aggregates only the operations committed since the previous run (a half-open
+ * {@code [watermark, now - settle)} window on {@code updated_at}) into a running per-account expected balance,
+ * then checks the touched accounts in parallel chunks. Operations newer than the window are added back from
+ * the touched accounts only, so the full history is read once and never rescanned.
+ * A mismatch is reported after it has been seen by two consecutive runs, which filters out writes that were
+ * in flight while the chunk was checked.
+ * <p>
+ * The watermark and the expected balances are kept in the {@code reconciliation_checkpoint} and
+ * {@code reconciliation_balance} tables and advanced together in one transaction, so a restart resumes where the
+ * last run stopped and the memory used doesn't grow with the number of accounts. The transaction locks the
+ * checkpoint row, so several instances never add the same window twice; the row is created beforehand, without a
+ * watermark, so even the first runs have a row to lock.
+ * <p>
+ * Operations moved to the {@link OperationArchive} are older than the watermark by then, so the archived net
+ * balances are only added once, on the run that creates the checkpoint. Reconciliation reads a single database, so
+ * it is off when accounts are sharded.
+ */
+@Slf4j
+@Service
+public class BalanceReconciliationService {
+
+    private static final double EPSILON = 1e-6;
+
+    private static final int CHECKPOINT_ID = 1;
+
+    private static final LocalDateTime EPOCH = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private static final String ADD_BALANCE = "MERGE INTO reconciliation_balance b " +
+            "USING (VALUES (CAST(? AS BIGINT), CAST(? AS FLOAT(53)))) AS d (account_id, delta) " +
+            "ON b.account_id = d.account_id " +
+            "WHEN MATCHED THEN UPDATE SET expected_balance = b.expected_balance + d.delta " +
+            "WHEN NOT MATCHED THEN INSERT (account_id, expected_balance) VALUES (d.account_id, d.delta)";
+
+    private static final String CREATE_CHECKPOINT = "MERGE INTO reconciliation_checkpoint c " +
+            "USING (VALUES (CAST(? AS INTEGER))) AS n (id) " +
+            "ON c.id = n.id " +
+            "WHEN NOT MATCHED THEN INSERT (id, watermark) VALUES (n.id, NULL)";
+
+    private final AccountRepository accountRepository;
+
+    private final AccountDepositOperationRepository depositOperationRepository;
+
+    private final AccountTransferOperationRepository transferOperationRepository;
+
+    private final OperationArchive archive;
+
+    private final ReconciliationCheckpointRepository checkpointRepository;
+
+    private final ReconciliationBalanceRepository balanceRepository;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final boolean enabled;
+
+    private final Duration settle;
+
+    private final int chunkSize;
+
+    private final ForkJoinPool pool;
+
+    private final Clock clock;
+
+    private final Map<Long, BalanceDiscrepancyDTO> suspects = new HashMap<>();
+
+    private volatile Map<Long, BalanceDiscrepancyDTO> discrepancies = Map.of();
+
+    private volatile LocalDateTime watermark = EPOCH;
+
+    private boolean checkpointCreated;
+
+    @Autowired
+    public BalanceReconciliationService(AccountRepository accountRepository,
+                                        AccountDepositOperationRepository depositOperationRepository,
+                                        AccountTransferOperationRepository transferOperationRepository,
+                                        OperationArchive archive,
+                                        ReconciliationCheckpointRepository checkpointRepository,
+                                        ReconciliationBalanceRepository balanceRepository,
+                                        JdbcTemplate jdbcTemplate,
+                                        PlatformTransactionManager transactionManager,
+                                        ShardRouter shards,
+                                        @Value("${reconciliation.enabled:true}") boolean enabled,
+                                        @Value("${reconciliation.settle:PT10S}") Duration settle,
+                                        @Value("${reconciliation.chunk-size:500}") int chunkSize,
+                                        @Value("${reconciliation.parallelism:0}") int parallelism) {
+        this(accountRepository, depositOperationRepository, transferOperationRepository, archive,
+                checkpointRepository, balanceRepository, jdbcTemplate, transactionManager,
+                enabled && !shards.isSharded(), settle, chunkSize,
+                new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors()),
+                Clock.systemDefaultZone());
+    }
+
+    BalanceReconciliationService(AccountRepository accountRepository,
+                                 AccountDepositOperationRepository depositOperationRepository,
+                                 AccountTransferOperationRepository transferOperationRepository,
+                                 OperationArchive archive,
+                                 ReconciliationCheckpointRepository checkpointRepository,
+                                 ReconciliationBalanceRepository balanceRepository,
+                                 JdbcTemplate jdbcTemplate,
+                                 PlatformTransactionManager transactionManager,
+                                 boolean enabled,
+                                 Duration settle,
+                                 int chunkSize,
+                                 ForkJoinPool pool,
+                                 Clock clock) {
+        this.accountRepository = accountRepository;
+        this.depositOperationRepository = depositOperationRepository;
+        this.transferOperationRepository = transferOperationRepository;
+        this.archive = archive;
+        this.checkpointRepository = checkpointRepository;
+        this.balanceRepository = balanceRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.settle = settle;
+        this.chunkSize = chunkSize;
+        this.pool = pool;
+        this.clock = clock;
+    }
+
+    public List<BalanceDiscrepancyDTO> getDiscrepancies() {
+        return List.copyOf(discrepancies.values());
+    }
+
+    public LocalDateTime getWatermark() {
+        return watermark;
+    }
+
+    @Scheduled(fixedDelayString = "${reconciliation.interval:PT1M}")
+    public synchronized void reconcile() {
+        if (!enabled) {
+            return;
+        }
+
+        LocalDateTime now = LocalDateTime.now(clock);
+        LocalDateTime upperBound = now.minus(settle);
+
+        createCheckpoint();
+
+        Map<Long, Double> deltas = transactionTemplate.execute(status -> advance(upperBound));
+
+        if (deltas == null) {
+            return;
+        }
+
+        List<Long> touched = new ArrayList<>(deltas.keySet());
+
+        suspects.keySet().stream().filter(id -> !deltas.containsKey(id)).forEach(touched::add);
+
+        if (touched.isEmpty()) {
+            return;
+        }
+
+        List<BalanceDiscrepancyDTO> mismatches = pool.invoke(new CheckTask(touched, upperBound, now));
+        Map<Long, BalanceDiscrepancyDTO> previousSuspects = new HashMap<>(suspects);
+        Map<Long, BalanceDiscrepancyDTO> confirmed = new HashMap<>(discrepancies);
+
+        suspects.clear();
+        touched.forEach(confirmed::remove);
+
+        for (BalanceDiscrepancyDTO mismatch : mismatches) {
+            Long id = mismatch.getAccountId();
+
+            if (previousSuspects.containsKey(id) || discrepancies.containsKey(id)) {
+                confirmed.put(id, mismatch);
+                log.warn("Balance of account {} is {} but its operations sum up to {}",
+                        id, mismatch.getBalance(), mismatch.getExpectedBalance());
+            } else {
+                suspects.put(id, mismatch);
+            }
+        }
+
+        discrepancies = confirmed;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Creates the checkpoint row unless it exists, in a transaction of its own, so that every run locks it.
+     */
+    private void createCheckpoint() {
+        if (checkpointCreated) {
+            return;
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.update(CREATE_CHECKPOINT, CHECKPOINT_ID));
+        } catch (DuplicateKeyException e) {
+            log.debug("Reconciliation checkpoint was created by another instance");
+        }
+
+        checkpointCreated = true;
+    }
+
+    /**
+     * Adds the operations of {@code [watermark, upperBound)} to the expected balances and moves the watermark, or
+     * returns {@code null} if it is already there.
+     */
+    private Map<Long, Double> advance(LocalDateTime upperBound) {
+        ReconciliationCheckpoint checkpoint = checkpointRepository.findForUpdate(CHECKPOINT_ID).orElseThrow();
+        boolean firstRun = checkpoint.getWatermark() == null;
+        LocalDateTime from = firstRun ? EPOCH : checkpoint.getWatermark();
+
+        watermark = from;
+
+        if (!upperBound.isAfter(from)) {
+            return null;
+        }
+
+        Map<Long, Double> deltas = archive.read(() -> {
+            Map<Long, Double> result = firstRun ? new HashMap<>(archive.netBalances()) : new HashMap<>();
+
+            depositOperationRepository.sumByAccountIdAndDateSpan(from, upperBound)
+                    .forEach(sum -> result.merge(sum.getAccountId(), sum.getAmount(), Double::sum));
+            transferOperationRepository.sumBySenderIdAndDateSpan(from, upperBound)
+                    .forEach(sum -> result.merge(sum.getAccountId(), -sum.getAmount(), Double::sum));
+            transferOperationRepository.sumByReceiverIdAndDateSpan(from, upperBound)
+                    .forEach(sum -> result.merge(sum.getAccountId(), sum.getAmount(), Double::sum));
+
+            return result;
+        });
+
+        jdbcTemplate.batchUpdate(ADD_BALANCE, deltas.entrySet().stream()
+                .map(delta -> new Object[] {delta.getKey(), delta.getValue()})
+                .toList());
+        checkpointRepository.save(ReconciliationCheckpoint.builder()
+                .id(CHECKPOINT_ID)
+                .watermark(upperBound)
+                .build());
+
+        watermark = upperBound;
+
+        return deltas;
+    }
+
+    private List<BalanceDiscrepancyDTO> checkChunk(List<Long> ids, LocalDateTime upperBound, LocalDateTime now) {
+        Map<Long, Double> pending = new HashMap<>();
+
+        depositOperationRepository.sumByAccountIdInAndUpdatedAfter(ids, upperBound)
+                .forEach(sum -> pending.merge(sum.getAccountId(), sum.getAmount(), Double::sum));
+        transferOperationRepository.sumBySenderIdInAndUpdatedAfter(ids, upperBound)
+                .forEach(sum -> pending.merge(sum.getAccountId(), -sum.getAmount(), Double::sum));
+        transferOperationRepository.sumByReceiverIdInAndUpdatedAfter(ids, upperBound)
+                .forEach(sum -> pending.merge(sum.getAccountId(), sum.getAmount(), Double::sum));
+
+        Map<Long, Double> expectedBalances = new HashMap<>();
+
+        balanceRepository.findAllById(ids)
+                .forEach(balance -> expectedBalances.put(balance.getAccountId(), balance.getExpectedBalance()));
+
+        List<BalanceDiscrepancyDTO> result = new ArrayList<>();
+        List<AccountAmountDTO> balances = accountRepository.findBalancesByIdIn(ids);
+
+        if (balances.size() < ids.size()) {
+            balanceRepository.deleteAllByIdInBatch(ids.stream()
+                    .filter(id -> balances.stream().noneMatch(balance -> balance.getAccountId().equals(id)))
+                    .toList());
+        }
+
+        for (AccountAmountDTO balance : balances) {
+            double expected = expectedBalances.getOrDefault(balance.getAccountId(), 0.0)
+                    + pending.getOrDefault(balance.getAccountId(), 0.0);
+
+            if (Math.abs(balance.getAmount() - expected) > EPSILON) {
+                result.add(BalanceDiscrepancyDTO.builder()
+                        .accountId(balance.getAccountId())
+                        .balance(balance.getAmount())
+                        .expectedBalance(expected)
+                        .detectedAt(now)
+                        .build());
+            }
+        }
+
+        return result;
+    }
+
+    private class CheckTask extends RecursiveTask<List<BalanceDiscrepancyDTO>> {
+
+        private final List<Long> ids;
+
+        private final LocalDateTime upperBound;
+
+        private final LocalDateTime now;
+
+        CheckTask(List<Long> ids, LocalDateTime upperBound, LocalDateTime now) {
+            this.ids = ids;
+            this.upperBound = upperBound;
+            this.now = now;
+        }
+
+        @Override
+        protected List<BalanceDiscrepancyDTO> compute() {
+            if (ids.size() <= chunkSize) {
+                return checkChunk(ids, upperBound, now);
+            }
+
+            int middle = ids.size() / 2;
+            CheckTask left = new CheckTask(ids.subList(0, middle), upperBound, now);
+            CheckTask right = new CheckTask(ids.subList(middle, ids.size()), upperBound, now);
+
+            left.fork();
+
+            List<BalanceDiscrepancyDTO> result = new ArrayList<>(right.compute());
+
+            result.addAll(left.join());
+
+            return result;
+        }
+    }
+}
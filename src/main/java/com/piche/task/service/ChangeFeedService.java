@@ -0,0 +1,496 @@
+package com.piche.task.service;
+
+import com.piche.task.dto.ChangeEventDTO;
+import com.piche.task.dto.TransferOperationRowDTO;
+import com.piche.task.exception.BadRequestException;
+import com.piche.task.model.AccountDepositOperation;
+import com.piche.task.model.AccountTransferOperation;
+import com.piche.task.model.OutboxEvent;
+import com.piche.task.repository.OutboxEventRepository;
+import com.piche.task.sharding.ShardRouter;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Outbox based feed of balance changes.
+ * <p>
+ * Deposits and transfers {@link #record record} one event per touched account in their own transaction. The
+ * dispatcher numbers committed events in a single thread, so a position is never handed out before an event with
+ * a smaller one is visible and a consumer resuming after its last position can't miss events. Numbered events are
+ * pushed to the server-sent event subscribers, complete waiting long polls and can be read in batches after any
+ * retained position.
+ * <p>
+ * Every subscriber is written to by its own delivery task, so a slow client never holds up the dispatcher or the
+ * other subscribers. The dispatcher only adds events to the bounded queue of a subscriber; one that falls more than
+ * {@code change-feed.subscriber-queue} events behind is completed and resumes from the stored events when it
+ * reconnects with its last position.
+ */
+@Slf4j
+@Service
+public class ChangeFeedService {
+
+    private final OutboxEventRepository eventRepository;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final boolean enabled;
+
+    private final int batchSize;
+
+    private final Duration retention;
+
+    private final Duration emitterTimeout;
+
+    private final int subscriberQueue;
+
+    private final Executor delivery;
+
+    private final Set<Subscriber> subscribers = new CopyOnWriteArraySet<>();
+
+    private final Set<Poll> polls = new CopyOnWriteArraySet<>();
+
+    /**
+     * The feed numbers the events of a single database, so it is off when accounts are sharded.
+     */
+    @Autowired
+    public ChangeFeedService(OutboxEventRepository eventRepository,
+                             PlatformTransactionManager transactionManager,
+                             ShardRouter shards,
+                             @Value("${change-feed.enabled:true}") boolean enabled,
+                             @Value("${change-feed.batch-size:500}") int batchSize,
+                             @Value("${change-feed.retention:P7D}") Duration retention,
+                             @Value("${change-feed.emitter-timeout:PT30M}") Duration emitterTimeout,
+                             @Value("${change-feed.subscriber-queue:1000}") int subscriberQueue) {
+        this(eventRepository, transactionManager, enabled && !shards.isSharded(), batchSize, retention,
+                emitterTimeout, subscriberQueue, Executors.newCachedThreadPool(new DeliveryThreadFactory()));
+    }
+
+    ChangeFeedService(OutboxEventRepository eventRepository,
+                      PlatformTransactionManager transactionManager,
+                      boolean enabled,
+                      int batchSize,
+                      Duration retention,
+                      Duration emitterTimeout,
+                      int subscriberQueue,
+                      Executor delivery) {
+        this.eventRepository = eventRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.retention = retention;
+        this.emitterTimeout = emitterTimeout;
+        this.subscriberQueue = subscriberQueue;
+        this.delivery = delivery;
+    }
+
+    /**
+     * Must be called in the transaction that saved the operation, after the balance update.
+     */
+    public void record(AccountDepositOperation operation) {
+        if (!enabled) {
+            return;
+        }
+
+        eventRepository.save(event(operation.getAccount().getId(), operation.getId(), "deposit", null,
+                operation.getDeposit(), operation.getAccount().getBalance(), operation.getUpdatedAt()));
+    }
+
+    /**
+     * Must be called in the transaction that saved the operation, after the balance updates.
+     */
+    public void record(AccountTransferOperation operation) {
+        if (!enabled) {
+            return;
+        }
+
+        eventRepository.saveAll(List.of(
+                event(operation.getSender().getId(), operation.getId(), "transfer", "sender",
+                        -operation.getDeposit(), operation.getSender().getBalance(), operation.getUpdatedAt()),
+                event(operation.getReceiver().getId(), operation.getId(), "transfer", "receiver",
+                        operation.getDeposit(), operation.getReceiver().getBalance(), operation.getUpdatedAt())));
+    }
+
+    /**
+     * Must be called in the transaction that saved the transfers, after the balance updates, with the balances of
+     * their accounts after all of them.
+     */
+    public void record(List<TransferOperationRowDTO> transfers, Map<Long, Double> balances) {
+        if (!enabled) {
+            return;
+        }
+
+        Map<Long, Double> balance = new HashMap<>(balances);
+        List<OutboxEvent> events = new ArrayList<>(2 * transfers.size());
+
+        // Walks back from the final balances, so every event carries the balance right after its transfer.
+        for (int i = transfers.size() - 1; i >= 0; i--) {
+            TransferOperationRowDTO transfer = transfers.get(i);
+            double sender = balance.get(transfer.getSenderId());
+            double receiver = balance.get(transfer.getReceiverId());
+
+            events.add(event(transfer.getReceiverId(), transfer.getId(), "transfer", "receiver",
+                    transfer.getDeposit(), receiver, transfer.getUpdatedAt()));
+            events.add(event(transfer.getSenderId(), transfer.getId(), "transfer", "sender",
+                    -transfer.getDeposit(), sender, transfer.getUpdatedAt()));
+            balance.put(transfer.getSenderId(), sender + transfer.getDeposit());
+            balance.put(transfer.getReceiverId(), receiver - transfer.getDeposit());
+        }
+
+        Collections.reverse(events);
+        eventRepository.saveAll(events);
+    }
+
+    /**
+     * Returns up to {@code limit} events after the given position, of one account or of all accounts.
+     */
+    public List<ChangeEventDTO> findAfter(Long accountId, long after, int limit) {
+        if (limit < 1 || limit > batchSize) {
+            throw new BadRequestException(String.format("Limit must be between 1 and %d", batchSize));
+        }
+
+        checkRetained(after);
+
+        List<OutboxEvent> events = accountId == null
+                ? eventRepository.findAllAfter(after, PageRequest.of(0, limit))
+                : eventRepository.findAllByAccountIdAfter(accountId, after, PageRequest.of(0, limit));
+
+        return events.stream().map(ChangeFeedService::toDTO).toList();
+    }
+
+    /**
+     * Completes with the events after the given position as soon as there are any, or with an empty list once
+     * {@code wait} has passed.
+     */
+    public DeferredResult<List<ChangeEventDTO>> poll(Long accountId, long after, int limit, Duration wait) {
+        DeferredResult<List<ChangeEventDTO>> result = new DeferredResult<>(wait.toMillis(), List.of());
+        Poll poll = new Poll(result, accountId, after, limit);
+
+        result.onCompletion(() -> polls.remove(poll));
+
+        // Registered before reading: events dispatched in between complete the poll either way.
+        polls.add(poll);
+
+        List<ChangeEventDTO> events;
+
+        try {
+            events = findAfter(accountId, after, limit);
+        } catch (RuntimeException e) {
+            polls.remove(poll);
+            throw e;
+        }
+
+        if (!events.isEmpty() || wait.isZero()) {
+            polls.remove(poll);
+            result.setResult(events);
+        }
+
+        return result;
+    }
+
+    /**
+     * Streams the events after the given position, first the stored ones and then the live ones. The stored ones are
+     * read in batches by the delivery task of the subscriber once the response has started, so they are written to
+     * the client as they are read instead of being buffered until the emitter is returned.
+     *
+     * @throws BadRequestException if the position is no longer retained
+     */
+    public SseEmitter subscribe(Long accountId, long after) {
+        checkRetained(after);
+
+        Subscriber subscriber = new Subscriber(emitterTimeout.toMillis(), accountId, after);
+
+        subscriber.onCompletion(() -> subscribers.remove(subscriber));
+        subscriber.onTimeout(() -> subscribers.remove(subscriber));
+        subscriber.onError(e -> subscribers.remove(subscriber));
+
+        // Registered before catching up: live events pushed meanwhile are dropped and read by the second pass.
+        subscribers.add(subscriber);
+
+        return subscriber;
+    }
+
+    @Scheduled(fixedDelayString = "${change-feed.dispatch-interval:PT0.2S}")
+    public void dispatch() {
+        if (!enabled) {
+            return;
+        }
+
+        List<OutboxEvent> events;
+
+        do {
+            events = transactionTemplate.execute(status -> assignPositions());
+
+            List<ChangeEventDTO> dtos = events.stream().map(ChangeFeedService::toDTO).toList();
+
+            for (ChangeEventDTO dto : dtos) {
+                subscribers.forEach(subscriber -> subscriber.push(dto));
+            }
+
+            if (!dtos.isEmpty()) {
+                polls.forEach(poll -> poll.complete(dtos));
+            }
+        } while (events.size() == batchSize);
+    }
+
+    @Scheduled(fixedDelayString = "${change-feed.purge-interval:PT1H}")
+    public void purge() {
+        if (!enabled) {
+            return;
+        }
+
+        Integer deleted = transactionTemplate.execute(status ->
+                eventRepository.deleteDispatchedBefore(LocalDateTime.now().minus(retention)));
+
+        log.info("Purged {} change events", deleted);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (delivery instanceof ExecutorService executor) {
+            executor.shutdownNow();
+        }
+    }
+
+    int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    int getPollCount() {
+        return polls.size();
+    }
+
+    private List<OutboxEvent> assignPositions() {
+        List<Long> ids = eventRepository.findUndispatchedIds(PageRequest.of(0, batchSize));
+
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+
+        long position = eventRepository.findMaxPosition();
+
+        for (Long id : ids) {
+            eventRepository.assignPosition(id, ++position);
+        }
+
+        return eventRepository.findAllByIdInOrderByPosition(ids);
+    }
+
+    private void checkRetained(long after) {
+        Long minPosition = eventRepository.findMinPosition();
+
+        if (minPosition != null && after < minPosition - 1) {
+            throw new BadRequestException(String.format("Position %d is no longer retained, the feed starts at %d",
+                    after, minPosition));
+        }
+    }
+
+    private static OutboxEvent event(Long accountId, Long operationId, String type, String role, double deposit,
+                                     double balance, LocalDateTime createdAt) {
+        return OutboxEvent.builder()
+                .accountId(accountId)
+                .operationId(operationId)
+                .type(type)
+                .role(role)
+                .deposit(deposit)
+                .balance(balance)
+                .createdAt(createdAt)
+                .build();
+    }
+
+    private static ChangeEventDTO toDTO(OutboxEvent event) {
+        return ChangeEventDTO.builder()
+                .position(event.getPosition())
+                .accountId(event.getAccountId())
+                .operationId(event.getOperationId())
+                .type(event.getType())
+                .role(event.getRole())
+                .deposit(event.getDeposit())
+                .balance(event.getBalance())
+                .createdAt(event.getCreatedAt())
+                .build();
+    }
+
+    /**
+     * A stream with a bounded queue of live events, written to by at most one delivery task at a time.
+     */
+    class Subscriber extends SseEmitter {
+
+        private final Long accountId;
+
+        private final BlockingQueue<ChangeEventDTO> queue = new ArrayBlockingQueue<>(subscriberQueue);
+
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private volatile long lastPosition;
+
+        private volatile boolean live;
+
+        private volatile boolean dropped;
+
+        Subscriber(long timeout, Long accountId, long lastPosition) {
+            super(timeout);
+            this.accountId = accountId;
+            this.lastPosition = lastPosition;
+        }
+
+        /**
+         * Called once the response has started, right before the emitter is initialized, so at most the first
+         * events of the catch-up are buffered.
+         */
+        @Override
+        protected void extendResponse(ServerHttpResponse outputMessage) {
+            super.extendResponse(outputMessage);
+
+            scheduled.set(true);
+            delivery.execute(this::deliver);
+        }
+
+        void push(ChangeEventDTO event) {
+            if (!live || dropped || (accountId != null && !accountId.equals(event.getAccountId()))) {
+                return;
+            }
+
+            if (!queue.offer(event)) {
+                log.info("Dropping a change feed subscriber more than {} events behind", subscriberQueue);
+
+                // Completed by the delivery task, which may still be blocked writing to the client.
+                dropped = true;
+                subscribers.remove(this);
+            }
+
+            if (scheduled.compareAndSet(false, true)) {
+                delivery.execute(this::deliver);
+            }
+        }
+
+        private void deliver() {
+            try {
+                if (!live) {
+                    catchUp();
+                    live = true;
+                    catchUp();
+                }
+
+                ChangeEventDTO event;
+
+                while (!dropped && (event = queue.poll()) != null) {
+                    sendEvent(event);
+                }
+            } catch (RuntimeException | IOException e) {
+                subscribers.remove(this);
+                completeWithError(e);
+                return;
+            }
+
+            if (dropped) {
+                complete();
+                return;
+            }
+
+            scheduled.set(false);
+
+            // An event pushed after the queue was found empty, but before the flag was cleared, wasn't scheduled.
+            if (!queue.isEmpty() && scheduled.compareAndSet(false, true)) {
+                delivery.execute(this::deliver);
+            }
+        }
+
+        private void catchUp() throws IOException {
+            List<ChangeEventDTO> events;
+
+            do {
+                events = findAfter(accountId, lastPosition, batchSize);
+
+                for (ChangeEventDTO event : events) {
+                    sendEvent(event);
+                }
+            } while (events.size() == batchSize && !dropped);
+        }
+
+        private void sendEvent(ChangeEventDTO event) throws IOException {
+            if (event.getPosition() <= lastPosition) {
+                return;
+            }
+
+            send(SseEmitter.event()
+                    .id(String.valueOf(event.getPosition()))
+                    .name(event.getType())
+                    .data(event));
+            lastPosition = event.getPosition();
+        }
+    }
+
+    private class Poll {
+
+        private final DeferredResult<List<ChangeEventDTO>> result;
+
+        private final Long accountId;
+
+        private final long after;
+
+        private final int limit;
+
+        Poll(DeferredResult<List<ChangeEventDTO>> result, Long accountId, long after, int limit) {
+            this.result = result;
+            this.accountId = accountId;
+            this.after = after;
+            this.limit = limit;
+        }
+
+        void complete(List<ChangeEventDTO> dispatched) {
+            List<ChangeEventDTO> events = dispatched.stream()
+                    .filter(event -> event.getPosition() > after)
+                    .filter(event -> accountId == null || accountId.equals(event.getAccountId()))
+                    .limit(limit)
+                    .toList();
+
+            if (!events.isEmpty()) {
+                polls.remove(this);
+                result.setResult(events);
+            }
+        }
+    }
+
+    private static class DeliveryThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "change-feed-delivery-" + counter.incrementAndGet());
+
+            thread.setDaemon(true);
+
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.piche.task.service;
+
+import com.piche.task.archive.OperationArchive;
+import com.piche.task.model.DailyBalance;
+import com.piche.task.model.DailyBalanceCheckpoint;
+import com.piche.task.repository.AccountDepositOperationRepository;
+import com.piche.task.repository.AccountTransferOperationRepository;
+import com.piche.task.repository.DailyBalanceCheckpointRepository;
+import com.piche.task.repository.DailyBalanceRepository;
+import com.piche.task.sharding.ShardRouter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * Rolls the operations of every finished day up into the end-of-day balances of the accounts that had operations
+ * on it, so statements read their closing balance with one indexed lookup instead of summing up every later
+ * operation.
+ * <p>
+ * Each day is rolled up in its own transaction which locks the {@code daily_balance_checkpoint} row, adds the
+ * operations of the day to the latest earlier balance of every touched account and moves the checkpoint, so a
+ * restart resumes with the next day and several instances never roll up the same day twice. A day is finished once
+ * {@code settle} has passed since its end. The first run starts with the day of the oldest operation still in the
+ * database; operations moved to the {@link OperationArchive} are older than that, so their net balances are added
+ * once, on that day. Rollups read a single database, so they are off when accounts are sharded.
+ */
+@Service
+public class DailyBalanceService {
+
+    private static final int CHECKPOINT_ID = 1;
+
+    private static final int CHUNK_SIZE = 1000;
+
+    private static final String INSERT_BALANCE =
+            "INSERT INTO daily_balance (account_id, balance_day, balance) VALUES (?, ?, ?)";
+
+    private final AccountDepositOperationRepository depositOperationRepository;
+
+    private final AccountTransferOperationRepository transferOperationRepository;
+
+    private final OperationArchive archive;
+
+    private final DailyBalanceCheckpointRepository checkpointRepository;
+
+    private final DailyBalanceRepository balanceRepository;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final boolean enabled;
+
+    private final Duration settle;
+
+    private final Clock clock;
+
+    @Autowired
+    public DailyBalanceService(AccountDepositOperationRepository depositOperationRepository,
+                               AccountTransferOperationRepository transferOperationRepository,
+                               OperationArchive archive,
+                               DailyBalanceCheckpointRepository checkpointRepository,
+                               DailyBalanceRepository balanceRepository,
+                               JdbcTemplate jdbcTemplate,
+                               PlatformTransactionManager transactionManager,
+                               ShardRouter shards,
+                               @Value("${daily-balance.enabled:true}") boolean enabled,
+                               @Value("${daily-balance.settle:PT1M}") Duration settle) {
+        this(depositOperationRepository, transferOperationRepository, archive, checkpointRepository,
+                balanceRepository, jdbcTemplate, transactionManager, enabled && !shards.isSharded(), settle,
+                Clock.systemDefaultZone());
+    }
+
+    DailyBalanceService(AccountDepositOperationRepository depositOperationRepository,
+                        AccountTransferOperationRepository transferOperationRepository,
+                        OperationArchive archive,
+                        DailyBalanceCheckpointRepository checkpointRepository,
+                        DailyBalanceRepository balanceRepository,
+                        JdbcTemplate jdbcTemplate,
+                        PlatformTransactionManager transactionManager,
+                        boolean enabled,
+                        Duration settle,
+                        Clock clock) {
+        this.depositOperationRepository = depositOperationRepository;
+        this.transferOperationRepository = transferOperationRepository;
+        this.archive = archive;
+        this.checkpointRepository = checkpointRepository;
+        this.balanceRepository = balanceRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.settle = settle;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the rolled up days, or {@code null} if rollups are off or haven't run yet.
+     */
+    public DailyBalanceCheckpoint getCheckpoint() {
+        return enabled ? checkpointRepository.findById(CHECKPOINT_ID).orElse(null) : null;
+    }
+
+    /**
+     * Returns the balance of the account at the start of {@code day}. Only exact when every day before it since
+     * the first rolled up one is rolled up.
+     */
+    public double getBalanceBefore(Long accountId, LocalDate day) {
+        return balanceRepository.findFirstByAccountIdAndDayLessThanOrderByDayDesc(accountId, day)
+                .map(DailyBalance::getBalance)
+                .orElse(0.0);
+    }
+
+    @Scheduled(fixedDelayString = "${daily-balance.interval:PT10M}")
+    public synchronized void rollUp() {
+        if (!enabled) {
+            return;
+        }
+
+        LocalDate limit = LocalDateTime.now(clock).minus(settle).toLocalDate();
+
+        while (Boolean.TRUE.equals(transactionTemplate.execute(status -> rollUpNextDay(limit)))) {
+            // every iteration rolls up one day
+        }
+    }
+
+    /**
+     * Rolls up the day after the checkpoint if it ended before {@code limit} and returns whether it did.
+     */
+    private boolean rollUpNextDay(LocalDate limit) {
+        DailyBalanceCheckpoint checkpoint = checkpointRepository.findForUpdate(CHECKPOINT_ID)
+                .orElseGet(() -> DailyBalanceCheckpoint.builder()
+                        .id(CHECKPOINT_ID)
+                        .firstDay(findFirstDay(limit))
+                        .build());
+        LocalDate day = checkpoint.getNextDay() == null ? checkpoint.getFirstDay() : checkpoint.getNextDay();
+
+        if (!day.isBefore(limit)) {
+            return false;
+        }
+
+        LocalDateTime from = day.atStartOfDay();
+        LocalDateTime to = from.plusDays(1);
+        boolean firstDay = day.equals(checkpoint.getFirstDay());
+
+        Map<Long, Double> deltas = archive.read(() -> {
+            Map<Long, Double> result = firstDay ? new HashMap<>(archive.netBalances()) : new HashMap<>();
+
+            depositOperationRepository.sumByAccountIdAndDateSpan(from, to)
+                    .forEach(sum -> result.merge(sum.getAccountId(), sum.getAmount(), Double::sum));
+            transferOperationRepository.sumBySenderIdAndDateSpan(from, to)
+                    .forEach(sum -> result.merge(sum.getAccountId(), -sum.getAmount(), Double::sum));
+            transferOperationRepository.sumByReceiverIdAndDateSpan(from, to)
+                    .forEach(sum -> result.merge(sum.getAccountId(), sum.getAmount(), Double::sum));
+
+            return result;
+        });
+
+        List<Long> ids = new ArrayList<>(deltas.keySet());
+
+        for (int start = 0; start < ids.size(); start += CHUNK_SIZE) {
+            List<Long> chunk = ids.subList(start, Math.min(start + CHUNK_SIZE, ids.size()));
+            Map<Long, Double> balances = new HashMap<>();
+
+            balanceRepository.findLatestByAccountIdInAndDayBefore(chunk, day)
+                    .forEach(balance -> balances.put(balance.getAccountId(), balance.getBalance()));
+            jdbcTemplate.batchUpdate(INSERT_BALANCE, chunk.stream()
+                    .map(id -> new Object[] {id, Date.valueOf(day), balances.getOrDefault(id, 0.0) + deltas.get(id)})
+                    .toList());
+        }
+
+        checkpoint.setNextDay(day.plusDays(1));
+        checkpointRepository.save(checkpoint);
+
+        return true;
+    }
+
+    /**
+     * The day of the oldest operation in the database, or {@code limit} if there are none before it.
+     */
+    private LocalDate findFirstDay(LocalDate limit) {
+        return Stream.of(depositOperationRepository.findMinUpdatedAt(), transferOperationRepository.findMinUpdatedAt())
+                .filter(Objects::nonNull)
+                .map(LocalDateTime::toLocalDate)
+                .filter(day -> day.isBefore(limit))
+                .min(LocalDate::compareTo)
+                .orElse(limit);
+    }
+}
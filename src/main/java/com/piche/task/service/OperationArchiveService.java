@@ -0,0 +1,121 @@
+package com.piche.task.service;
+
+import com.piche.task.archive.ArchiveKind;
+import com.piche.task.archive.ArchivedOperation;
+import com.piche.task.archive.OperationArchive;
+import com.piche.task.model.OperationArchiveSegment;
+import com.piche.task.repository.AccountDepositOperationRepository;
+import com.piche.task.repository.AccountTransferOperationRepository;
+import com.piche.task.repository.OperationArchiveSegmentRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Moves operations older than the configured horizon from the operation tables into archive segments.
+ */
+@Slf4j
+@Service
+public class OperationArchiveService {
+
+    private static final int DELETE_CHUNK_SIZE = 1000;
+
+    private final OperationArchive archive;
+
+    private final AccountDepositOperationRepository depositOperationRepository;
+
+    private final AccountTransferOperationRepository transferOperationRepository;
+
+    private final OperationArchiveSegmentRepository segmentRepository;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final Duration horizon;
+
+    private final int batchSize;
+
+    @PersistenceContext
+    private final EntityManager manager;
+
+    public OperationArchiveService(OperationArchive archive,
+                                   AccountDepositOperationRepository depositOperationRepository,
+                                   AccountTransferOperationRepository transferOperationRepository,
+                                   OperationArchiveSegmentRepository segmentRepository,
+                                   TransactionTemplate transactionTemplate,
+                                   @Value("${archive.horizon:P365D}") Duration horizon,
+                                   @Value("${archive.batch-size:100000}") int batchSize,
+                                   EntityManager manager) {
+        this.archive = archive;
+        this.depositOperationRepository = depositOperationRepository;
+        this.transferOperationRepository = transferOperationRepository;
+        this.segmentRepository = segmentRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.horizon = horizon;
+        this.batchSize = batchSize;
+        this.manager = manager;
+    }
+
+    @Scheduled(fixedDelayString = "${archive.interval:PT1H}")
+    public synchronized void archive() {
+        if (!archive.isEnabled()) {
+            return;
+        }
+
+        LocalDateTime before = LocalDateTime.now().minus(horizon);
+
+        while (archiveBatch(ArchiveKind.DEPOSIT, before) == batchSize) {
+            log.debug("Archived a full batch of deposit operations, continuing");
+        }
+
+        while (archiveBatch(ArchiveKind.TRANSFER, before) == batchSize) {
+            log.debug("Archived a full batch of transfer operations, continuing");
+        }
+    }
+
+    int archiveBatch(ArchiveKind kind, LocalDateTime before) {
+        List<ArchivedOperation> operations = kind == ArchiveKind.DEPOSIT
+                ? depositOperationRepository.findArchivableBefore(before, PageRequest.of(0, batchSize))
+                : transferOperationRepository.findArchivableBefore(before, PageRequest.of(0, batchSize));
+
+        if (operations.isEmpty()) {
+            return 0;
+        }
+
+        String name = archive.write(kind, operations);
+        String table = kind == ArchiveKind.DEPOSIT ? "deposit_operation" : "transfer_operation";
+
+        archive.publish(name, () -> transactionTemplate.executeWithoutResult(status -> {
+            for (int i = 0; i < operations.size(); i += DELETE_CHUNK_SIZE) {
+                List<Long> ids = operations.subList(i, Math.min(i + DELETE_CHUNK_SIZE, operations.size())).stream()
+                        .map(ArchivedOperation::getId)
+                        .toList();
+
+                manager.createNativeQuery(String.format("DELETE FROM %s WHERE id IN (:ids)", table))
+                        .setParameter("ids", ids)
+                        .executeUpdate();
+            }
+
+            segmentRepository.save(OperationArchiveSegment.builder()
+                    .fileName(name)
+                    .kind(kind)
+                    .rowCount(operations.size())
+                    .minUpdatedAt(operations.get(0).getUpdatedAt())
+                    .maxUpdatedAt(operations.get(operations.size() - 1).getUpdatedAt())
+                    .createdAt(LocalDateTime.now())
+                    .build());
+        }));
+
+        log.info("Archived {} {} operations older than {} into {}", operations.size(), table, before, name);
+
+        return operations.size();
+    }
+}
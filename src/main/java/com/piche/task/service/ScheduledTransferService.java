@@ -0,0 +1,469 @@
+package com.piche.task.service;
+
+import com.piche.task.dto.AccountOperationDTO;
+import com.piche.task.dto.ScheduledTransferDTO;
+import com.piche.task.exception.BadRequestException;
+import com.piche.task.exception.UnknownAccountIdException;
+import com.piche.task.model.ScheduledTransfer;
+import com.piche.task.model.ScheduledTransferState;
+import com.piche.task.repository.AccountRepository;
+import com.piche.task.repository.ScheduledTransferRepository;
+import com.piche.task.retry.OptimisticRetry;
+import com.piche.task.sharding.ShardRouter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.IdGenerator;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.Period;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+
+/**
+ * Scheduled and recurring transfers, stored on the sender's shard and run by {@link #runDue()} through
+ * {@link AccountTransferOperationService#save}, so they are checked and recorded like any other transfer.
+ * <p>
+ * Every {@code scheduled-transfers.poll-interval} each shard is drained in batches of
+ * {@code scheduled-transfers.batch-size}. A batch is one transaction: it claims the due rows with
+ * {@code FOR UPDATE SKIP LOCKED}, so that concurrent schedulers take different rows instead of waiting for each
+ * other, runs their transfers, moves the rows to their next occurrence in one JDBC batch and commits once. If any
+ * transfer of a batch fails, the batch rolls back and its rows run again in a transaction each, so that a rejected
+ * transfer only affects its own row: its error is kept in {@code last_error} and the row moves on as if it had run.
+ * <p>
+ * A row runs at its occurrence plus an offset hashed from its id, shorter than {@code scheduled-transfers.window},
+ * so that transfers scheduled for the same time, e.g. midnight, spread over the window instead of running at once.
+ * Recurring rows repeat every {@code recurrence}, an ISO-8601 period counted from {@code starts_at}; occurrences
+ * missed while no scheduler ran are skipped.
+ */
+@Slf4j
+@Service
+public class ScheduledTransferService {
+
+    private static final String CLAIM = "SELECT * FROM scheduled_transfer WHERE state = 'ACTIVE' AND run_at <= ? " +
+            "ORDER BY run_at FETCH FIRST ? ROWS ONLY FOR UPDATE SKIP LOCKED";
+
+    private static final String CLAIM_ONE = "SELECT * FROM scheduled_transfer WHERE id = ? AND state = 'ACTIVE' " +
+            "AND run_at <= ? FOR UPDATE SKIP LOCKED";
+
+    private static final String LOCK_ACCOUNT = "SELECT id FROM account WHERE id = ? FOR UPDATE";
+
+    private static final String ADVANCE = "UPDATE scheduled_transfer SET occurrence = ?, scheduled_at = ?, " +
+            "run_at = ?, state = ?, last_run_at = ?, last_transfer_id = ?, last_error = ? WHERE id = ?";
+
+    private static final int MAX_ERROR_LENGTH = 255;
+
+    private final ShardRouter shards;
+
+    private final AccountRepository accountRepository;
+
+    private final ScheduledTransferRepository scheduledRepository;
+
+    private final AccountTransferOperationService transferService;
+
+    private final OptimisticRetry retry;
+
+    private final IdGenerator generator;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final boolean enabled;
+
+    private final int batchSize;
+
+    private final Duration window;
+
+    private final Clock clock;
+
+    private final Counter committed;
+
+    private final Counter rejected;
+
+    @PersistenceContext
+    private final EntityManager manager;
+
+    @Autowired
+    public ScheduledTransferService(ShardRouter shards,
+                                    AccountRepository accountRepository,
+                                    ScheduledTransferRepository scheduledRepository,
+                                    AccountTransferOperationService transferService,
+                                    OptimisticRetry retry,
+                                    IdGenerator generator,
+                                    JdbcTemplate jdbcTemplate,
+                                    PlatformTransactionManager transactionManager,
+                                    MeterRegistry registry,
+                                    @Value("${scheduled-transfers.enabled:true}") boolean enabled,
+                                    @Value("${scheduled-transfers.batch-size:100}") int batchSize,
+                                    @Value("${scheduled-transfers.window:PT5M}") Duration window,
+                                    EntityManager manager) {
+        this(shards, accountRepository, scheduledRepository, transferService, retry, generator, jdbcTemplate,
+                transactionManager, registry, enabled, batchSize, window, manager, Clock.systemDefaultZone());
+    }
+
+    ScheduledTransferService(ShardRouter shards,
+                             AccountRepository accountRepository,
+                             ScheduledTransferRepository scheduledRepository,
+                             AccountTransferOperationService transferService,
+                             OptimisticRetry retry,
+                             IdGenerator generator,
+                             JdbcTemplate jdbcTemplate,
+                             PlatformTransactionManager transactionManager,
+                             MeterRegistry registry,
+                             boolean enabled,
+                             int batchSize,
+                             Duration window,
+                             EntityManager manager,
+                             Clock clock) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("scheduled-transfers.batch-size must be positive");
+        }
+
+        this.shards = shards;
+        this.accountRepository = accountRepository;
+        this.scheduledRepository = scheduledRepository;
+        this.transferService = transferService;
+        this.retry = retry;
+        this.generator = generator;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.window = window;
+        this.manager = manager;
+        this.clock = clock;
+        this.committed = registry.counter("scheduled_transfers.runs", "result", "committed");
+        this.rejected = registry.counter("scheduled_transfers.runs", "result", "rejected");
+    }
+
+    @Transactional(readOnly = true)
+    public List<ScheduledTransfer> findAllActive(long senderId) {
+        return shards.route(senderId, () -> {
+            if (!accountRepository.existsById(senderId)) {
+                throw new UnknownAccountIdException(senderId);
+            }
+
+            return scheduledRepository.findAllBySenderIdAndState(senderId, ScheduledTransferState.ACTIVE);
+        });
+    }
+
+    /**
+     * Schedules the transfer; the receiver must live on the sender's shard, so that it runs in the sender's batch.
+     */
+    @Transactional
+    public ScheduledTransfer save(long senderId, ScheduledTransferDTO request) {
+        Long receiverId = request.getReceiverId();
+
+        if (receiverId == null || receiverId == senderId) {
+            throw new BadRequestException("Can`t schedule transfer: receiver must be another account");
+        }
+
+        if (request.getDeposit() <= 0) {
+            throw new BadRequestException("Can`t add operation: deposit value can`t be negative or zero");
+        }
+
+        if (request.getRecurrence() != null) {
+            parseRecurrence(request.getRecurrence());
+        }
+
+        if (shards.shardOf(receiverId) != shards.shardOf(senderId)) {
+            throw new BadRequestException(String.format(
+                    "Can`t schedule transfer: receiver account with id %d is on another shard than the sender",
+                    receiverId));
+        }
+
+        return shards.route(senderId, () -> {
+            if (!accountRepository.existsById(senderId)) {
+                throw new UnknownAccountIdException(senderId);
+            }
+
+            if (!accountRepository.existsById(receiverId)) {
+                throw new BadRequestException(String.format("Unknown receiver account with id %d", receiverId));
+            }
+
+            long id = generator.generateId().getLeastSignificantBits();
+            LocalDateTime now = LocalDateTime.now(clock);
+            LocalDateTime startsAt = request.getStartsAt() == null ? now : request.getStartsAt();
+
+            return scheduledRepository.save(ScheduledTransfer.builder()
+                    .id(id)
+                    .senderId(senderId)
+                    .receiverId(receiverId)
+                    .amount(request.getDeposit())
+                    .startsAt(startsAt)
+                    .recurrence(request.getRecurrence())
+                    .occurrence(0L)
+                    .scheduledAt(startsAt)
+                    .runAt(spread(id, startsAt))
+                    .state(ScheduledTransferState.ACTIVE)
+                    .createdAt(now)
+                    .build());
+        });
+    }
+
+    /**
+     * Cancels the schedule; a batch that has already claimed it still runs its current occurrence.
+     */
+    @Transactional
+    public void cancel(long senderId, long id) {
+        shards.route(senderId, () -> {
+            if (scheduledRepository.cancel(id, senderId) == 0) {
+                throw new BadRequestException(String.format("Unknown active scheduled transfer with id %d", id));
+            }
+
+            return null;
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${scheduled-transfers.poll-interval:PT1S}")
+    public void runDue() {
+        if (!enabled) {
+            return;
+        }
+
+        for (int shard = 0; shard < shards.getCount(); shard++) {
+            int moved;
+
+            // A shard is drained while its batches are full and all of their rows move on.
+            do {
+                moved = runBatch(shard);
+            } while (moved == batchSize);
+        }
+    }
+
+    /**
+     * Runs one batch of the transfers due on the shard and returns the number of rows that moved on.
+     */
+    int runBatch(int shard) {
+        LocalDateTime now = LocalDateTime.now(clock);
+        List<Long> claimed = new ArrayList<>();
+
+        try {
+            onShard(shard, () -> {
+                List<ScheduledTransfer> due = claim(now);
+                List<Object[]> advances = new ArrayList<>();
+
+                due.forEach(item -> claimed.add(item.getId()));
+                lockAccounts(due);
+
+                for (ScheduledTransfer item : due) {
+                    advances.add(advance(item, transfer(item), null, now));
+                }
+
+                advanceAll(advances);
+
+                return null;
+            });
+        } catch (RuntimeException e) {
+            if (claimed.isEmpty()) {
+                log.warn("Can`t claim scheduled transfers on shard {}", shard, e);
+                return 0;
+            }
+
+            log.debug("Batch of {} scheduled transfers rolled back, running them one by one", claimed.size(), e);
+
+            return (int) claimed.stream().filter(id -> runOne(shard, id, now)).count();
+        }
+
+        committed.increment(claimed.size());
+
+        return claimed.size();
+    }
+
+    /**
+     * Runs the transfer in a transaction of its own, retrying version conflicts, and returns whether its row moved
+     * on; a row that didn't is due again on the next poll.
+     */
+    private boolean runOne(int shard, long id, LocalDateTime now) {
+        try {
+            retry.execute("scheduled-transfer", () -> onShard(shard, () -> {
+                ScheduledTransfer item = claimOne(id, now);
+
+                if (item != null) {
+                    advanceAll(List.<Object[]>of(advance(item, transfer(item), null, now)));
+                }
+
+                return null;
+            }));
+
+            committed.increment();
+
+            return true;
+        } catch (BadRequestException e) {
+            log.info("Scheduled transfer {} was rejected: {}", id, e.getMessage());
+
+            return reject(shard, id, e.getMessage(), now);
+        } catch (RuntimeException e) {
+            log.warn("Can`t run scheduled transfer {}, will retry", id, e);
+
+            return false;
+        }
+    }
+
+    private boolean reject(int shard, long id, String error, LocalDateTime now) {
+        try {
+            onShard(shard, () -> {
+                ScheduledTransfer item = claimOne(id, now);
+
+                if (item != null) {
+                    advanceAll(List.<Object[]>of(advance(item, null, error, now)));
+                }
+
+                return null;
+            });
+
+            rejected.increment();
+
+            return true;
+        } catch (RuntimeException e) {
+            log.warn("Can`t record rejection of scheduled transfer {}, will retry", id, e);
+
+            return false;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<ScheduledTransfer> claim(LocalDateTime now) {
+        return manager.createNativeQuery(CLAIM, ScheduledTransfer.class)
+                .setParameter(1, now)
+                .setParameter(2, batchSize)
+                .getResultList();
+    }
+
+    @SuppressWarnings("unchecked")
+    private ScheduledTransfer claimOne(long id, LocalDateTime now) {
+        List<ScheduledTransfer> found = manager.createNativeQuery(CLAIM_ONE, ScheduledTransfer.class)
+                .setParameter(1, id)
+                .setParameter(2, now)
+                .getResultList();
+
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    /**
+     * Locks the accounts of the batch in id order before its transfers run, so that the batch, like a single
+     * transfer, takes its locks in id order and doesn't deadlock with other writers.
+     */
+    private void lockAccounts(List<ScheduledTransfer> due) {
+        SortedSet<Long> ids = new TreeSet<>();
+
+        for (ScheduledTransfer item : due) {
+            ids.add(item.getSenderId());
+            ids.add(item.getReceiverId());
+        }
+
+        for (Long id : ids) {
+            manager.createNativeQuery(LOCK_ACCOUNT)
+                    .setParameter(1, id)
+                    .getResultList();
+        }
+    }
+
+    private long transfer(ScheduledTransfer item) {
+        AccountOperationDTO operation = new AccountOperationDTO();
+
+        operation.setDeposit(item.getAmount());
+
+        return transferService.save(item.getSenderId(), item.getReceiverId(), operation).getId();
+    }
+
+    /**
+     * Returns the parameters of {@link #ADVANCE} that move the row past its current occurrence: to the first later
+     * one that is still ahead, or to {@code COMPLETED} if it doesn't recur.
+     */
+    private Object[] advance(ScheduledTransfer item, Long transferId, String error, LocalDateTime now) {
+        long occurrence = item.getOccurrence() + 1;
+        LocalDateTime scheduledAt = item.getScheduledAt();
+        ScheduledTransferState state = ScheduledTransferState.COMPLETED;
+
+        if (item.getRecurrence() != null) {
+            Period recurrence = parseRecurrence(item.getRecurrence());
+
+            // Counted from the start, so that e.g. a monthly transfer from the 31st keeps to the end of the month.
+            scheduledAt = item.getStartsAt().plus(recurrence.multipliedBy(Math.toIntExact(occurrence)));
+
+            while (!scheduledAt.isAfter(now)) {
+                scheduledAt = item.getStartsAt().plus(recurrence.multipliedBy(Math.toIntExact(++occurrence)));
+            }
+
+            state = ScheduledTransferState.ACTIVE;
+        }
+
+        if (error != null && error.length() > MAX_ERROR_LENGTH) {
+            error = error.substring(0, MAX_ERROR_LENGTH);
+        }
+
+        return new Object[] {occurrence, scheduledAt, spread(item.getId(), scheduledAt), state.name(), now,
+                transferId, error, item.getId()};
+    }
+
+    private void advanceAll(List<Object[]> advances) {
+        if (!advances.isEmpty()) {
+            jdbcTemplate.batchUpdate(ADVANCE, advances);
+        }
+    }
+
+    /**
+     * Offsets the time by a hash of the id: ids are sequential, so the id itself would put consecutive rows a
+     * millisecond apart instead of across the window.
+     */
+    private LocalDateTime spread(long id, LocalDateTime scheduledAt) {
+        long windowMillis = window.toMillis();
+
+        return windowMillis <= 0 ? scheduledAt : scheduledAt.plus(Math.floorMod(mix(id), windowMillis),
+                ChronoUnit.MILLIS);
+    }
+
+    /**
+     * The SplitMix64 finalizer: every bit of the id affects every bit of the result.
+     */
+    static long mix(long id) {
+        long z = id + 0x9E3779B97F4A7C15L;
+
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+
+        return z ^ (z >>> 31);
+    }
+
+    private <T> T onShard(int shard, Supplier<T> step) {
+        return shards.routeToShard(shard, () -> transactionTemplate.execute(status -> step.get()));
+    }
+
+    private static Period parseRecurrence(String recurrence) {
+        Period period;
+
+        try {
+            period = Period.parse(recurrence);
+        } catch (DateTimeParseException e) {
+            throw new BadRequestException(String.format(
+                    "Can`t schedule transfer: recurrence %s is not an ISO-8601 period", recurrence));
+        }
+
+        if (period.isNegative() || period.isZero()) {
+            throw new BadRequestException("Can`t schedule transfer: recurrence must be positive");
+        }
+
+        return period;
+    }
+}
@@ -0,0 +1,249 @@
+package com.piche.task.service;
+
+import com.piche.task.dto.TransferOperationRowDTO;
+import com.piche.task.exception.BadRequestException;
+import com.piche.task.model.Account;
+import com.piche.task.model.TransferSaga;
+import com.piche.task.repository.AccountRepository;
+import com.piche.task.repository.TransferSagaRepository;
+import com.piche.task.sharding.ShardRouter;
+import com.piche.task.sharding.TransferSagaState;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Transfers between accounts on different shards as a saga of local transactions:
+ * <ol>
+ *     <li>on the sender's shard: debit the sender, insert the transfer row and a {@code PENDING} saga row;</li>
+ *     <li>on the receiver's shard: credit the receiver and insert a {@code CREDITED} marker, unless one exists;</li>
+ *     <li>delete the saga row and then the marker.</li>
+ * </ol>
+ * If the credit is rejected the first step is compensated: the transfer row is deleted and the sender refunded.
+ * Sagas left {@code PENDING} by a crash or an unreachable shard are driven forward by {@link #recover()}.
+ * <p>
+ * The debit checks the sender's version like a local transfer, so a concurrently changed sender fails the saga
+ * before anything is written and the transfer can be retried.
+ */
+@Slf4j
+@Service
+public class TransferSagaService {
+
+    private final ShardRouter shards;
+
+    private final AccountRepository accountRepository;
+
+    private final TransferSagaRepository sagaRepository;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final Duration timeout;
+
+    @PersistenceContext
+    private final EntityManager manager;
+
+    public TransferSagaService(ShardRouter shards,
+                               AccountRepository accountRepository,
+                               TransferSagaRepository sagaRepository,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${sharding.saga-timeout:PT30S}") Duration timeout,
+                               EntityManager manager) {
+        this.shards = shards;
+        this.accountRepository = accountRepository;
+        this.sagaRepository = sagaRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.timeout = timeout;
+        this.manager = manager;
+    }
+
+    public TransferOperationRowDTO transfer(long id, long senderId, long receiverId, double amount) {
+        // Checked in a transaction of its own: a connection held by the caller's transaction while the steps take
+        // theirs could exhaust the pool.
+        if (!onShard(receiverId, () -> accountRepository.existsById(receiverId))) {
+            throw new BadRequestException(String.format("Unknown receiver account with id %d", receiverId));
+        }
+
+        TransferOperationRowDTO row = onShard(senderId, () -> debit(id, senderId, receiverId, amount));
+
+        try {
+            onShard(receiverId, () -> credit(id, senderId, receiverId, amount));
+        } catch (RuntimeException e) {
+            if (!onShard(receiverId, () -> isCredited(id))) {
+                onShard(senderId, () -> compensate(id, senderId, amount));
+            }
+
+            throw e;
+        }
+
+        onShard(senderId, () -> complete(id));
+        onShard(receiverId, () -> complete(id));
+
+        return row;
+    }
+
+    /**
+     * Finishes sagas that stayed {@code PENDING} for longer than {@code sharding.saga-timeout}.
+     */
+    @Scheduled(fixedDelayString = "${sharding.saga-recovery-interval:PT1M}")
+    public synchronized void recover() {
+        if (!shards.isSharded()) {
+            return;
+        }
+
+        LocalDateTime before = LocalDateTime.now().minus(timeout);
+
+        for (int shard = 0; shard < shards.getCount(); shard++) {
+            List<TransferSaga> pending = shards.routeToShard(shard, () ->
+                    sagaRepository.findAllByStateAndUpdatedBefore(TransferSagaState.PENDING, before));
+
+            for (TransferSaga saga : pending) {
+                try {
+                    resume(saga);
+                } catch (RuntimeException e) {
+                    log.warn("Can`t resume transfer {}, will retry", saga.getTransferId(), e);
+                }
+            }
+        }
+    }
+
+    private void resume(TransferSaga saga) {
+        long id = saga.getTransferId();
+
+        if (!onShard(saga.getReceiverId(), () -> isCredited(id))) {
+            try {
+                onShard(saga.getReceiverId(), () ->
+                        credit(id, saga.getSenderId(), saga.getReceiverId(), saga.getAmount()));
+            } catch (BadRequestException e) {
+                onShard(saga.getSenderId(), () -> compensate(id, saga.getSenderId(), saga.getAmount()));
+                log.info("Compensated transfer {}: {}", id, e.getMessage());
+                return;
+            }
+        }
+
+        onShard(saga.getSenderId(), () -> complete(id));
+        onShard(saga.getReceiverId(), () -> complete(id));
+        log.info("Completed transfer {}", id);
+    }
+
+    private TransferOperationRowDTO debit(long id, long senderId, long receiverId, double amount) {
+        Account sender = accountRepository.findById(senderId).orElseThrow(() ->
+                new BadRequestException(String.format("Unknown sender account with id %d", senderId)));
+
+        if (amount <= 0) {
+            throw new BadRequestException("Can`t add operation: deposit value can`t be negative or zero");
+        }
+
+        if (sender.getBalance() - sender.getHeld() - amount < 0) {
+            throw new BadRequestException("Can`t add operation: account balance can`t become negative");
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+
+        int updated = manager.createNativeQuery("UPDATE account a SET a.balance = a.balance - ?, " +
+                        "a.sent_count = a.sent_count + 1, a.last_operation_at = ?, " +
+                        "a.version = a.version + 1 WHERE a.id = ? AND a.version = ?")
+                .setParameter(1, amount)
+                .setParameter(2, now)
+                .setParameter(3, senderId)
+                .setParameter(4, sender.getVersion())
+                .executeUpdate();
+
+        if (updated == 0) {
+            throw new ObjectOptimisticLockingFailureException(Account.class, senderId);
+        }
+
+        manager.createNativeQuery(
+                        "INSERT INTO transfer_operation (id, sender_id, receiver_id, updated_at, deposit) " +
+                                "VALUES (?, ?, ?, ?, ?)")
+                .setParameter(1, id)
+                .setParameter(2, senderId)
+                .setParameter(3, receiverId)
+                .setParameter(4, now)
+                .setParameter(5, amount)
+                .executeUpdate();
+        sagaRepository.save(TransferSaga.builder()
+                .transferId(id)
+                .senderId(senderId)
+                .receiverId(receiverId)
+                .amount(amount)
+                .state(TransferSagaState.PENDING)
+                .updatedAt(now)
+                .build());
+
+        return new TransferOperationRowDTO(id, senderId, receiverId, now, amount);
+    }
+
+    private Void credit(long id, long senderId, long receiverId, double amount) {
+        if (sagaRepository.existsById(id)) {
+            return null;
+        }
+
+        int updated = manager.createNativeQuery("UPDATE account a SET a.balance = a.balance + ?, " +
+                        "a.received_count = a.received_count + 1, a.last_operation_at = ?, a.version = a.version + 1 " +
+                        "WHERE a.id = ?")
+                .setParameter(1, amount)
+                .setParameter(2, LocalDateTime.now())
+                .setParameter(3, receiverId)
+                .executeUpdate();
+
+        if (updated == 0) {
+            throw new BadRequestException(String.format("Unknown receiver account with id %d", receiverId));
+        }
+
+        sagaRepository.save(TransferSaga.builder()
+                .transferId(id)
+                .senderId(senderId)
+                .receiverId(receiverId)
+                .amount(amount)
+                .state(TransferSagaState.CREDITED)
+                .updatedAt(LocalDateTime.now())
+                .build());
+
+        return null;
+    }
+
+    private boolean isCredited(long id) {
+        return sagaRepository.existsById(id);
+    }
+
+    private Void compensate(long id, long senderId, double amount) {
+        if (!sagaRepository.existsById(id)) {
+            return null;
+        }
+
+        manager.createNativeQuery("DELETE FROM transfer_operation WHERE id = ?")
+                .setParameter(1, id)
+                .executeUpdate();
+        manager.createNativeQuery("UPDATE account a SET a.balance = a.balance + ?, " +
+                        "a.sent_count = a.sent_count - 1, a.version = a.version + 1 WHERE a.id = ?")
+                .setParameter(1, amount)
+                .setParameter(2, senderId)
+                .executeUpdate();
+        sagaRepository.deleteById(id);
+
+        return null;
+    }
+
+    private Void complete(long id) {
+        sagaRepository.deleteById(id);
+
+        return null;
+    }
+
+    private <T> T onShard(long accountId, Supplier<T> step) {
+        return shards.route(accountId, () -> transactionTemplate.execute(status -> step.get()));
+    }
+}
@@ -0,0 +1,78 @@
+package com.piche.task.sharding;
+
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Spreads accounts over the databases listed in {@code sharding.urls} in addition to the {@code spring.datasource}
+ * one. Active only when the property is set.
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "sharding.urls")
+public class ShardDataSourceConfiguration {
+
+    @Bean
+    @Primary
+    public DataSource dataSource(DataSourceProperties properties,
+                                 Environment environment,
+                                 @Value("${sharding.urls}") String urls,
+                                 @Value("${sharding.username:${spring.datasource.username:}}") String username,
+                                 @Value("${sharding.password:${spring.datasource.password:}}") String password) {
+        checkUnsupportedFeatures(environment);
+
+        List<DataSource> shards = new ArrayList<>();
+
+        shards.add(properties.initializeDataSourceBuilder().build());
+        Arrays.stream(urls.split(","))
+                .map(String::trim)
+                .filter(url -> !url.isEmpty())
+                .map(url -> DataSourceBuilder.create()
+                        .driverClassName(properties.determineDriverClassName())
+                        .url(url)
+                        .username(username)
+                        .password(password)
+                        .build())
+                .forEach(shards::add);
+
+        return new LazyConnectionDataSourceProxy(new ShardRoutingDataSource(shards));
+    }
+
+    @Bean
+    public ShardSchemaInitializer shardSchemaInitializer(
+            EntityManagerFactory entityManagerFactory,
+            DataSource dataSource,
+            ShardRouter shards,
+            @Value("${spring.jpa.hibernate.ddl-auto:none}") String ddlAuto) {
+        return new ShardSchemaInitializer(entityManagerFactory, dataSource, shards, ddlAuto);
+    }
+
+    /**
+     * Replica routing and the operation archive read and write a single database and are off by default, so
+     * enabling them fails the startup. Balance reconciliation and the change feed, which are on by default, turn
+     * themselves off instead.
+     */
+    private static void checkUnsupportedFeatures(Environment environment) {
+        if (environment.containsProperty("datasource.replica.urls")
+                || environment.getProperty("archive.enabled", Boolean.class, false)) {
+            throw new IllegalStateException("Sharding can't be combined with read replicas or the operation " +
+                    "archive: unset datasource.replica.urls and set archive.enabled=false");
+        }
+
+        log.info("Balance reconciliation and the change feed are off: they aren't supported with sharding");
+    }
+}
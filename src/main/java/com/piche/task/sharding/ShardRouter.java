@@ -0,0 +1,158 @@
+package com.piche.task.sharding;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Places accounts on shards and runs code against a shard.
+ * <p>
+ * Shard 0 is the {@code spring.datasource} database, shards 1..n-1 are listed in {@code sharding.urls}.
+ * Account ids are striped over the shards ({@code id = sequence * n + shard}), so the shard of an account is
+ * {@code id mod n} and needs no lookup. Without {@code sharding.urls} there is a single shard and every method
+ * just runs the given code on the calling thread.
+ */
+@Component
+public class ShardRouter {
+
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private final int count;
+
+    private final ExecutorService executor;
+
+    @Autowired
+    public ShardRouter(@Value("${sharding.urls:}") String urls,
+                       @Value("${sharding.fan-out-threads:16}") int fanOutThreads) {
+        this((int) Arrays.stream(urls.split(",")).filter(url -> !url.isBlank()).count() + 1, fanOutThreads);
+    }
+
+    ShardRouter(int count, int fanOutThreads) {
+        this.count = count;
+        this.executor = count > 1 ? Executors.newFixedThreadPool(fanOutThreads, new FanOutThreadFactory()) : null;
+    }
+
+    public static Integer currentShard() {
+        return CURRENT.get();
+    }
+
+    public boolean isSharded() {
+        return count > 1;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int shardOf(long accountId) {
+        return Math.floorMod(accountId, count);
+    }
+
+    /**
+     * Picks the shard for a new account.
+     */
+    public int shardFor(String name) {
+        return Math.floorMod(name.hashCode(), count);
+    }
+
+    /**
+     * Builds the id of a new account on the given shard from a shard-local sequence value.
+     */
+    public long accountId(long sequenceValue, int shard) {
+        return sequenceValue * count + shard;
+    }
+
+    public <T> T route(long accountId, Supplier<T> action) {
+        return routeToShard(shardOf(accountId), action);
+    }
+
+    /**
+     * Runs the action with connections taken from the given shard. A transaction is bound to the shard of its first
+     * statement, so the action must not be nested into a transaction that already used another shard.
+     */
+    public <T> T routeToShard(int shard, Supplier<T> action) {
+        Integer previous = CURRENT.get();
+
+        CURRENT.set(shard);
+
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Runs the action on every shard in parallel, outside of the caller's transaction, and returns the results
+     * in shard order.
+     */
+    public <T> List<T> fanOut(Supplier<T> action) {
+        if (!isSharded()) {
+            return Collections.singletonList(action.get());
+        }
+
+        List<CompletableFuture<T>> futures = new ArrayList<>(count);
+
+        for (int shard = 0; shard < count; shard++) {
+            int target = shard;
+
+            futures.add(CompletableFuture.supplyAsync(() -> routeToShard(target, action), executor));
+        }
+
+        List<T> result = new ArrayList<>(count);
+
+        try {
+            for (CompletableFuture<T> future : futures) {
+                result.add(future.join());
+            }
+        } catch (CompletionException e) {
+            futures.forEach(future -> future.cancel(true));
+
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+
+            throw e;
+        }
+
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private static class FanOutThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "shard-fan-out-" + counter.incrementAndGet());
+
+            thread.setDaemon(true);
+
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.piche.task.sharding;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.relational.SchemaManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+
+/**
+ * Hibernate only manages the schema of shard 0, the database it connects to on startup. This applies
+ * {@code spring.jpa.hibernate.ddl-auto} to the other shards as well and drops the foreign key of
+ * {@code transfer_operation.receiver_id} everywhere, since a transfer row lives on the sender's shard and its
+ * receiver may be on another one.
+ */
+@Slf4j
+public class ShardSchemaInitializer {
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final ShardRouter shards;
+
+    private final String ddlAuto;
+
+    public ShardSchemaInitializer(EntityManagerFactory entityManagerFactory,
+                                  DataSource dataSource,
+                                  ShardRouter shards,
+                                  String ddlAuto) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.shards = shards;
+        this.ddlAuto = ddlAuto;
+    }
+
+    @PostConstruct
+    public void initialize() {
+        SchemaManager schemaManager = entityManagerFactory.unwrap(SessionFactory.class).getSchemaManager();
+
+        for (int shard = 1; shard < shards.getCount(); shard++) {
+            shards.routeToShard(shard, () -> {
+                switch (ddlAuto) {
+                    case "create", "create-drop" -> {
+                        schemaManager.dropMappedObjects(true);
+                        schemaManager.exportMappedObjects(true);
+                    }
+                    case "validate" -> schemaManager.validateMappedObjects();
+                    default -> {
+                    }
+                }
+
+                return null;
+            });
+        }
+
+        if (ddlAuto.equals("create") || ddlAuto.equals("create-drop")) {
+            for (int shard = 0; shard < shards.getCount(); shard++) {
+                shards.routeToShard(shard, () -> {
+                    jdbcTemplate.execute("ALTER TABLE transfer_operation DROP CONSTRAINT IF EXISTS " +
+                            "transfer_operation_receiver_fk");
+                    return null;
+                });
+            }
+        }
+
+        log.info("Initialized schema of {} shards ({})", shards.getCount(), ddlAuto);
+    }
+}
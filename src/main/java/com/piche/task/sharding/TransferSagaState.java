@@ -0,0 +1,11 @@
+package com.piche.task.sharding;
+
+/**
+ * State of a cross-shard transfer. A {@code PENDING} row on the sender's shard marks a transfer whose sender has
+ * been debited; a {@code CREDITED} row with the same id on the receiver's shard marks the credit as applied, which
+ * makes retrying the credit safe.
+ */
+public enum TransferSagaState {
+    PENDING,
+    CREDITED
+}
@@ -0,0 +1,194 @@
+package com.piche.task.timer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timer wheel: schedules values to be returned by {@link #advance} once their deadline has passed.
+ * <p>
+ * Time is counted in ticks since {@code startMillis}, and every level is a ring of 64 slots: level 0 holds the
+ * timeouts of the next ticks, one slot per tick, and level {@code n} holds later ones, one slot per 64<sup>n</sup>
+ * ticks. When the time reaches a slot of a higher level its timeouts move to lower levels, at most once per level,
+ * so scheduling, cancelling and expiring a timeout take constant time whatever the number of timeouts, and an
+ * idle tick only looks at one slot per level. Six levels cover 2<sup>36</sup> ticks.
+ * <p>
+ * A timeout expires on the first tick at or after its deadline, so never early and at most one tick late.
+ * All methods are synchronized.
+ */
+public class TimerWheel<T> {
+
+    private static final int BITS = 6;
+
+    private static final int SLOTS = 1 << BITS;
+
+    private static final int MASK = SLOTS - 1;
+
+    private static final int LEVELS = 6;
+
+    private final long tickMillis;
+
+    private final long startMillis;
+
+    private final Timeout<T>[][] slots;
+
+    private long currentTick;
+
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    public TimerWheel(Duration tick, long startMillis) {
+        if (tick.toMillis() < 1) {
+            throw new IllegalArgumentException("Tick must be at least a millisecond");
+        }
+
+        this.tickMillis = tick.toMillis();
+        this.startMillis = startMillis;
+        this.slots = new Timeout[LEVELS][SLOTS];
+    }
+
+    /**
+     * Schedules the value to expire at the deadline, in epoch milliseconds; a passed deadline expires on the next
+     * tick.
+     *
+     * @throws IllegalArgumentException if the deadline is beyond the range of the wheel
+     */
+    public synchronized Timeout<T> schedule(T value, long deadlineMillis) {
+        long ticks = Math.floorDiv(deadlineMillis - startMillis + tickMillis - 1, tickMillis);
+        Timeout<T> timeout = new Timeout<>(value, Math.max(ticks, currentTick + 1));
+
+        add(timeout);
+        size++;
+
+        return timeout;
+    }
+
+    /**
+     * Removes the timeout, unless it has already expired or been cancelled.
+     */
+    public synchronized boolean cancel(Timeout<T> timeout) {
+        if (timeout.level < 0) {
+            return false;
+        }
+
+        unlink(timeout);
+        size--;
+
+        return true;
+    }
+
+    /**
+     * Moves the time forward to {@code nowMillis} and returns the values whose deadline has passed, in the order of
+     * their deadlines.
+     */
+    public synchronized List<T> advance(long nowMillis) {
+        long target = Math.floorDiv(nowMillis - startMillis, tickMillis);
+        List<T> expired = new ArrayList<>();
+
+        while (currentTick < target) {
+            currentTick++;
+
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (BITS * level)) - 1)) == 0) {
+                    cascade(level, (int) (currentTick >>> (BITS * level)) & MASK);
+                }
+            }
+
+            int slot = (int) currentTick & MASK;
+
+            for (Timeout<T> timeout = slots[0][slot]; timeout != null; timeout = timeout.next) {
+                timeout.level = -1;
+                expired.add(timeout.value);
+                size--;
+            }
+
+            slots[0][slot] = null;
+        }
+
+        return expired;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Puts the timeout on the lowest level whose slots, from the current one on, reach its tick: the one above
+     * which the tick and the current tick have the same digits.
+     */
+    private void add(Timeout<T> timeout) {
+        int level = 0;
+
+        while (timeout.tick >>> (BITS * (level + 1)) != currentTick >>> (BITS * (level + 1))) {
+            if (++level == LEVELS) {
+                throw new IllegalArgumentException("Deadline is beyond the range of the timer wheel");
+            }
+        }
+
+        int slot = (int) (timeout.tick >>> (BITS * level)) & MASK;
+
+        timeout.level = level;
+        timeout.slot = slot;
+        timeout.previous = null;
+        timeout.next = slots[level][slot];
+
+        if (timeout.next != null) {
+            timeout.next.previous = timeout;
+        }
+
+        slots[level][slot] = timeout;
+    }
+
+    private void cascade(int level, int slot) {
+        Timeout<T> timeout = slots[level][slot];
+
+        slots[level][slot] = null;
+
+        while (timeout != null) {
+            Timeout<T> next = timeout.next;
+
+            add(timeout);
+            timeout = next;
+        }
+    }
+
+    private void unlink(Timeout<T> timeout) {
+        if (timeout.previous != null) {
+            timeout.previous.next = timeout.next;
+        } else {
+            slots[timeout.level][timeout.slot] = timeout.next;
+        }
+
+        if (timeout.next != null) {
+            timeout.next.previous = timeout.previous;
+        }
+
+        timeout.level = -1;
+        timeout.previous = null;
+        timeout.next = null;
+    }
+
+    public static final class Timeout<T> {
+
+        private final T value;
+
+        private final long tick;
+
+        private int level;
+
+        private int slot;
+
+        private Timeout<T> previous;
+
+        private Timeout<T> next;
+
+        private Timeout(T value, long tick) {
+            this.value = value;
+            this.tick = tick;
+        }
+
+        public T getValue() {
+            return value;
+        }
+    }
+}
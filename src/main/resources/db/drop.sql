@@ -0,0 +1,4 @@
+-- Runs before db/schema.sql in the fast-start profile, so that data lives no longer than with the default
+-- spring.jpa.hibernate.ddl-auto=create-drop: operation ids restart with every JVM and must not meet old rows.
+
+DROP ALL OBJECTS;
@@ -0,0 +1,158 @@
+-- Schema of the JPA entities for spring.jpa.hibernate.ddl-auto=validate (the fast-start profile).
+-- Keep in sync with com.piche.task.model: FastStartApplicationTest fails when Hibernate's validation does.
+
+CREATE SEQUENCE IF NOT EXISTS account_seq START WITH 1 INCREMENT BY 50;
+
+CREATE SEQUENCE IF NOT EXISTS outbox_event_seq START WITH 1 INCREMENT BY 50;
+
+CREATE SEQUENCE IF NOT EXISTS transfer_operation_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE IF NOT EXISTS account (
+    id BIGINT NOT NULL,
+    name VARCHAR(255) NOT NULL,
+    password_hash VARCHAR(255) NOT NULL,
+    balance FLOAT(53) NOT NULL,
+    held FLOAT(53) NOT NULL,
+    deposit_count BIGINT NOT NULL,
+    sent_count BIGINT NOT NULL,
+    received_count BIGINT NOT NULL,
+    last_operation_at TIMESTAMP(6),
+    version BIGINT NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT account_name_uq UNIQUE (name)
+);
+
+CREATE TABLE IF NOT EXISTS deposit_operation (
+    id BIGINT NOT NULL,
+    account_id BIGINT NOT NULL,
+    updated_at TIMESTAMP(6) NOT NULL,
+    deposit FLOAT(53) NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT deposit_operation_account_fk FOREIGN KEY (account_id) REFERENCES account
+);
+
+CREATE TABLE IF NOT EXISTS transfer_operation (
+    id BIGINT NOT NULL,
+    sender_id BIGINT NOT NULL,
+    receiver_id BIGINT NOT NULL,
+    updated_at TIMESTAMP(6) NOT NULL,
+    deposit FLOAT(53) NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT transfer_operation_sender_fk FOREIGN KEY (sender_id) REFERENCES account,
+    CONSTRAINT transfer_operation_receiver_fk FOREIGN KEY (receiver_id) REFERENCES account
+);
+
+CREATE TABLE IF NOT EXISTS transfer_saga (
+    transfer_id BIGINT NOT NULL,
+    sender_id BIGINT NOT NULL,
+    receiver_id BIGINT NOT NULL,
+    amount FLOAT(53) NOT NULL,
+    state ENUM ('CREDITED', 'PENDING') NOT NULL,
+    updated_at TIMESTAMP(6) NOT NULL,
+    PRIMARY KEY (transfer_id)
+);
+
+CREATE TABLE IF NOT EXISTS archive_segment (
+    file_name VARCHAR(255) NOT NULL,
+    kind ENUM ('DEPOSIT', 'TRANSFER') NOT NULL,
+    min_updated_at TIMESTAMP(6) NOT NULL,
+    max_updated_at TIMESTAMP(6) NOT NULL,
+    row_count INTEGER NOT NULL,
+    created_at TIMESTAMP(6) NOT NULL,
+    PRIMARY KEY (file_name)
+);
+
+CREATE TABLE IF NOT EXISTS balance_hold (
+    id BIGINT NOT NULL,
+    account_id BIGINT NOT NULL,
+    amount FLOAT(53) NOT NULL,
+    state ENUM ('CAPTURED', 'EXPIRED', 'HELD', 'RELEASED') NOT NULL,
+    created_at TIMESTAMP(6) NOT NULL,
+    expires_at TIMESTAMP(6) NOT NULL,
+    transfer_id BIGINT,
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE IF NOT EXISTS scheduled_transfer (
+    id BIGINT NOT NULL,
+    sender_id BIGINT NOT NULL,
+    receiver_id BIGINT NOT NULL,
+    amount FLOAT(53) NOT NULL,
+    starts_at TIMESTAMP(6) NOT NULL,
+    recurrence VARCHAR(255),
+    occurrence BIGINT NOT NULL,
+    scheduled_at TIMESTAMP(6) NOT NULL,
+    run_at TIMESTAMP(6) NOT NULL,
+    state ENUM ('ACTIVE', 'CANCELLED', 'COMPLETED') NOT NULL,
+    created_at TIMESTAMP(6) NOT NULL,
+    last_run_at TIMESTAMP(6),
+    last_transfer_id BIGINT,
+    last_error VARCHAR(255),
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE IF NOT EXISTS outbox_event (
+    id BIGINT NOT NULL,
+    position BIGINT,
+    account_id BIGINT NOT NULL,
+    operation_id BIGINT NOT NULL,
+    type VARCHAR(255) NOT NULL,
+    role VARCHAR(255),
+    deposit FLOAT(53) NOT NULL,
+    balance FLOAT(53) NOT NULL,
+    created_at TIMESTAMP(6) NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT outbox_event_position_idx UNIQUE (position)
+);
+
+CREATE TABLE IF NOT EXISTS reconciliation_checkpoint (
+    id INTEGER NOT NULL,
+    watermark TIMESTAMP(6),
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE IF NOT EXISTS reconciliation_balance (
+    account_id BIGINT NOT NULL,
+    expected_balance FLOAT(53) NOT NULL,
+    PRIMARY KEY (account_id)
+);
+
+CREATE TABLE IF NOT EXISTS daily_balance_checkpoint (
+    id INTEGER NOT NULL,
+    first_day DATE NOT NULL,
+    next_day DATE NOT NULL,
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE IF NOT EXISTS daily_balance (
+    account_id BIGINT NOT NULL,
+    balance_day DATE NOT NULL,
+    balance FLOAT(53) NOT NULL,
+    PRIMARY KEY (account_id, balance_day)
+);
+
+CREATE INDEX IF NOT EXISTS account_name_idx ON account (name, id);
+
+CREATE INDEX IF NOT EXISTS account_balance_idx ON account (balance, id);
+
+CREATE INDEX IF NOT EXISTS deposit_operation_updated_at_idx ON deposit_operation (updated_at);
+
+CREATE INDEX IF NOT EXISTS deposit_operation_account_id_updated_at_idx ON deposit_operation (account_id, updated_at);
+
+CREATE INDEX IF NOT EXISTS transfer_operation_updated_at_idx ON transfer_operation (updated_at);
+
+CREATE INDEX IF NOT EXISTS transfer_operation_sender_id_updated_at_idx ON transfer_operation (sender_id, updated_at);
+
+CREATE INDEX IF NOT EXISTS transfer_operation_receiver_id_updated_at_idx ON transfer_operation (receiver_id, updated_at);
+
+CREATE INDEX IF NOT EXISTS transfer_saga_state_updated_at_idx ON transfer_saga (state, updated_at);
+
+CREATE INDEX IF NOT EXISTS balance_hold_account_id_state_idx ON balance_hold (account_id, state);
+
+CREATE INDEX IF NOT EXISTS balance_hold_state_expires_at_idx ON balance_hold (state, expires_at);
+
+CREATE INDEX IF NOT EXISTS scheduled_transfer_state_run_at_idx ON scheduled_transfer (state, run_at);
+
+CREATE INDEX IF NOT EXISTS scheduled_transfer_sender_id_state_idx ON scheduled_transfer (sender_id, state);
+
+CREATE INDEX IF NOT EXISTS outbox_event_account_id_position_idx ON outbox_event (account_id, position);
@@ -0,0 +1,49 @@
+package com.piche.task;
+
+import com.piche.task.dto.AccountSummaryDTO;
+import com.piche.task.dto.ChangeEventDTO;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ApplicationRuntimeHintsTest {
+
+    private final RuntimeHints hints = new RuntimeHints();
+
+    ApplicationRuntimeHintsTest() {
+        new ApplicationRuntimeHints().registerHints(hints, getClass().getClassLoader());
+    }
+
+    @Test
+    void testQueryResultsShouldBeInstantiable() throws Exception {
+        for (Class<?> type : ApplicationRuntimeHints.QUERY_RESULTS) {
+            assertTrue(RuntimeHintsPredicates.reflection()
+                    .onType(type)
+                    .withMemberCategory(MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS)
+                    .test(hints), type.getName());
+        }
+
+        assertTrue(RuntimeHintsPredicates.reflection()
+                .onConstructor(AccountSummaryDTO.class.getConstructor(Long.class, String.class, Double.class))
+                .test(hints));
+    }
+
+    @Test
+    void testSerializedTypesShouldExposeGetters() throws Exception {
+        assertTrue(RuntimeHintsPredicates.reflection()
+                .onMethod(ChangeEventDTO.class.getMethod("getBalance"))
+                .test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection()
+                .onType(Class.forName("com.piche.task.handler.GlobalBadRequestExceptionHandler$ErrorMessage"))
+                .test(hints));
+    }
+
+    @Test
+    void testSchemaScriptsShouldBeIncluded() {
+        assertTrue(RuntimeHintsPredicates.resource().forResource("db/drop.sql").test(hints));
+        assertTrue(RuntimeHintsPredicates.resource().forResource("db/schema.sql").test(hints));
+    }
+}
@@ -0,0 +1,47 @@
+package com.piche.task;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Boots the {@code fast-start} profile: Hibernate validates the entities against {@code db/schema.sql}, so the
+ * context fails to start when the script falls behind the model.
+ */
+@SpringBootTest(properties = {"spring.datasource.url=jdbc:h2:mem:fast-start", "reconciliation.enabled=false"})
+@ActiveProfiles("fast-start")
+class FastStartApplicationTest {
+
+    @Autowired
+    private ConfigurableApplicationContext context;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void testScheduledBeansShouldBeCreatedEagerly() {
+        assertTrue(context.getBeanFactory().containsSingleton("changeFeedService"));
+        assertTrue(context.getBeanFactory().containsSingleton("transferSagaService"));
+        assertFalse(context.getBeanFactory().containsSingleton("accountService"));
+    }
+
+    @Test
+    void testSchemaScriptsShouldNotKeepRowsOfPreviousRun() {
+        jdbcTemplate.update("INSERT INTO account (id, name, password_hash, balance, held, deposit_count, sent_count, " +
+                "received_count, version) VALUES (1, 'Alice', 'hash', 0, 0, 0, 0, 0, 0)");
+
+        new ResourceDatabasePopulator(new ClassPathResource("db/drop.sql"), new ClassPathResource("db/schema.sql"))
+                .execute(jdbcTemplate.getDataSource());
+
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM account", Integer.class));
+    }
+}
@@ -0,0 +1,105 @@
+package com.piche.task.archive;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ArchiveSegmentTest {
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void testForEachShouldReturnWrittenRowsInTimeOrder() {
+        Path file = directory.resolve("deposit.seg");
+
+        ArchiveSegment.write(file, ArchiveKind.DEPOSIT, List.of(
+                new ArchivedOperation(7L, 2L, LocalDateTime.of(2023, 1, 2, 10, 0, 0, 123_000), 10.5),
+                new ArchivedOperation(3L, 1L, LocalDateTime.of(2023, 1, 1, 10, 0), 20.0)));
+
+        ArchiveSegment segment = ArchiveSegment.open(file);
+        List<ArchivedOperation> rows = new ArrayList<>();
+
+        segment.forEach(rows::add);
+
+        assertEquals(ArchiveKind.DEPOSIT, segment.getKind());
+        assertEquals(2, segment.getCount());
+        assertEquals(new ArchivedOperation(3L, 1L, LocalDateTime.of(2023, 1, 1, 10, 0), 20.0), rows.get(0));
+        assertEquals(new ArchivedOperation(7L, 2L, LocalDateTime.of(2023, 1, 2, 10, 0, 0, 123_000), 10.5),
+                rows.get(1));
+    }
+
+    @Test
+    void testScanShouldFilterByAccountColumnAndTimeRange() {
+        Path file = directory.resolve("transfer.seg");
+
+        ArchiveSegment.write(file, ArchiveKind.TRANSFER, List.of(
+                new ArchivedOperation(1L, 1L, 2L, LocalDateTime.of(2023, 1, 1, 0, 0), 5.0),
+                new ArchivedOperation(2L, 2L, 1L, LocalDateTime.of(2023, 1, 2, 0, 0), 6.0),
+                new ArchivedOperation(3L, 1L, 3L, LocalDateTime.of(2023, 1, 3, 0, 0), 7.0)));
+
+        ArchiveSegment segment = ArchiveSegment.open(file);
+        List<ArchivedOperation> sent = new ArrayList<>();
+        List<ArchivedOperation> received = new ArrayList<>();
+        List<ArchivedOperation> unknown = new ArrayList<>();
+
+        segment.scan(1L, false, LocalDateTime.of(2023, 1, 1, 0, 0), LocalDateTime.of(2023, 1, 3, 0, 0), sent::add);
+        segment.scan(1L, true, null, null, received::add);
+        segment.scan(4L, false, null, null, unknown::add);
+
+        assertEquals(1, sent.size());
+        assertEquals(1L, sent.get(0).getId());
+        assertEquals(2L, sent.get(0).getReceiverId());
+        assertEquals(1, received.size());
+        assertEquals(2L, received.get(0).getId());
+        assertTrue(unknown.isEmpty());
+    }
+
+    @Test
+    void testScanShouldReadMatchingRowsFromEveryBlock() {
+        Path file = directory.resolve("blocks.seg");
+        List<ArchivedOperation> operations = new ArrayList<>();
+        LocalDateTime start = LocalDateTime.of(2023, 1, 1, 0, 0);
+
+        for (int i = 0; i < 10_000; i++) {
+            operations.add(new ArchivedOperation((long) i, 1L + i % 5, 100L + i % 3, start.plusSeconds(i), (double) i));
+        }
+
+        ArchiveSegment.write(file, ArchiveKind.TRANSFER, operations);
+
+        ArchiveSegment segment = ArchiveSegment.open(file);
+        List<ArchivedOperation> sent = new ArrayList<>();
+        List<ArchivedOperation> received = new ArrayList<>();
+        List<ArchivedOperation> receivedBySender = new ArrayList<>();
+
+        segment.scan(3L, false, start.plusSeconds(4000), start.plusSeconds(9000), sent::add);
+        segment.scan(101L, true, null, null, received::add);
+        segment.scan(3L, true, null, null, receivedBySender::add);
+
+        assertEquals(3, segment.getBlockCount());
+        assertEquals(1000, sent.size());
+        assertEquals(operations.get(4002), sent.get(0));
+        assertEquals(operations.get(8997), sent.get(sent.size() - 1));
+        assertEquals(3333, received.size());
+        assertEquals(operations.get(9997), received.get(received.size() - 1));
+        assertTrue(receivedBySender.isEmpty());
+    }
+
+    @Test
+    void testOpenWhenFileIsNotSegmentShouldThrowException() throws Exception {
+        Path file = directory.resolve("broken.seg");
+
+        Files.write(file, new byte[64]);
+
+        assertThrows(IllegalStateException.class, () -> ArchiveSegment.open(file));
+    }
+}
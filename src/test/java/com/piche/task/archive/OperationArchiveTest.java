@@ -0,0 +1,105 @@
+package com.piche.task.archive;
+
+import com.piche.task.repository.OperationArchiveSegmentRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class OperationArchiveTest {
+
+    private static final List<ArchivedOperation> OPERATIONS =
+            List.of(new ArchivedOperation(1L, 1L, LocalDateTime.of(2023, 1, 1, 10, 0), 10.0));
+
+    @TempDir
+    private Path directory;
+
+    @Mock
+    private OperationArchiveSegmentRepository segmentRepository;
+
+    private OperationArchive archive;
+
+    @BeforeEach
+    void setup() {
+        when(segmentRepository.findAll()).thenReturn(List.of());
+
+        archive = new OperationArchive(true, directory, segmentRepository);
+        archive.load();
+    }
+
+    @Test
+    void testReadWhenPublicationCommittedMeanwhileShouldRunAgain() {
+        AtomicInteger runs = new AtomicInteger();
+
+        long count = archive.read(() -> {
+            if (runs.incrementAndGet() == 1) {
+                archive.publish(archive.write(ArchiveKind.DEPOSIT, OPERATIONS), () -> { });
+            }
+
+            return archive.aggregate(ArchiveKind.DEPOSIT, false, 1L, null, null).getCount();
+        });
+
+        assertEquals(2, runs.get());
+        assertEquals(1, count);
+    }
+
+    @Test
+    void testReadShouldWaitForRunningCommit() throws Exception {
+        CountDownLatch committing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        String name = archive.write(ArchiveKind.DEPOSIT, OPERATIONS);
+
+        CompletableFuture<Void> publication = CompletableFuture.runAsync(() -> archive.publish(name, () -> {
+            committing.countDown();
+
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+
+        assertTrue(committing.await(5, TimeUnit.SECONDS));
+
+        CompletableFuture<Long> read = CompletableFuture.supplyAsync(() -> archive.read(
+                () -> archive.aggregate(ArchiveKind.DEPOSIT, false, 1L, null, null).getCount()));
+
+        Thread.sleep(100);
+        assertFalse(read.isDone());
+
+        release.countDown();
+
+        assertEquals(1L, read.get(5, TimeUnit.SECONDS));
+        publication.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testPublishWhenCommitFailsShouldDropTemporaryFile() {
+        String name = archive.write(ArchiveKind.DEPOSIT, OPERATIONS);
+
+        assertThrows(IllegalStateException.class, () -> archive.publish(name, () -> {
+            throw new IllegalStateException("rollback");
+        }));
+
+        assertFalse(Files.exists(directory.resolve(name + ".tmp")));
+        assertEquals(0L, archive.read(() -> archive.aggregate(ArchiveKind.DEPOSIT, false, 1L, null, null).getCount()));
+    }
+}
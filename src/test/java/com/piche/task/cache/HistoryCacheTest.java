@@ -0,0 +1,143 @@
+package com.piche.task.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.piche.task.dto.AccountOperationResponseDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HistoryCacheTest {
+
+    private static final LocalDate DAY = LocalDate.of(2024, 1, 1);
+
+    private final ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+
+    private final List<List<LocalDate>> loads = new ArrayList<>();
+
+    private HistoryCache cache;
+
+    @BeforeEach
+    void setup() {
+        cache = cache(1 << 20);
+    }
+
+    @Test
+    void testIsCacheableShouldRequireSettledEnd() {
+        Clock clock = Clock.fixed(LocalDateTime.of(2024, 1, 3, 0, 5).toInstant(ZoneOffset.UTC), ZoneOffset.UTC);
+        HistoryCache settling = new HistoryCache(mapper, Duration.ofMinutes(10), 1 << 20, 10, 31, clock);
+
+        assertTrue(settling.isCacheable(DAY, DAY.plusDays(1), null));
+        assertTrue(settling.isCacheable(DAY, DAY.plusDays(1), "ASC"));
+        assertFalse(settling.isCacheable(DAY, DAY.plusDays(2), "asc"));
+        assertFalse(settling.isCacheable(DAY, DAY.plusDays(1), "random"));
+        assertFalse(settling.isCacheable(DAY, DAY, "asc"));
+        assertTrue(settling.isCacheable(DAY.minusDays(30), DAY.plusDays(1), "asc"));
+        assertFalse(settling.isCacheable(DAY.minusDays(31), DAY.plusDays(1), "asc"));
+    }
+
+    @Test
+    void testGetShouldServeBothOrdersFromOneRead() throws Exception {
+        HistoryCache.History ascending = cache.get(1L, DAY, DAY.plusDays(3), "asc", this::load);
+        HistoryCache.History descending = cache.get(1L, DAY, DAY.plusDays(3), "desc", this::load);
+
+        assertEquals(mapper.writeValueAsString(operations(DAY, DAY.plusDays(3))),
+                new String(ascending.getBody(), StandardCharsets.UTF_8));
+        assertEquals(List.of(1105L, 1104L, 1103L, 1101L, 1102L), mapper.readTree(descending.getBody())
+                .findValues("id").stream().map(node -> node.asLong()).toList());
+        assertEquals(1, loads.size());
+        assertNotEquals(ascending.getEtag(), descending.getEtag());
+        assertEquals(ascending.getEtag(), cache.findEtag(1L, DAY, DAY.plusDays(3), "asc"));
+        assertEquals(descending.getEtag(), cache.findEtag(1L, DAY, DAY.plusDays(3), null));
+        assertNull(cache.findEtag(2L, DAY, DAY.plusDays(3), "asc"));
+    }
+
+    @Test
+    void testGetShouldReadOnlyMissingDays() {
+        cache.get(1L, DAY.plusDays(1), DAY.plusDays(2), "asc", this::load);
+
+        HistoryCache.History history = cache.get(1L, DAY, DAY.plusDays(4), "asc", this::load);
+
+        assertEquals(List.of(List.of(DAY.plusDays(1), DAY.plusDays(2)), List.of(DAY, DAY.plusDays(1)),
+                List.of(DAY.plusDays(2), DAY.plusDays(4))), loads);
+        assertEquals(cache(1 << 20).get(1L, DAY, DAY.plusDays(4), "asc", this::load).getEtag(), history.getEtag());
+    }
+
+    @Test
+    void testGetShouldKeepDaysWithoutOperationsAsOneEntry() throws Exception {
+        HistoryCache.History history = cache.get(1L, DAY.minusDays(20), DAY.plusDays(40), "desc", this::load);
+
+        // Twenty empty days, three days with operations and thirty-seven empty days.
+        assertEquals(5, cache.getEntryCount());
+        assertEquals(List.of(1105L, 1104L, 1103L, 1101L, 1102L), mapper.readTree(history.getBody())
+                .findValues("id").stream().map(node -> node.asLong()).toList());
+        assertEquals("[]", new String(cache.get(1L, DAY.plusDays(10), DAY.plusDays(20), "asc", this::load)
+                .getBody(), StandardCharsets.UTF_8));
+        assertEquals(history.getEtag(),
+                cache.get(1L, DAY.minusDays(20), DAY.plusDays(40), "desc", this::load).getEtag());
+        assertEquals(1, loads.size());
+    }
+
+    @Test
+    void testGetWhenCacheIsFullShouldEvictOldestDays() {
+        HistoryCache small = cache(300);
+
+        small.get(1L, DAY, DAY.plusDays(3), "asc", this::load);
+        small.get(1L, DAY, DAY.plusDays(3), "asc", this::load);
+
+        assertTrue(small.getBytes() <= 300);
+        assertEquals(2, loads.size());
+    }
+
+    private HistoryCache cache(long maxBytes) {
+        return new HistoryCache(mapper, Duration.ofMinutes(10), maxBytes, 10, 366, Clock.systemUTC());
+    }
+
+    private List<AccountOperationResponseDTO> load(LocalDate from, LocalDate to) {
+        loads.add(List.of(from, to));
+
+        return operations(from, to);
+    }
+
+    /**
+     * Two operations at the same time on the first day, one on the second and two on the third.
+     */
+    private static List<AccountOperationResponseDTO> operations(LocalDate from, LocalDate to) {
+        LocalDateTime time = DAY.atTime(10, 0);
+
+        return Stream.of(
+                        operation(1101L, "deposit", null, time),
+                        operation(1102L, "transfer", "sender", time),
+                        operation(1103L, "transfer", "receiver", time.plusDays(1)),
+                        operation(1104L, "deposit", null, time.plusDays(2)),
+                        operation(1105L, "deposit", null, time.plusDays(2).plusHours(1)))
+                .filter(operation -> !operation.getUpdatedAt().isBefore(from.atStartOfDay())
+                        && operation.getUpdatedAt().isBefore(to.atStartOfDay()))
+                .toList();
+    }
+
+    private static AccountOperationResponseDTO operation(long id, String type, String role, LocalDateTime time) {
+        return AccountOperationResponseDTO.builder()
+                .id(id)
+                .type(type)
+                .role(role)
+                .deposit(10.0)
+                .updatedAt(time)
+                .build();
+    }
+}
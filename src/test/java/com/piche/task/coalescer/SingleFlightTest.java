@@ -0,0 +1,89 @@
+package com.piche.task.coalescer;
+
+import com.piche.task.exception.BadRequestException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SingleFlightTest {
+
+    private SimpleMeterRegistry registry;
+
+    private SingleFlight singleFlight;
+
+    @BeforeEach
+    void setup() {
+        registry = new SimpleMeterRegistry();
+        singleFlight = new SingleFlight(true, registry);
+    }
+
+    @Test
+    void testExecuteWhenSameKeyIsInFlightShouldShareResult() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger computations = new AtomicInteger();
+        List<Long> result = List.of(1L, 2L);
+
+        CompletableFuture<List<Long>> leader = CompletableFuture.supplyAsync(() ->
+                singleFlight.execute("key", () -> {
+                    computations.incrementAndGet();
+                    started.countDown();
+                    await(release);
+                    return result;
+                }));
+
+        started.await(5, TimeUnit.SECONDS);
+
+        CompletableFuture<List<Long>> follower = CompletableFuture.supplyAsync(() ->
+                singleFlight.execute("key", () -> {
+                    computations.incrementAndGet();
+                    return List.of();
+                }));
+
+        while (registry.get("single_flight.requests").tag("result", "coalesced").counter().count() == 0) {
+            Thread.onSpinWait();
+        }
+
+        release.countDown();
+
+        assertSame(result, leader.get(5, TimeUnit.SECONDS));
+        assertSame(result, follower.get(5, TimeUnit.SECONDS));
+        assertEquals(1, computations.get());
+        assertEquals(1.0, registry.get("single_flight.requests").tag("result", "computed").counter().count());
+    }
+
+    @Test
+    void testExecuteWhenFlightHasFinishedShouldComputeAgain() {
+        AtomicInteger computations = new AtomicInteger();
+
+        assertEquals(1, singleFlight.execute("key", computations::incrementAndGet));
+        assertEquals(2, singleFlight.execute("key", computations::incrementAndGet));
+        assertEquals(0.0, registry.get("single_flight.requests").tag("result", "coalesced").counter().count());
+    }
+
+    @Test
+    void testExecuteWhenComputationFailsShouldThrowAndForgetFlight() {
+        assertThrows(BadRequestException.class, () -> singleFlight.execute("key", () -> {
+            throw new BadRequestException("failed");
+        }));
+        assertEquals("ok", singleFlight.execute("key", () -> "ok"));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,16 +1,29 @@
 package com.piche.task.controller;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.piche.task.cache.HistoryCache;
+import com.piche.task.coalescer.SingleFlight;
+import com.piche.task.dto.AccountActivityDTO;
 import com.piche.task.dto.AccountOperationResponseDTO;
+import com.piche.task.dto.AccountPageDTO;
+import com.piche.task.dto.AccountStatementDTO;
+import com.piche.task.dto.AccountSummaryDTO;
+import com.piche.task.dto.OperationHistory;
 import com.piche.task.model.Account;
 import com.piche.task.repository.AccountRepository;
 import com.piche.task.service.AccountDepositOperationService;
 import com.piche.task.service.AccountService;
 import com.piche.task.service.AccountTransferOperationService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.json.JSONObject;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
@@ -18,17 +31,23 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.Arrays;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(controllers = AccountController.class)
+@Import({SingleFlight.class, SimpleMeterRegistry.class})
 class AccountControllerTest {
 
     @Autowired
@@ -46,32 +65,44 @@ class AccountControllerTest {
     @MockBean
     private AccountRepository accountRepository;
 
+    @MockBean
+    private HistoryCache historyCache;
+
+    @Autowired
+    private MeterRegistry registry;
+
     @Test
-    void testGetAllAccountsShouldReturnList() throws Exception {
-        Account a1 = Account.builder()
-                .id(1L)
-                .name("Alice")
-                .passwordHash("password_hash1")
-                .build();
+    void testGetAllAccountsShouldReturnPage() throws Exception {
+        AccountSummaryDTO a1 = new AccountSummaryDTO(1L, "Alice", 10.0);
+        AccountSummaryDTO a2 = new AccountSummaryDTO(2L, "Bob", 20.0);
 
-        Account a2 = Account.builder()
-                .id(2L)
-                .name("Bob")
-                .passwordHash("password_hash2")
-                .build();
+        when(accountService.findPage(eq("A"), eq(null), eq(null), eq("name"), eq(null), eq(null), eq(2)))
+                .thenReturn(new AccountPageDTO(Arrays.asList(a1, a2), "cursor"));
 
-        when(accountService.findAll()).thenReturn(Arrays.asList(a1, a2));
+        mockMvc.perform(get("/account?namePrefix=A&sort=name&limit=2"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(jsonPath("$.items").isArray())
+                .andExpect(jsonPath("$.items[0].id").value(a1.getId()))
+                .andExpect(jsonPath("$.items[0].name").value(a1.getName()))
+                .andExpect(jsonPath("$.items[0].passwordHash").doesNotExist())
+                .andExpect(jsonPath("$.items[1].id").value(a2.getId()))
+                .andExpect(jsonPath("$.items[1].balance").value(a2.getBalance()))
+                .andExpect(jsonPath("$.nextCursor").value("cursor"));
+    }
+
+    @Test
+    void testGetAllAccountsWithoutParametersShouldReturnFirstPage() throws Exception {
+        AccountSummaryDTO a1 = new AccountSummaryDTO(1L, "Alice", 10.0);
+
+        when(accountService.findPage(null, null, null, null, null, null, null))
+                .thenReturn(new AccountPageDTO(Arrays.asList(a1), null));
 
         mockMvc.perform(get("/account"))
                 .andExpect(status().isOk())
-                .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
-                .andExpect(jsonPath("$").isArray())
-                .andExpect(jsonPath("$[0].id").value(a1.getId()))
-                .andExpect(jsonPath("$[0].name").value(a1.getName()))
-                .andExpect(jsonPath("$[0].passwordHash").value(a1.getPasswordHash()))
-                .andExpect(jsonPath("$[1].id").value(a2.getId()))
-                .andExpect(jsonPath("$[1].name").value(a2.getName()))
-                .andExpect(jsonPath("$[1].passwordHash").value(a2.getPasswordHash()));
+                .andExpect(jsonPath("$.items[0].id").value(a1.getId()))
+                .andExpect(jsonPath("$.items[0].passwordHash").doesNotExist())
+                .andExpect(jsonPath("$.nextCursor").doesNotExist());
     }
 
     @Test
@@ -92,6 +123,24 @@ class AccountControllerTest {
                 .andExpect(jsonPath("$.passwordHash").value(account.getPasswordHash()));
     }
 
+    @Test
+    void testGetAccountSummaryShouldReturnObject() throws Exception {
+        AccountActivityDTO activity = new AccountActivityDTO(1L, 10.0, 3L, 2L, 1L,
+                LocalDateTime.of(2024, 1, 1, 12, 0));
+
+        when(accountService.getActivity(1L)).thenReturn(activity);
+
+        mockMvc.perform(get("/account/1/summary"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(jsonPath("$.id").value(1))
+                .andExpect(jsonPath("$.balance").value(10.0))
+                .andExpect(jsonPath("$.depositCount").value(3))
+                .andExpect(jsonPath("$.sentCount").value(2))
+                .andExpect(jsonPath("$.receivedCount").value(1))
+                .andExpect(jsonPath("$.lastOperationAt").value("2024-01-01T12:00:00"));
+    }
+
     @Test
     void testGetAccountByNameShouldReturnObject() throws Exception {
         Account account = Account.builder()
@@ -159,6 +208,21 @@ class AccountControllerTest {
                 .andExpect(status().isOk());
     }
 
+    @Test
+    void testGetAllAccountOperationsAfterWriteShouldNotBeCoalesced() throws Exception {
+        when(accountService.getAllOperations(eq(1002L), any())).thenReturn(history());
+
+        double computed = registry.get("single_flight.requests").tag("result", "computed").counter().count();
+
+        mockMvc.perform(delete("/account/1002"))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/account/1002/operation/all"))
+                .andExpect(status().isOk());
+
+        assertEquals(computed, registry.get("single_flight.requests").tag("result", "computed").counter().count());
+        verify(accountService).getAllOperations(eq(1002L), any());
+    }
+
     @Test
     void testGetAllAccountOperationsShouldReturnList() throws Exception {
         AccountOperationResponseDTO r1 = AccountOperationResponseDTO.builder()
@@ -184,7 +248,7 @@ class AccountControllerTest {
                 .updatedAt(LocalDateTime.of(2024, 1, 3, 0, 0, 0))
                 .build();
 
-        when(accountService.getAllOperations(eq(1001L), any())).thenReturn(Arrays.asList(r1, r2, r3));
+        when(accountService.getAllOperations(eq(1001L), any())).thenReturn(history(r1, r2, r3));
 
         mockMvc.perform(get("/account/1001/operation/all"))
                 .andExpect(status().isOk())
@@ -202,6 +266,30 @@ class AccountControllerTest {
                 .andExpect(jsonPath("$[2].deposit").value(125000.0));
     }
 
+    @Test
+    void testGetAllAccountOperationsWithCborShouldReturnCbor() throws Exception {
+        AccountOperationResponseDTO r1 = AccountOperationResponseDTO.builder()
+                .id(1101L)
+                .type("deposit")
+                .deposit(250000.0)
+                .updatedAt(LocalDateTime.of(2024, 1, 1, 0, 0, 0))
+                .build();
+
+        when(accountService.getAllOperations(eq(1001L), any())).thenReturn(history(r1));
+
+        byte[] body = mockMvc.perform(get("/account/1001/operation/all").accept(MediaType.APPLICATION_CBOR))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        JsonNode result = new CBORMapper().readTree(body);
+
+        assertEquals(1, result.size());
+        assertEquals(1101L, result.get(0).get("id").asLong());
+        assertEquals("deposit", result.get(0).get("type").asText());
+        assertEquals(250000.0, result.get(0).get("deposit").asDouble());
+    }
+
     @Test
     void testGetAllAccountOperationsByDateSpanShouldReturnList() throws Exception {
         AccountOperationResponseDTO r1 = AccountOperationResponseDTO.builder()
@@ -231,7 +319,7 @@ class AccountControllerTest {
         LocalDate to = LocalDate.of(2024, 1, 3);
 
         when(accountService.getAllOperationsByDateSpan(eq(1001L), any(), any(), any()))
-                .thenReturn(Arrays.asList(r1, r2, r3));
+                .thenReturn(history(r1, r2, r3));
 
         mockMvc.perform(get(String.format("/account/1001/operation/all?from=%s&to=%s", from, to)))
                 .andExpect(status().isOk())
@@ -249,4 +337,80 @@ class AccountControllerTest {
                 .andExpect(jsonPath("$[2].role").value("receiver"))
                 .andExpect(jsonPath("$[2].deposit").value(125000.0));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testGetAllAccountOperationsByDateSpanWhenPeriodIsClosedShouldReturnCachedBody() throws Exception {
+        LocalDate from = LocalDate.of(2024, 1, 1);
+        LocalDate to = LocalDate.of(2024, 1, 3);
+
+        when(historyCache.isCacheable(from, to, "asc")).thenReturn(true);
+        when(historyCache.get(eq(1001L), eq(from), eq(to), eq("asc"), any()))
+                .thenReturn(new HistoryCache.History("[{\"id\":1101}]".getBytes(), "\"etag\""));
+
+        mockMvc.perform(get(String.format("/account/1001/operation/all?from=%s&to=%s&sort=asc", from, to)))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"etag\""))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=31536000, private, immutable"))
+                .andExpect(jsonPath("$[0].id").value(1101L));
+    }
+
+    @Test
+    void testGetAllAccountOperationsByDateSpanWhenEtagMatchesShouldReturnNotModified() throws Exception {
+        LocalDate from = LocalDate.of(2024, 1, 1);
+        LocalDate to = LocalDate.of(2024, 1, 3);
+
+        when(historyCache.isCacheable(from, to, null)).thenReturn(true);
+        when(historyCache.findEtag(1001L, from, to, null)).thenReturn("\"etag\"");
+
+        mockMvc.perform(get(String.format("/account/1001/operation/all?from=%s&to=%s", from, to))
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"etag\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"etag\""))
+                .andExpect(content().string(""));
+
+        verify(historyCache, never()).get(anyLong(), any(), any(), any(), any());
+        verify(accountService, never()).getAllOperationsByDateSpan(any(), any(), any(), any());
+    }
+
+    @Test
+    void testGetAccountStatementShouldReturnObject() throws Exception {
+        LocalDate from = LocalDate.of(2024, 1, 1);
+        LocalDate to = LocalDate.of(2024, 1, 3);
+
+        when(accountService.getStatement(1001L, from, to)).thenReturn(AccountStatementDTO.builder()
+                .accountId(1001L)
+                .from(from)
+                .to(to)
+                .openingBalance(100.0)
+                .totalDeposits(250.0)
+                .totalSent(50.0)
+                .totalReceived(25.0)
+                .closingBalance(325.0)
+                .depositCount(2)
+                .sentCount(1)
+                .receivedCount(1)
+                .build());
+
+        mockMvc.perform(get(String.format("/account/1001/statement?from=%s&to=%s", from, to)))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(jsonPath("$.accountId").value(1001L))
+                .andExpect(jsonPath("$.openingBalance").value(100.0))
+                .andExpect(jsonPath("$.closingBalance").value(325.0))
+                .andExpect(jsonPath("$.depositCount").value(2));
+    }
+
+    private static OperationHistory history(AccountOperationResponseDTO... operations) {
+        OperationHistory history = new OperationHistory(operations.length);
+
+        for (AccountOperationResponseDTO operation : operations) {
+            byte kind = operation.getRole() == null ? OperationHistory.DEPOSIT
+                    : operation.getRole().equals("sender") ? OperationHistory.SENT : OperationHistory.RECEIVED;
+
+            history.add(kind, operation.getId(), operation.getUpdatedAt(), operation.getDeposit());
+        }
+
+        return history;
+    }
+}
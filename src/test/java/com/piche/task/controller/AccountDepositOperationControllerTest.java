@@ -1,29 +1,47 @@
 package com.piche.task.controller;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.piche.task.exception.TooManyRequestsException;
+import com.piche.task.limiter.RateLimiter;
 import com.piche.task.model.Account;
 import com.piche.task.model.AccountDepositOperation;
+import com.piche.task.retry.OptimisticRetry;
 import com.piche.task.service.AccountDepositOperationService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.json.JSONObject;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.test.web.servlet.MockMvc;
 
 import java.time.LocalDateTime;
 import java.util.Arrays;
+import java.util.Map;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(controllers = {AccountDepositOperationController.class})
+@Import({OptimisticRetry.class, SimpleMeterRegistry.class})
 class AccountDepositOperationControllerTest {
 
     @Autowired
@@ -32,6 +50,9 @@ class AccountDepositOperationControllerTest {
     @MockBean
     private AccountDepositOperationService accountDepositOperationService;
 
+    @MockBean
+    private RateLimiter rateLimiter;
+
     @Test
     void testGetAllOperationsShouldReturnList() throws Exception {
         Account account = mock();
@@ -72,4 +93,64 @@ class AccountDepositOperationControllerTest {
                                 .toString()))
                 .andExpect(status().isOk());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testSaveOperationWithCborShouldReadAndWriteCbor() throws Exception {
+        CBORMapper mapper = new CBORMapper();
+        AccountDepositOperation operation = AccountDepositOperation.builder()
+                .id(3L)
+                .deposit(250000.0)
+                .updatedAt(LocalDateTime.of(2024, 1, 1, 12, 0))
+                .build();
+
+        when(accountDepositOperationService.save(eq(1L), argThat(dto -> dto.getDeposit() == 250000.0)))
+                .thenReturn(operation);
+
+        byte[] body = mockMvc.perform(post("/account/1/operation/deposit")
+                        .contentType(MediaType.APPLICATION_CBOR)
+                        .accept(MediaType.APPLICATION_CBOR)
+                        .content(mapper.writeValueAsBytes(Map.of("deposit", 250000.0))))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        JsonNode result = mapper.readTree(body);
+
+        assertEquals(3L, result.get("id").asLong());
+        assertEquals(250000.0, result.get("deposit").asDouble());
+        assertEquals("2024-01-01T12:00:00", result.get("updatedAt").asText());
+    }
+
+    @Test
+    void testSaveOperationWhenRateLimitExceededShouldReturnTooManyRequests() throws Exception {
+        doThrow(new TooManyRequestsException("Too many requests for account '1'", 3))
+                .when(rateLimiter).acquire(eq(1L), any());
+
+        mockMvc.perform(post("/account/1/operation/deposit")
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .content(new JSONObject()
+                                .put("deposit", 250000)
+                                .toString()))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "3"))
+                .andExpect(jsonPath("$.statusCode").value(429));
+
+        verify(accountDepositOperationService, never()).save(any(long.class), any());
+    }
+
+    @Test
+    void testSaveOperationWhenAccountWasChangedShouldRetry() throws Exception {
+        when(accountDepositOperationService.save(any(long.class), any()))
+                .thenThrow(new ObjectOptimisticLockingFailureException(Account.class, 1L))
+                .thenReturn(mock());
+
+        mockMvc.perform(post("/account/1/operation/deposit")
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .content(new JSONObject()
+                                .put("deposit", -250000)
+                                .toString()))
+                .andExpect(status().isOk());
+
+        verify(accountDepositOperationService, times(2)).save(any(long.class), any());
+    }
+}
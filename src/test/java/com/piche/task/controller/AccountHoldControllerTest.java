@@ -0,0 +1,89 @@
+package com.piche.task.controller;
+
+import com.piche.task.limiter.RateLimiter;
+import com.piche.task.model.BalanceHold;
+import com.piche.task.model.BalanceHoldState;
+import com.piche.task.retry.OptimisticRetry;
+import com.piche.task.service.BalanceHoldService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(controllers = {AccountHoldController.class})
+@Import({OptimisticRetry.class, SimpleMeterRegistry.class})
+class AccountHoldControllerTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private BalanceHoldService holdService;
+
+    @MockBean
+    private RateLimiter rateLimiter;
+
+    @Test
+    void testPlaceHoldShouldReturnHold() throws Exception {
+        when(holdService.place(eq(1L), argThat(hold -> hold.getDeposit() == 25.0
+                && Duration.ofMinutes(5).equals(hold.getTtl()))))
+                .thenReturn(hold(BalanceHoldState.HELD, null));
+
+        mockMvc.perform(post("/account/1/hold")
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .content(new JSONObject().put("deposit", 25).put("ttl", "PT5M").toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(9))
+                .andExpect(jsonPath("$.state").value("HELD"))
+                .andExpect(jsonPath("$.amount").value(25.0));
+
+        verify(rateLimiter).acquire(eq(1L), any());
+    }
+
+    @Test
+    void testCaptureHoldShouldRetryConflictsAndReturnHold() throws Exception {
+        when(holdService.capture(eq(1L), eq(9L), argThat(capture -> capture.getReceiverId() == 2L
+                && capture.getDeposit() == null)))
+                .thenThrow(new ObjectOptimisticLockingFailureException(BalanceHold.class, 9L))
+                .thenReturn(hold(BalanceHoldState.CAPTURED, 11L));
+
+        mockMvc.perform(post("/account/1/hold/9/capture")
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .content(new JSONObject().put("receiverId", 2).toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.state").value("CAPTURED"))
+                .andExpect(jsonPath("$.transferId").value(11));
+    }
+
+    private static BalanceHold hold(BalanceHoldState state, Long transferId) {
+        return BalanceHold.builder()
+                .id(9L)
+                .accountId(1L)
+                .amount(25.0)
+                .state(state)
+                .createdAt(NOW)
+                .expiresAt(NOW.plusMinutes(5))
+                .transferId(transferId)
+                .build();
+    }
+}
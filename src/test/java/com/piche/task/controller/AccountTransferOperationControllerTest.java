@@ -1,29 +1,48 @@
 package com.piche.task.controller;
 
+import com.piche.task.dto.TransferOperationRowDTO;
+import com.piche.task.exception.TooManyRequestsException;
+import com.piche.task.limiter.RateLimiter;
 import com.piche.task.model.Account;
 import com.piche.task.model.AccountTransferOperation;
+import com.piche.task.retry.OptimisticRetry;
 import com.piche.task.service.AccountTransferOperationService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.test.web.servlet.MockMvc;
 
 import java.time.LocalDateTime;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(controllers = {AccountTransferOperationController.class})
+@Import({OptimisticRetry.class, SimpleMeterRegistry.class})
 class AccountTransferOperationControllerTest {
 
     @Autowired
@@ -32,6 +51,9 @@ class AccountTransferOperationControllerTest {
     @MockBean
     private AccountTransferOperationService accountTransferOperationService;
 
+    @MockBean
+    private RateLimiter rateLimiter;
+
     @Test
     void testGetAllOperationsShouldReturnList() throws Exception {
         Account sender = mock();
@@ -74,4 +96,106 @@ class AccountTransferOperationControllerTest {
                                 .toString()))
                 .andExpect(status().isOk());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testSaveOperationWhenRateLimitExceededShouldReturnTooManyRequests() throws Exception {
+        doThrow(new TooManyRequestsException("Too many requests for account '1'", 3))
+                .when(rateLimiter).acquire(eq(1L), any());
+
+        mockMvc.perform(post("/account/1/operation/transfer/2")
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .content(new JSONObject()
+                                .put("deposit", 250000)
+                                .toString()))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "3"))
+                .andExpect(jsonPath("$.statusCode").value(429));
+
+        verify(accountTransferOperationService, never()).save(any(long.class), any(long.class), any());
+    }
+
+    @Test
+    void testSaveOperationWhenSenderKeepsChangingShouldReturnConflict() throws Exception {
+        when(accountTransferOperationService.save(any(long.class), any(long.class), any()))
+                .thenThrow(new ObjectOptimisticLockingFailureException(Account.class, 1L));
+
+        mockMvc.perform(post("/account/1/operation/transfer/2")
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .content(new JSONObject()
+                                .put("deposit", 250000)
+                                .toString()))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.statusCode").value(409));
+
+        verify(accountTransferOperationService, times(5)).save(any(long.class), any(long.class), any());
+    }
+
+    @Test
+    void testSavePayoutShouldReturnRows() throws Exception {
+        LocalDateTime now = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+        when(accountTransferOperationService.savePayout(eq(1L), argThat(payout -> payout.getPayouts().size() == 2
+                && payout.getPayouts().get(1).getReceiverId() == 3L)))
+                .thenReturn(List.of(new TransferOperationRowDTO(10L, 1L, 2L, now, 100.0),
+                        new TransferOperationRowDTO(11L, 1L, 3L, now, 50.0)));
+
+        mockMvc.perform(post("/account/1/operation/payout")
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .content(new JSONObject()
+                                .put("payouts", new JSONArray()
+                                        .put(new JSONObject().put("receiverId", 2).put("deposit", 100))
+                                        .put(new JSONObject().put("receiverId", 3).put("deposit", 50)))
+                                .toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value(10))
+                .andExpect(jsonPath("$[1].receiverId").value(3))
+                .andExpect(jsonPath("$[1].deposit").value(50.0));
+
+        verify(rateLimiter).acquire(eq(1L), any());
+    }
+
+    @Test
+    void testSaveBulkWithNettingShouldReturnRows() throws Exception {
+        LocalDateTime now = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+        when(accountTransferOperationService.saveBulk(argThat(bulk -> bulk.getTransfers().size() == 2
+                && bulk.getTransfers().get(1).getSenderId() == 2L), eq(true)))
+                .thenReturn(List.of(new TransferOperationRowDTO(10L, 1L, 2L, now, 100.0),
+                        new TransferOperationRowDTO(11L, 2L, 1L, now, 90.0)));
+
+        mockMvc.perform(post("/account/operation/transfer/bulk")
+                        .param("netting", "true")
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .content(new JSONObject()
+                                .put("transfers", new JSONArray()
+                                        .put(new JSONObject().put("senderId", 1).put("receiverId", 2)
+                                                .put("deposit", 100))
+                                        .put(new JSONObject().put("senderId", 2).put("receiverId", 1)
+                                                .put("deposit", 90)))
+                                .toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[1].id").value(11))
+                .andExpect(jsonPath("$[1].senderId").value(2))
+                .andExpect(jsonPath("$[1].deposit").value(90.0));
+
+        verify(rateLimiter).acquire(eq(new TreeSet<>(List.of(1L, 2L))), any());
+    }
+
+    @Test
+    void testSaveBulkWhenTooManyTransfersShouldReturnBadRequest() throws Exception {
+        JSONArray transfers = new JSONArray();
+
+        for (int i = 0; i <= 1000; i++) {
+            transfers.put(new JSONObject().put("senderId", 1).put("receiverId", 2).put("deposit", 1));
+        }
+
+        mockMvc.perform(post("/account/operation/transfer/bulk")
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .content(new JSONObject().put("transfers", transfers).toString()))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("Can`t add transfers: at most 1000 transfers per request"));
+
+        verify(rateLimiter, never()).acquire(any(Collection.class), any());
+        verify(accountTransferOperationService, never()).saveBulk(any(), eq(false));
+    }
+}
@@ -0,0 +1,93 @@
+package com.piche.task.controller;
+
+import com.piche.task.dto.ChangeEventDTO;
+import com.piche.task.exception.BadRequestException;
+import com.piche.task.service.ChangeFeedService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(controllers = {ChangeFeedController.class})
+class ChangeFeedControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private ChangeFeedService changeFeed;
+
+    @Test
+    void testPollEventsShouldReturnList() throws Exception {
+        DeferredResult<List<ChangeEventDTO>> result = new DeferredResult<>();
+
+        result.setResult(List.of(new ChangeEventDTO(42L, 1L, 5L, "transfer", "sender", -30.0, 70.0,
+                LocalDateTime.of(2024, 1, 2, 0, 0))));
+
+        when(changeFeed.poll(1L, 41L, 100, Duration.ofSeconds(10))).thenReturn(result);
+
+        MvcResult mvcResult = mockMvc.perform(get("/events?accountId=1&after=41&wait=10")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].position").value(42))
+                .andExpect(jsonPath("$[0].role").value("sender"))
+                .andExpect(jsonPath("$[0].deposit").value(-30.0))
+                .andExpect(jsonPath("$[0].balance").value(70.0));
+    }
+
+    @Test
+    void testPollEventsWhenWaitIsTooLongShouldReturnBadRequest() throws Exception {
+        mockMvc.perform(get("/events?wait=61").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+
+        verify(changeFeed, never()).poll(any(), anyLong(), anyInt(), any());
+    }
+
+    @Test
+    void testPollEventsWhenPositionIsPurgedShouldReturnBadRequest() throws Exception {
+        when(changeFeed.poll(isNull(), eq(10L), eq(100), any()))
+                .thenThrow(new BadRequestException("Position 10 is no longer retained, the feed starts at 100"));
+
+        mockMvc.perform(get("/events?after=10").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testStreamEventsShouldResumeFromLastEventId() throws Exception {
+        when(changeFeed.subscribe(1L, 43L)).thenReturn(new SseEmitter());
+
+        mockMvc.perform(get("/events?accountId=1&after=10")
+                        .header("Last-Event-ID", "43")
+                        .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted());
+
+        verify(changeFeed).subscribe(1L, 43L);
+    }
+}
@@ -0,0 +1,86 @@
+package com.piche.task.controller;
+
+import com.piche.task.exception.BadRequestException;
+import com.piche.task.limiter.RateLimiter;
+import com.piche.task.model.ScheduledTransfer;
+import com.piche.task.model.ScheduledTransferState;
+import com.piche.task.service.ScheduledTransferService;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDateTime;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(controllers = {ScheduledTransferController.class})
+class ScheduledTransferControllerTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 2, 1, 0, 0);
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private ScheduledTransferService scheduledService;
+
+    @MockBean
+    private RateLimiter rateLimiter;
+
+    @Test
+    void testScheduleTransferShouldReturnScheduledTransfer() throws Exception {
+        when(scheduledService.save(eq(1L), argThat(transfer -> transfer.getReceiverId() == 2L
+                && transfer.getDeposit() == 25.0 && START.equals(transfer.getStartsAt())
+                && "P1M".equals(transfer.getRecurrence()))))
+                .thenReturn(ScheduledTransfer.builder()
+                        .id(9L)
+                        .senderId(1L)
+                        .receiverId(2L)
+                        .amount(25.0)
+                        .startsAt(START)
+                        .recurrence("P1M")
+                        .occurrence(0L)
+                        .scheduledAt(START)
+                        .runAt(START.plusSeconds(90))
+                        .state(ScheduledTransferState.ACTIVE)
+                        .createdAt(START.minusDays(1))
+                        .build());
+
+        mockMvc.perform(post("/account/1/operation/scheduled")
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .content(new JSONObject()
+                                .put("receiverId", 2)
+                                .put("deposit", 25)
+                                .put("startsAt", "2024-02-01T00:00:00")
+                                .put("recurrence", "P1M")
+                                .toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(9))
+                .andExpect(jsonPath("$.state").value("ACTIVE"))
+                .andExpect(jsonPath("$.recurrence").value("P1M"));
+
+        verify(rateLimiter).acquire(eq(1L), any());
+    }
+
+    @Test
+    void testCancelUnknownScheduledTransferShouldReturnBadRequest() throws Exception {
+        doThrow(new BadRequestException("Unknown active scheduled transfer with id 9"))
+                .when(scheduledService).cancel(1L, 9L);
+
+        mockMvc.perform(delete("/account/1/operation/scheduled/9"))
+                .andExpect(status().isBadRequest());
+    }
+}
@@ -0,0 +1,120 @@
+package com.piche.task.datasource;
+
+import com.piche.task.exception.BadRequestException;
+import com.piche.task.exception.ServiceUnavailableException;
+import com.piche.task.sharding.ShardRouter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParallelQueriesTest {
+
+    private final ShardRouter shards = new ShardRouter("jdbc:h2:mem:second", 2);
+
+    private final ParallelQueries queries = new ParallelQueries(shards, TransactionOperations.withoutTransaction(),
+            2, 4, Duration.ofSeconds(5));
+
+    @AfterEach
+    void teardown() {
+        queries.shutdown();
+        shards.shutdown();
+        ReplicaRoutingDataSource.unpin();
+    }
+
+    @Test
+    void testInvokeAllShouldRunQueriesConcurrently() {
+        CountDownLatch latch = new CountDownLatch(3);
+        Supplier<String> query = () -> {
+            latch.countDown();
+
+            try {
+                return latch.await(5, TimeUnit.SECONDS) ? Thread.currentThread().getName() : "timeout";
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        };
+
+        List<String> result = queries.invokeAll(List.of(query, query, query));
+
+        assertEquals(Thread.currentThread().getName(), result.get(0));
+        assertTrue(result.get(1).startsWith("parallel-query-"));
+        assertTrue(result.get(2).startsWith("parallel-query-"));
+    }
+
+    @Test
+    void testInvokeAllShouldKeepShardAndPinning() {
+        ReplicaRoutingDataSource.pinToPrimary();
+
+        List<String> result = shards.routeToShard(1, () -> queries.invokeAll(List.of(
+                () -> ShardRouter.currentShard() + ":" + ReplicaRoutingDataSource.isPinned(),
+                () -> ShardRouter.currentShard() + ":" + ReplicaRoutingDataSource.isPinned())));
+
+        assertEquals(List.of("1:true", "1:true"), result);
+    }
+
+    @Test
+    void testInvokeAllWhenQueryFailsShouldThrowItsException() {
+        assertThrows(BadRequestException.class, () -> queries.invokeAll(List.of(
+                () -> "first",
+                () -> {
+                    throw new BadRequestException("failed");
+                })));
+    }
+
+    @Test
+    void testInvokeAllWhenQueryIsTooSlowShouldThrowException() {
+        ParallelQueries impatient = new ParallelQueries(shards, TransactionOperations.withoutTransaction(),
+                1, 4, Duration.ofMillis(100));
+        CountDownLatch release = new CountDownLatch(1);
+
+        try {
+            assertThrows(ServiceUnavailableException.class, () -> impatient.invokeAll(List.of(
+                    () -> true,
+                    () -> {
+                        try {
+                            return release.await(5, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    })));
+        } finally {
+            release.countDown();
+            impatient.shutdown();
+        }
+    }
+
+    @Test
+    void testInvokeAllInTransactionShouldRunOnCallingThread() {
+        Supplier<String> query = () -> Thread.currentThread().getName();
+
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+
+        try {
+            assertEquals(List.of(Thread.currentThread().getName(), Thread.currentThread().getName()),
+                    queries.invokeAll(List.of(query, query)));
+        } finally {
+            TransactionSynchronizationManager.setActualTransactionActive(false);
+        }
+    }
+
+    @Test
+    void testInvokeAllWithoutThreadsShouldRunOnCallingThread() {
+        ParallelQueries sequential = new ParallelQueries(shards, TransactionOperations.withoutTransaction(),
+                0, 0, Duration.ofSeconds(5));
+        Supplier<String> query = () -> Thread.currentThread().getName();
+
+        assertEquals(List.of(Thread.currentThread().getName(), Thread.currentThread().getName()),
+                sequential.invokeAll(List.of(query, query)));
+    }
+}
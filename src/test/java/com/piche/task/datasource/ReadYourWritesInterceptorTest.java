@@ -0,0 +1,55 @@
+package com.piche.task.datasource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReadYourWritesInterceptorTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private final ReadYourWritesInterceptor interceptor =
+            new ReadYourWritesInterceptor(new RecentWrites(Duration.ofSeconds(5), 10, clock::get));
+
+    @AfterEach
+    void cleanup() {
+        ReplicaRoutingDataSource.unpin();
+    }
+
+    @Test
+    void testPreHandleWhenAccountWasWrittenShouldPin() {
+        interceptor.afterCompletion(request("POST", "10.0.0.1", 1L), new MockHttpServletResponse(), null, null);
+
+        interceptor.preHandle(request("GET", "10.0.0.2", 1L), new MockHttpServletResponse(), null);
+
+        assertTrue(ReplicaRoutingDataSource.isPinned());
+    }
+
+    @Test
+    void testPreHandleWhenWriteIsOlderThanWindowShouldNotPin() {
+        interceptor.afterCompletion(request("POST", "10.0.0.1", 1L), new MockHttpServletResponse(), null, null);
+        clock.addAndGet(Duration.ofSeconds(5).toNanos());
+
+        interceptor.preHandle(request("GET", "10.0.0.1", 1L), new MockHttpServletResponse(), null);
+
+        assertFalse(ReplicaRoutingDataSource.isPinned());
+    }
+
+    private static MockHttpServletRequest request(String method, String client, long accountId) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, "/account/" + accountId);
+
+        request.setRemoteAddr(client);
+        request.setAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE, Map.of("id", String.valueOf(accountId)));
+
+        return request;
+    }
+}
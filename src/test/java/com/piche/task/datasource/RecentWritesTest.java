@@ -0,0 +1,75 @@
+package com.piche.task.datasource;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RecentWritesTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    void testIsRecentShouldExpireAfterWindow() {
+        RecentWrites recentWrites = new RecentWrites(Duration.ofSeconds(5), 10, clock::get);
+
+        recentWrites.record("account:1");
+
+        assertTrue(recentWrites.isRecent("account:1"));
+        assertFalse(recentWrites.isRecent("account:2"));
+
+        clock.addAndGet(Duration.ofSeconds(5).toNanos());
+
+        assertFalse(recentWrites.isRecent("account:1"));
+    }
+
+    @Test
+    void testIsRecentShouldSeeKeysOfPreviousGeneration() {
+        RecentWrites recentWrites = new RecentWrites(Duration.ofSeconds(5), 10, clock::get);
+
+        clock.addAndGet(Duration.ofSeconds(4).toNanos());
+        recentWrites.record("account:1");
+        clock.addAndGet(Duration.ofSeconds(2).toNanos());
+        recentWrites.record("account:2");
+
+        assertTrue(recentWrites.isRecent("account:1"));
+        assertTrue(recentWrites.isRecent("account:2"));
+        assertEquals(2, recentWrites.size());
+    }
+
+    @Test
+    void testRecordShouldDropGenerationsOlderThanWindow() {
+        RecentWrites recentWrites = new RecentWrites(Duration.ofSeconds(5), 2, clock::get);
+
+        recentWrites.record("account:1");
+        recentWrites.record("account:2");
+        clock.addAndGet(Duration.ofSeconds(11).toNanos());
+        recentWrites.record("account:3");
+
+        assertEquals(1, recentWrites.size());
+        assertTrue(recentWrites.isRecent("account:3"));
+    }
+
+    @Test
+    void testRecordWhenFullShouldMakeEveryKeyRecentForWindow() {
+        RecentWrites recentWrites = new RecentWrites(Duration.ofSeconds(5), 2, clock::get);
+
+        recentWrites.record("account:1");
+        recentWrites.record("account:2");
+        clock.addAndGet(Duration.ofSeconds(1).toNanos());
+        recentWrites.record("account:3");
+
+        assertEquals(2, recentWrites.size());
+        assertTrue(recentWrites.isRecent("account:3"));
+        assertTrue(recentWrites.isRecent("account:4"));
+
+        clock.addAndGet(Duration.ofSeconds(5).toNanos());
+
+        assertFalse(recentWrites.isRecent("account:3"));
+        assertFalse(recentWrites.isRecent("account:4"));
+    }
+}
@@ -0,0 +1,83 @@
+package com.piche.task.datasource;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ReplicaRoutingDataSourceTest {
+
+    private JdbcTemplate jdbcTemplate;
+
+    private TransactionTemplate readWriteTemplate;
+
+    private TransactionTemplate readOnlyTemplate;
+
+    @BeforeEach
+    void setup() {
+        DataSource dataSource = new LazyConnectionDataSourceProxy(new ReplicaRoutingDataSource(
+                database("primary"), List.of(database("replica-0"), database("replica-1"))));
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        readWriteTemplate = new TransactionTemplate(transactionManager);
+        readOnlyTemplate = new TransactionTemplate(transactionManager);
+        readOnlyTemplate.setReadOnly(true);
+    }
+
+    @AfterEach
+    void teardown() {
+        ReplicaRoutingDataSource.unpin();
+    }
+
+    @Test
+    void testReadWriteTransactionShouldUsePrimary() {
+        assertEquals("primary", readWriteTemplate.execute(status -> currentDatabase()));
+    }
+
+    @Test
+    void testReadOnlyTransactionsShouldAlternateReplicas() {
+        assertEquals("replica-0", readOnlyTemplate.execute(status -> currentDatabase()));
+        assertEquals("replica-1", readOnlyTemplate.execute(status -> currentDatabase()));
+        assertEquals("replica-0", readOnlyTemplate.execute(status -> currentDatabase()));
+    }
+
+    @Test
+    void testReadOnlyTransactionWhenPinnedShouldUsePrimary() {
+        ReplicaRoutingDataSource.pinToPrimary();
+
+        assertEquals("primary", readOnlyTemplate.execute(status -> currentDatabase()));
+    }
+
+    @Test
+    void testStatementOutsideTransactionShouldUsePrimary() {
+        assertEquals("primary", currentDatabase());
+    }
+
+    private String currentDatabase() {
+        return jdbcTemplate.queryForObject("SELECT name FROM marker", String.class);
+    }
+
+    private static DataSource database(String name) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+
+        dataSource.setURL(String.format("jdbc:h2:mem:routing-%s;DB_CLOSE_DELAY=-1", name));
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS marker (name VARCHAR(32))");
+        jdbcTemplate.update("DELETE FROM marker");
+        jdbcTemplate.update("INSERT INTO marker VALUES (?)", name);
+
+        return dataSource;
+    }
+}
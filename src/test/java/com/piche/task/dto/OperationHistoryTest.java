@@ -0,0 +1,85 @@
+package com.piche.task.dto;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OperationHistoryTest {
+
+    private static final LocalDateTime TIME = LocalDateTime.of(2024, 1, 1, 10, 0);
+
+    private final ObjectMapper mapper = Jackson2ObjectMapperBuilder.json()
+            .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .build();
+
+    @Test
+    void testMergeShouldSortPartsAndKeepOrderOfEqualTimes() {
+        OperationHistory deposits = part(OperationHistory.DEPOSIT, new long[] {3, 1, 2}, new int[] {2, 0, 1});
+        OperationHistory sent = part(OperationHistory.SENT, new long[] {11, 12}, new int[] {1, 1});
+        OperationHistory received = part(OperationHistory.RECEIVED, new long[] {21, 22}, new int[] {1, 3});
+
+        assertEquals(List.of(1L, 2L, 11L, 12L, 21L, 3L, 22L), ids(OperationHistory.merge(
+                List.of(deposits, sent, received), false)));
+        assertEquals(List.of(22L, 3L, 2L, 11L, 12L, 21L, 1L), ids(OperationHistory.merge(
+                List.of(deposits, sent, received), true)));
+    }
+
+    @Test
+    void testSerializeShouldMatchResponseObjects() throws Exception {
+        OperationHistory history = new OperationHistory(0);
+
+        history.add(OperationHistory.DEPOSIT, 1L, TIME, 250000.0);
+        history.add(OperationHistory.SENT, 2L, TIME.plusNanos(496_836_000), -12.5);
+        history.add(OperationHistory.RECEIVED, 3L, TIME.plusNanos(500_000_000), 0.1);
+
+        List<AccountOperationResponseDTO> expected = new ArrayList<>(history);
+
+        ObjectMapper timestamps = Jackson2ObjectMapperBuilder.json().build();
+
+        assertEquals(mapper.writeValueAsString(expected), mapper.writeValueAsString(history));
+        assertEquals(timestamps.writeValueAsString(expected), timestamps.writeValueAsString(history));
+        assertEquals("sender", expected.get(1).getRole());
+        assertEquals(TIME.plusNanos(496_836_000), expected.get(1).getUpdatedAt());
+    }
+
+    @Test
+    void testFormatTimeShouldMatchIsoFormat() {
+        Random random = new Random(42);
+        char[] buffer = new char[32];
+
+        for (int i = 0; i < 10_000; i++) {
+            long micros = random.nextLong(-70_000_000_000_000_000L, 260_000_000_000_000_000L);
+
+            if (i % 3 == 0) {
+                micros -= Math.floorMod(micros, 1_000_000);
+            }
+
+            String expected = OperationHistory.toLocalDateTime(micros).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+
+            assertEquals(expected, new String(buffer, 0, OperationHistory.formatTime(micros, buffer)));
+        }
+    }
+
+    private static OperationHistory part(byte kind, long[] ids, int[] hours) {
+        OperationHistory part = new OperationHistory(ids.length);
+
+        for (int i = 0; i < ids.length; i++) {
+            part.add(kind, ids[i], TIME.plusHours(hours[i]), 1.0);
+        }
+
+        return part;
+    }
+
+    private static List<Long> ids(OperationHistory history) {
+        return history.stream().map(AccountOperationResponseDTO::getId).toList();
+    }
+}
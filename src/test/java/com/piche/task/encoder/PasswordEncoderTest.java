@@ -1,27 +1,105 @@
 package com.piche.task.encoder;
 
-import org.junit.jupiter.api.BeforeAll;
+import com.piche.task.exception.TooManyRequestsException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
-import java.security.NoSuchAlgorithmException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class PasswordEncoderTest {
 
-    private static PasswordEncoder encoder;
+    private PasswordEncoder encoder;
 
-    @BeforeAll
-    static void setup() throws NoSuchAlgorithmException {
-        encoder = new PasswordEncoder();
+    @BeforeEach
+    void setup() throws GeneralSecurityException {
+        encoder = new PasswordEncoder(1000, 2, 4, new VerificationCache(Duration.ofMinutes(1), 100, System::nanoTime));
+    }
+
+    @AfterEach
+    void teardown() {
+        encoder.close();
+    }
+
+    @Test
+    void testEncodeShouldReturnSaltedHash() {
+        String hash = encoder.encode("PaSSw0rD!");
+
+        assertTrue(hash.startsWith("pbkdf2$1000$"));
+        assertNotEquals(hash, encoder.encode("PaSSw0rD!"));
+        assertTrue(encoder.matches("PaSSw0rD!", hash));
+        assertFalse(encoder.matches("password", hash));
+        assertFalse(encoder.needsRehash(hash));
+    }
+
+    @Test
+    void testMatchesWhenHashIsLegacyShouldCompareSha256() throws GeneralSecurityException {
+        String legacyHash = legacyHash("PaSSw0rD!");
+
+        assertTrue(encoder.matches("PaSSw0rD!", legacyHash));
+        assertFalse(encoder.matches("password", legacyHash));
+        assertTrue(encoder.needsRehash(legacyHash));
     }
 
     @Test
-    void testEncodeShouldReturnObject() {
+    void testNeedsRehashWhenIterationsAreLowerShouldReturnTrue() throws GeneralSecurityException {
         String hash = encoder.encode("PaSSw0rD!");
 
-        assertNotNull(hash);
-        assertEquals(64, hash.length());
+        try (PasswordEncoder stronger = new PasswordEncoder(2000, 1, 1,
+                new VerificationCache(Duration.ofMinutes(1), 100, System::nanoTime))) {
+            assertTrue(stronger.needsRehash(hash));
+            assertTrue(stronger.matches("PaSSw0rD!", hash));
+        }
+    }
+
+    @Test
+    void testEncodeWhenQueueIsFullShouldThrowException() throws GeneralSecurityException {
+        try (PasswordEncoder slow = new PasswordEncoder(200_000, 1, 1,
+                new VerificationCache(Duration.ofMinutes(1), 100, System::nanoTime))) {
+            List<CompletableFuture<String>> hashes = new ArrayList<>();
+
+            for (int i = 0; i < 8; i++) {
+                hashes.add(CompletableFuture.supplyAsync(() -> slow.encode("PaSSw0rD!")));
+            }
+
+            long rejected = hashes.stream()
+                    .filter(hash -> {
+                        try {
+                            hash.join();
+                            return false;
+                        } catch (CompletionException e) {
+                            assertInstanceOf(TooManyRequestsException.class, e.getCause());
+                            return true;
+                        }
+                    })
+                    .count();
+
+            assertTrue(rejected > 0);
+        }
+    }
+
+    @Test
+    void testCalibrateShouldReturnPowerOfTwoAboveMinimum() {
+        assertEquals(1, Integer.bitCount(PasswordEncoder.calibrate(Duration.ofMillis(20), 1)));
+        assertEquals(1000, PasswordEncoder.calibrate(Duration.ofNanos(1), 1000));
+    }
+
+    private static String legacyHash(String password) throws GeneralSecurityException {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                .digest((password + PasswordEncoder.SALT).getBytes()));
     }
 }
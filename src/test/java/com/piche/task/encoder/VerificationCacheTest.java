@@ -0,0 +1,54 @@
+package com.piche.task.encoder;
+
+import org.junit.jupiter.api.Test;
+
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VerificationCacheTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    void testIsVerifiedShouldMatchPasswordAndHash() throws GeneralSecurityException {
+        VerificationCache cache = new VerificationCache(Duration.ofSeconds(10), 10, clock::get);
+
+        cache.record("password", "hash");
+
+        assertTrue(cache.isVerified("password", "hash"));
+        assertFalse(cache.isVerified("password", "new_hash"));
+        assertFalse(cache.isVerified("passwordhash", ""));
+        assertFalse(cache.isVerified("wrong", "hash"));
+    }
+
+    @Test
+    void testIsVerifiedWhenExpiredShouldReturnFalse() throws GeneralSecurityException {
+        VerificationCache cache = new VerificationCache(Duration.ofSeconds(10), 10, clock::get);
+
+        cache.record("password", "hash");
+        clock.addAndGet(Duration.ofSeconds(10).toNanos());
+
+        assertFalse(cache.isVerified("password", "hash"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testRecordWhenFullShouldEvictLeastRecentlyUsed() throws GeneralSecurityException {
+        VerificationCache cache = new VerificationCache(Duration.ofSeconds(10), 2, clock::get);
+
+        cache.record("first", "hash");
+        cache.record("second", "hash");
+        cache.isVerified("first", "hash");
+        cache.record("third", "hash");
+
+        assertEquals(2, cache.size());
+        assertTrue(cache.isVerified("first", "hash"));
+        assertFalse(cache.isVerified("second", "hash"));
+        assertTrue(cache.isVerified("third", "hash"));
+    }
+}
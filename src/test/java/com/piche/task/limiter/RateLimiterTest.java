@@ -0,0 +1,152 @@
+package com.piche.task.limiter;
+
+import com.piche.task.exception.TooManyRequestsException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RateLimiterTest {
+
+    private AtomicLong clock;
+
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    void setup() {
+        clock = new AtomicLong();
+        registry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void testAcquireWhenAccountLimitExceededShouldThrowException() {
+        RateLimiter limiter = new RateLimiter(true, 100, 100, 1, 2, 100, 100, 10, registry, clock::get);
+
+        limiter.acquire(1L, "client");
+        limiter.acquire(1L, "client");
+
+        TooManyRequestsException e = assertThrows(TooManyRequestsException.class,
+                () -> limiter.acquire(1L, "client"));
+
+        assertEquals(1, e.getRetryAfterSeconds());
+        assertDoesNotThrow(() -> limiter.acquire(2L, "client"));
+        assertEquals(1.0, registry.get("rate_limit.requests").tag("scope", "account").counter().count());
+        assertEquals(3.0, registry.get("rate_limit.requests").tag("result", "allowed").counter().count());
+    }
+
+    @Test
+    void testAcquireWhenClientLimitExceededShouldThrowException() {
+        RateLimiter limiter = new RateLimiter(true, 100, 100, 100, 100, 1, 1, 10, registry, clock::get);
+
+        limiter.acquire(1L, "client");
+
+        assertThrows(TooManyRequestsException.class, () -> limiter.acquire(2L, "client"));
+        assertDoesNotThrow(() -> limiter.acquire(3L, "another"));
+    }
+
+    @Test
+    void testAcquireWhenGlobalLimitExceededShouldThrowException() {
+        RateLimiter limiter = new RateLimiter(true, 0.5, 1, 100, 100, 100, 100, 10, registry, clock::get);
+
+        limiter.acquire(1L, "client");
+
+        TooManyRequestsException e = assertThrows(TooManyRequestsException.class,
+                () -> limiter.acquire(2L, "another"));
+
+        assertEquals(2, e.getRetryAfterSeconds());
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(2));
+
+        assertDoesNotThrow(() -> limiter.acquire(3L, "third"));
+    }
+
+    @Test
+    void testAcquireWhenDisabledShouldNotThrowException() {
+        RateLimiter limiter = new RateLimiter(false, 1, 1, 1, 1, 1, 1, 10, registry, clock::get);
+
+        for (int i = 0; i < 10; i++) {
+            assertDoesNotThrow(() -> limiter.acquire(1L, "client"));
+        }
+    }
+
+    @Test
+    void testAcquireWhenGlobalLimitExceededShouldRefundAccountAndClientTokens() {
+        RateLimiter limiter = new RateLimiter(true, 1, 1, 0.1, 1, 0.1, 2, 10, registry, clock::get);
+
+        limiter.acquire(1L, "client");
+
+        assertThrows(TooManyRequestsException.class, () -> limiter.acquire(2L, "client"));
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+
+        // Account 2 and the client only spent the tokens of the accepted requests.
+        assertDoesNotThrow(() -> limiter.acquire(2L, "client"));
+    }
+
+    @Test
+    void testAcquireForSeveralAccountsShouldChargeEveryAccount() {
+        RateLimiter limiter = new RateLimiter(true, 100, 100, 0.1, 1, 100, 100, 10, registry, clock::get);
+
+        limiter.acquire(List.of(1L, 2L), "client");
+
+        assertThrows(TooManyRequestsException.class, () -> limiter.acquire(2L, "client"));
+        assertThrows(TooManyRequestsException.class, () -> limiter.acquire(List.of(3L, 1L), "client"));
+
+        // Account 3 got back the token of the rejected request.
+        assertDoesNotThrow(() -> limiter.acquire(3L, "client"));
+    }
+
+    @Test
+    void testAcquireWhenKeyLimitReachedShouldEvictIdleBuckets() {
+        RateLimiter limiter = new RateLimiter(true, 100, 100, 1, 1, 100, 100, 2, registry, clock::get);
+
+        limiter.acquire(1L, "client");
+        limiter.acquire(2L, "client");
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+
+        limiter.acquire(3L, "client");
+
+        assertEquals(1.0, registry.get("rate_limit.buckets").tag("scope", "account").gauge().value());
+        assertEquals(0.0, registry.get("rate_limit.overflow").tag("scope", "account").counter().count());
+        assertThrows(TooManyRequestsException.class, () -> limiter.acquire(3L, "client"));
+    }
+
+    @Test
+    void testAcquireWhenKeyLimitReachedWithoutIdleBucketShouldChargeOverflowBucket() {
+        RateLimiter limiter = new RateLimiter(true, 100, 100, 1, 1, 100, 100, 2, registry, clock::get);
+
+        limiter.acquire(1L, "client");
+        limiter.acquire(2L, "client");
+        limiter.acquire(3L, "client");
+
+        // Accounts 3 and 4 share the overflow bucket, which account 3 just emptied.
+        assertThrows(TooManyRequestsException.class, () -> limiter.acquire(4L, "client"));
+        assertThrows(TooManyRequestsException.class, () -> limiter.acquire(1L, "client"));
+        assertEquals(2.0, registry.get("rate_limit.buckets").tag("scope", "account").gauge().value());
+        assertEquals(2.0, registry.get("rate_limit.overflow").tag("scope", "account").counter().count());
+    }
+
+    @Test
+    void testAcquireWhenKeyLimitReachedShouldNotSweepMoreThanOncePerRefillPeriod() {
+        RateLimiter limiter = new RateLimiter(true, 100, 100, 1, 1, 100, 100, 2, registry, clock::get);
+
+        limiter.acquire(1L, "client");
+        limiter.acquire(2L, "client");
+        limiter.acquire(3L, "client");
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(999));
+        assertThrows(TooManyRequestsException.class, () -> limiter.acquire(4L, "client"));
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        assertDoesNotThrow(() -> limiter.acquire(4L, "client"));
+        assertEquals(1.0, registry.get("rate_limit.buckets").tag("scope", "account").gauge().value());
+    }
+}
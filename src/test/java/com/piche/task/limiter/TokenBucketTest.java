@@ -0,0 +1,73 @@
+package com.piche.task.limiter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketTest {
+
+    @Test
+    void testTryAcquireShouldAllowBurstThenReject() {
+        AtomicLong clock = new AtomicLong();
+        TokenBucket bucket = new TokenBucket(10, 3, clock::get);
+
+        assertEquals(0, bucket.tryAcquire());
+        assertEquals(0, bucket.tryAcquire());
+        assertEquals(0, bucket.tryAcquire());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), bucket.tryAcquire());
+    }
+
+    @Test
+    void testTryAcquireShouldRefillOverTime() {
+        AtomicLong clock = new AtomicLong();
+        TokenBucket bucket = new TokenBucket(10, 1, clock::get);
+
+        assertEquals(0, bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire() > 0);
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+
+        assertEquals(0, bucket.tryAcquire());
+    }
+
+    @Test
+    void testRefundShouldGiveBackTakenToken() {
+        AtomicLong clock = new AtomicLong();
+        TokenBucket bucket = new TokenBucket(10, 1, clock::get);
+
+        assertEquals(0, bucket.tryAcquire());
+
+        bucket.refund();
+
+        assertTrue(bucket.isIdle());
+        assertEquals(0, bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire() > 0);
+    }
+
+    @Test
+    void testIsIdleShouldReturnBoolean() {
+        AtomicLong clock = new AtomicLong();
+        TokenBucket bucket = new TokenBucket(10, 2, clock::get);
+
+        assertTrue(bucket.isIdle());
+
+        bucket.tryAcquire();
+
+        assertFalse(bucket.isIdle());
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+
+        assertTrue(bucket.isIdle());
+    }
+
+    @Test
+    void testConstructorWhenRateIsInvalidShouldThrowException() {
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0, 1, System::nanoTime));
+    }
+}
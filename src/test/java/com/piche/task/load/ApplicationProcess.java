@@ -0,0 +1,139 @@
+package com.piche.task.load;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * The application launched as a separate process on a free port, with an in-memory database.
+ */
+class ApplicationProcess implements AutoCloseable {
+
+    private final String name;
+
+    private final int port;
+
+    private final Process process;
+
+    private final long start;
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(1))
+            .build();
+
+    private ApplicationProcess(String name, int port, Process process, long start) {
+        this.name = name;
+        this.port = port;
+        this.process = process;
+        this.start = start;
+    }
+
+    /**
+     * Starts {@code command}, a {@code java -jar} or native executable invocation, with the port and the database
+     * appended as application arguments.
+     */
+    static ApplicationProcess start(String name, List<String> command) throws IOException {
+        int port;
+
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        List<String> fullCommand = new ArrayList<>(command);
+
+        fullCommand.add("--server.port=" + port);
+        fullCommand.add("--spring.datasource.url=jdbc:h2:mem:" + name);
+        fullCommand.add("--reconciliation.enabled=false");
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(fullCommand)
+                .redirectErrorStream(true)
+                .redirectOutput(new File(System.getProperty("java.io.tmpdir"), "application-" + name + ".log"))
+                .start();
+
+        return new ApplicationProcess(name, port, process, start);
+    }
+
+    /**
+     * Waits for the first successful request and returns the time since the launch.
+     */
+    Duration awaitFirstRequest(Duration timeout) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(uri("account?limit=1"))
+                .timeout(Duration.ofSeconds(5))
+                .build();
+
+        while (!isUp(request)) {
+            if (!process.isAlive()) {
+                fail(name + " application exited with " + process.exitValue());
+            }
+
+            assertTrue(System.nanoTime() - start < timeout.toNanos(), name + " application didn't start");
+            Thread.sleep(10);
+        }
+
+        return Duration.ofNanos(System.nanoTime() - start);
+    }
+
+    URI uri(String path) {
+        return URI.create(String.format("http://localhost:%d/api/%s", port, path));
+    }
+
+    HttpClient client() {
+        return client;
+    }
+
+    /**
+     * Returns the current and the peak resident set size in kB, on Linux only.
+     */
+    Optional<long[]> residentSetSize() throws IOException {
+        Path status = Path.of("/proc", String.valueOf(process.pid()), "status");
+
+        if (!Files.exists(status)) {
+            return Optional.empty();
+        }
+
+        long current = 0;
+        long peak = 0;
+
+        for (String line : Files.readAllLines(status)) {
+            if (line.startsWith("VmRSS:")) {
+                current = Long.parseLong(line.replaceAll("\\D", ""));
+            } else if (line.startsWith("VmHWM:")) {
+                peak = Long.parseLong(line.replaceAll("\\D", ""));
+            }
+        }
+
+        return Optional.of(new long[] {current, peak});
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        process.destroy();
+
+        if (!process.waitFor(30, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+        }
+    }
+
+    private boolean isUp(HttpRequest request) throws InterruptedException {
+        try {
+            return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
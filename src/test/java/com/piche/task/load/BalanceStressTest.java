@@ -0,0 +1,472 @@
+package com.piche.task.load;
+
+import com.piche.task.dto.AccountBulkTransferDTO;
+import com.piche.task.dto.AccountDTO;
+import com.piche.task.dto.AccountHoldDTO;
+import com.piche.task.dto.AccountOperationDTO;
+import com.piche.task.dto.AccountPayoutDTO;
+import com.piche.task.dto.HoldCaptureDTO;
+import com.piche.task.dto.ScheduledTransferDTO;
+import com.piche.task.exception.BadRequestException;
+import com.piche.task.exception.ConflictException;
+import com.piche.task.model.BalanceHold;
+import com.piche.task.retry.OptimisticRetry;
+import com.piche.task.service.AccountDepositOperationService;
+import com.piche.task.service.AccountService;
+import com.piche.task.service.AccountTransferOperationService;
+import com.piche.task.service.BalanceHoldService;
+import com.piche.task.service.ScheduledTransferService;
+import com.piche.task.sharding.ShardRouter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Hammers the deposit, transfer, hold and scheduled transfer services from many threads, the way the controllers
+ * call them, and checks the balance invariants: no available balance is ever negative, money is only created or
+ * destroyed by committed deposits, every balance and operation counter matches the operation rows, once the holds
+ * have expired no funds are held, and every scheduled transfer ran exactly once. Amounts are whole numbers, so sums
+ * are exact.
+ * <p>
+ * Each scenario uses its own accounts, picked with Zipfian skew; fewer accounts mean more contention. Run with
+ * {@code mvn test -P load-test -Dtest='*BalanceStressTest'}, tuned with system properties: {@code stress.accounts}
+ * (account counts of the scenarios, e.g. {@code 2,32,512}), {@code stress.operations}, {@code stress.threads},
+ * {@code stress.zipf}, {@code stress.transfer-share}, {@code stress.payout-share}, {@code stress.bulk-share} and
+ * {@code stress.hold-share} and {@code stress.schedule-share} (percent of transfers, of payouts to up to
+ * {@code stress.payout-receivers} accounts, of bulk submissions of up to {@code stress.bulk-transfers} transfers,
+ * with or without netting, of holds, which are captured, released or left to expire, and of one-off scheduled
+ * transfers, half of whose callers also poll the due transfers like another scheduler would).
+ * {@link ShardedBalanceStressTest} runs the same scenarios over two
+ * shards, where transfers between shards are sagas and the other operations stay on one shard.
+ */
+@Tag("load")
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:stress;DB_CLOSE_DELAY=-1",
+        "reconciliation.enabled=false",
+        "scheduled-transfers.window=PT0S",
+        "scheduled-transfers.poll-interval=PT0.1S",
+        "password.iterations=1000"
+})
+class BalanceStressTest {
+
+    private static final long INITIAL_DEPOSIT = 1000;
+
+    private static final int MAX_AMOUNT = 100;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final int operations = Integer.getInteger("stress.operations", 20000);
+
+    private final int threads = Integer.getInteger("stress.threads", 16);
+
+    private final double zipfExponent = Double.parseDouble(System.getProperty("stress.zipf", "1.1"));
+
+    private final int transferShare = Integer.getInteger("stress.transfer-share", 60);
+
+    private final int payoutShare = Integer.getInteger("stress.payout-share", 10);
+
+    private final int payoutReceivers = Integer.getInteger("stress.payout-receivers", 8);
+
+    private final int bulkShare = Integer.getInteger("stress.bulk-share", 5);
+
+    private final int bulkTransfers = Integer.getInteger("stress.bulk-transfers", 16);
+
+    private final int holdShare = Integer.getInteger("stress.hold-share", 5);
+
+    private final int scheduleShare = Integer.getInteger("stress.schedule-share", 5);
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private AccountDepositOperationService depositService;
+
+    @Autowired
+    private AccountTransferOperationService transferService;
+
+    @Autowired
+    private BalanceHoldService holdService;
+
+    @Autowired
+    private ScheduledTransferService scheduledService;
+
+    @Autowired
+    private OptimisticRetry retry;
+
+    @Autowired
+    private ShardRouter shards;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    static List<Integer> accountCounts() {
+        return Arrays.stream(System.getProperty("stress.accounts", "2,32,512").split(","))
+                .map(value -> Integer.parseInt(value.trim()))
+                .toList();
+    }
+
+    @ParameterizedTest(name = "{0} accounts")
+    @MethodSource("accountCounts")
+    void keepBalancesConsistent(int accountCount) throws Exception {
+        List<Long> ids = createAccounts(accountCount);
+        ZipfianGenerator generator = new ZipfianGenerator(accountCount, zipfExponent);
+        Map<String, LongAdder> outcomes = new HashMap<>();
+        LongAdder deposited = new LongAdder();
+        LongAdder transferRows = new LongAdder();
+        double retriesBefore = totalRetries();
+
+        for (String outcome : List.of("committed", "rejected", "aborted")) {
+            outcomes.put(outcome, new LongAdder());
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong negativeSeen = new AtomicLong();
+        Thread watcher = new Thread(() -> watchBalances(ids, running, negativeSeen), "balance-watcher");
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>(threads);
+
+        watcher.start();
+
+        long start = System.nanoTime();
+
+        for (int thread = 0; thread < threads; thread++) {
+            int share = operations / threads + (thread < operations % threads ? 1 : 0);
+
+            futures.add(pool.submit(() -> {
+                for (int i = 0; i < share; i++) {
+                    outcomes.get(runOperation(ids, generator, deposited, transferRows)).increment();
+                }
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.MINUTES);
+        }
+
+        long elapsed = System.nanoTime() - start;
+
+        pool.shutdown();
+        running.set(false);
+        watcher.join();
+
+        logger.info("{} accounts, {} threads: {} operations/s, {} committed, {} rejected, {} aborted, {} retries",
+                accountCount, threads, Math.round(operations / (elapsed / 1e9)), outcomes.get("committed").sum(),
+                outcomes.get("rejected").sum(), outcomes.get("aborted").sum(), totalRetries() - retriesBefore);
+
+        assertEquals(0, negativeSeen.get(), "negative available balances seen while running");
+        awaitHoldsExpired(ids);
+        awaitScheduledTransfersRun(ids, transferRows.sum());
+        assertInvariants(ids, INITIAL_DEPOSIT * accountCount + deposited.sum());
+    }
+
+    private List<Long> createAccounts(int count) {
+        String prefix = "stress-" + System.nanoTime() + "-";
+        List<Long> ids = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            AccountDTO account = new AccountDTO();
+
+            account.setName(prefix + i);
+            account.setPassword("PaSSw0rD!");
+
+            long id = accountService.save(account).getId();
+
+            depositService.save(id, amount(INITIAL_DEPOSIT));
+            ids.add(id);
+        }
+
+        return ids;
+    }
+
+    /**
+     * Runs a random deposit, withdrawal, transfer, payout, bulk transfer, hold or scheduled transfer through
+     * {@link OptimisticRetry} and returns its outcome; the transfer rows committed directly are counted.
+     */
+    private String runOperation(List<Long> ids, ZipfianGenerator generator, LongAdder deposited,
+                                LongAdder transferRows) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long first = ids.get(generator.next());
+        long value = random.nextLong(1, MAX_AMOUNT + 1);
+        int kind = random.nextInt(100);
+
+        try {
+            if (kind < bulkShare && ids.size() > 1) {
+                AccountBulkTransferDTO bulk = new AccountBulkTransferDTO(new ArrayList<>());
+                boolean netting = random.nextBoolean();
+
+                for (int i = 0; i < bulkTransfers; i++) {
+                    long sender = ids.get(generator.next());
+                    long receiver = ids.get(generator.next());
+
+                    if (sender != receiver && shards.shardOf(sender) == shards.shardOf(first)
+                            && shards.shardOf(receiver) == shards.shardOf(first)) {
+                        bulk.getTransfers().add(new AccountBulkTransferDTO.Transfer(sender, receiver,
+                                random.nextLong(1, MAX_AMOUNT + 1)));
+                    }
+                }
+
+                if (bulk.getTransfers().isEmpty()) {
+                    return "rejected";
+                }
+
+                transferRows.add(retry.execute("bulk", () -> transferService.saveBulk(bulk, netting)).size());
+            } else if (kind < bulkShare + payoutShare && ids.size() > 1) {
+                AccountPayoutDTO payout = new AccountPayoutDTO(new ArrayList<>());
+                int receivers = random.nextInt(1, payoutReceivers + 1);
+
+                for (int i = 0; i < receivers; i++) {
+                    long receiver = ids.get(generator.next());
+
+                    if (receiver != first && shards.shardOf(receiver) == shards.shardOf(first)) {
+                        payout.getPayouts().add(new AccountPayoutDTO.Payout(receiver,
+                                random.nextLong(1, MAX_AMOUNT + 1)));
+                    }
+                }
+
+                if (payout.getPayouts().isEmpty()) {
+                    return "rejected";
+                }
+
+                transferRows.add(retry.execute("payout", () -> transferService.savePayout(first, payout)).size());
+            } else if (kind < bulkShare + payoutShare + holdShare && ids.size() > 1) {
+                BalanceHold hold = retry.execute("hold", () -> holdService.place(first,
+                        new AccountHoldDTO(value, Duration.ofMillis(random.nextLong(200, 2000)))));
+                long receiver = ids.get(random.nextInt(ids.size()));
+
+                // Captured, released or left to expire.
+                switch (random.nextInt(3)) {
+                    case 0 -> {
+                        if (receiver != first && shards.shardOf(receiver) == shards.shardOf(first)) {
+                            HoldCaptureDTO capture = new HoldCaptureDTO(receiver,
+                                    (double) random.nextLong(1, value + 1));
+
+                            retry.execute("capture", () -> holdService.capture(first, hold.getId(), capture));
+                            transferRows.increment();
+                        }
+                    }
+                    case 1 -> retry.execute("release", () -> holdService.release(first, hold.getId()));
+                    default -> {
+                    }
+                }
+            } else if (kind < bulkShare + payoutShare + holdShare + scheduleShare && ids.size() > 1) {
+                long receiver = ids.get(generator.next());
+
+                if (receiver == first || shards.shardOf(receiver) != shards.shardOf(first)) {
+                    return "rejected";
+                }
+
+                scheduledService.save(first, new ScheduledTransferDTO(receiver, value,
+                        LocalDateTime.now().plusNanos(random.nextLong(500_000_000)), null));
+
+                if (random.nextBoolean()) {
+                    scheduledService.runDue();
+                }
+            } else if (kind < bulkShare + payoutShare + holdShare + scheduleShare + transferShare
+                    && ids.size() > 1) {
+                long second = ids.get(generator.next());
+
+                while (second == first) {
+                    second = ids.get(random.nextInt(ids.size()));
+                }
+
+                long receiver = second;
+
+                retry.execute("transfer", () -> transferService.save(first, receiver, amount(value)));
+                transferRows.increment();
+            } else {
+                long signed = random.nextBoolean() ? value : -value;
+
+                retry.execute("deposit", () -> depositService.save(first, amount(signed)));
+                deposited.add(signed);
+            }
+
+            return "committed";
+        } catch (BadRequestException e) {
+            return "rejected";
+        } catch (ConflictException e) {
+            return "aborted";
+        }
+    }
+
+    private void watchBalances(List<Long> ids, AtomicBoolean running, AtomicLong negativeSeen) {
+        Map<String, Object> parameters = Map.of("ids", ids);
+
+        while (running.get()) {
+            for (int shard = 0; shard < shards.getCount(); shard++) {
+                negativeSeen.addAndGet(shards.routeToShard(shard, () -> namedJdbcTemplate().queryForObject(
+                        "SELECT COUNT(*) FROM account WHERE balance - held < 0 AND id IN (:ids)", parameters, Long.class)));
+            }
+
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void assertInvariants(List<Long> ids, long expectedTotal) {
+        Map<Long, long[]> expected = new HashMap<>();
+        Map<Long, long[]> actual = new HashMap<>();
+        Map<String, Object> parameters = Map.of("ids", ids);
+
+        for (Long id : ids) {
+            // balance, deposit count, sent count, received count, held
+            expected.put(id, new long[5]);
+        }
+
+        for (int shard = 0; shard < shards.getCount(); shard++) {
+            shards.routeToShard(shard, () -> {
+                NamedParameterJdbcTemplate template = namedJdbcTemplate();
+
+                template.query("SELECT account_id, SUM(deposit), COUNT(*) FROM deposit_operation " +
+                        "WHERE account_id IN (:ids) GROUP BY account_id", parameters, row -> {
+                            long[] totals = expected.get(row.getLong(1));
+
+                            totals[0] += Math.round(row.getDouble(2));
+                            totals[1] += row.getLong(3);
+                        });
+                template.query("SELECT sender_id, SUM(deposit), COUNT(*) FROM transfer_operation " +
+                        "WHERE sender_id IN (:ids) GROUP BY sender_id", parameters, row -> {
+                            long[] totals = expected.get(row.getLong(1));
+
+                            totals[0] -= Math.round(row.getDouble(2));
+                            totals[2] += row.getLong(3);
+                        });
+                template.query("SELECT receiver_id, SUM(deposit), COUNT(*) FROM transfer_operation " +
+                        "WHERE receiver_id IN (:ids) GROUP BY receiver_id", parameters, row -> {
+                            long[] totals = expected.get(row.getLong(1));
+
+                            totals[0] += Math.round(row.getDouble(2));
+                            totals[3] += row.getLong(3);
+                        });
+                template.query("SELECT id, balance, deposit_count, sent_count, received_count, held " +
+                        "FROM account WHERE id IN (:ids)", parameters, row -> {
+                            actual.put(row.getLong(1), new long[] {Math.round(row.getDouble(2)), row.getLong(3),
+                                    row.getLong(4), row.getLong(5), Math.round(row.getDouble(6))});
+                        });
+
+                return null;
+            });
+        }
+
+        long total = 0;
+
+        for (Long id : ids) {
+            long[] balance = actual.get(id);
+
+            assertTrue(balance[0] >= 0, "negative balance of account " + id);
+            assertEquals(Arrays.toString(expected.get(id)), Arrays.toString(balance),
+                    "balance and counters of account " + id + " don't match its operations");
+            total += balance[0];
+        }
+
+        assertEquals(expectedTotal, total, "total balance isn't the sum of committed deposits");
+    }
+
+    /**
+     * Waits for the holds left to expire, after which no account has funds held.
+     */
+    private void awaitHoldsExpired(List<Long> ids) throws InterruptedException {
+        Map<String, Object> parameters = Map.of("ids", ids);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        long held;
+
+        do {
+            Thread.sleep(100);
+            held = 0;
+
+            for (int shard = 0; shard < shards.getCount(); shard++) {
+                held += shards.routeToShard(shard, () -> namedJdbcTemplate().queryForObject(
+                        "SELECT COUNT(*) FROM balance_hold WHERE state = 'HELD' AND account_id IN (:ids)",
+                        parameters, Long.class));
+            }
+        } while (held > 0 && System.nanoTime() < deadline);
+
+        assertEquals(0, held, "holds left active after their expiry");
+    }
+
+    /**
+     * Waits for the scheduled transfers to run and checks that each made one transfer row, or none if it was
+     * rejected.
+     */
+    private void awaitScheduledTransfersRun(List<Long> ids, long directRows) throws InterruptedException {
+        Map<String, Object> parameters = Map.of("ids", ids);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        long active;
+
+        do {
+            Thread.sleep(100);
+            active = sumOverShards("SELECT COUNT(*) FROM scheduled_transfer WHERE state = 'ACTIVE' " +
+                    "AND sender_id IN (:ids)", parameters);
+        } while (active > 0 && System.nanoTime() < deadline);
+
+        assertEquals(0, active, "scheduled transfers left to run");
+
+        long scheduledRows = sumOverShards("SELECT COUNT(*) FROM scheduled_transfer s " +
+                "JOIN transfer_operation t ON t.id = s.last_transfer_id WHERE s.sender_id IN (:ids)", parameters);
+        long rows = sumOverShards("SELECT COUNT(*) FROM transfer_operation WHERE sender_id IN (:ids)", parameters);
+
+        logger.info("{} scheduled transfers ran", scheduledRows);
+        assertEquals(directRows + scheduledRows, rows, "scheduled transfers didn't run exactly once");
+    }
+
+    private long sumOverShards(String sql, Map<String, Object> parameters) {
+        long sum = 0;
+
+        for (int shard = 0; shard < shards.getCount(); shard++) {
+            sum += shards.routeToShard(shard, () -> namedJdbcTemplate().queryForObject(sql, parameters, Long.class));
+        }
+
+        return sum;
+    }
+
+    private NamedParameterJdbcTemplate namedJdbcTemplate() {
+        return new NamedParameterJdbcTemplate(jdbcTemplate);
+    }
+
+    private double totalRetries() {
+        return registry.find("optimistic_retry.retries").summaries().stream()
+                .mapToDouble(DistributionSummary::totalAmount)
+                .sum();
+    }
+
+    private static AccountOperationDTO amount(double value) {
+        AccountOperationDTO operation = new AccountOperationDTO();
+
+        operation.setDeposit(value);
+
+        return operation;
+    }
+}
@@ -0,0 +1,272 @@
+package com.piche.task.load;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.DoubleAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Replays a mix of banking traffic against an embedded server.
+ * <p>
+ * Run with {@code mvn test -P load-test}, tuned with system properties:
+ * {@code load.accounts}, {@code load.requests}, {@code load.threads}, {@code load.zipf}
+ * and {@code load.mix} (weights of deposit, transfer, history and validate calls, e.g. {@code 40,40,15,5}).
+ * {@code load.base-url} replays the traffic against an already running server instead, e.g. the reactive
+ * application at {@code http://localhost:8081/api}.
+ */
+@Tag("load")
+@SpringBootTest(
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {
+                "spring.datasource.url=jdbc:h2:mem:load;DB_CLOSE_DELAY=-1",
+                "rate-limit.enabled=false"
+        })
+class BankingLoadTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BankingLoadTest.class);
+
+    private static final String PASSWORD = "PaSSw0rD!";
+
+    private static final double INITIAL_DEPOSIT = 1000.0;
+
+    @LocalServerPort
+    private int port;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    private final String baseUrl = System.getProperty("load.base-url");
+
+    private final String namePrefix = "load-" + System.currentTimeMillis() + "-";
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    private final int accounts = Integer.getInteger("load.accounts", 200);
+
+    private final int requests = Integer.getInteger("load.requests", 20000);
+
+    private final int threads = Integer.getInteger("load.threads", 16);
+
+    private final double zipfExponent = Double.parseDouble(System.getProperty("load.zipf", "1.1"));
+
+    private final int[] mix = Arrays.stream(System.getProperty("load.mix", "40,40,15,5").split(","))
+            .mapToInt(value -> Integer.parseInt(value.trim()))
+            .toArray();
+
+    @Test
+    void replayBankingTraffic() throws Exception {
+        List<Long> ids = new ArrayList<>(accounts);
+        DoubleAdder expectedTotal = new DoubleAdder();
+
+        for (int i = 0; i < accounts; i++) {
+            JSONObject account = new JSONObject(send("POST", "/account", new JSONObject()
+                    .put("name", namePrefix + i)
+                    .put("password", PASSWORD)).body());
+
+            ids.add(account.getLong("id"));
+            send("POST", "/account/" + account.getLong("id") + "/operation/deposit",
+                    new JSONObject().put("deposit", INITIAL_DEPOSIT));
+            expectedTotal.add(INITIAL_DEPOSIT);
+        }
+
+        ZipfianGenerator generator = new ZipfianGenerator(accounts, zipfExponent);
+        Map<Operation, ConcurrentLinkedQueue<Long>> latencies = new EnumMap<>(Operation.class);
+        Map<Operation, ConcurrentLinkedQueue<Integer>> statuses = new EnumMap<>(Operation.class);
+
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new ConcurrentLinkedQueue<>());
+            statuses.put(operation, new ConcurrentLinkedQueue<>());
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>(requests);
+        long start = System.nanoTime();
+
+        for (int i = 0; i < requests; i++) {
+            futures.add(executor.submit(() -> {
+                Operation operation = pickOperation();
+                int index = generator.next();
+                long accountId = ids.get(index);
+                long begin = System.nanoTime();
+                HttpResponse<String> response = switch (operation) {
+                    case DEPOSIT -> deposit(accountId, expectedTotal);
+                    case TRANSFER -> send("POST",
+                            "/account/" + accountId + "/operation/transfer/" + ids.get(generator.next()),
+                            new JSONObject().put("deposit", ThreadLocalRandom.current().nextInt(1, 200)));
+                    case HISTORY -> send("GET", "/account/" + accountId + "/operation/all?sort=desc", null);
+                    case VALIDATE -> send("POST", "/account/validate", new JSONObject()
+                            .put("name", namePrefix + index)
+                            .put("password", PASSWORD));
+                };
+
+                latencies.get(operation).add(System.nanoTime() - begin);
+                statuses.get(operation).add(response.statusCode());
+                return null;
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            future.get();
+        }
+
+        long elapsed = System.nanoTime() - start;
+
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        double throughput = requests * 1e9 / elapsed;
+
+        LOGGER.info("Replayed {} requests on {} accounts with {} threads in {} ms, throughput {} req/s",
+                requests, accounts, threads, TimeUnit.NANOSECONDS.toMillis(elapsed),
+                String.format("%.1f", throughput));
+        LOGGER.info("Throughput per core {} req/s on {} cores, at most {} requests in flight",
+                String.format("%.1f", throughput / cores), cores, maxInFlight.get());
+
+        for (Operation operation : Operation.values()) {
+            report(operation, latencies.get(operation), statuses.get(operation));
+        }
+
+        verifyBalances(ids, expectedTotal.sum());
+    }
+
+    private HttpResponse<String> deposit(long accountId, DoubleAdder expectedTotal) {
+        int amount = ThreadLocalRandom.current().nextInt(-100, 300);
+
+        if (amount == 0) {
+            amount = 1;
+        }
+
+        HttpResponse<String> response = send("POST", "/account/" + accountId + "/operation/deposit",
+                new JSONObject().put("deposit", amount));
+
+        if (response.statusCode() == 200) {
+            expectedTotal.add(amount);
+        }
+
+        return response;
+    }
+
+    private void verifyBalances(List<Long> ids, double expectedTotal) {
+        double total = 0;
+        int overdrafts = 0;
+        int inconsistent = 0;
+
+        for (Long id : ids) {
+            double balance = new JSONObject(send("GET", "/account/" + id, null).body()).getDouble("balance");
+            JSONArray operations = new JSONArray(send("GET", "/account/" + id + "/operation/all", null).body());
+            double history = 0;
+
+            for (int i = 0; i < operations.length(); i++) {
+                history += operations.getJSONObject(i).getDouble("deposit");
+            }
+
+            if (balance < 0) {
+                overdrafts++;
+            }
+
+            if (Math.abs(balance - history) > 1e-6) {
+                inconsistent++;
+            }
+
+            total += balance;
+        }
+
+        LOGGER.info("Total balance {} (expected {}), overdrafted accounts {}, accounts inconsistent with history {}",
+                total, expectedTotal, overdrafts, inconsistent);
+
+        assertEquals(expectedTotal, total, 1e-6);
+        assertEquals(0, inconsistent);
+        assertTrue(!Boolean.getBoolean("load.strict") || overdrafts == 0,
+                String.format("%d accounts were overdrafted", overdrafts));
+    }
+
+    private void report(Operation operation, ConcurrentLinkedQueue<Long> latencies, ConcurrentLinkedQueue<Integer> statuses) {
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+
+        if (sorted.length == 0) {
+            return;
+        }
+
+        long ok = statuses.stream().filter(status -> status == 200).count();
+
+        LOGGER.info("{}: count {}, ok {}, rejected {}, p50 {} ms, p95 {} ms, p99 {} ms, max {} ms",
+                operation, sorted.length, ok, sorted.length - ok,
+                toMillis(percentile(sorted, 0.50)),
+                toMillis(percentile(sorted, 0.95)),
+                toMillis(percentile(sorted, 0.99)),
+                toMillis(sorted[sorted.length - 1]));
+    }
+
+    private Operation pickOperation() {
+        int total = Arrays.stream(mix).sum();
+        int value = ThreadLocalRandom.current().nextInt(total);
+
+        for (int i = 0; i < mix.length; i++) {
+            if (value < mix[i]) {
+                return Operation.values()[i];
+            }
+
+            value -= mix[i];
+        }
+
+        return Operation.DEPOSIT;
+    }
+
+    private HttpResponse<String> send(String method, String path, JSONObject body) {
+        String base = baseUrl != null ? baseUrl : "http://localhost:" + port + "/api";
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(base + path))
+                .header("Content-Type", "application/json")
+                .method(method, body == null
+                        ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(body.toString()));
+
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+
+        try {
+            return client.send(builder.build(), HttpResponse.BodyHandlers.ofString());
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1)];
+    }
+
+    private static String toMillis(long nanos) {
+        return String.format("%.2f", nanos / 1e6);
+    }
+
+    private enum Operation {
+        DEPOSIT, TRANSFER, HISTORY, VALIDATE
+    }
+}
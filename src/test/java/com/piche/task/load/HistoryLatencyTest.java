@@ -0,0 +1,131 @@
+package com.piche.task.load;
+
+import com.piche.task.datasource.ParallelQueries;
+import com.piche.task.dto.AccountOperationResponseDTO;
+import com.piche.task.service.AccountService;
+import com.piche.task.sharding.ShardRouter;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares the latency of an account history read with the three queries run one after another and at the same
+ * time.
+ * <p>
+ * Run with {@code mvn test -P load-test -Dtest=HistoryLatencyTest}, tuned with system properties:
+ * {@code history.operations} (rows per query) and {@code history.iterations}.
+ */
+@Tag("load")
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:history;DB_CLOSE_DELAY=-1",
+        "reconciliation.enabled=false",
+        "change-feed.enabled=false"
+})
+class HistoryLatencyTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HistoryLatencyTest.class);
+
+    private static final long ACCOUNT_ID = 1L;
+
+    private static final long COUNTERPART_ID = 2L;
+
+    private final int operations = Integer.getInteger("history.operations", 20000);
+
+    private final int iterations = Integer.getInteger("history.iterations", 30);
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private ParallelQueries parallelQueries;
+
+    @Autowired
+    private ShardRouter shards;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void compareSequentialAndParallel() {
+        seed();
+
+        AccountService target = AopTestUtils.getTargetObject(accountService);
+        ParallelQueries sequential = new ParallelQueries(shards, TransactionOperations.withoutTransaction(),
+                0, 0, Duration.ofMinutes(1));
+        Map<String, ParallelQueries> modes = Map.of("sequential", sequential, "parallel", parallelQueries);
+        Map<String, long[]> nanos = Map.of("sequential", new long[iterations], "parallel", new long[iterations]);
+        List<AccountOperationResponseDTO> expected = null;
+
+        for (int i = -iterations / 5; i < iterations; i++) {
+            for (String mode : List.of("sequential", "parallel")) {
+                ReflectionTestUtils.setField(target, "queries", modes.get(mode));
+
+                long start = System.nanoTime();
+                List<AccountOperationResponseDTO> history = accountService.getAllOperations(ACCOUNT_ID, "asc");
+                long elapsed = System.nanoTime() - start;
+
+                assertEquals(3 * operations, history.size());
+
+                if (expected == null) {
+                    expected = history;
+                } else {
+                    assertEquals(expected, history);
+                }
+
+                if (i >= 0) {
+                    nanos.get(mode)[i] = elapsed;
+                }
+            }
+        }
+
+        ReflectionTestUtils.setField(target, "queries", parallelQueries);
+
+        for (String mode : List.of("sequential", "parallel")) {
+            long[] samples = nanos.get(mode);
+
+            Arrays.sort(samples);
+            LOGGER.info("{} history of {} operations: p50 {} ms, p95 {} ms", mode, 3 * operations,
+                    samples[samples.length / 2] / 1_000_000.0,
+                    samples[(int) Math.ceil(samples.length * 0.95) - 1] / 1_000_000.0);
+        }
+    }
+
+    private void seed() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+        jdbcTemplate.update("INSERT INTO account (id, name, password_hash, balance, held, deposit_count, sent_count, "
+                + "received_count, version) VALUES (?, ?, 'hash', 0, 0, 0, 0, 0, 0)", ACCOUNT_ID, "history-account");
+        jdbcTemplate.update("INSERT INTO account (id, name, password_hash, balance, held, deposit_count, sent_count, "
+                + "received_count, version) VALUES (?, ?, 'hash', 0, 0, 0, 0, 0, 0)", COUNTERPART_ID, "history-counterpart");
+
+        List<Object[]> deposits = new ArrayList<>(operations);
+        List<Object[]> transfers = new ArrayList<>(2 * operations);
+
+        for (int i = 0; i < operations; i++) {
+            deposits.add(new Object[] {i, ACCOUNT_ID, start.plusSeconds(3L * i), 10.0});
+            transfers.add(new Object[] {2 * i, ACCOUNT_ID, COUNTERPART_ID, start.plusSeconds(3L * i + 1), 1.0});
+            transfers.add(new Object[] {2 * i + 1, COUNTERPART_ID, ACCOUNT_ID, start.plusSeconds(3L * i + 2), 1.0});
+        }
+
+        jdbcTemplate.batchUpdate("INSERT INTO deposit_operation (id, account_id, updated_at, deposit) "
+                + "VALUES (?, ?, ?, ?)", deposits);
+        jdbcTemplate.batchUpdate("INSERT INTO transfer_operation (id, sender_id, receiver_id, updated_at, deposit) "
+                + "VALUES (?, ?, ?, ?, ?)", transfers);
+    }
+}
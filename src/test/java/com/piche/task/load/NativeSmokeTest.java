@@ -0,0 +1,107 @@
+package com.piche.task.load;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs deposits, transfers and the operation history against the native executable and reports its startup time
+ * and memory footprint.
+ * <p>
+ * Needs the executable of {@code mvn package -P native}; run with
+ * {@code mvn test -P load-test -Dtest=NativeSmokeTest}, tuned with system properties: {@code native.command} (the
+ * command to launch, {@code target/task}; e.g. {@code java -jar target/task-0.0.1.jar} for a JVM comparison) and
+ * {@code native.timeout}.
+ */
+@Tag("load")
+class NativeSmokeTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NativeSmokeTest.class);
+
+    private final List<String> command = Arrays.asList(System.getProperty("native.command", "target/task").split(" +"));
+
+    private final Duration timeout = Duration.parse(System.getProperty("native.timeout", "PT1M"));
+
+    @Test
+    void runOperations() throws Exception {
+        try (ApplicationProcess application = ApplicationProcess.start("native", command)) {
+            Duration startup = application.awaitFirstRequest(timeout);
+            String prefix = UUID.randomUUID().toString();
+
+            long senderId = send(application, "POST", "account", new JSONObject()
+                    .put("name", prefix + "-sender")
+                    .put("password", "password")).getLong("id");
+            long receiverId = send(application, "POST", "account", new JSONObject()
+                    .put("name", prefix + "-receiver")
+                    .put("password", "password")).getLong("id");
+
+            JSONObject deposit = send(application, "POST", "account/" + senderId + "/operation/deposit",
+                    new JSONObject().put("deposit", 100));
+
+            assertEquals(100.0, deposit.getJSONObject("account").getDouble("balance"));
+
+            JSONObject transfer = send(application, "POST",
+                    "account/" + senderId + "/operation/transfer/" + receiverId, new JSONObject().put("deposit", 40));
+
+            assertEquals(60.0, transfer.getJSONObject("sender").getDouble("balance"));
+            assertEquals(40.0, transfer.getJSONObject("receiver").getDouble("balance"));
+
+            JSONArray history = new JSONArray(request(application, "GET",
+                    "account/" + senderId + "/operation/all", null));
+
+            assertEquals(2, history.length());
+
+            JSONArray events = new JSONArray(request(application, "GET",
+                    "events?accountId=" + receiverId + "&wait=10", null));
+
+            assertEquals(40.0, events.getJSONObject(0).getDouble("balance"));
+
+            for (int i = 0; i < 200; i++) {
+                request(application, "GET", "account/" + senderId + "/operation/all", null);
+            }
+
+            String footprint = application.residentSetSize()
+                    .map(rss -> String.format("RSS %d MB, peak %d MB", rss[0] / 1024, rss[1] / 1024))
+                    .orElse("RSS unavailable");
+
+            LOGGER.info("{}: first request after {} ms, {}", String.join(" ", command), startup.toMillis(),
+                    footprint);
+        }
+    }
+
+    private static JSONObject send(ApplicationProcess application, String method, String path, JSONObject body)
+            throws Exception {
+        return new JSONObject(request(application, method, path, body));
+    }
+
+    private static String request(ApplicationProcess application, String method, String path, JSONObject body)
+            throws Exception {
+        HttpResponse<String> response = application.client().send(HttpRequest.newBuilder(application.uri(path))
+                        .header("Content-Type", "application/json")
+                        .header("Accept", "application/json")
+                        .method(method, body == null
+                                ? HttpRequest.BodyPublishers.noBody()
+                                : HttpRequest.BodyPublishers.ofString(body.toString()))
+                        .timeout(Duration.ofSeconds(30))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+
+        assertTrue(response.statusCode() == 200, method + " " + path + ": " + response.statusCode() + " " +
+                response.body());
+
+        return response.body();
+    }
+}
@@ -0,0 +1,102 @@
+package com.piche.task.load;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.piche.task.dto.AccountOperationResponseDTO;
+import com.piche.task.model.Account;
+import com.piche.task.model.AccountTransferOperation;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares JSON and CBOR encoding of a history page and of transfers with their nested accounts.
+ * <p>
+ * Run with {@code mvn test -P load-test -Dtest=SerializationBenchmarkTest}, tuned with system properties:
+ * {@code serialization.items} and {@code serialization.iterations}.
+ */
+@Tag("load")
+class SerializationBenchmarkTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SerializationBenchmarkTest.class);
+
+    private final int items = Integer.getInteger("serialization.items", 1000);
+
+    private final int iterations = Integer.getInteger("serialization.iterations", 2000);
+
+    private final Map<String, ObjectMapper> mappers = Map.of(
+            "json", builder().build(),
+            "cbor", builder().factory(new CBORFactory()).build());
+
+    @Test
+    void compareFormats() throws Exception {
+        List<AccountOperationResponseDTO> history = new ArrayList<>(items);
+        List<AccountTransferOperation> transfers = new ArrayList<>(items);
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+        for (int i = 0; i < items; i++) {
+            Account sender = new Account((long) i, "sender-" + i, "passwordHash-" + i, 1000.0 + i, 0.0, 1L, 1L, 0L,
+                    start.plusSeconds(i), 2L);
+            Account receiver = new Account(i + 1L, "receiver-" + i, "passwordHash-" + i, 2000.0 + i, 0.0, 0L, 0L, 1L,
+                    start.plusSeconds(i), 1L);
+
+            history.add(new AccountOperationResponseDTO((long) i, i % 2 == 0 ? "deposit" : "transfer",
+                    i % 2 == 0 ? null : "sender", i * 1.5, start.plusSeconds(i)));
+            transfers.add(new AccountTransferOperation((long) i, sender, receiver, start.plusSeconds(i), i * 2.5));
+        }
+
+        for (String format : List.of("json", "cbor")) {
+            ObjectMapper mapper = mappers.get(format);
+
+            measure(format, "history", mapper, history, new TypeReference<List<AccountOperationResponseDTO>>() { });
+            measure(format, "transfers", mapper, transfers, new TypeReference<List<AccountTransferOperation>>() { });
+        }
+    }
+
+    private <T> void measure(String format, String payload, ObjectMapper mapper, List<T> value,
+                             TypeReference<List<T>> type) throws Exception {
+        byte[] bytes = mapper.writeValueAsBytes(value);
+
+        assertEquals(value, mapper.readValue(bytes, type));
+
+        for (int i = 0; i < iterations / 2; i++) {
+            mapper.readValue(mapper.writeValueAsBytes(value), type);
+        }
+
+        long writeStart = System.nanoTime();
+
+        for (int i = 0; i < iterations; i++) {
+            mapper.writeValueAsBytes(value);
+        }
+
+        long writeTime = System.nanoTime() - writeStart;
+        long readStart = System.nanoTime();
+
+        for (int i = 0; i < iterations; i++) {
+            mapper.readValue(bytes, type);
+        }
+
+        long readTime = System.nanoTime() - readStart;
+
+        LOGGER.info("{} {}: {} bytes, write {} us, read {} us per {} items",
+                format, payload, bytes.length,
+                String.format("%.1f", writeTime / 1e3 / iterations),
+                String.format("%.1f", readTime / 1e3 / iterations),
+                value.size());
+    }
+
+    private static Jackson2ObjectMapperBuilder builder() {
+        return new Jackson2ObjectMapperBuilder().featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    }
+}
@@ -0,0 +1,17 @@
+package com.piche.task.load;
+
+import org.springframework.boot.test.context.SpringBootTest;
+
+/**
+ * {@link BalanceStressTest} over two shards: transfers between accounts of different shards are sagas, whose
+ * compensations must keep the invariants as well.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:stress-sharded;DB_CLOSE_DELAY=-1",
+        "sharding.urls=jdbc:h2:mem:stress-shard-1;DB_CLOSE_DELAY=-1",
+        "scheduled-transfers.window=PT0S",
+        "scheduled-transfers.poll-interval=PT0.1S",
+        "password.iterations=1000"
+})
+class ShardedBalanceStressTest extends BalanceStressTest {
+}
@@ -0,0 +1,88 @@
+package com.piche.task.load;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Measures the time from launching the application to its first successful request, with the default settings and
+ * with the {@code fast-start} profile (Spring AOT, the AppCDS archive of the training run, lazy initialization and
+ * schema validation).
+ * <p>
+ * Needs the artifacts of {@code mvn package -P fast-start}; run with
+ * {@code mvn test -P load-test -Dtest=StartupTimeTest}, tuned with system properties: {@code startup.directory}
+ * (the extracted application, {@code target/fast-start}), {@code startup.runs} and {@code startup.timeout}.
+ */
+@Tag("load")
+class StartupTimeTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StartupTimeTest.class);
+
+    private final Path directory = Path.of(System.getProperty("startup.directory", "target/fast-start"));
+
+    private final int runs = Integer.getInteger("startup.runs", 3);
+
+    private final Duration timeout = Duration.parse(System.getProperty("startup.timeout", "PT2M"));
+
+    @Test
+    void compareStartupTimes() throws Exception {
+        Path jar;
+
+        try (var files = Files.list(directory)) {
+            jar = files.filter(file -> file.toString().endsWith(".jar"))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalStateException("No application jar in " + directory +
+                            ", run mvn package -P fast-start first"));
+        }
+
+        Path archive = Path.of(jar.toString().replaceAll("\\.jar$", ".jsa"));
+
+        List<String> fastStart = new ArrayList<>(List.of(
+                "-Dspring.aot.enabled=true",
+                "-Dspring.profiles.active=fast-start"));
+
+        if (Files.exists(archive)) {
+            fastStart.add(0, "-XX:SharedArchiveFile=" + archive);
+        } else {
+            LOGGER.warn("No class data sharing archive {}, measuring fast-start without it", archive);
+        }
+
+        long defaultTime = measure("default", jar, List.of());
+        long fastStartTime = measure("fast-start", jar, fastStart);
+
+        LOGGER.info("Startup to first request: default {} ms, fast-start {} ms ({}x)", defaultTime, fastStartTime,
+                String.format("%.2f", (double) defaultTime / fastStartTime));
+    }
+
+    /**
+     * Returns the median time to the first request over {@code startup.runs} launches.
+     */
+    private long measure(String name, Path jar, List<String> options) throws Exception {
+        List<Long> times = new ArrayList<>(runs);
+        List<String> command = new ArrayList<>();
+
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(options);
+        command.add("-jar");
+        command.add(jar.toString());
+
+        for (int run = 0; run < runs; run++) {
+            try (ApplicationProcess application = ApplicationProcess.start(name, command)) {
+                times.add(application.awaitFirstRequest(timeout).toMillis());
+            }
+        }
+
+        Collections.sort(times);
+        LOGGER.info("{}: {} ms to first request", name, times);
+
+        return times.get(times.size() / 2);
+    }
+}
@@ -0,0 +1,33 @@
+package com.piche.task.load;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Picks indexes in [0, size) where index k is chosen with probability proportional to 1 / (k + 1)^exponent.
+ */
+class ZipfianGenerator {
+
+    private final double[] cumulative;
+
+    ZipfianGenerator(int size, double exponent) {
+        cumulative = new double[size];
+
+        double sum = 0;
+
+        for (int i = 0; i < size; i++) {
+            sum += 1.0 / Math.pow(i + 1, exponent);
+            cumulative[i] = sum;
+        }
+
+        for (int i = 0; i < size; i++) {
+            cumulative[i] /= sum;
+        }
+    }
+
+    int next() {
+        int index = Arrays.binarySearch(cumulative, ThreadLocalRandom.current().nextDouble());
+
+        return Math.min(index >= 0 ? index : -index - 1, cumulative.length - 1);
+    }
+}
@@ -0,0 +1,74 @@
+package com.piche.task.retry;
+
+import com.piche.task.exception.BadRequestException;
+import com.piche.task.exception.ConflictException;
+import com.piche.task.model.Account;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class OptimisticRetryTest {
+
+    private SimpleMeterRegistry registry;
+
+    private OptimisticRetry retry;
+
+    @BeforeEach
+    void setup() {
+        registry = new SimpleMeterRegistry();
+        retry = new OptimisticRetry(3, Duration.ofMillis(1), Duration.ofMillis(2), registry);
+    }
+
+    @Test
+    void testExecuteWhenConflictIsTransientShouldRetryAndCommit() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertEquals("ok", retry.execute("deposit", () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new ObjectOptimisticLockingFailureException(Account.class, 1L);
+            }
+
+            return "ok";
+        }));
+        assertEquals(3, attempts.get());
+        assertEquals(2.0, registry.get("optimistic_retry.retries").tag("operation", "deposit").summary().totalAmount());
+        assertEquals(1.0, count("deposit", "committed"));
+    }
+
+    @Test
+    void testExecuteWhenConflictPersistsShouldAbort() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(ConflictException.class, () -> retry.execute("transfer", () -> {
+            attempts.incrementAndGet();
+            throw new ObjectOptimisticLockingFailureException(Account.class, 1L);
+        }));
+        assertEquals(3, attempts.get());
+        assertEquals(1.0, count("transfer", "aborted"));
+        assertEquals(0.0, count("transfer", "committed"));
+    }
+
+    @Test
+    void testExecuteWhenWriteFailsOtherwiseShouldNotRetry() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(BadRequestException.class, () -> retry.execute("deposit", () -> {
+            attempts.incrementAndGet();
+            throw new BadRequestException("failed");
+        }));
+        assertEquals(1, attempts.get());
+        assertEquals(1.0, count("deposit", "failed"));
+    }
+
+    private double count(String operation, String result) {
+        return registry.get("optimistic_retry.operations").tag("operation", operation).tag("result", result)
+                .counter().count();
+    }
+}
@@ -7,13 +7,16 @@ import com.piche.task.model.Account;
 import com.piche.task.model.AccountDepositOperation;
 import com.piche.task.repository.AccountDepositOperationRepository;
 import com.piche.task.repository.AccountRepository;
+import com.piche.task.sharding.ShardRouter;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.Query;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.util.IdGenerator;
 
 import java.time.LocalDate;
@@ -28,6 +31,8 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -45,6 +50,12 @@ class AccountDepositOperationServiceTest {
     @Mock
     private IdGenerator generator;
 
+    @Spy
+    private ShardRouter shards = new ShardRouter("", 1);
+
+    @Mock
+    private ChangeFeedService changeFeed;
+
     @InjectMocks
     private AccountDepositOperationService service;
 
@@ -126,6 +137,29 @@ class AccountDepositOperationServiceTest {
 
         assertNotNull(saved);
         assertEquals(1L, saved.getId());
+        verify(changeFeed).record(saved);
+    }
+
+    @Test
+    void testSaveWhenAccountWasChangedShouldThrowException() {
+        Account mockedAccount = mock();
+        AccountOperationDTO mockedOperation = mock();
+
+        Query mockedQuery = mock();
+
+        when(generator.generateId()).thenReturn(new UUID(0L, 1L));
+        when(manager.createNativeQuery(any())).thenReturn(mockedQuery);
+        when(mockedAccount.getBalance()).thenReturn(250000.0);
+        when(mockedAccount.getVersion()).thenReturn(3L);
+        when(mockedOperation.getDeposit()).thenReturn(-250000.0);
+        when(mockedQuery.setParameter(any(int.class), any())).thenReturn(mockedQuery);
+        when(mockedQuery.executeUpdate()).thenReturn(0);
+        when(accountRepository.findById(1L)).thenReturn(Optional.of(mockedAccount));
+
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> service.save(1L, mockedOperation));
+        verify(mockedQuery).setParameter(4, 3L);
+        verify(manager).createNativeQuery(any());
+        verify(changeFeed, never()).record(any(AccountDepositOperation.class));
     }
 
     @Test
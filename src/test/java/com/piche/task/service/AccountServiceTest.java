@@ -1,7 +1,17 @@
 package com.piche.task.service;
 
+import com.piche.task.archive.ArchiveKind;
+import com.piche.task.archive.OperationArchive;
+import com.piche.task.datasource.ParallelQueries;
+import com.piche.task.dto.AccountActivityDTO;
 import com.piche.task.dto.AccountDTO;
+import com.piche.task.dto.AccountFilterDTO;
 import com.piche.task.dto.AccountOperationResponseDTO;
+import com.piche.task.dto.AccountPageDTO;
+import com.piche.task.dto.AccountSort;
+import com.piche.task.dto.AccountStatementDTO;
+import com.piche.task.dto.AccountSummaryDTO;
+import com.piche.task.dto.OperationAggregateDTO;
 import com.piche.task.encoder.PasswordEncoder;
 import com.piche.task.exception.BadRequestException;
 import com.piche.task.exception.UnknownAccountIdException;
@@ -9,15 +19,23 @@ import com.piche.task.exception.UnknownAccountNameException;
 import com.piche.task.model.Account;
 import com.piche.task.model.AccountDepositOperation;
 import com.piche.task.model.AccountTransferOperation;
+import com.piche.task.model.DailyBalanceCheckpoint;
 import com.piche.task.repository.AccountDepositOperationRepository;
 import com.piche.task.repository.AccountRepository;
 import com.piche.task.repository.AccountTransferOperationRepository;
+import com.piche.task.sharding.ShardRouter;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.support.TransactionOperations;
 
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.Arrays;
@@ -28,11 +46,16 @@ import java.util.Optional;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -50,23 +73,73 @@ class AccountServiceTest {
     @Mock
     private PasswordEncoder encoder;
 
+    @Spy
+    private OperationArchive archive = new OperationArchive(false, Path.of("archive"), null);
+
+    @Spy
+    private ShardRouter shards = new ShardRouter("", 1);
+
+    @Spy
+    private ParallelQueries queries = new ParallelQueries(shards, TransactionOperations.withoutTransaction(),
+            0, 0, Duration.ofSeconds(10));
+
+    @Mock
+    private DailyBalanceService dailyBalances;
+
     @InjectMocks
     private AccountService service;
 
     @Test
-    void testFindAllShouldReturnList() {
-        Account a1 = mock();
-        Account a2 = mock();
+    void testFindPageShouldReturnCursorWhenMoreRowsExist() {
+        AccountSummaryDTO a1 = new AccountSummaryDTO(1L, "Alice", 10.0);
+        AccountSummaryDTO a2 = new AccountSummaryDTO(2L, "Bob", 20.0);
+        AccountSummaryDTO a3 = new AccountSummaryDTO(3L, "Carol", 30.0);
+
+        when(accountRepository.findPage(any(), eq(null), eq(3))).thenReturn(Arrays.asList(a1, a2, a3));
+        when(accountRepository.findPage(any(), eq(new AccountSummaryDTO(2L, "Bob", null)), eq(3)))
+                .thenReturn(Collections.singletonList(a3));
+
+        AccountPageDTO first = service.findPage(null, null, null, "name", null, null, 2);
+
+        assertEquals(Arrays.asList(a1, a2), first.getItems());
+        assertNotNull(first.getNextCursor());
+
+        AccountPageDTO second = service.findPage(null, null, null, "name", null, first.getNextCursor(), 2);
+
+        assertEquals(Collections.singletonList(a3), second.getItems());
+        assertNull(second.getNextCursor());
+    }
+
+    @Test
+    void testFindPageShouldPassFilterToRepository() {
+        ArgumentCaptor<AccountFilterDTO> filter = ArgumentCaptor.forClass(AccountFilterDTO.class);
 
-        when(accountRepository.findAll()).thenReturn(Arrays.asList(a1, a2));
-        when(a1.getId()).thenReturn(1L);
-        when(a2.getId()).thenReturn(2L);
+        when(accountRepository.findPage(filter.capture(), eq(null), eq(51))).thenReturn(Collections.emptyList());
 
-        List<Account> result = service.findAll();
+        service.findPage("Al", 5.0, 15.0, "balance", "desc", null, null);
 
-        assertEquals(2, result.size());
-        assertEquals(1L, result.get(0).getId());
-        assertEquals(2L, result.get(1).getId());
+        assertEquals("Al", filter.getValue().getNamePrefix());
+        assertEquals(5.0, filter.getValue().getMinBalance());
+        assertEquals(15.0, filter.getValue().getMaxBalance());
+        assertEquals(AccountSort.BALANCE, filter.getValue().getSort());
+        assertTrue(filter.getValue().isDescending());
+    }
+
+    @Test
+    void testFindPageWhenCursorDoesNotMatchSortShouldThrowException() {
+        AccountSummaryDTO a1 = new AccountSummaryDTO(1L, "Alice", 10.0);
+        AccountSummaryDTO a2 = new AccountSummaryDTO(2L, "Bob", 20.0);
+
+        when(accountRepository.findPage(any(), eq(null), eq(2))).thenReturn(Arrays.asList(a1, a2));
+
+        String cursor = service.findPage(null, null, null, "name", null, null, 1).getNextCursor();
+
+        assertThrows(BadRequestException.class, () ->
+                service.findPage(null, null, null, "balance", null, cursor, 1));
+        assertThrows(BadRequestException.class, () ->
+                service.findPage(null, null, null, "name", null, "not a cursor", 1));
+        assertThrows(BadRequestException.class, () ->
+                service.findPage(null, null, null, null, null, null, 501));
     }
 
     @Test
@@ -98,6 +171,29 @@ class AccountServiceTest {
         assertThrows(UnknownAccountIdException.class, () -> service.findById(1L));
     }
 
+    @Test
+    void testGetActivityShouldReturnObject() {
+        LocalDateTime lastOperationAt = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+        when(accountRepository.findActivityById(1L))
+                .thenReturn(Optional.of(new AccountActivityDTO(1L, 10.0, 3L, 2L, 1L, lastOperationAt)));
+
+        AccountActivityDTO result = service.getActivity(1L);
+
+        assertEquals(3L, result.getDepositCount());
+        assertEquals(2L, result.getSentCount());
+        assertEquals(1L, result.getReceivedCount());
+        assertEquals(lastOperationAt, result.getLastOperationAt());
+    }
+
+    @Test
+    void testGetActivityWhenAccountDoesNotExistsShouldThrowException() {
+        when(accountRepository.findActivityById(any()))
+                .thenReturn(Optional.empty());
+
+        assertThrows(UnknownAccountIdException.class, () -> service.getActivity(1L));
+    }
+
     @Test
     void testFindByNameShouldReturnObject() {
         Account account = mock();
@@ -143,6 +239,21 @@ class AccountServiceTest {
         when(accountRepository.existsByName(any())).thenReturn(true);
 
         assertThrows(BadRequestException.class, () -> service.save(mockedAccount));
+        verify(encoder, never()).encode(any());
+    }
+
+    @Test
+    void testSaveWhenNameIsTakenConcurrentlyShouldThrowException() {
+        AccountDTO account = new AccountDTO();
+
+        account.setName("Alice");
+        account.setPassword("password");
+        when(encoder.encode("password")).thenReturn("pbkdf2_hash");
+        when(accountRepository.save(any())).thenThrow(new DataIntegrityViolationException("account_name_uq"));
+
+        BadRequestException exception = assertThrows(BadRequestException.class, () -> service.save(account));
+
+        assertEquals("Account with name 'Alice' already exists", exception.getMessage());
     }
 
     @Test
@@ -151,9 +262,31 @@ class AccountServiceTest {
 
         when(accountRepository.findByName(any())).thenReturn(Optional.of(account));
         when(account.getPasswordHash()).thenReturn("password_hash");
-        when(encoder.encode(any())).thenReturn("password_hash");
+        when(encoder.matches(any(), eq("password_hash"))).thenReturn(true);
 
         service.validate(mock());
+
+        verify(accountRepository, never()).replacePasswordHash(any(), any(), any());
+    }
+
+    @Test
+    void testValidateWhenHashIsOutdatedShouldReplaceIt() {
+        Account account = mock();
+        AccountDTO dto = new AccountDTO();
+
+        dto.setName("Alice");
+        dto.setPassword("password");
+
+        when(accountRepository.findByName("Alice")).thenReturn(Optional.of(account));
+        when(account.getId()).thenReturn(1L);
+        when(account.getPasswordHash()).thenReturn("legacy_hash");
+        when(encoder.matches("password", "legacy_hash")).thenReturn(true);
+        when(encoder.needsRehash("legacy_hash")).thenReturn(true);
+        when(encoder.encode("password")).thenReturn("pbkdf2_hash");
+
+        service.validate(dto);
+
+        verify(accountRepository).replacePasswordHash(1L, "legacy_hash", "pbkdf2_hash");
     }
 
     @Test
@@ -251,4 +384,143 @@ class AccountServiceTest {
         assertEquals(2, operations.get(1).getUpdatedAt().getDayOfMonth());
         assertEquals(1, operations.get(2).getUpdatedAt().getDayOfMonth());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testGetStatementShouldReturnObject() {
+        Account account = mock();
+
+        when(account.getBalance()).thenReturn(400.0);
+        when(accountRepository.findById(1L)).thenReturn(Optional.of(account));
+        when(depositOperationRepository.aggregateByAccountIdAndDateSpan(eq(1L), any(), any()))
+                .thenReturn(new OperationAggregateDTO(2, 250.0));
+        when(transferOperationRepository.aggregateBySenderIdAndDateSpan(eq(1L), any(), any()))
+                .thenReturn(new OperationAggregateDTO(1, 50.0));
+        when(transferOperationRepository.aggregateByReceiverIdAndDateSpan(eq(1L), any(), any()))
+                .thenReturn(new OperationAggregateDTO(1, 25.0));
+        when(depositOperationRepository.aggregateByAccountIdAndUpdatedAfter(eq(1L), any()))
+                .thenReturn(new OperationAggregateDTO(1, 100.0));
+        when(transferOperationRepository.aggregateBySenderIdAndUpdatedAfter(eq(1L), any()))
+                .thenReturn(new OperationAggregateDTO(1, 30.0));
+        when(transferOperationRepository.aggregateByReceiverIdAndUpdatedAfter(eq(1L), any()))
+                .thenReturn(new OperationAggregateDTO(1, 5.0));
+
+        AccountStatementDTO statement = service.getStatement(1L, LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 4));
+
+        assertEquals(325.0, statement.getClosingBalance());
+        assertEquals(100.0, statement.getOpeningBalance());
+        assertEquals(250.0, statement.getTotalDeposits());
+        assertEquals(50.0, statement.getTotalSent());
+        assertEquals(25.0, statement.getTotalReceived());
+        assertEquals(2, statement.getDepositCount());
+        assertEquals(1, statement.getSentCount());
+        assertEquals(1, statement.getReceivedCount());
+    }
+
+    @Test
+    void testGetStatementWhenRolledUpShouldReadClosingBalanceFromRollups() {
+        Account account = mock();
+
+        when(account.getBalance()).thenReturn(400.0);
+        when(accountRepository.findById(1L)).thenReturn(Optional.of(account));
+        when(dailyBalances.getCheckpoint()).thenReturn(new DailyBalanceCheckpoint(1,
+                LocalDate.of(2023, 6, 1), LocalDate.of(2024, 2, 1)));
+        when(dailyBalances.getBalanceBefore(1L, LocalDate.of(2024, 1, 4))).thenReturn(325.0);
+        when(depositOperationRepository.aggregateByAccountIdAndDateSpan(eq(1L), any(), any()))
+                .thenReturn(new OperationAggregateDTO(2, 250.0));
+        when(transferOperationRepository.aggregateBySenderIdAndDateSpan(eq(1L), any(), any()))
+                .thenReturn(new OperationAggregateDTO(1, 50.0));
+        when(transferOperationRepository.aggregateByReceiverIdAndDateSpan(eq(1L), any(), any()))
+                .thenReturn(new OperationAggregateDTO(1, 25.0));
+
+        AccountStatementDTO statement = service.getStatement(1L, LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 4));
+
+        assertEquals(325.0, statement.getClosingBalance());
+        assertEquals(100.0, statement.getOpeningBalance());
+        verify(depositOperationRepository, never()).aggregateByAccountIdAndUpdatedAfter(any(), any());
+        verify(transferOperationRepository, never()).aggregateBySenderIdAndUpdatedAfter(any(), any());
+        verify(transferOperationRepository, never()).aggregateByReceiverIdAndUpdatedAfter(any(), any());
+    }
+
+    @Test
+    void testGetStatementWhenOlderThanRollupsShouldSumOperationsBeforeSpan() {
+        Account account = mock();
+        OperationAggregateDTO empty = new OperationAggregateDTO(0, 0.0);
+
+        when(account.getBalance()).thenReturn(400.0);
+        when(accountRepository.findById(1L)).thenReturn(Optional.of(account));
+        when(dailyBalances.getCheckpoint()).thenReturn(new DailyBalanceCheckpoint(1,
+                LocalDate.of(2023, 6, 1), LocalDate.of(2024, 2, 1)));
+        when(depositOperationRepository.aggregateByAccountIdAndDateSpan(eq(1L), any(), any())).thenReturn(empty);
+        when(transferOperationRepository.aggregateBySenderIdAndDateSpan(eq(1L), any(), any())).thenReturn(empty);
+        when(transferOperationRepository.aggregateByReceiverIdAndDateSpan(eq(1L), any(), any())).thenReturn(empty);
+        when(depositOperationRepository.aggregateByAccountIdAndUpdatedBefore(eq(1L), any())).thenReturn(empty);
+        when(transferOperationRepository.aggregateBySenderIdAndUpdatedBefore(eq(1L), any())).thenReturn(empty);
+        when(transferOperationRepository.aggregateByReceiverIdAndUpdatedBefore(eq(1L), any())).thenReturn(empty);
+        doAnswer(invocation -> invocation.getArgument(3) == null
+                ? new OperationAggregateDTO(2, 70.0)
+                : new OperationAggregateDTO(1, 40.0))
+                .when(archive).aggregate(eq(ArchiveKind.DEPOSIT), eq(false), eq(1L), any(), any());
+
+        AccountStatementDTO statement = service.getStatement(1L, LocalDate.of(2020, 1, 1), LocalDate.of(2020, 2, 1));
+
+        assertEquals(70.0, statement.getOpeningBalance());
+        assertEquals(110.0, statement.getClosingBalance());
+        verify(depositOperationRepository, never()).aggregateByAccountIdAndUpdatedAfter(any(), any());
+    }
+
+    @Test
+    void testGetAllOperationsShouldIncludeArchivedOperations() {
+        AccountDepositOperation o1 = mock();
+        AccountDepositOperation o2 = mock();
+
+        when(o1.getUpdatedAt()).thenReturn(LocalDateTime.of(2024, 1, 2, 0, 0, 0));
+        when(o2.getUpdatedAt()).thenReturn(LocalDateTime.of(2020, 1, 1, 0, 0, 0));
+        when(accountRepository.existsById(1L)).thenReturn(true);
+        when(depositOperationRepository.findAllByAccountId(1L)).thenReturn(Collections.singletonList(o1));
+        doReturn(Collections.singletonList(o2)).when(archive).findDeposits(1L, null, null);
+
+        List<AccountOperationResponseDTO> operations = service.getAllOperations(1L, "asc");
+
+        assertEquals(2, operations.size());
+        assertEquals(2020, operations.get(0).getUpdatedAt().getYear());
+        assertEquals(2024, operations.get(1).getUpdatedAt().getYear());
+    }
+
+    @Test
+    void testGetStatementShouldIncludeArchivedOperations() {
+        Account account = mock();
+        OperationAggregateDTO empty = new OperationAggregateDTO(0, 0.0);
+
+        when(account.getBalance()).thenReturn(100.0);
+        when(accountRepository.findById(1L)).thenReturn(Optional.of(account));
+        when(depositOperationRepository.aggregateByAccountIdAndDateSpan(eq(1L), any(), any())).thenReturn(empty);
+        when(transferOperationRepository.aggregateBySenderIdAndDateSpan(eq(1L), any(), any())).thenReturn(empty);
+        when(transferOperationRepository.aggregateByReceiverIdAndDateSpan(eq(1L), any(), any())).thenReturn(empty);
+        when(depositOperationRepository.aggregateByAccountIdAndUpdatedAfter(eq(1L), any())).thenReturn(empty);
+        when(transferOperationRepository.aggregateBySenderIdAndUpdatedAfter(eq(1L), any())).thenReturn(empty);
+        when(transferOperationRepository.aggregateByReceiverIdAndUpdatedAfter(eq(1L), any())).thenReturn(empty);
+        doReturn(new OperationAggregateDTO(1, 40.0)).when(archive)
+                .aggregate(eq(ArchiveKind.DEPOSIT), eq(false), eq(1L), any(), eq(LocalDateTime.of(2020, 2, 1, 0, 0)));
+
+        AccountStatementDTO statement = service.getStatement(1L, LocalDate.of(2020, 1, 1), LocalDate.of(2020, 2, 1));
+
+        assertEquals(100.0, statement.getClosingBalance());
+        assertEquals(60.0, statement.getOpeningBalance());
+        assertEquals(40.0, statement.getTotalDeposits());
+        assertEquals(1, statement.getDepositCount());
+    }
+
+    @Test
+    void testGetStatementWhenDatesAreReversedShouldThrowException() {
+        assertThrows(BadRequestException.class,
+                () -> service.getStatement(1L, LocalDate.of(2024, 1, 4), LocalDate.of(2024, 1, 1)));
+    }
+
+    @Test
+    void testGetStatementWhenAccountNotExistsShouldThrowException() {
+        when(accountRepository.findById(any())).thenReturn(Optional.empty());
+
+        assertThrows(UnknownAccountIdException.class,
+                () -> service.getStatement(1L, LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 4)));
+    }
+}
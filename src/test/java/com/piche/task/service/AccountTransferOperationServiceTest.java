@@ -1,33 +1,52 @@
 package com.piche.task.service;
 
+import com.piche.task.dto.AccountAmountDTO;
+import com.piche.task.dto.AccountBulkTransferDTO;
 import com.piche.task.dto.AccountOperationDTO;
+import com.piche.task.dto.AccountPayoutDTO;
+import com.piche.task.dto.TransferOperationRowDTO;
 import com.piche.task.exception.BadRequestException;
 import com.piche.task.exception.UnknownAccountIdException;
 import com.piche.task.model.Account;
 import com.piche.task.model.AccountTransferOperation;
 import com.piche.task.repository.AccountRepository;
 import com.piche.task.repository.AccountTransferOperationRepository;
+import com.piche.task.sharding.ShardRouter;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.Query;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.util.IdGenerator;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -45,6 +64,18 @@ class AccountTransferOperationServiceTest {
     @Mock
     private IdGenerator generator;
 
+    @Spy
+    private ShardRouter shards = new ShardRouter("", 1);
+
+    @Mock
+    private ChangeFeedService changeFeed;
+
+    @Mock
+    private TransferSagaService sagaService;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
     @InjectMocks
     private AccountTransferOperationService service;
 
@@ -184,6 +215,30 @@ class AccountTransferOperationServiceTest {
 
         assertNotNull(saved);
         assertEquals(1L, saved.getId());
+        verify(changeFeed).record(saved);
+    }
+
+    @Test
+    void testSaveWhenSenderWasChangedShouldThrowException() {
+        Account mockedAccount = mock();
+        AccountOperationDTO mockedOperation = mock();
+
+        Query mockedQuery = mock();
+
+        when(generator.generateId()).thenReturn(new UUID(0L, 1L));
+        when(manager.createNativeQuery(any())).thenReturn(mockedQuery);
+        when(mockedAccount.getBalance()).thenReturn(250000.0);
+        when(mockedAccount.getVersion()).thenReturn(3L);
+        when(mockedOperation.getDeposit()).thenReturn(250000.0);
+        when(mockedQuery.setParameter(any(int.class), any())).thenReturn(mockedQuery);
+        when(mockedQuery.executeUpdate()).thenReturn(0);
+        when(accountRepository.findById(1L)).thenReturn(Optional.of(mockedAccount));
+        when(accountRepository.existsById(2L)).thenReturn(true);
+
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> service.save(1L, 2L, mockedOperation));
+        verify(mockedQuery).setParameter(5, 3L);
+        verify(manager).createNativeQuery(any());
+        verify(changeFeed, never()).record(any(AccountTransferOperation.class));
     }
 
     @Test
@@ -238,4 +293,197 @@ class AccountTransferOperationServiceTest {
 
         assertThrows(BadRequestException.class, () -> service.save(1L, 2L, mockedOperation));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testSaveWhenAmountIsHeldShouldThrowException() {
+        AccountOperationDTO operation = new AccountOperationDTO();
+
+        operation.setDeposit(80.0);
+        when(accountRepository.findById(1L)).thenReturn(Optional.of(
+                Account.builder().id(1L).balance(100.0).held(30.0).version(1L).build()));
+        when(accountRepository.existsById(2L)).thenReturn(true);
+
+        assertThrows(BadRequestException.class, () -> service.save(1L, 2L, operation));
+        verify(manager, never()).createNativeQuery(any());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testSavePayoutShouldDebitOnceAndCreditReceiversInIdOrder() {
+        Account sender = Account.builder().id(5L).balance(100.0).version(2L).build();
+        Query mockedQuery = mock();
+        List<AccountAmountDTO> balances = List.of(new AccountAmountDTO(3L, 5.0), new AccountAmountDTO(5L, 82.5),
+                new AccountAmountDTO(7L, 12.5));
+
+        when(generator.generateId()).thenReturn(new UUID(0L, 1L), new UUID(0L, 2L), new UUID(0L, 3L));
+        when(accountRepository.findById(5L)).thenReturn(Optional.of(sender));
+        when(accountRepository.findBalancesByIdIn(any())).thenReturn(balances);
+        when(manager.createNativeQuery(any())).thenReturn(mockedQuery);
+        when(mockedQuery.setParameter(any(int.class), any())).thenReturn(mockedQuery);
+        when(mockedQuery.executeUpdate()).thenReturn(1);
+
+        List<TransferOperationRowDTO> rows = service.savePayout(5L, new AccountPayoutDTO(List.of(
+                new AccountPayoutDTO.Payout(7L, 10.0),
+                new AccountPayoutDTO.Payout(3L, 5.0),
+                new AccountPayoutDTO.Payout(7L, 2.5))));
+
+        assertEquals(List.of(1L, 2L, 3L), rows.stream().map(TransferOperationRowDTO::getId).toList());
+        assertEquals(List.of(7L, 3L, 7L), rows.stream().map(TransferOperationRowDTO::getReceiverId).toList());
+
+        ArgumentCaptor<List<Object[]>> batches = ArgumentCaptor.forClass(List.class);
+        InOrder order = inOrder(jdbcTemplate, mockedQuery);
+
+        order.verify(jdbcTemplate).batchUpdate(startsWith("UPDATE account"), batches.capture());
+        order.verify(mockedQuery).executeUpdate();
+        order.verify(jdbcTemplate).batchUpdate(startsWith("UPDATE account"), batches.capture());
+        order.verify(jdbcTemplate).batchUpdate(startsWith("INSERT INTO transfer_operation"), batches.capture());
+
+        assertEquals(3L, batches.getAllValues().get(0).get(0)[3]);
+        assertEquals(12.5, batches.getAllValues().get(1).get(0)[0]);
+        assertEquals(2, batches.getAllValues().get(1).get(0)[1]);
+        assertEquals(3, batches.getAllValues().get(2).size());
+        verify(mockedQuery).setParameter(1, 17.5);
+        verify(mockedQuery).setParameter(2, 3);
+        verify(mockedQuery).setParameter(5, 2L);
+        verify(changeFeed).record(rows, Map.of(3L, 5.0, 5L, 82.5, 7L, 12.5));
+    }
+
+    @Test
+    void testSavePayoutWhenTotalExceedsBalanceShouldThrowException() {
+        Account sender = Account.builder().id(5L).balance(10.0).version(2L).build();
+
+        when(accountRepository.findById(5L)).thenReturn(Optional.of(sender));
+        when(accountRepository.findBalancesByIdIn(any())).thenReturn(List.of(new AccountAmountDTO(3L, 0.0),
+                new AccountAmountDTO(7L, 0.0)));
+
+        assertThrows(BadRequestException.class, () -> service.savePayout(5L, new AccountPayoutDTO(List.of(
+                new AccountPayoutDTO.Payout(7L, 6.0),
+                new AccountPayoutDTO.Payout(3L, 6.0)))));
+        verify(jdbcTemplate, never()).batchUpdate(any(String.class), anyList());
+    }
+
+    @Test
+    void testSavePayoutWhenReceiverIsUnknownShouldThrowException() {
+        when(accountRepository.findById(5L)).thenReturn(Optional.of(Account.builder().id(5L).balance(10.0).build()));
+        when(accountRepository.findBalancesByIdIn(any())).thenReturn(List.of(new AccountAmountDTO(3L, 0.0)));
+
+        assertThrows(BadRequestException.class, () -> service.savePayout(5L, new AccountPayoutDTO(List.of(
+                new AccountPayoutDTO.Payout(7L, 1.0),
+                new AccountPayoutDTO.Payout(3L, 1.0)))));
+    }
+
+    @Test
+    void testSavePayoutWhenReceiverIsOnAnotherShardShouldThrowException() {
+        doReturn(1).when(shards).shardOf(7L);
+
+        assertThrows(BadRequestException.class, () -> service.savePayout(5L, new AccountPayoutDTO(List.of(
+                new AccountPayoutDTO.Payout(7L, 1.0)))));
+        verify(accountRepository, never()).findById(any());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testSaveBulkWithNettingShouldUpdateEveryAccountOnce() {
+        when(generator.generateId()).thenReturn(new UUID(0L, 1L), new UUID(0L, 2L), new UUID(0L, 3L),
+                new UUID(0L, 4L));
+        when(accountRepository.findAllById(any())).thenReturn(List.of(
+                Account.builder().id(1L).balance(0.0).version(1L).build(),
+                Account.builder().id(2L).balance(10.0).version(2L).build(),
+                Account.builder().id(3L).balance(0.0).version(3L).build()));
+        when(accountRepository.findBalancesByIdIn(any())).thenReturn(List.of(new AccountAmountDTO(1L, 0.0),
+                new AccountAmountDTO(2L, 5.0), new AccountAmountDTO(3L, 5.0)));
+        when(jdbcTemplate.batchUpdate(startsWith("UPDATE account"), anyList())).thenReturn(new int[] {1, 1, 1});
+
+        List<TransferOperationRowDTO> rows = service.saveBulk(circularTransfers(), true);
+
+        ArgumentCaptor<List<Object[]>> batches = ArgumentCaptor.forClass(List.class);
+        InOrder order = inOrder(jdbcTemplate);
+
+        order.verify(jdbcTemplate).batchUpdate(startsWith("UPDATE account"), batches.capture());
+        order.verify(jdbcTemplate).batchUpdate(startsWith("INSERT INTO transfer_operation"), batches.capture());
+
+        List<Object[]> updates = batches.getAllValues().get(0);
+
+        assertEquals(3, updates.size());
+        assertEquals(List.of(0.0, 1, 1, 1L), List.of(updates.get(0)[0], updates.get(0)[1], updates.get(0)[2],
+                updates.get(0)[4]));
+        assertEquals(List.of(-5.0, 2, 1, 2L, 2L), List.of(updates.get(1)[0], updates.get(1)[1], updates.get(1)[2],
+                updates.get(1)[4], updates.get(1)[5]));
+        assertEquals(List.of(5.0, 1, 2, 3L), List.of(updates.get(2)[0], updates.get(2)[1], updates.get(2)[2],
+                updates.get(2)[4]));
+        assertNull(updates.get(2)[5]);
+        assertEquals(4, batches.getAllValues().get(1).size());
+        assertEquals(List.of(1L, 2L, 3L, 4L), rows.stream().map(TransferOperationRowDTO::getId).toList());
+        verify(changeFeed).record(rows, Map.of(1L, 0.0, 2L, 5.0, 3L, 5.0));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testSaveBulkWithoutNettingWhenIntermediateBalanceIsNegativeShouldThrowException() {
+        when(accountRepository.findAllById(any())).thenReturn(List.of(
+                Account.builder().id(1L).balance(0.0).version(1L).build(),
+                Account.builder().id(2L).balance(10.0).version(2L).build(),
+                Account.builder().id(3L).balance(0.0).version(3L).build()));
+
+        assertThrows(BadRequestException.class, () -> service.saveBulk(circularTransfers(), false));
+        verify(jdbcTemplate, never()).batchUpdate(any(String.class), anyList());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testSaveBulkWithoutNettingShouldDebitAndCreditEveryTransferInAccountOrder() {
+        when(generator.generateId()).thenReturn(new UUID(0L, 1L), new UUID(0L, 2L));
+        when(accountRepository.findAllById(any())).thenReturn(List.of(
+                Account.builder().id(1L).balance(20.0).version(5L).build(),
+                Account.builder().id(2L).balance(0.0).version(7L).build()));
+        when(jdbcTemplate.batchUpdate(startsWith("UPDATE account"), anyList()))
+                .thenReturn(new int[] {1, 1, 1, 1});
+
+        service.saveBulk(new AccountBulkTransferDTO(List.of(
+                new AccountBulkTransferDTO.Transfer(1L, 2L, 10.0),
+                new AccountBulkTransferDTO.Transfer(2L, 1L, 5.0))), false);
+
+        ArgumentCaptor<List<Object[]>> updates = ArgumentCaptor.forClass(List.class);
+
+        verify(jdbcTemplate).batchUpdate(startsWith("UPDATE account"), updates.capture());
+
+        assertEquals(List.of("1:-10.0:5", "1:5.0:null", "2:10.0:null", "2:-5.0:8"), updates.getValue().stream()
+                .map(update -> update[4] + ":" + update[0] + ":" + update[5])
+                .toList());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testSaveBulkWhenAccountWasChangedShouldThrowException() {
+        when(generator.generateId()).thenReturn(new UUID(0L, 1L), new UUID(0L, 2L), new UUID(0L, 3L),
+                new UUID(0L, 4L));
+        when(accountRepository.findAllById(any())).thenReturn(List.of(
+                Account.builder().id(1L).balance(0.0).version(1L).build(),
+                Account.builder().id(2L).balance(10.0).version(2L).build(),
+                Account.builder().id(3L).balance(0.0).version(3L).build()));
+        when(jdbcTemplate.batchUpdate(startsWith("UPDATE account"), anyList())).thenReturn(new int[] {1, 0, 1});
+
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> service.saveBulk(circularTransfers(), true));
+        verify(jdbcTemplate, never()).batchUpdate(startsWith("INSERT"), anyList());
+        verify(changeFeed, never()).record(any(), any());
+    }
+
+    @Test
+    void testSaveBulkWhenAccountsAreOnDifferentShardsShouldThrowException() {
+        lenient().doReturn(1).when(shards).shardOf(3L);
+
+        assertThrows(BadRequestException.class, () -> service.saveBulk(circularTransfers(), true));
+        verify(accountRepository, never()).findAllById(any());
+    }
+
+    /**
+     * Account 3 sends before it receives, so only the net positions keep the balances non-negative.
+     */
+    private static AccountBulkTransferDTO circularTransfers() {
+        return new AccountBulkTransferDTO(List.of(
+                new AccountBulkTransferDTO.Transfer(3L, 1L, 10.0),
+                new AccountBulkTransferDTO.Transfer(1L, 2L, 10.0),
+                new AccountBulkTransferDTO.Transfer(2L, 3L, 10.0),
+                new AccountBulkTransferDTO.Transfer(2L, 3L, 5.0)));
+    }
+}
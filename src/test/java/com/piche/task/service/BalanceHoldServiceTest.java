@@ -0,0 +1,330 @@
+package com.piche.task.service;
+
+import com.piche.task.dto.AccountAmountDTO;
+import com.piche.task.dto.AccountHoldDTO;
+import com.piche.task.dto.HoldCaptureDTO;
+import com.piche.task.dto.HoldExpiryDTO;
+import com.piche.task.dto.TransferOperationRowDTO;
+import com.piche.task.exception.BadRequestException;
+import com.piche.task.model.Account;
+import com.piche.task.model.BalanceHold;
+import com.piche.task.model.BalanceHoldState;
+import com.piche.task.repository.AccountRepository;
+import com.piche.task.repository.BalanceHoldRepository;
+import com.piche.task.sharding.ShardRouter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.IdGenerator;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class BalanceHoldServiceTest {
+
+    private static final Instant START = Instant.parse("2024-01-01T10:00:00Z");
+
+    @Mock
+    private AccountRepository accountRepository;
+
+    @Mock
+    private BalanceHoldRepository holdRepository;
+
+    @Mock
+    private ChangeFeedService changeFeed;
+
+    @Mock
+    private IdGenerator generator;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private EntityManager manager;
+
+    @Mock
+    private Query query;
+
+    @Mock
+    private Query claimQuery;
+
+    private final TestClock clock = new TestClock();
+
+    private ShardRouter shards;
+
+    private BalanceHoldService service;
+
+    @BeforeEach
+    void setUp() {
+        shards = new ShardRouter("", 1);
+        service = new BalanceHoldService(shards, accountRepository, holdRepository, changeFeed, generator,
+                transactionManager, new SimpleMeterRegistry(), Duration.ofMinutes(15), Duration.ofDays(7),
+                Duration.ofSeconds(1), 2, manager, clock);
+    }
+
+    @AfterEach
+    void tearDown() {
+        shards.shutdown();
+    }
+
+    @Test
+    void testPlaceShouldHoldAmountIfAccountWasNotChanged() {
+        when(accountRepository.findById(1L)).thenReturn(Optional.of(account(100.0, 30.0)));
+        when(generator.generateId()).thenReturn(new UUID(0L, 7L));
+        when(holdRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        mockUpdates(1);
+
+        BalanceHold hold = service.place(1L, new AccountHoldDTO(70.0, Duration.ofMinutes(5)));
+
+        assertEquals(7L, hold.getId());
+        assertEquals(BalanceHoldState.HELD, hold.getState());
+        assertEquals(hold.getCreatedAt().plusMinutes(5), hold.getExpiresAt());
+        verify(manager).createNativeQuery(startsWith("UPDATE account a SET a.held = a.held + ?"));
+        verify(query).setParameter(1, 70.0);
+        verify(query).setParameter(3, 4L);
+    }
+
+    @Test
+    void testPlaceWhenAvailableBalanceIsTooLowShouldThrowException() {
+        when(accountRepository.findById(1L)).thenReturn(Optional.of(account(100.0, 30.0)));
+
+        assertThrows(BadRequestException.class, () -> service.place(1L, new AccountHoldDTO(70.5, null)));
+        verify(manager, never()).createNativeQuery(anyString());
+    }
+
+    @Test
+    void testPlaceWhenTtlIsTooLongShouldThrowException() {
+        assertThrows(BadRequestException.class, () -> service.place(1L,
+                new AccountHoldDTO(1.0, Duration.ofDays(8))));
+        verify(accountRepository, never()).findById(any());
+    }
+
+    @Test
+    void testPlaceWhenAccountWasChangedShouldThrowException() {
+        when(accountRepository.findById(1L)).thenReturn(Optional.of(account(100.0, 0.0)));
+        mockUpdates(0);
+
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> service.place(1L,
+                new AccountHoldDTO(10.0, null)));
+        verify(holdRepository, never()).save(any());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testCaptureShouldTransferAndReleaseTheRestInIdOrder() {
+        BalanceHold hold = hold(BalanceHoldState.HELD);
+
+        when(holdRepository.findById(9L)).thenReturn(Optional.of(hold));
+        when(holdRepository.end(9L, BalanceHoldState.CAPTURED, 11L)).thenReturn(1);
+        when(accountRepository.existsById(2L)).thenReturn(true);
+        when(accountRepository.findBalancesByIdIn(any())).thenReturn(List.of(new AccountAmountDTO(5L, 60.0),
+                new AccountAmountDTO(2L, 40.0)));
+        when(generator.generateId()).thenReturn(new UUID(0L, 11L));
+        mockUpdates(1);
+
+        BalanceHold captured = service.capture(5L, 9L, new HoldCaptureDTO(2L, 40.0));
+
+        assertEquals(BalanceHoldState.CAPTURED, captured.getState());
+        assertEquals(11L, captured.getTransferId());
+
+        InOrder order = inOrder(manager);
+
+        order.verify(manager).createNativeQuery(startsWith("UPDATE account a SET a.balance = a.balance + ?"));
+        order.verify(manager).createNativeQuery(startsWith("UPDATE account a SET a.balance = a.balance - ?, " +
+                "a.held = a.held - ?"));
+        order.verify(manager).createNativeQuery(startsWith("INSERT INTO transfer_operation"));
+        verify(query).setParameter(2, 50.0);
+
+        ArgumentCaptor<List<TransferOperationRowDTO>> rows = ArgumentCaptor.forClass(List.class);
+
+        verify(changeFeed).record(rows.capture(), any());
+        assertEquals(40.0, rows.getValue().get(0).getDeposit());
+    }
+
+    @Test
+    void testCaptureWhenHoldHasEndedShouldThrowException() {
+        when(holdRepository.findById(9L)).thenReturn(Optional.of(hold(BalanceHoldState.EXPIRED)));
+
+        BadRequestException exception = assertThrows(BadRequestException.class, () ->
+                service.capture(5L, 9L, new HoldCaptureDTO(2L, null)));
+
+        assertEquals("Can`t capture hold: hold is expired", exception.getMessage());
+        verify(holdRepository, never()).end(any(), any(), any());
+    }
+
+    @Test
+    void testCaptureWhenDepositExceedsHoldShouldThrowException() {
+        when(holdRepository.findById(9L)).thenReturn(Optional.of(hold(BalanceHoldState.HELD)));
+
+        assertThrows(BadRequestException.class, () -> service.capture(5L, 9L, new HoldCaptureDTO(2L, 50.5)));
+        verify(manager, never()).createNativeQuery(anyString());
+    }
+
+    @Test
+    void testReleaseWhenHoldEndedConcurrentlyShouldThrowException() {
+        when(holdRepository.findById(9L)).thenReturn(Optional.of(hold(BalanceHoldState.HELD)));
+        when(holdRepository.end(9L, BalanceHoldState.RELEASED, null)).thenReturn(0);
+
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> service.release(5L, 9L));
+        verify(manager, never()).createNativeQuery(anyString());
+    }
+
+    @Test
+    void testExpireHoldsShouldReleaseHoldsOnceTheirTimeHasPassed() {
+        LocalDateTime now = LocalDateTime.ofInstant(START, ZoneOffset.UTC);
+
+        when(holdRepository.findExpiriesByState(BalanceHoldState.HELD)).thenReturn(List.of(
+                new HoldExpiryDTO(9L, 5L, now.plusSeconds(30)),
+                new HoldExpiryDTO(10L, 5L, now.plusMinutes(30))));
+        when(holdRepository.findById(9L)).thenReturn(Optional.of(hold(BalanceHoldState.HELD)));
+        when(holdRepository.end(9L, BalanceHoldState.EXPIRED, null)).thenReturn(1);
+        mockUpdates(1);
+
+        service.scheduleActiveHolds();
+        clock.advance(Duration.ofSeconds(29));
+        service.expireHolds();
+
+        verify(holdRepository, never()).findById(any());
+
+        clock.advance(Duration.ofSeconds(1));
+        service.expireHolds();
+
+        verify(manager).createNativeQuery(startsWith("UPDATE account a SET a.held = a.held - ?"));
+        verify(query).setParameter(1, 50.0);
+        verify(query).setParameter(2, 5L);
+        verify(holdRepository, never()).findById(10L);
+    }
+
+    @Test
+    void testExpireHoldsShouldSkipEndedHolds() {
+        LocalDateTime now = LocalDateTime.ofInstant(START, ZoneOffset.UTC);
+
+        when(holdRepository.findExpiriesByState(BalanceHoldState.HELD)).thenReturn(List.of(
+                new HoldExpiryDTO(9L, 5L, now.plusSeconds(1))));
+        when(holdRepository.findById(9L)).thenReturn(Optional.of(hold(BalanceHoldState.CAPTURED)));
+
+        service.scheduleActiveHolds();
+        clock.advance(Duration.ofSeconds(1));
+        service.expireHolds();
+
+        verify(holdRepository, never()).end(any(), any(), any());
+        verify(manager, never()).createNativeQuery(anyString());
+    }
+
+    @Test
+    void testSweepExpiredHoldsShouldExpireClaimedHoldsInBatches() {
+        BalanceHold first = hold(BalanceHoldState.HELD);
+        BalanceHold second = hold(BalanceHoldState.HELD);
+        BalanceHold third = hold(BalanceHoldState.HELD);
+
+        second.setId(10L);
+        second.setAccountId(3L);
+        third.setId(11L);
+        when(manager.createNativeQuery(startsWith("SELECT * FROM balance_hold"), eq(BalanceHold.class)))
+                .thenReturn(claimQuery);
+        when(claimQuery.setParameter(any(Integer.class), any())).thenReturn(claimQuery);
+        when(claimQuery.getResultList()).thenReturn(List.of(first, second), List.of(third));
+        when(holdRepository.end(any(), eq(BalanceHoldState.EXPIRED), eq(null))).thenReturn(1);
+        mockUpdates(1);
+
+        service.sweepExpiredHolds();
+
+        InOrder order = inOrder(holdRepository);
+
+        order.verify(holdRepository).end(10L, BalanceHoldState.EXPIRED, null);
+        order.verify(holdRepository).end(9L, BalanceHoldState.EXPIRED, null);
+        order.verify(holdRepository).end(11L, BalanceHoldState.EXPIRED, null);
+        verify(claimQuery, times(2)).setParameter(1, LocalDateTime.ofInstant(START, ZoneOffset.UTC));
+        verify(claimQuery, times(2)).setParameter(2, 2);
+        verify(query, times(2)).setParameter(2, 5L);
+        verify(query).setParameter(2, 3L);
+    }
+
+    @Test
+    void testSweepExpiredHoldsShouldSkipHoldsEndedMeanwhile() {
+        when(manager.createNativeQuery(startsWith("SELECT * FROM balance_hold"), eq(BalanceHold.class)))
+                .thenReturn(claimQuery);
+        when(claimQuery.setParameter(any(Integer.class), any())).thenReturn(claimQuery);
+        when(claimQuery.getResultList()).thenReturn(List.of(hold(BalanceHoldState.HELD)));
+        when(holdRepository.end(9L, BalanceHoldState.EXPIRED, null)).thenReturn(0);
+
+        service.sweepExpiredHolds();
+
+        verify(manager, never()).createNativeQuery(anyString());
+    }
+
+    private void mockUpdates(int updated) {
+        when(manager.createNativeQuery(anyString())).thenReturn(query);
+        when(query.setParameter(any(Integer.class), any())).thenReturn(query);
+        when(query.executeUpdate()).thenReturn(updated);
+    }
+
+    private static Account account(double balance, double held) {
+        return Account.builder().id(1L).balance(balance).held(held).version(4L).build();
+    }
+
+    private static BalanceHold hold(BalanceHoldState state) {
+        return BalanceHold.builder()
+                .id(9L)
+                .accountId(5L)
+                .amount(50.0)
+                .state(state)
+                .createdAt(LocalDateTime.ofInstant(START, ZoneOffset.UTC))
+                .expiresAt(LocalDateTime.ofInstant(START, ZoneOffset.UTC).plusMinutes(15))
+                .build();
+    }
+
+    private static class TestClock extends Clock {
+
+        private Instant now = START;
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.piche.task.service;
+
+import com.piche.task.archive.OperationArchive;
+import com.piche.task.repository.AccountDepositOperationRepository;
+import com.piche.task.repository.AccountRepository;
+import com.piche.task.repository.AccountTransferOperationRepository;
+import com.piche.task.repository.ReconciliationBalanceRepository;
+import com.piche.task.repository.ReconciliationCheckpointRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs the first reconciliation of two instances against a real database, where only the checkpoint row lock keeps
+ * them from both adding the same operations.
+ */
+@SpringBootTest(properties = {"spring.datasource.url=jdbc:h2:mem:reconciliation;LOCK_TIMEOUT=10000",
+        "reconciliation.enabled=false"})
+@ActiveProfiles("fast-start")
+class BalanceReconciliationConcurrencyTest {
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private AccountDepositOperationRepository depositOperationRepository;
+
+    @Autowired
+    private AccountTransferOperationRepository transferOperationRepository;
+
+    @Autowired
+    private ReconciliationCheckpointRepository checkpointRepository;
+
+    @Autowired
+    private ReconciliationBalanceRepository balanceRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void testConcurrentFirstRunsShouldAddOperationsOnce() throws Exception {
+        jdbcTemplate.update("INSERT INTO account (id, name, password_hash, balance, held, deposit_count, sent_count, " +
+                "received_count, version) VALUES (1, 'Alice', 'hash', 100, 0, 1, 0, 0, 1)");
+        jdbcTemplate.update("INSERT INTO deposit_operation (id, account_id, updated_at, deposit) VALUES (1, 1, ?, 100)",
+                Timestamp.valueOf(LocalDateTime.now().minusHours(1)));
+
+        // Both runs wait here for each other, so without a row to lock they would sum up the same window.
+        CountDownLatch summing = new CountDownLatch(2);
+        OperationArchive archive = mock(OperationArchive.class);
+
+        when(archive.netBalances()).thenReturn(Map.of());
+        when(archive.read(any())).thenAnswer(invocation -> {
+            summing.countDown();
+            summing.await(500, TimeUnit.MILLISECONDS);
+
+            return ((Supplier<?>) invocation.getArgument(0)).get();
+        });
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+
+        try {
+            BalanceReconciliationService first = create(archive, pool);
+            BalanceReconciliationService second = create(archive, pool);
+
+            CompletableFuture.allOf(CompletableFuture.runAsync(first::reconcile),
+                    CompletableFuture.runAsync(second::reconcile)).get(30, TimeUnit.SECONDS);
+
+            assertEquals(100.0, jdbcTemplate.queryForObject(
+                    "SELECT expected_balance FROM reconciliation_balance WHERE account_id = 1", Double.class));
+            assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM reconciliation_checkpoint",
+                    Integer.class));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private BalanceReconciliationService create(OperationArchive archive, ForkJoinPool pool) {
+        return new BalanceReconciliationService(accountRepository, depositOperationRepository,
+                transferOperationRepository, archive, checkpointRepository, balanceRepository, jdbcTemplate,
+                transactionManager, true, Duration.ZERO, 500, pool, Clock.systemDefaultZone());
+    }
+}
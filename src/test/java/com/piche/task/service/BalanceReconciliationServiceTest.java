@@ -0,0 +1,263 @@
+package com.piche.task.service;
+
+import com.piche.task.archive.OperationArchive;
+import com.piche.task.dto.AccountAmountDTO;
+import com.piche.task.dto.BalanceDiscrepancyDTO;
+import com.piche.task.model.ReconciliationBalance;
+import com.piche.task.model.ReconciliationCheckpoint;
+import com.piche.task.repository.AccountDepositOperationRepository;
+import com.piche.task.repository.AccountRepository;
+import com.piche.task.repository.AccountTransferOperationRepository;
+import com.piche.task.repository.ReconciliationBalanceRepository;
+import com.piche.task.repository.ReconciliationCheckpointRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class BalanceReconciliationServiceTest {
+
+    private static final Instant NOW = Instant.parse("2024-01-02T00:00:00Z");
+
+    @Mock
+    private AccountRepository accountRepository;
+
+    @Mock
+    private AccountDepositOperationRepository depositOperationRepository;
+
+    @Mock
+    private AccountTransferOperationRepository transferOperationRepository;
+
+    @Mock
+    private OperationArchive archive;
+
+    @Mock
+    private ReconciliationCheckpointRepository checkpointRepository;
+
+    @Mock
+    private ReconciliationBalanceRepository balanceRepository;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * The rows of the reconciliation tables.
+     */
+    private final Map<Long, Double> expectedBalances = new HashMap<>();
+
+    private ReconciliationCheckpoint checkpoint;
+
+    private ForkJoinPool pool;
+
+    private BalanceReconciliationService service;
+
+    @BeforeEach
+    void setup() {
+        pool = new ForkJoinPool(2);
+        service = create(true, Clock.fixed(NOW, ZoneOffset.UTC));
+
+        when(archive.read(any())).thenAnswer(invocation -> ((Supplier<?>) invocation.getArgument(0)).get());
+        when(jdbcTemplate.update(anyString(), eq(1))).thenAnswer(invocation -> {
+            if (checkpoint == null) {
+                checkpoint = new ReconciliationCheckpoint(1, null);
+            }
+
+            return 1;
+        });
+        when(checkpointRepository.findForUpdate(1)).thenAnswer(invocation -> Optional.ofNullable(checkpoint));
+        when(checkpointRepository.save(any())).thenAnswer(invocation -> checkpoint = invocation.getArgument(0));
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenAnswer(invocation -> {
+            List<Object[]> rows = invocation.getArgument(1);
+
+            rows.forEach(row -> expectedBalances.merge((Long) row[0], (Double) row[1], Double::sum));
+
+            return new int[rows.size()];
+        });
+        when(balanceRepository.findAllById(any())).thenAnswer(invocation -> {
+            Iterable<Long> ids = invocation.getArgument(0);
+            List<ReconciliationBalance> result = new ArrayList<>();
+
+            ids.forEach(id -> {
+                if (expectedBalances.containsKey(id)) {
+                    result.add(new ReconciliationBalance(id, expectedBalances.get(id)));
+                }
+            });
+
+            return result;
+        });
+        when(depositOperationRepository.sumByAccountIdAndDateSpan(any(), any()))
+                .thenReturn(List.of(new AccountAmountDTO(1L, 100.0), new AccountAmountDTO(2L, 50.0)));
+        when(transferOperationRepository.sumBySenderIdAndDateSpan(any(), any()))
+                .thenReturn(List.of(new AccountAmountDTO(1L, 30.0)));
+        when(transferOperationRepository.sumByReceiverIdAndDateSpan(any(), any()))
+                .thenReturn(List.of(new AccountAmountDTO(2L, 30.0)));
+    }
+
+    @AfterEach
+    void teardown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void testReconcileWhenBalancesMatchShouldReportNothing() {
+        when(accountRepository.findBalancesByIdIn(anyCollection())).thenAnswer(invocation -> {
+            List<Long> ids = invocation.getArgument(0);
+
+            return ids.stream()
+                    .map(id -> new AccountAmountDTO(id, id == 1L ? 70.0 : 80.0))
+                    .toList();
+        });
+
+        service.reconcile();
+
+        assertTrue(service.getDiscrepancies().isEmpty());
+        assertEquals(LocalDateTime.of(2024, 1, 1, 23, 59, 50), service.getWatermark());
+    }
+
+    @Test
+    void testReconcileShouldCountOperationsNewerThanWatermark() {
+        when(depositOperationRepository.sumByAccountIdInAndUpdatedAfter(eq(List.of(2L)), any()))
+                .thenReturn(List.of(new AccountAmountDTO(2L, 5.0)));
+        when(accountRepository.findBalancesByIdIn(anyCollection())).thenAnswer(invocation -> {
+            List<Long> ids = invocation.getArgument(0);
+
+            return ids.stream()
+                    .map(id -> new AccountAmountDTO(id, id == 1L ? 70.0 : 85.0))
+                    .toList();
+        });
+
+        service.reconcile();
+
+        assertTrue(service.getDiscrepancies().isEmpty());
+    }
+
+    @Test
+    void testReconcileWhenMismatchSeenTwiceShouldReportDiscrepancy() {
+        Clock clock = mock();
+
+        when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+        when(clock.instant()).thenReturn(NOW);
+
+        service = create(true, clock);
+
+        when(accountRepository.findBalancesByIdIn(anyCollection())).thenAnswer(invocation -> {
+            List<Long> ids = invocation.getArgument(0);
+
+            return ids.stream()
+                    .map(id -> new AccountAmountDTO(id, id == 1L ? 75.0 : 80.0))
+                    .toList();
+        });
+
+        service.reconcile();
+
+        assertTrue(service.getDiscrepancies().isEmpty());
+
+        when(depositOperationRepository.sumByAccountIdAndDateSpan(any(), any())).thenReturn(Collections.emptyList());
+        when(transferOperationRepository.sumBySenderIdAndDateSpan(any(), any())).thenReturn(Collections.emptyList());
+        when(transferOperationRepository.sumByReceiverIdAndDateSpan(any(), any())).thenReturn(Collections.emptyList());
+
+        when(clock.instant()).thenReturn(NOW.plusSeconds(60));
+        service.reconcile();
+
+        List<BalanceDiscrepancyDTO> discrepancies = service.getDiscrepancies();
+
+        assertEquals(1, discrepancies.size());
+        assertEquals(1L, discrepancies.get(0).getAccountId());
+        assertEquals(75.0, discrepancies.get(0).getBalance());
+        assertEquals(70.0, discrepancies.get(0).getExpectedBalance());
+    }
+
+    @Test
+    void testReconcileWhenDisabledShouldDoNothing() {
+        service = create(false, Clock.fixed(NOW, ZoneOffset.UTC));
+
+        service.reconcile();
+
+        verify(depositOperationRepository, never()).sumByAccountIdAndDateSpan(any(), any());
+    }
+
+    @Test
+    void testReconcileShouldResumeFromPersistedCheckpoint() {
+        LocalDateTime watermark = LocalDateTime.of(2024, 1, 1, 23, 0);
+
+        checkpoint = new ReconciliationCheckpoint(1, watermark);
+        expectedBalances.put(1L, 20.0);
+        expectedBalances.put(2L, 10.0);
+
+        when(accountRepository.findBalancesByIdIn(anyCollection())).thenAnswer(invocation -> {
+            List<Long> ids = invocation.getArgument(0);
+
+            return ids.stream()
+                    .map(id -> new AccountAmountDTO(id, 90.0))
+                    .toList();
+        });
+
+        service.reconcile();
+
+        assertTrue(service.getDiscrepancies().isEmpty());
+        assertEquals(LocalDateTime.of(2024, 1, 1, 23, 59, 50), checkpoint.getWatermark());
+        assertEquals(Map.of(1L, 90.0, 2L, 90.0), expectedBalances);
+        verify(depositOperationRepository).sumByAccountIdAndDateSpan(eq(watermark), any());
+        verify(archive, never()).netBalances();
+    }
+
+    @Test
+    void testReconcileShouldSeedExpectedBalancesFromArchiveOnce() {
+        when(archive.netBalances()).thenReturn(Map.of(1L, 20.0, 3L, 10.0));
+        when(accountRepository.findBalancesByIdIn(anyCollection())).thenAnswer(invocation -> {
+            List<Long> ids = invocation.getArgument(0);
+
+            return ids.stream()
+                    .map(id -> new AccountAmountDTO(id, id == 1L ? 90.0 : id == 2L ? 80.0 : 10.0))
+                    .toList();
+        });
+
+        service.reconcile();
+
+        assertTrue(service.getDiscrepancies().isEmpty());
+        verify(archive).netBalances();
+    }
+
+    private BalanceReconciliationService create(boolean enabled, Clock clock) {
+        return new BalanceReconciliationService(accountRepository, depositOperationRepository,
+                transferOperationRepository, archive, checkpointRepository, balanceRepository, jdbcTemplate,
+                transactionManager, enabled, Duration.ofSeconds(10), 1, pool, clock);
+    }
+}
@@ -0,0 +1,285 @@
+package com.piche.task.service;
+
+import com.piche.task.dto.ChangeEventDTO;
+import com.piche.task.dto.TransferOperationRowDTO;
+import com.piche.task.exception.BadRequestException;
+import com.piche.task.model.Account;
+import com.piche.task.model.AccountDepositOperation;
+import com.piche.task.model.AccountTransferOperation;
+import com.piche.task.model.OutboxEvent;
+import com.piche.task.repository.OutboxEventRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class ChangeFeedServiceTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 1, 2, 0, 0);
+
+    @Mock
+    private OutboxEventRepository eventRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final List<Runnable> tasks = new ArrayList<>();
+
+    private ChangeFeedService service;
+
+    @BeforeEach
+    void setup() {
+        service = create(true);
+    }
+
+    @Test
+    void testRecordDepositShouldSaveEvent() {
+        service.record(new AccountDepositOperation(5L, account(1L, 150.0), NOW, 50.0));
+
+        ArgumentCaptor<OutboxEvent> captor = ArgumentCaptor.forClass(OutboxEvent.class);
+
+        verify(eventRepository).save(captor.capture());
+        assertEquals(1L, captor.getValue().getAccountId());
+        assertEquals(5L, captor.getValue().getOperationId());
+        assertEquals("deposit", captor.getValue().getType());
+        assertEquals(50.0, captor.getValue().getDeposit());
+        assertEquals(150.0, captor.getValue().getBalance());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testRecordTransferShouldSaveEventPerAccount() {
+        service.record(new AccountTransferOperation(5L, account(1L, 70.0), account(2L, 30.0), NOW, 30.0));
+
+        ArgumentCaptor<List<OutboxEvent>> captor = ArgumentCaptor.forClass(List.class);
+
+        verify(eventRepository).saveAll(captor.capture());
+
+        List<OutboxEvent> events = captor.getValue();
+
+        assertEquals(2, events.size());
+        assertEquals(1L, events.get(0).getAccountId());
+        assertEquals("sender", events.get(0).getRole());
+        assertEquals(-30.0, events.get(0).getDeposit());
+        assertEquals(70.0, events.get(0).getBalance());
+        assertEquals(2L, events.get(1).getAccountId());
+        assertEquals("receiver", events.get(1).getRole());
+        assertEquals(30.0, events.get(1).getDeposit());
+        assertEquals(30.0, events.get(1).getBalance());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testRecordTransfersShouldCarryBalanceAfterEachTransfer() {
+        service.record(List.of(
+                        new TransferOperationRowDTO(5L, 1L, 2L, NOW, 10.0),
+                        new TransferOperationRowDTO(6L, 1L, 3L, NOW, 20.0),
+                        new TransferOperationRowDTO(7L, 1L, 2L, NOW, 5.0)),
+                Map.of(1L, 65.0, 2L, 15.0, 3L, 20.0));
+
+        ArgumentCaptor<List<OutboxEvent>> captor = ArgumentCaptor.forClass(List.class);
+
+        verify(eventRepository).saveAll(captor.capture());
+
+        List<OutboxEvent> events = captor.getValue();
+
+        assertEquals(List.of(1L, 2L, 1L, 3L, 1L, 2L), events.stream().map(OutboxEvent::getAccountId).toList());
+        assertEquals(List.of(90.0, 10.0, 70.0, 20.0, 65.0, 15.0),
+                events.stream().map(OutboxEvent::getBalance).toList());
+        assertEquals(List.of(-10.0, 10.0, -20.0, 20.0, -5.0, 5.0),
+                events.stream().map(OutboxEvent::getDeposit).toList());
+        assertEquals(6L, events.get(2).getOperationId());
+    }
+
+    @Test
+    void testRecordWhenDisabledShouldDoNothing() {
+        service = create(false);
+
+        service.record(new AccountDepositOperation(5L, account(1L, 150.0), NOW, 50.0));
+        service.dispatch();
+
+        verify(eventRepository, never()).save(any());
+        verify(eventRepository, never()).findUndispatchedIds(any());
+    }
+
+    @Test
+    void testDispatchShouldNumberEventsAfterMaxPosition() {
+        when(eventRepository.findUndispatchedIds(any())).thenReturn(List.of(7L, 8L));
+        when(eventRepository.findMaxPosition()).thenReturn(41L);
+        when(eventRepository.findAllByIdInOrderByPosition(List.of(7L, 8L)))
+                .thenReturn(List.of(event(42L, 1L), event(43L, 2L)));
+
+        service.dispatch();
+
+        verify(eventRepository).assignPosition(7L, 42L);
+        verify(eventRepository).assignPosition(8L, 43L);
+    }
+
+    @Test
+    void testPollShouldCompleteWhenEventIsDispatched() {
+        when(eventRepository.findAllByAccountIdAfter(eq(2L), eq(41L), any())).thenReturn(List.of());
+
+        DeferredResult<List<ChangeEventDTO>> result = service.poll(2L, 41L, 10, Duration.ofSeconds(30));
+
+        assertFalse(result.hasResult());
+        assertEquals(1, service.getPollCount());
+
+        when(eventRepository.findUndispatchedIds(any())).thenReturn(List.of(7L, 8L));
+        when(eventRepository.findMaxPosition()).thenReturn(41L);
+        when(eventRepository.findAllByIdInOrderByPosition(List.of(7L, 8L)))
+                .thenReturn(List.of(event(42L, 1L), event(43L, 2L)));
+
+        service.dispatch();
+
+        assertTrue(result.hasResult());
+
+        @SuppressWarnings("unchecked")
+        List<ChangeEventDTO> events = (List<ChangeEventDTO>) result.getResult();
+
+        assertEquals(1, events.size());
+        assertEquals(43L, events.get(0).getPosition());
+    }
+
+    @Test
+    void testPollWhenEventsExistShouldCompleteImmediately() {
+        when(eventRepository.findAllAfter(eq(0L), any())).thenReturn(List.of(event(1L, 1L)));
+
+        DeferredResult<List<ChangeEventDTO>> result = service.poll(null, 0L, 10, Duration.ofSeconds(30));
+
+        assertTrue(result.hasResult());
+        assertEquals(0, service.getPollCount());
+    }
+
+    @Test
+    void testPollWhenReadFailsShouldNotKeepPoll() {
+        when(eventRepository.findMinPosition()).thenReturn(100L);
+
+        assertThrows(BadRequestException.class, () -> service.poll(null, 10L, 10, Duration.ofSeconds(30)));
+        assertEquals(0, service.getPollCount());
+    }
+
+    @Test
+    void testSubscribeShouldCatchUpOnlyAfterResponseHasStarted() {
+        SseEmitter emitter = service.subscribe(null, 0L);
+
+        assertEquals(1, service.getSubscriberCount());
+        verify(eventRepository, never()).findAllAfter(anyLong(), any());
+
+        startResponse(emitter);
+        runTasks();
+
+        verify(eventRepository, times(2)).findAllAfter(eq(0L), any());
+    }
+
+    @Test
+    void testSubscribeWhenPositionIsPurgedShouldThrowException() {
+        when(eventRepository.findMinPosition()).thenReturn(100L);
+
+        assertThrows(BadRequestException.class, () -> service.subscribe(null, 10L));
+        assertEquals(0, service.getSubscriberCount());
+    }
+
+    @Test
+    void testDispatchWhenSubscriberFallsBehindShouldDropIt() {
+        SseEmitter slow = service.subscribe(null, 0L);
+        SseEmitter fast = service.subscribe(2L, 0L);
+
+        startResponse(slow);
+        startResponse(fast);
+        runTasks();
+
+        when(eventRepository.findUndispatchedIds(any())).thenReturn(List.of(7L, 8L, 9L));
+        when(eventRepository.findMaxPosition()).thenReturn(41L);
+        when(eventRepository.findAllByIdInOrderByPosition(List.of(7L, 8L, 9L)))
+                .thenReturn(List.of(event(42L, 1L), event(43L, 2L), event(44L, 1L)));
+
+        // The deliveries don't run while the dispatcher pushes, so the queue of two events of the first one is full.
+        service.dispatch();
+
+        assertEquals(1, service.getSubscriberCount());
+
+        runTasks();
+
+        assertThrows(IllegalStateException.class, () -> slow.send("event"));
+        assertDoesNotThrow(() -> fast.send("event"));
+    }
+
+    @Test
+    void testFindAfterWhenPositionIsPurgedShouldThrowException() {
+        when(eventRepository.findMinPosition()).thenReturn(100L);
+
+        assertThrows(BadRequestException.class, () -> service.findAfter(null, 10L, 10));
+        verify(eventRepository, never()).findAllAfter(anyLong(), any());
+    }
+
+    @Test
+    void testFindAfterWhenLimitIsTooBigShouldThrowException() {
+        assertThrows(BadRequestException.class, () -> service.findAfter(null, 0L, 501));
+    }
+
+    private ChangeFeedService create(boolean enabled) {
+        return new ChangeFeedService(eventRepository, transactionManager, enabled, 500, Duration.ofDays(7),
+                Duration.ofMinutes(30), 2, tasks::add);
+    }
+
+    private void runTasks() {
+        while (!tasks.isEmpty()) {
+            tasks.remove(0).run();
+        }
+    }
+
+    private static void startResponse(SseEmitter emitter) {
+        ((ChangeFeedService.Subscriber) emitter)
+                .extendResponse(new ServletServerHttpResponse(new MockHttpServletResponse()));
+    }
+
+    private static Account account(long id, double balance) {
+        return Account.builder()
+                .id(id)
+                .balance(balance)
+                .build();
+    }
+
+    private static OutboxEvent event(long position, long accountId) {
+        return OutboxEvent.builder()
+                .id(position)
+                .position(position)
+                .accountId(accountId)
+                .operationId(5L)
+                .type("deposit")
+                .deposit(50.0)
+                .balance(150.0)
+                .createdAt(NOW)
+                .build();
+    }
+}
@@ -0,0 +1,177 @@
+package com.piche.task.service;
+
+import com.piche.task.archive.OperationArchive;
+import com.piche.task.dto.AccountAmountDTO;
+import com.piche.task.model.DailyBalance;
+import com.piche.task.model.DailyBalanceCheckpoint;
+import com.piche.task.repository.AccountDepositOperationRepository;
+import com.piche.task.repository.AccountTransferOperationRepository;
+import com.piche.task.repository.DailyBalanceCheckpointRepository;
+import com.piche.task.repository.DailyBalanceRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.Date;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class DailyBalanceServiceTest {
+
+    private static final Instant NOW = Instant.parse("2024-01-04T00:00:30Z");
+
+    @Mock
+    private AccountDepositOperationRepository depositOperationRepository;
+
+    @Mock
+    private AccountTransferOperationRepository transferOperationRepository;
+
+    @Mock
+    private OperationArchive archive;
+
+    @Mock
+    private DailyBalanceCheckpointRepository checkpointRepository;
+
+    @Mock
+    private DailyBalanceRepository balanceRepository;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * The rows of the {@code daily_balance} table by account and day.
+     */
+    private final Map<Long, TreeMap<LocalDate, Double>> balances = new TreeMap<>();
+
+    private DailyBalanceCheckpoint checkpoint;
+
+    private DailyBalanceService service;
+
+    @BeforeEach
+    void setup() {
+        service = create(true);
+
+        when(archive.read(any())).thenAnswer(invocation -> ((Supplier<?>) invocation.getArgument(0)).get());
+        when(archive.netBalances()).thenReturn(Map.of(3L, 20.0));
+        when(checkpointRepository.findForUpdate(1)).thenAnswer(invocation -> Optional.ofNullable(checkpoint));
+        when(checkpointRepository.findById(1)).thenAnswer(invocation -> Optional.ofNullable(checkpoint));
+        when(checkpointRepository.save(any())).thenAnswer(invocation -> checkpoint = invocation.getArgument(0));
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenAnswer(invocation -> {
+            List<Object[]> rows = invocation.getArgument(1);
+
+            rows.forEach(row -> balances.computeIfAbsent((Long) row[0], id -> new TreeMap<>())
+                    .put(((Date) row[1]).toLocalDate(), (Double) row[2]));
+
+            return new int[rows.size()];
+        });
+        when(balanceRepository.findLatestByAccountIdInAndDayBefore(any(), any())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            LocalDate day = invocation.getArgument(1);
+
+            return ids.stream()
+                    .map(id -> findBefore(id, day))
+                    .flatMap(Optional::stream)
+                    .toList();
+        });
+        when(balanceRepository.findFirstByAccountIdAndDayLessThanOrderByDayDesc(any(), any()))
+                .thenAnswer(invocation -> findBefore(invocation.getArgument(0), invocation.getArgument(1)));
+        when(depositOperationRepository.findMinUpdatedAt()).thenReturn(LocalDateTime.of(2024, 1, 1, 10, 0));
+        when(transferOperationRepository.findMinUpdatedAt()).thenReturn(LocalDateTime.of(2024, 1, 1, 12, 0));
+        when(depositOperationRepository.sumByAccountIdAndDateSpan(any(), any()))
+                .thenReturn(List.of(new AccountAmountDTO(1L, 100.0), new AccountAmountDTO(2L, 50.0)));
+        when(transferOperationRepository.sumBySenderIdAndDateSpan(any(), any()))
+                .thenReturn(List.of(new AccountAmountDTO(1L, 30.0)));
+        when(transferOperationRepository.sumByReceiverIdAndDateSpan(any(), any()))
+                .thenReturn(List.of(new AccountAmountDTO(2L, 30.0)));
+    }
+
+    @Test
+    void testRollUpShouldRollUpEveryFinishedDaySinceOldestOperation() {
+        service.rollUp();
+
+        assertEquals(LocalDate.of(2024, 1, 1), checkpoint.getFirstDay());
+        assertEquals(LocalDate.of(2024, 1, 3), checkpoint.getNextDay());
+        assertEquals(70.0, balances.get(1L).get(LocalDate.of(2024, 1, 1)));
+        assertEquals(140.0, balances.get(1L).get(LocalDate.of(2024, 1, 2)));
+        assertEquals(160.0, balances.get(2L).get(LocalDate.of(2024, 1, 2)));
+        assertEquals(140.0, service.getBalanceBefore(1L, LocalDate.of(2024, 1, 3)));
+        assertEquals(70.0, service.getBalanceBefore(1L, LocalDate.of(2024, 1, 2)));
+        assertEquals(0.0, service.getBalanceBefore(1L, LocalDate.of(2024, 1, 1)));
+    }
+
+    @Test
+    void testRollUpShouldAddArchivedBalancesOnFirstDayOnly() {
+        service.rollUp();
+
+        assertEquals(Map.of(LocalDate.of(2024, 1, 1), 20.0), balances.get(3L));
+        assertEquals(20.0, service.getBalanceBefore(3L, LocalDate.of(2024, 1, 3)));
+    }
+
+    @Test
+    void testRollUpShouldResumeFromCheckpoint() {
+        checkpoint = new DailyBalanceCheckpoint(1, LocalDate.of(2023, 12, 1), LocalDate.of(2024, 1, 2));
+        balances.put(1L, new TreeMap<>(Map.of(LocalDate.of(2023, 12, 31), 1000.0)));
+
+        service.rollUp();
+
+        assertEquals(LocalDate.of(2024, 1, 3), checkpoint.getNextDay());
+        assertEquals(1070.0, balances.get(1L).get(LocalDate.of(2024, 1, 2)));
+        assertFalse(balances.get(1L).containsKey(LocalDate.of(2024, 1, 1)));
+        assertFalse(balances.containsKey(3L));
+        verify(depositOperationRepository, never()).findMinUpdatedAt();
+    }
+
+    @Test
+    void testRollUpWhenDisabledShouldDoNothing() {
+        service = create(false);
+
+        service.rollUp();
+
+        assertNull(checkpoint);
+        assertNull(service.getCheckpoint());
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList());
+    }
+
+    private Optional<DailyBalance> findBefore(Long id, LocalDate day) {
+        return Optional.ofNullable(balances.get(id))
+                .map(rows -> rows.lowerEntry(day))
+                .map(row -> new DailyBalance(id, row.getKey(), row.getValue()));
+    }
+
+    private DailyBalanceService create(boolean enabled) {
+        return new DailyBalanceService(depositOperationRepository, transferOperationRepository, archive,
+                checkpointRepository, balanceRepository, jdbcTemplate, transactionManager, enabled,
+                Duration.ofMinutes(1), Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+}
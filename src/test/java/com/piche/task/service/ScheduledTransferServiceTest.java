@@ -0,0 +1,243 @@
+package com.piche.task.service;
+
+import com.piche.task.dto.ScheduledTransferDTO;
+import com.piche.task.exception.BadRequestException;
+import com.piche.task.model.AccountTransferOperation;
+import com.piche.task.model.ScheduledTransfer;
+import com.piche.task.model.ScheduledTransferState;
+import com.piche.task.repository.AccountRepository;
+import com.piche.task.repository.ScheduledTransferRepository;
+import com.piche.task.retry.OptimisticRetry;
+import com.piche.task.sharding.ShardRouter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.IdGenerator;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ScheduledTransferServiceTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 1, 31, 0, 2);
+
+    @Mock
+    private AccountRepository accountRepository;
+
+    @Mock
+    private ScheduledTransferRepository scheduledRepository;
+
+    @Mock
+    private AccountTransferOperationService transferService;
+
+    @Mock
+    private IdGenerator generator;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private EntityManager manager;
+
+    @Mock
+    private Query claimQuery;
+
+    @Mock
+    private Query claimOneQuery;
+
+    @Mock
+    private Query lockQuery;
+
+    private ShardRouter shards;
+
+    @BeforeEach
+    void setUp() {
+        shards = new ShardRouter("", 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        shards.shutdown();
+    }
+
+    @Test
+    void testSaveShouldSpreadRunTimeOverWindow() {
+        when(accountRepository.existsById(any())).thenReturn(true);
+        when(generator.generateId()).thenReturn(new UUID(0L, 7L));
+        when(scheduledRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        ScheduledTransfer scheduled = service(Duration.ofMinutes(5)).save(1L,
+                new ScheduledTransferDTO(2L, 25.0, NOW.plusDays(1), "P1M"));
+
+        assertEquals(ScheduledTransferState.ACTIVE, scheduled.getState());
+        assertEquals(NOW.plusDays(1), scheduled.getScheduledAt());
+        assertEquals(NOW.plusDays(1).plus(Math.floorMod(ScheduledTransferService.mix(7L), 300_000L),
+                ChronoUnit.MILLIS), scheduled.getRunAt());
+        assertEquals(0L, scheduled.getOccurrence());
+    }
+
+    @Test
+    void testMixShouldSpreadSequentialIdsOverWindow() {
+        long windowMillis = Duration.ofMinutes(5).toMillis();
+        int[] tenths = new int[10];
+
+        for (long id = 1; id <= 10_000; id++) {
+            tenths[(int) (Math.floorMod(ScheduledTransferService.mix(id), windowMillis) * 10 / windowMillis)]++;
+        }
+
+        for (int count : tenths) {
+            assertTrue(count > 900 && count < 1100, "uneven spread " + Arrays.toString(tenths));
+        }
+    }
+
+    @Test
+    void testSaveWithInvalidRecurrenceShouldThrowException() {
+        ScheduledTransferService service = service(Duration.ZERO);
+
+        assertThrows(BadRequestException.class, () -> service.save(1L,
+                new ScheduledTransferDTO(2L, 25.0, null, "monthly")));
+        assertThrows(BadRequestException.class, () -> service.save(1L,
+                new ScheduledTransferDTO(2L, 25.0, null, "P0D")));
+        verify(scheduledRepository, never()).save(any());
+    }
+
+    @Test
+    void testRunBatchShouldRunTransfersAndAdvanceRowsInOneBatch() {
+        mockClaim(List.of(
+                scheduled(5L, LocalDateTime.of(2024, 1, 31, 0, 0), null),
+                scheduled(6L, LocalDateTime.of(2024, 1, 31, 0, 0), "P1M")));
+        when(transferService.save(eq(1L), eq(2L), any())).thenReturn(transfer(11L), transfer(12L));
+
+        assertEquals(2, service(Duration.ZERO).runBatch(0));
+
+        verify(lockQuery).setParameter(1, 1L);
+        verify(lockQuery).setParameter(1, 2L);
+
+        List<Object[]> advances = captureAdvances(1).get(0);
+
+        assertEquals(2, advances.size());
+        assertArrayEquals(new Object[] {1L, LocalDateTime.of(2024, 1, 31, 0, 0), LocalDateTime.of(2024, 1, 31, 0, 0),
+                "COMPLETED", NOW, 11L, null, 5L}, advances.get(0));
+        assertArrayEquals(new Object[] {1L, LocalDateTime.of(2024, 2, 29, 0, 0), LocalDateTime.of(2024, 2, 29, 0, 0),
+                "ACTIVE", NOW, 12L, null, 6L}, advances.get(1));
+    }
+
+    @Test
+    void testRunBatchShouldSkipMissedOccurrences() {
+        mockClaim(List.of(scheduled(5L, LocalDateTime.of(2024, 1, 1, 0, 0), "P1D")));
+        when(transferService.save(eq(1L), eq(2L), any())).thenReturn(transfer(11L));
+
+        service(Duration.ZERO).runBatch(0);
+
+        Object[] advance = captureAdvances(1).get(0).get(0);
+
+        assertEquals(31L, advance[0]);
+        assertEquals(LocalDateTime.of(2024, 2, 1, 0, 0), advance[1]);
+    }
+
+    @Test
+    void testRunBatchWhenTransferIsRejectedShouldRunRowsOneByOne() {
+        ScheduledTransfer first = scheduled(5L, LocalDateTime.of(2024, 1, 31, 0, 0), null);
+        ScheduledTransfer second = scheduled(6L, LocalDateTime.of(2024, 1, 31, 0, 0), "P1M");
+
+        mockClaim(List.of(first, second));
+        when(manager.createNativeQuery(startsWith("SELECT * FROM scheduled_transfer WHERE id = ?"),
+                eq(ScheduledTransfer.class))).thenReturn(claimOneQuery);
+        when(claimOneQuery.setParameter(any(Integer.class), any())).thenReturn(claimOneQuery);
+        when(claimOneQuery.getResultList()).thenReturn(List.of(first), List.of(second), List.of(second));
+        when(transferService.save(eq(1L), eq(2L), any()))
+                .thenReturn(transfer(11L))
+                .thenThrow(new BadRequestException("Can`t add operation: account balance can`t become negative"))
+                .thenReturn(transfer(12L))
+                .thenThrow(new BadRequestException("Can`t add operation: account balance can`t become negative"));
+
+        assertEquals(2, service(Duration.ZERO).runBatch(0));
+
+        List<List<Object[]>> advances = captureAdvances(2);
+
+        assertEquals(12L, advances.get(0).get(0)[5]);
+        assertEquals(5L, advances.get(0).get(0)[7]);
+        assertEquals("ACTIVE", advances.get(1).get(0)[3]);
+        assertEquals(null, advances.get(1).get(0)[5]);
+        assertEquals("Can`t add operation: account balance can`t become negative", advances.get(1).get(0)[6]);
+        assertEquals(6L, advances.get(1).get(0)[7]);
+    }
+
+    private ScheduledTransferService service(Duration window) {
+        return new ScheduledTransferService(shards, accountRepository, scheduledRepository, transferService,
+                new OptimisticRetry(1, Duration.ZERO, Duration.ZERO, new SimpleMeterRegistry()), generator,
+                jdbcTemplate, transactionManager, new SimpleMeterRegistry(), true, 10, window, manager,
+                Clock.fixed(NOW.toInstant(ZoneOffset.UTC), ZoneOffset.UTC));
+    }
+
+    private void mockClaim(List<ScheduledTransfer> due) {
+        when(manager.createNativeQuery(startsWith("SELECT * FROM scheduled_transfer WHERE state = 'ACTIVE'"),
+                eq(ScheduledTransfer.class))).thenReturn(claimQuery);
+        when(claimQuery.setParameter(any(Integer.class), any())).thenReturn(claimQuery);
+        when(claimQuery.getResultList()).thenReturn(due);
+        when(manager.createNativeQuery(startsWith("SELECT id FROM account"))).thenReturn(lockQuery);
+        when(lockQuery.setParameter(any(Integer.class), any())).thenReturn(lockQuery);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<List<Object[]>> captureAdvances(int batches) {
+        ArgumentCaptor<List<Object[]>> advances = ArgumentCaptor.forClass(List.class);
+
+        verify(jdbcTemplate, times(batches)).batchUpdate(anyString(), advances.capture());
+
+        return advances.getAllValues();
+    }
+
+    private static ScheduledTransfer scheduled(long id, LocalDateTime startsAt, String recurrence) {
+        return ScheduledTransfer.builder()
+                .id(id)
+                .senderId(1L)
+                .receiverId(2L)
+                .amount(25.0)
+                .startsAt(startsAt)
+                .recurrence(recurrence)
+                .occurrence(0L)
+                .scheduledAt(startsAt)
+                .runAt(startsAt)
+                .state(ScheduledTransferState.ACTIVE)
+                .createdAt(startsAt.minusDays(1))
+                .build();
+    }
+
+    private static AccountTransferOperation transfer(long id) {
+        return AccountTransferOperation.builder().id(id).build();
+    }
+}
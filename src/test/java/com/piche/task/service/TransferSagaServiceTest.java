@@ -0,0 +1,128 @@
+package com.piche.task.service;
+
+import com.piche.task.dto.TransferOperationRowDTO;
+import com.piche.task.exception.BadRequestException;
+import com.piche.task.model.Account;
+import com.piche.task.model.TransferSaga;
+import com.piche.task.repository.AccountRepository;
+import com.piche.task.repository.TransferSagaRepository;
+import com.piche.task.sharding.ShardRouter;
+import com.piche.task.sharding.TransferSagaState;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class TransferSagaServiceTest {
+
+    @Mock
+    private AccountRepository accountRepository;
+
+    @Mock
+    private TransferSagaRepository sagaRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private EntityManager manager;
+
+    @Mock
+    private Query query;
+
+    private ShardRouter shards;
+
+    private TransferSagaService service;
+
+    @BeforeEach
+    void setUp() {
+        shards = new ShardRouter("jdbc:h2:mem:shard1", 1);
+        service = new TransferSagaService(shards, accountRepository, sagaRepository, transactionManager,
+                Duration.ofSeconds(30), manager);
+    }
+
+    @AfterEach
+    void tearDown() {
+        shards.shutdown();
+    }
+
+    @Test
+    void testTransferShouldDebitCreditAndComplete() {
+        Account sender = Account.builder().id(2L).balance(100.0).build();
+
+        when(accountRepository.existsById(3L)).thenReturn(true);
+        when(accountRepository.findById(2L)).thenReturn(Optional.of(sender));
+        when(manager.createNativeQuery(anyString())).thenReturn(query);
+        when(query.setParameter(any(Integer.class), any())).thenReturn(query);
+        when(query.executeUpdate()).thenReturn(1);
+
+        TransferOperationRowDTO row = service.transfer(10L, 2L, 3L, 30.0);
+
+        ArgumentCaptor<TransferSaga> sagas = ArgumentCaptor.forClass(TransferSaga.class);
+
+        verify(sagaRepository, times(2)).save(sagas.capture());
+        verify(sagaRepository, times(2)).deleteById(10L);
+        assertEquals(TransferSagaState.PENDING, sagas.getAllValues().get(0).getState());
+        assertEquals(TransferSagaState.CREDITED, sagas.getAllValues().get(1).getState());
+        assertEquals(10L, row.getId());
+        assertEquals(30.0, row.getDeposit());
+    }
+
+    @Test
+    void testTransferWhenCreditFailsShouldCompensate() {
+        Account sender = Account.builder().id(2L).balance(100.0).build();
+
+        when(accountRepository.existsById(3L)).thenReturn(true);
+        when(accountRepository.findById(2L)).thenReturn(Optional.of(sender));
+        when(manager.createNativeQuery(anyString())).thenReturn(query);
+        when(query.setParameter(any(Integer.class), any())).thenReturn(query);
+        when(query.executeUpdate()).thenReturn(1, 1, 0, 1, 1);
+        when(sagaRepository.existsById(10L)).thenReturn(false, false, true);
+
+        assertThrows(BadRequestException.class, () -> service.transfer(10L, 2L, 3L, 30.0));
+
+        verify(manager).createNativeQuery("DELETE FROM transfer_operation WHERE id = ?");
+        verify(sagaRepository).deleteById(10L);
+    }
+
+    @Test
+    void testRecoverWhenAlreadyCreditedShouldOnlyComplete() {
+        TransferSaga saga = TransferSaga.builder()
+                .transferId(10L)
+                .senderId(2L)
+                .receiverId(3L)
+                .amount(30.0)
+                .state(TransferSagaState.PENDING)
+                .updatedAt(LocalDateTime.now().minusMinutes(1))
+                .build();
+
+        when(sagaRepository.findAllByStateAndUpdatedBefore(any(), any())).thenReturn(List.of(saga), List.of());
+        when(sagaRepository.existsById(10L)).thenReturn(true);
+
+        service.recover();
+
+        verify(manager, never()).createNativeQuery(anyString());
+        verify(sagaRepository, times(2)).deleteById(10L);
+    }
+}
@@ -0,0 +1,71 @@
+package com.piche.task.sharding;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardRouterTest {
+
+    @Test
+    void testWithoutUrlsShouldUseSingleShard() {
+        ShardRouter router = new ShardRouter("", 4);
+
+        assertFalse(router.isSharded());
+        assertEquals(0, router.shardOf(17L));
+        assertEquals(List.of("result"), router.fanOut(() -> "result"));
+    }
+
+    @Test
+    void testAccountIdShouldMapBackToShard() {
+        ShardRouter router = new ShardRouter("jdbc:h2:mem:a, jdbc:h2:mem:b", 2);
+
+        try {
+            assertTrue(router.isSharded());
+            assertEquals(3, router.getCount());
+
+            for (int shard = 0; shard < 3; shard++) {
+                assertEquals(shard, router.shardOf(router.accountId(51L, shard)));
+            }
+        } finally {
+            router.shutdown();
+        }
+    }
+
+    @Test
+    void testRouteShouldRestorePreviousShard() {
+        ShardRouter router = new ShardRouter(3, 1);
+
+        try {
+            router.routeToShard(1, () -> {
+                assertEquals(2, router.route(5L, ShardRouter::currentShard));
+                assertEquals(1, ShardRouter.currentShard());
+
+                return null;
+            });
+
+            assertNull(ShardRouter.currentShard());
+        } finally {
+            router.shutdown();
+        }
+    }
+
+    @Test
+    void testFanOutShouldRunOnEveryShardInOrder() {
+        ShardRouter router = new ShardRouter(3, 3);
+
+        try {
+            assertEquals(List.of(0, 1, 2), router.fanOut(ShardRouter::currentShard));
+            assertThrows(IllegalStateException.class, () -> router.fanOut(() -> {
+                throw new IllegalStateException();
+            }));
+        } finally {
+            router.shutdown();
+        }
+    }
+}
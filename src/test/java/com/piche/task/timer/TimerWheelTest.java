@@ -0,0 +1,87 @@
+package com.piche.task.timer;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimerWheelTest {
+
+    private static final long START = 1_700_000_000_000L;
+
+    @Test
+    void testAdvanceShouldExpireOnFirstTickAtOrAfterDeadline() {
+        TimerWheel<String> wheel = new TimerWheel<>(Duration.ofMillis(100), START);
+
+        wheel.schedule("a", START + 250);
+        wheel.schedule("b", START + 300);
+        wheel.schedule("past", START - 1000);
+
+        assertEquals(List.of("past"), wheel.advance(START + 100));
+        assertEquals(List.of(), wheel.advance(START + 299));
+        assertEquals(List.of("b", "a"), wheel.advance(START + 300));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void testAdvanceShouldMatchDeadlinesAcrossLevels() {
+        TimerWheel<Integer> wheel = new TimerWheel<>(Duration.ofMillis(1), START);
+        Random random = new Random(42);
+        Map<Integer, Long> deadlines = new HashMap<>();
+        List<Long> bounds = List.of(100L, 5_000L, 300_000L, 20_000_000L);
+
+        for (int i = 0; i < 20_000; i++) {
+            long deadline = START + 1 + random.nextLong(bounds.get(i % bounds.size()));
+
+            deadlines.put(i, deadline);
+            wheel.schedule(i, deadline);
+        }
+
+        long now = START;
+        int expired = 0;
+
+        while (wheel.size() > 0) {
+            long previous = now;
+
+            now += random.nextLong(1, 50_000);
+
+            for (Integer value : wheel.advance(now)) {
+                long deadline = deadlines.get(value);
+
+                assertTrue(deadline <= now && deadline > previous, "timeout " + value + " expired at " + now);
+                expired++;
+            }
+        }
+
+        assertEquals(20_000, expired);
+    }
+
+    @Test
+    void testCancelShouldRemoveTimeoutOnce() {
+        TimerWheel<String> wheel = new TimerWheel<>(Duration.ofSeconds(1), START);
+        TimerWheel.Timeout<String> cancelled = wheel.schedule("cancelled", START + 90_000);
+        TimerWheel.Timeout<String> expired = wheel.schedule("expired", START + 90_000);
+
+        assertTrue(wheel.cancel(cancelled));
+        assertFalse(wheel.cancel(cancelled));
+        assertEquals(List.of("expired"), wheel.advance(START + 90_000));
+        assertFalse(wheel.cancel(expired));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void testScheduleBeyondRangeShouldThrowException() {
+        TimerWheel<String> wheel = new TimerWheel<>(Duration.ofMillis(1), START);
+
+        assertThrows(IllegalArgumentException.class, () -> wheel.schedule("far", START + (1L << 36)));
+        assertEquals(0, wheel.size());
+    }
+}